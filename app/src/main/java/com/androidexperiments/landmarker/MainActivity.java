@@ -5,7 +5,6 @@ import android.content.Intent;
 import android.content.IntentSender;
 import android.location.Location;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.SystemClock;
@@ -28,24 +27,51 @@ import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.LocationSettingsRequest;
 import com.google.android.gms.location.LocationSettingsResult;
 import com.google.android.gms.location.LocationSettingsStatusCodes;
+import com.google.creativelabs.androidexperiments.typecompass.BuildConfig;
 import com.google.creativelabs.androidexperiments.typecompass.R;
+import com.androidexperiments.landmarker.data.EmptyTileFilter;
+import com.androidexperiments.landmarker.data.LandmarkPack;
 import com.androidexperiments.landmarker.data.NearbyPlace;
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.data.PlacesFetcher;
+import com.androidexperiments.landmarker.data.PlacesRepository;
+import com.androidexperiments.landmarker.data.PlacesTileCache;
+import com.androidexperiments.landmarker.data.TilePrefetcher;
+import com.androidexperiments.landmarker.places.CircuitBreaker;
+import com.androidexperiments.landmarker.places.HttpTransport;
+import com.androidexperiments.landmarker.places.LocationRefreshPolicy;
+import com.androidexperiments.landmarker.places.LocationScheduler;
+import com.androidexperiments.landmarker.places.NearbyPlacesSource;
+import com.androidexperiments.landmarker.places.NearbySearchClient;
+import com.androidexperiments.landmarker.places.PackNearbySearch;
+import com.androidexperiments.landmarker.places.RateLimitedException;
+import com.androidexperiments.landmarker.places.RateLimitedTransport;
+import com.androidexperiments.landmarker.places.RateLimiter;
+import com.androidexperiments.landmarker.places.ResilientNearbySearch;
+import com.androidexperiments.landmarker.places.ShardedNearbySearch;
+import com.androidexperiments.landmarker.places.UrlConnectionTransport;
 import com.androidexperiments.landmarker.sensors.HeadTracker;
-import com.androidexperiments.landmarker.util.HeadTransform;
+import com.androidexperiments.landmarker.util.TimeSource;
 import com.androidexperiments.landmarker.widget.DirectionalTextViewContainer;
 import com.androidexperiments.landmarker.widget.IntroView;
 import com.androidexperiments.landmarker.widget.SwingPhoneView;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import butterknife.ButterKnife;
 import butterknife.InjectView;
 import butterknife.OnClick;
 import de.greenrobot.event.EventBus;
-import se.walkercrou.places.GooglePlaces;
-import se.walkercrou.places.Place;
 
 
 public class MainActivity extends BaseActivity implements
@@ -57,12 +83,105 @@ public class MainActivity extends BaseActivity implements
     //go to https://code.google.com/apis/console to register an app and get a key!
     private static final String PLACES_API_KEY = Secrets.PLACES_API_KEY;
 
+    /**
+     * where searches go, the real api unless the build points them at a stand-in
+     */
+    private static final String PLACES_BASE_URL = BuildConfig.PLACES_BASE_URL != null
+            ? BuildConfig.PLACES_BASE_URL : NearbySearchClient.DEFAULT_BASE_URL;
+
+    /**
+     * directory under getCacheDir() everything a stand-in answers is kept in instead, so its
+     * fake places and request counts never mix with the real ones
+     */
+    private static final String STAND_IN_CACHE_DIR = "standin";
+
     private static final String STATE_RESOLVING_ERROR = "resolving_error";
 
     private static final double MAX_RADIUS = 1000;
 
+    /**
+     * most places we keep from one search across all shards
+     */
+    private static final int MAX_PLACES = 200;
+
+    /**
+     * searches are split into a center query plus one per sector, each capped at 60 results
+     * by the api. costs SEARCH_SECTORS + 1 times the requests of a single search.
+     */
+    private static final int SEARCH_SECTORS = 6;
+
+    /**
+     * max shard queries in flight at once
+     */
+    private static final int SEARCH_THREADS = 4;
+
+    /**
+     * fetches running at once, one live plus one cancelled one winding down
+     */
+    private static final int FETCH_THREADS = 2;
+
+    /**
+     * failed requests in a row, across every shard, before we stop calling the api for a bit
+     */
+    private static final int BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_MS = 30000;
+
+    /**
+     * the api key is shared by every device, these keep one device's share in check.
+     * a full search is up to (SEARCH_SECTORS + 1) * 3 requests.
+     */
+    private static final int REQUEST_BURST = 42;
+    private static final float REQUESTS_PER_MINUTE = 20;
+    private static final int DAILY_REQUEST_BUDGET = 1000;
+
+    /**
+     * share of the burst and the daily budget prefetching can't touch, what's left covers
+     * one worst case tile
+     */
+    private static final float PREFETCH_RESERVE = .5f;
+
+    /**
+     * shard queries in flight at once for a prefetch, kept off the user's search threads
+     */
+    private static final int PREFETCH_SEARCH_THREADS = 2;
+
+    /**
+     * least time between two prefetches, on top of what the limiter allows
+     */
+    private static final long PREFETCH_INTERVAL_MS = 60 * 1000;
+
+    /**
+     * how long a prefetched tile answers a search without the network
+     */
+    private static final long PREFETCH_MAX_AGE_MS = 30 * 60 * 1000;
+
+    /**
+     * longest a user initiated request waits on the rate limiter before giving up
+     */
+    private static final long USER_MAX_THROTTLE_WAIT_MS = 5000;
+
+    /**
+     * file under getCacheDir() the day's request count is kept in
+     */
+    private static final String REQUEST_BUDGET_FILE = "request_budget";
+
     private static final int REQUEST_CHECK_SETTINGS = 100;
 
+    /**
+     * directory under getCacheDir() that nearby results are stored in per tile
+     */
+    private static final String PLACES_CACHE_DIR = "places";
+
+    /**
+     * file under getCacheDir() that tiles known to be empty are remembered in
+     */
+    private static final String EMPTY_TILES_FILE = "empty_tiles.bloom";
+
+    /**
+     * directory under getExternalFilesDir() offline landmark packs are pushed to
+     */
+    private static final String LANDMARK_PACKS_DIR = "packs";
+
     /**
      * attempts at finding a location with decent accuracy
      */
@@ -73,12 +192,41 @@ public class MainActivity extends BaseActivity implements
      */
     private static final int MIN_AGE_IN_HOURS = 1;
 
+    /**
+     * meters moved before bearings and distances are recomputed against the places we have
+     */
+    private static final float RELOCATE_DISTANCE = 10;
+
+    /**
+     * meters from the last search before we search again, a quarter of the search radius
+     * so the far side of it still has places when we get there
+     */
+    private static final float REFETCH_RADIUS = (float) MAX_RADIUS / 4;
+
+    /**
+     * the head tracker pushes a new heading at most about once a frame, and only once the head
+     * has turned at least this far since the last one
+     */
+    private static final long HEADING_MIN_INTERVAL_MS = 16;
+    private static final float HEADING_MIN_CHANGE_DEGREES = .1f;
+
     private GoogleApiClient mGoogleApiClient;
 
     private boolean mResolvingError = false;
 
     private Location mLastLocation;
-    private GooglePlaces mPlacesApi;
+    private PlacesRepository mPlacesRepository;
+    private ExecutorService mSearchExecutor;
+    private ExecutorService mPrefetchExecutor;
+    private PlacesFetcher mPlacesFetcher;
+    private TilePrefetcher mTilePrefetcher;
+
+    /**
+     * one transport for every shard, page and refresh so they all reuse its connections
+     */
+    private UrlConnectionTransport mHttpTransport = new UrlConnectionTransport();
+    private ResilientNearbySearch mResilientSearch;
+    private RateLimiter mRateLimiter;
 
     @InjectView(R.id.intro_view) IntroView mIntroView;
     @InjectView(R.id.swing_phone_view) SwingPhoneView mSwingPhoneView;
@@ -92,11 +240,17 @@ public class MainActivity extends BaseActivity implements
     private boolean mIsReadyToCheckLastLocation = false;
     private LocationRequest mLocationReq;
 
+    private LocationScheduler mLocationScheduler = new LocationScheduler();
+    private LocationRefreshPolicy mRefreshPolicy = new LocationRefreshPolicy(RELOCATE_DISTANCE, REFETCH_RADIUS);
+    private boolean mIsFollowingLocation = false;
+
     private HeadTracker mHeadTracker;
-    private HeadTransform mHeadTransform;
     private Handler mTrackingHandler = new Handler();
     private boolean mIsTracking = false;
-    private float[] mEulerAngles = new float[3];
+
+    //latest heading off the sensor thread, and whether an update to draw it is already queued
+    private volatile float mLatestHeading;
+    private final AtomicBoolean mHeadingUpdatePending = new AtomicBoolean();
 
     private boolean mHasPlaces = false;
 
@@ -125,7 +279,6 @@ public class MainActivity extends BaseActivity implements
     private void initSensors()
     {
         mHeadTracker = HeadTracker.createFromContext(this);
-        mHeadTransform = new HeadTransform();
     }
 
     protected synchronized void buildGoogleApiClient() {
@@ -137,7 +290,87 @@ public class MainActivity extends BaseActivity implements
     }
 
     private void buildPlacesApi() {
-        mPlacesApi = new GooglePlaces(PLACES_API_KEY);
+        PlacesTileCache cache = new PlacesTileCache(new File(getPlacesCacheDir(), PLACES_CACHE_DIR));
+        mSearchExecutor = Executors.newFixedThreadPool(SEARCH_THREADS);
+
+        //retries and the breaker sit under the shards, so each shard retries on its own
+        //and they all trip the same breaker
+        //every request, page tokens included, takes a token from the device's budget
+        mRateLimiter = new RateLimiter(REQUEST_BURST, REQUESTS_PER_MINUTE, DAILY_REQUEST_BUDGET, PREFETCH_RESERVE,
+                new File(getPlacesCacheDir(), REQUEST_BUDGET_FILE), TimeSource.SYSTEM);
+        HttpTransport userTransport = new RateLimitedTransport(mHttpTransport, mRateLimiter,
+                RateLimiter.Lane.USER, USER_MAX_THROTTLE_WAIT_MS);
+
+        CircuitBreaker breaker = new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MS, TimeSource.SYSTEM);
+        mResilientSearch = new ResilientNearbySearch(
+                new NearbySearchClient(PLACES_API_KEY, PLACES_BASE_URL, userTransport), breaker);
+
+        //offline packs answer wherever they cover, the network everywhere else
+        List<LandmarkPack> packs = openLandmarkPacks();
+
+        NearbyPlacesSource source = new PackNearbySearch(packs,
+                new ShardedNearbySearch(mResilientSearch, mSearchExecutor, SEARCH_SECTORS));
+        EmptyTileFilter emptyTiles = new EmptyTileFilter(new File(getPlacesCacheDir(), EMPTY_TILES_FILE));
+        mPlacesRepository = new PlacesRepository(source, cache, emptyTiles);
+
+        final Handler handler = new Handler();
+        Executor uiExecutor = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                handler.post(command);
+            }
+        };
+        mPlacesFetcher = new PlacesFetcher(mPlacesRepository, FETCH_THREADS, uiExecutor);
+
+        //prefetches never wait on the limiter and never retry, but share the breaker and
+        //write to the same cache and empty tiles
+        mPrefetchExecutor = Executors.newFixedThreadPool(PREFETCH_SEARCH_THREADS);
+        HttpTransport prefetchTransport = new RateLimitedTransport(mHttpTransport, mRateLimiter,
+                RateLimiter.Lane.PREFETCH, 0);
+        NearbyPlacesSource prefetchSource = new PackNearbySearch(packs, new ShardedNearbySearch(
+                new ResilientNearbySearch(
+                        new NearbySearchClient(PLACES_API_KEY, PLACES_BASE_URL, prefetchTransport),
+                        breaker, 1, 0, 0, new Random()),
+                mPrefetchExecutor, SEARCH_SECTORS));
+
+        mTilePrefetcher = new TilePrefetcher(new PlacesRepository(prefetchSource, cache, emptyTiles), mRateLimiter,
+                (SEARCH_SECTORS + 1) * NearbySearchClient.MAX_PAGES, MAX_RADIUS, MAX_PLACES,
+                PREFETCH_INTERVAL_MS, PREFETCH_MAX_AGE_MS, TimeSource.SYSTEM, uiExecutor);
+    }
+
+    /**
+     * where search results and request counts are kept, off to the side for a stand-in
+     */
+    private File getPlacesCacheDir()
+    {
+        if(PLACES_BASE_URL.equals(NearbySearchClient.DEFAULT_BASE_URL))
+            return getCacheDir();
+
+        Log.d(TAG, "searching stand-in " + PLACES_BASE_URL);
+        return new File(getCacheDir(), STAND_IN_CACHE_DIR);
+    }
+
+    /**
+     * map every pack pushed to the packs dir, only headers are read so this is quick
+     */
+    private List<LandmarkPack> openLandmarkPacks()
+    {
+        File dir = getExternalFilesDir(LANDMARK_PACKS_DIR);
+        if(dir == null)
+            dir = new File(getFilesDir(), LANDMARK_PACKS_DIR);
+
+        long start = SystemClock.elapsedRealtime();
+        List<IOException> errors = new ArrayList<>();
+        List<LandmarkPack> packs = LandmarkPack.openAll(dir, errors);
+
+        for(IOException e : errors)
+            Log.w(TAG, "skipping landmark pack :: " + e.getLocalizedMessage());
+        for(LandmarkPack pack : packs)
+            Log.d(TAG, "landmark pack " + pack.getName() + " with " + pack.getPlaceCount() + " places");
+        if(packs.size() > 0)
+            Log.d(TAG, "opened " + packs.size() + " packs in " + (SystemClock.elapsedRealtime() - start) + "ms");
+
+        return packs;
     }
 
     @Override
@@ -157,6 +390,9 @@ public class MainActivity extends BaseActivity implements
         //events
         EventBus.getDefault().register(this);
 
+        //places, hands over anything that finished while we were away
+        mPlacesFetcher.setConsumer(mPlacesConsumer);
+
         //sensors
         mHeadTracker.startTracking();
 
@@ -172,8 +408,10 @@ public class MainActivity extends BaseActivity implements
         }
 
         //resuming from pause/maps
-        if(mHasPlaces)
+        if(mHasPlaces) {
             startTracking();
+            startFollowingLocation();
+        }
     }
 
     @Override
@@ -188,9 +426,20 @@ public class MainActivity extends BaseActivity implements
 
         EventBus.getDefault().unregister(this);
 
-        mIsTracking = false;
+        //results that land while paused are held until we're back
+        mPlacesFetcher.setConsumer(null);
+        if(isFinishing())
+            mPlacesFetcher.cancel();
+
+        stopTracking();
         mHeadTracker.stopTracking();
 
+        stopFollowingLocation();
+        mTilePrefetcher.cancel();
+
+        //a few bytes, the limiter only writes them here and once a minute while searching
+        mRateLimiter.flush();
+
         mDirectionalTextViewContainer.stopDrawing();
     }
 
@@ -198,6 +447,16 @@ public class MainActivity extends BaseActivity implements
     protected void onStop() {
         super.onStop();
         mGoogleApiClient.disconnect();
+        mIsConnectedToGApi = false;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mPlacesFetcher.shutdown();
+        mTilePrefetcher.shutdown();
+        mSearchExecutor.shutdownNow();
+        mPrefetchExecutor.shutdownNow();
     }
 
     //butterknife
@@ -336,10 +595,8 @@ public class MainActivity extends BaseActivity implements
      */
     private void checkLastLocation()
     {
-        mLocationReq = new LocationRequest();
-        mLocationReq.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
-        mLocationReq.setInterval(1000);
-        mLocationReq.setFastestInterval(5000);
+        //the scheduler starts out acquiring, the first fix is a search origin
+        mLocationReq = buildLocationRequest(mLocationScheduler.getMode());
         mLocationReq.setNumUpdates(MAX_UPDATE_TRIES);
 
         mLastLocation = LocationServices.FusedLocationApi.getLastLocation(mGoogleApiClient);
@@ -445,58 +702,212 @@ public class MainActivity extends BaseActivity implements
         });
     }
 
-    private void getNewPlaces()
+    /**
+     * keep location updates coming once places are showing, so labels follow us as we walk
+     */
+    private void startFollowingLocation()
     {
-        //update introview
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                mIntroView.setIsFindingPlaces();
-            }
-        });
+        if(mIsFollowingLocation || !mIsConnectedToGApi)
+            return;
+
+        mIsFollowingLocation = true;
+        requestFollowUpdates();
+    }
+
+    /**
+     * (re)register the follow listener with whatever the scheduler currently wants,
+     * registering the same listener again replaces its previous request
+     */
+    private void requestFollowUpdates()
+    {
+        LocationRequest req = buildLocationRequest(mLocationScheduler.getMode());
+        Log.d(TAG, "requestFollowUpdates() " + mLocationScheduler.getStats() + " :: " + req);
+
+        LocationServices.FusedLocationApi.requestLocationUpdates(mGoogleApiClient, req, mFollowLocationListener);
+    }
+
+    private static LocationRequest buildLocationRequest(LocationScheduler.Mode mode)
+    {
+        LocationRequest req = new LocationRequest();
+        req.setInterval(mode.intervalMs);
+        req.setFastestInterval(mode.fastestIntervalMs);
+
+        switch(mode.priority) {
+            case HIGH_ACCURACY:
+                req.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+                break;
+            case BALANCED:
+                req.setPriority(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY);
+                break;
+            case LOW_POWER:
+                req.setPriority(LocationRequest.PRIORITY_LOW_POWER);
+                break;
+        }
+        return req;
+    }
+
+    private void stopFollowingLocation()
+    {
+        if(!mIsFollowingLocation)
+            return;
+
+        mIsFollowingLocation = false;
 
-        //find some places!
-        new AsyncTask<Void, Void, List<Place>>()
+        if(mGoogleApiClient.isConnected())
+            LocationServices.FusedLocationApi.removeLocationUpdates(mGoogleApiClient, mFollowLocationListener);
+    }
+
+    private LocationListener mFollowLocationListener = new LocationListener() {
+        @Override
+        public void onLocationChanged(Location location)
         {
-            @Override
-            protected List<Place> doInBackground(Void... params)
+            if(location == null || !mHasPlaces)
+                return;
+
+            mLastLocation = location;
+
+            boolean modeChanged = mLocationScheduler.onLocation(location.getLatitude(), location.getLongitude(),
+                    location.getAccuracy(), location.hasSpeed(), location.getSpeed());
+
+            switch(mRefreshPolicy.onLocation(location.getLatitude(), location.getLongitude()))
             {
-                List<Place> places = null;
+                case LocationRefreshPolicy.RELOCATE:
+                    mDirectionalTextViewContainer.updateLocation(location);
+                    break;
 
-                try {
-                    places = mPlacesApi.getNearbyPlaces(mLastLocation.getLatitude(), mLastLocation.getLongitude(), MAX_RADIUS, 60);
-                }
-                catch(Exception e) {
-                    //if getNearbyPlaces fails, return null and directional will do what it needs to
-                    Log.e(TAG, e.getLocalizedMessage());
-                    e.printStackTrace();
-                }
-                return places;
+                case LocationRefreshPolicy.REFETCH:
+                    Log.d(TAG, "left the searched area, refetching :: " + location);
+
+                    //keep the labels honest while the new search is out
+                    mDirectionalTextViewContainer.updateLocation(location);
+                    getNewPlaces();
+                    break;
             }
 
-            @Override
-            protected void onPostExecute(List<Place> places)
-            {
-                if(places == null)
-                {
-                    Toast.makeText(
-                            MainActivity.this,
-                            "There are no places near you - Please try again later.",
-                            Toast.LENGTH_LONG
-                    ).show();
-
-                    goBackToSplash();
-                    return;
+            //look ahead while nothing else is using the network
+            mTilePrefetcher.onLocation(location.getLatitude(), location.getLongitude(), !mPlacesFetcher.isFetching());
+
+            //sharpen up ahead of the next search so its origin is a good fix
+            modeChanged |= mLocationScheduler.setRefreshPending(mRefreshPolicy.isApproachingRefetch());
+
+            if(modeChanged && mIsFollowingLocation)
+                requestFollowUpdates();
+        }
+    };
+
+    private void getNewPlaces()
+    {
+        final double lat = mLastLocation.getLatitude();
+        final double lon = mLastLocation.getLongitude();
+
+        mRefreshPolicy.setQueryOrigin(lat, lon);
+
+        //update introview, unless we're refetching while walking around
+        if(!mHasPlaces) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    mIntroView.setIsFindingPlaces();
                 }
+            });
+        }
+
+        //a tile prefetched on the way here is good as is
+        boolean prefetched = mTilePrefetcher.claim(lat, lon);
+
+        //show whatever we have for this tile first, then stream pages from the network
+        //in behind it as they arrive rather than waiting on every page token
+        if(!mPlacesFetcher.fetch(lat, lon, MAX_RADIUS, MAX_PLACES, prefetched))
+            Log.d(TAG, "getNewPlaces() joined the fetch already running for this tile");
+    }
+
+    private PlacesFetcher.Consumer mPlacesConsumer = new PlacesFetcher.Consumer()
+    {
+        @Override
+        public void onPage(List<PlaceRecord> places, int pageIndex)
+        {
+            Log.d(TAG, "received page " + pageIndex + " with " + places.size() + " places");
+
+            //first page replaces cached results, later ones are merged in place
+            if(pageIndex == 0)
+                onPlacesLoaded(places);
+            else
+                mDirectionalTextViewContainer.addPlaces(places, mLastLocation);
+        }
+
+        @Override
+        public void onResult(List<PlaceRecord> places)
+        {
+            Log.d(TAG, "fetched " + places.size() + " places, transport " + mHttpTransport.getStats()
+                    + " :: " + mResilientSearch.getStats() + " :: " + mRateLimiter.getStats()
+                    + " :: prefetch " + mTilePrefetcher.getStats());
+
+            //zero results never produce a page, make sure stale cached labels are cleared
+            if(places.isEmpty() || !mHasPlaces)
+                onPlacesLoaded(places);
+        }
+
+        @Override
+        public void onFallback(List<PlaceRecord> places, boolean stale, IOException cause)
+        {
+            Log.w(TAG, "fetch failed, falling back to " + (stale ? "stale" : "cached") + " tile :: "
+                    + cause.getLocalizedMessage() + " :: " + mResilientSearch.getStats() + " :: " + mRateLimiter.getStats());
+
+            //whatever is up already is at least as recent as the tile on disk
+            if(mHasPlaces)
+                return;
+
+            if(stale)
+                Toast.makeText(MainActivity.this, "Can't reach Places right now - showing saved places.", Toast.LENGTH_LONG).show();
+
+            onPlacesLoaded(places);
+        }
+
+        @Override
+        public void onFailure(IOException e)
+        {
+            Log.e(TAG, "fetch failed :: " + mResilientSearch.getStats() + " :: " + mRateLimiter.getStats(), e);
 
-                mHasPlaces = true;
-                startTracking();
+            //already showing cached places, keep the session going
+            if(mHasPlaces)
+                return;
 
-                mDirectionalTextViewContainer.updatePlaces(places, mLastLocation);
+            if(e instanceof RateLimitedException)
+            {
+                Toast.makeText(
+                        MainActivity.this,
+                        "Too many searches from this device - Please try again later.",
+                        Toast.LENGTH_LONG
+                ).show();
 
-                showSwingPhoneView();
+                goBackToSplash();
+                return;
             }
-        }.execute();
+
+            Toast.makeText(
+                    MainActivity.this,
+                    "There are no places near you - Please try again later.",
+                    Toast.LENGTH_LONG
+            ).show();
+
+            goBackToSplash();
+        }
+    };
+
+    private void onPlacesLoaded(List<PlaceRecord> places)
+    {
+        mDirectionalTextViewContainer.updatePlaces(places, mLastLocation);
+
+        if(mHasPlaces)
+            return;
+
+        mHasPlaces = true;
+        startTracking();
+
+        mLocationScheduler.setRefreshPending(false);
+        startFollowingLocation();
+
+        showSwingPhoneView();
     }
 
     private void showSwingPhoneView() {
@@ -520,27 +931,37 @@ public class MainActivity extends BaseActivity implements
 
     private void startTracking()
     {
-        mIsTracking = true;
+        if(mIsTracking)
+            return;
 
-        mTrackingHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                if(!mIsTracking) return;
+        mIsTracking = true;
+        mHeadTracker.addHeadingListener(mHeadingListener, HEADING_MIN_INTERVAL_MS, HEADING_MIN_CHANGE_DEGREES);
+    }
 
-                mHeadTracker.getLastHeadView(mHeadTransform.getHeadView(), 0);
-                mHeadTransform.getEulerAngles(mEulerAngles, 0);
+    private void stopTracking()
+    {
+        mIsTracking = false;
+        mHeadTracker.removeHeadingListener(mHeadingListener);
+    }
 
-                runOnUiThread(updateDirectionalTextView);
+    private HeadTracker.OnHeadingChangedListener mHeadingListener = new HeadTracker.OnHeadingChangedListener() {
+        @Override
+        public void onHeadingChanged(float yawDegrees, long timestampNs) {
+            mLatestHeading = yawDegrees;
 
-                mTrackingHandler.postDelayed(this, 100);
-            }
-        });
-    }
+            //one update queued at a time, it draws whatever heading is latest when it runs
+            if(mHeadingUpdatePending.compareAndSet(false, true))
+                mTrackingHandler.post(updateDirectionalTextView);
+        }
+    };
 
     private Runnable updateDirectionalTextView = new Runnable() {
         @Override
         public void run() {
-            mDirectionalTextViewContainer.updateView(Math.toDegrees(mEulerAngles[1]));
+            mHeadingUpdatePending.set(false);
+            if(!mIsTracking) return;
+
+            mDirectionalTextViewContainer.updateView(mLatestHeading);
         }
     };
 
@@ -557,6 +978,10 @@ public class MainActivity extends BaseActivity implements
             checkLastLocation();
             mIsReadyToCheckLastLocation = false;
         }
+
+        //reconnecting after onStop, pick location updates back up
+        if(mHasPlaces)
+            startFollowingLocation();
     }
 
     @Override
@@ -564,6 +989,7 @@ public class MainActivity extends BaseActivity implements
     {
         Log.d(TAG, "onConnectionSuspended() " + i);
         mIsConnectedToGApi = false;
+        mIsFollowingLocation = false;
     }
 
     @Override
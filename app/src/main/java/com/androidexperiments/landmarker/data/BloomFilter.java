@@ -0,0 +1,129 @@
+package com.androidexperiments.landmarker.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fixed size Bloom filter over strings. {@link #mightContain} never misses something that
+ * was added, and wrongly says yes for something that wasn't at roughly the rate it was
+ * sized for. Bit positions come from one 64 bit hash split in two and combined as
+ * h1 + i * h2, so each key is hashed once no matter how many bits it sets.
+ * <p>
+ * Not thread safe.
+ */
+public class BloomFilter
+{
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] mBits;
+    private final int mBitCount;
+    private final int mHashCount;
+
+    /**
+     * @param expectedKeys how many keys it should hold before the false positive rate is missed
+     * @param falsePositiveRate 0 -> 1, 0.01 for 1%
+     */
+    public static BloomFilter create(int expectedKeys, double falsePositiveRate)
+    {
+        expectedKeys = Math.max(1, expectedKeys);
+        double ln2 = Math.log(2);
+        int bits = (int) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (ln2 * ln2));
+        int hashes = Math.max(1, (int) Math.round((double) bits / expectedKeys * ln2));
+        return new BloomFilter(bits, hashes);
+    }
+
+    public BloomFilter(int bitCount, int hashCount)
+    {
+        if(bitCount < 1 || hashCount < 1)
+            throw new IllegalArgumentException("bitCount and hashCount should be at least 1");
+
+        mBits = new long[(bitCount + 63) / 64];
+        mBitCount = mBits.length * 64;
+        mHashCount = hashCount;
+    }
+
+    public int getBitCount() {
+        return mBitCount;
+    }
+
+    public int getHashCount() {
+        return mHashCount;
+    }
+
+    public void add(String key)
+    {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+
+        for(int i = 0; i < mHashCount; i++) {
+            int bit = index(h1 + i * h2);
+            mBits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String key)
+    {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+
+        for(int i = 0; i < mHashCount; i++) {
+            int bit = index(h1 + i * h2);
+            if((mBits[bit >>> 6] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(mBits, 0);
+    }
+
+    public void copyFrom(BloomFilter other)
+    {
+        if(other.mBitCount != mBitCount || other.mHashCount != mHashCount)
+            throw new IllegalArgumentException("filters are sized differently");
+
+        System.arraycopy(other.mBits, 0, mBits, 0, mBits.length);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException
+    {
+        for(long word : mBits)
+            out.writeLong(word);
+    }
+
+    /**
+     * read bits written by {@link #writeTo} from a filter of the same size
+     */
+    public void readFrom(DataInputStream in) throws IOException
+    {
+        for(int i = 0; i < mBits.length; i++)
+            mBits[i] = in.readLong();
+    }
+
+    private int index(int hash) {
+        return (hash & Integer.MAX_VALUE) % mBitCount;
+    }
+
+    /**
+     * 64 bit FNV-1a over the chars, mixed at the end so both halves are usable on their own
+     */
+    private static long hash(String key)
+    {
+        long hash = FNV_OFFSET;
+        for(int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= FNV_PRIME;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
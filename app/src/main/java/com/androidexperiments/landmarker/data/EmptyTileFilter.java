@@ -0,0 +1,191 @@
+package com.androidexperiments.landmarker.data;
+
+import android.util.Log;
+
+import com.androidexperiments.landmarker.util.FileUtils;
+import com.androidexperiments.landmarker.util.TimeSource;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Negative cache of tiles a search came back empty for, so the middle of nowhere doesn't
+ * cost a search every time we pass through it.
+ * <p>
+ * Kept as two generations of {@link BloomFilter}, each covering half the ttl. Once the
+ * current one is half a ttl old it becomes the previous one and the oldest is dropped,
+ * so a tile stays known empty for between ttl / 2 and ttl after it was marked. A false
+ * positive skips a tile that does have places in it, size the filter so that's rare.
+ * <p>
+ * Written to disk after every change so it survives restarts. Thread safe.
+ */
+public class EmptyTileFilter
+{
+    private static final String TAG = EmptyTileFilter.class.getSimpleName();
+
+    private static final int FILE_VERSION = 1;
+
+    public static final long DEFAULT_TTL_MS = 6 * 60 * 60 * 1000L;
+    public static final int DEFAULT_EXPECTED_TILES = 1024;
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.001;
+
+    private final File mFile;
+    private final long mTtlMs;
+    private final TimeSource mTimeSource;
+
+    private final BloomFilter mCurrent;
+    private final BloomFilter mPrevious;
+    private long mCurrentStart;
+    private boolean mLoaded = false;
+
+    //metrics
+    private int mMarked = 0;
+    private int mHits = 0;
+
+    public EmptyTileFilter(File file) {
+        this(file, DEFAULT_TTL_MS, DEFAULT_EXPECTED_TILES, DEFAULT_FALSE_POSITIVE_RATE, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param file where the filter is kept between runs, read on first use
+     * @param ttlMs how long an empty tile is trusted to stay empty, independent of the
+     *              ttl of tiles with places in them
+     * @param expectedTiles empty tiles marked per half ttl the filter is sized for
+     * @param falsePositiveRate chance of skipping a tile that was never marked
+     */
+    public EmptyTileFilter(File file, long ttlMs, int expectedTiles, double falsePositiveRate, TimeSource timeSource)
+    {
+        mFile = file;
+        mTtlMs = ttlMs;
+        mTimeSource = timeSource;
+
+        mCurrent = BloomFilter.create(expectedTiles, falsePositiveRate);
+        mPrevious = BloomFilter.create(expectedTiles, falsePositiveRate);
+        mCurrentStart = timeSource.currentTimeMillis();
+    }
+
+    /**
+     * @return true if a search of this tile recently came back empty
+     */
+    public synchronized boolean isKnownEmpty(String tileKey)
+    {
+        ensureLoaded();
+        rotate();
+
+        boolean empty = mCurrent.mightContain(tileKey) || mPrevious.mightContain(tileKey);
+        if(empty)
+            mHits++;
+        return empty;
+    }
+
+    public synchronized void markEmpty(String tileKey)
+    {
+        ensureLoaded();
+        rotate();
+
+        if(mCurrent.mightContain(tileKey))
+            return;
+
+        mCurrent.add(tileKey);
+        mMarked++;
+        save();
+    }
+
+    public synchronized void clear()
+    {
+        mCurrent.clear();
+        mPrevious.clear();
+        mCurrentStart = mTimeSource.currentTimeMillis();
+        mLoaded = true;
+        mFile.delete();
+    }
+
+    /**
+     * @return tiles marked empty since this was created
+     */
+    public synchronized int getMarkedCount() {
+        return mMarked;
+    }
+
+    /**
+     * @return lookups that found a tile known empty, each one a search saved
+     */
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    private void rotate()
+    {
+        long elapsed = mTimeSource.currentTimeMillis() - mCurrentStart;
+        if(elapsed < mTtlMs / 2)
+            return;
+
+        //stay on the half ttl grid so nothing outlives a full ttl
+        if(elapsed >= mTtlMs) {
+            mPrevious.clear();
+            mCurrentStart = mTimeSource.currentTimeMillis();
+        }
+        else {
+            mPrevious.copyFrom(mCurrent);
+            mCurrentStart += mTtlMs / 2;
+        }
+
+        mCurrent.clear();
+        save();
+    }
+
+    private void ensureLoaded()
+    {
+        if(mLoaded)
+            return;
+
+        mLoaded = true;
+        if(!mFile.exists())
+            return;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+
+            //sized differently or another format, start over
+            if(in.readInt() != FILE_VERSION || in.readInt() != mCurrent.getBitCount() || in.readInt() != mCurrent.getHashCount())
+                return;
+
+            long currentStart = in.readLong();
+            mCurrent.readFrom(in);
+            mPrevious.readFrom(in);
+            mCurrentStart = currentStart;
+        }
+        catch(IOException e) {
+            Log.w(TAG, "failed reading " + mFile.getName() + ": " + e.getLocalizedMessage());
+            mCurrent.clear();
+            mPrevious.clear();
+        }
+        finally {
+            FileUtils.closeQuietly(in);
+        }
+    }
+
+    private void save()
+    {
+        DataOutputStream out = null;
+        try {
+            out = FileUtils.startWrite(mFile);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(mCurrent.getBitCount());
+            out.writeInt(mCurrent.getHashCount());
+            out.writeLong(mCurrentStart);
+            mCurrent.writeTo(out);
+            mPrevious.writeTo(out);
+            FileUtils.finishWrite(mFile, out);
+        }
+        catch(IOException e) {
+            Log.w(TAG, "failed writing " + mFile.getName() + ": " + e.getLocalizedMessage());
+            FileUtils.abortWrite(mFile, out);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.androidexperiments.landmarker.data;
+
+import com.androidexperiments.landmarker.places.NearbyPlacesSource;
+import com.androidexperiments.landmarker.places.PartialResultsException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs place fetches on its own small pool instead of the shared AsyncTask executor.
+ * <ul>
+ *     <li>single flight, asking for the tile that's already being fetched joins that fetch,
+ *     asking for a different one cancels the old fetch since its origin is stale</li>
+ *     <li>cancellable, cancelling interrupts the fetch and nothing it produced is delivered</li>
+ *     <li>failures fall back to the cached tile for the location, even an expired one</li>
+ *     <li>results only go to an attached {@link Consumer}. whatever finishes while nothing is
+ *     attached is held and handed over on the next {@link #setConsumer}</li>
+ * </ul>
+ * Everything but the fetch itself runs on the delivery executor, which is expected to be the
+ * ui thread. Call every method from that thread too.
+ */
+public class PlacesFetcher
+{
+    public interface Consumer
+    {
+        /**
+         * @param pageIndex 0 replaces whatever is showing, later pages add to it
+         */
+        void onPage(List<PlaceRecord> places, int pageIndex);
+
+        /**
+         * every place found, after the last page
+         */
+        void onResult(List<PlaceRecord> places);
+
+        /**
+         * the fetch failed but we have this tile on disk, fresh or expired. keeps the
+         * compass usable while the network or the api is down.
+         * @param stale older than the cache ttl
+         */
+        void onFallback(List<PlaceRecord> places, boolean stale, IOException cause);
+
+        /**
+         * the fetch failed and there was nothing on disk to fall back to
+         */
+        void onFailure(IOException e);
+    }
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final PlacesRepository mRepository;
+    private final ExecutorService mExecutor;
+    private final Executor mDeliveryExecutor;
+
+    private Consumer mConsumer;
+    private Request mCurrent;
+
+    /**
+     * @param maxConcurrent fetches allowed to run at once. a cancelled fetch can take a moment
+     *                      to unwind, more than 1 lets its replacement start straight away.
+     * @param deliveryExecutor everything handed to the consumer goes through here
+     */
+    public PlacesFetcher(PlacesRepository repository, int maxConcurrent, Executor deliveryExecutor)
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new FetchThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+
+        mRepository = repository;
+        mExecutor = executor;
+        mDeliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * attach the consumer results should go to, or null to detach. attaching hands over
+     * anything that finished while detached.
+     */
+    public void setConsumer(Consumer consumer)
+    {
+        mConsumer = consumer;
+
+        if(consumer != null && mCurrent != null && mCurrent.isDone())
+            deliverResult(mCurrent);
+    }
+
+    /**
+     * @return true if a fetch is running or finished but not handed over yet
+     */
+    public boolean isFetching() {
+        return mCurrent != null;
+    }
+
+    /**
+     * Show the cached tile for this location first, then stream pages from the network.
+     * @return false if this joined a fetch already running for the same tile
+     */
+    public boolean fetch(double latitude, double longitude, double radius, int limit) {
+        return fetch(latitude, longitude, radius, limit, false);
+    }
+
+    /**
+     * @param cacheOnly the cached tile is known to be recent, if there is one it's the result
+     *                  and the network isn't touched
+     * @return false if this joined a fetch already running for the same tile
+     */
+    public boolean fetch(final double latitude, final double longitude, final double radius, final int limit,
+                         final boolean cacheOnly)
+    {
+        String tile = mRepository.getCache().getTileKey(latitude, longitude);
+
+        if(mCurrent != null)
+        {
+            if(mCurrent.tile.equals(tile))
+                return false;
+
+            cancel();
+        }
+
+        final Request request = new Request(tile);
+        mCurrent = request;
+
+        request.future = mExecutor.submit(new Runnable() {
+            @Override
+            public void run()
+            {
+                List<PlaceRecord> cached = mRepository.getCachedPlaces(latitude, longitude);
+                if(cached != null && cached.size() > 0)
+                    deliverPage(request, cached, 0);
+
+                if(cached != null && cacheOnly) {
+                    finish(request, cached, null);
+                    return;
+                }
+
+                try {
+                    List<PlaceRecord> places = mRepository.fetchPlaces(latitude, longitude, radius, limit,
+                            new NearbyPlacesSource.OnPageListener() {
+                                @Override
+                                public void onPage(List<PlaceRecord> places, int pageIndex) {
+                                    deliverPage(request, places, pageIndex);
+                                }
+                            });
+                    finish(request, places, null);
+                }
+                catch(PartialResultsException e) {
+                    //its pages are already showing, better than falling back to an old tile
+                    finish(request, e.getPlaces(), null);
+                }
+                catch(IOException e) {
+                    fail(request, latitude, longitude, e);
+                }
+                catch(RuntimeException e) {
+                    fail(request, latitude, longitude, new IOException(e));
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * cancel the running fetch, nothing it produced from here on is delivered
+     */
+    public void cancel()
+    {
+        if(mCurrent == null)
+            return;
+
+        mCurrent.cancelled = true;
+        if(mCurrent.future != null)
+            mCurrent.future.cancel(true);
+
+        mCurrent = null;
+    }
+
+    /**
+     * cancel and stop the pool, the fetcher can't be used afterwards
+     */
+    public void shutdown()
+    {
+        cancel();
+        mConsumer = null;
+        mExecutor.shutdownNow();
+    }
+
+    //the methods below are called on the fetch thread and hop to the delivery thread
+
+    private void deliverPage(final Request request, final List<PlaceRecord> places, final int pageIndex)
+    {
+        mDeliveryExecutor.execute(new Runnable() {
+            @Override
+            public void run()
+            {
+                if(!isLive(request))
+                    return;
+
+                if(mConsumer == null) {
+                    //the final result covers it, but pages after this one only add to it
+                    request.missedPages = true;
+                    return;
+                }
+
+                mConsumer.onPage(places, pageIndex);
+            }
+        });
+    }
+
+    private void fail(Request request, double latitude, double longitude, IOException error)
+    {
+        if(!request.cancelled)
+            request.fallback = mRepository.getStalePlaces(latitude, longitude);
+
+        finish(request, null, error);
+    }
+
+    private void finish(final Request request, final List<PlaceRecord> places, final IOException error)
+    {
+        //cancelling already let go of the request and nobody is waiting on it. anything else,
+        //timeouts included, is delivered so the request stops being current
+        if(request.cancelled)
+            return;
+
+        mDeliveryExecutor.execute(new Runnable() {
+            @Override
+            public void run()
+            {
+                if(!isLive(request))
+                    return;
+
+                request.result = places;
+                request.error = error;
+                request.done = true;
+
+                if(mConsumer != null)
+                    deliverResult(request);
+            }
+        });
+    }
+
+    //delivery thread
+
+    private boolean isLive(Request request) {
+        return !request.cancelled && request == mCurrent;
+    }
+
+    private void deliverResult(Request request)
+    {
+        mCurrent = null;
+
+        if(request.error != null)
+        {
+            PlacesTileCache.Tile fallback = request.fallback;
+            if(fallback != null)
+                mConsumer.onFallback(fallback.places, fallback.stale, request.error);
+            else
+                mConsumer.onFailure(request.error);
+            return;
+        }
+
+        //pages went by while detached, replace with the full result so nothing is lost
+        if(request.missedPages && request.result.size() > 0)
+            mConsumer.onPage(request.result, 0);
+
+        mConsumer.onResult(request.result);
+    }
+
+    private static class Request
+    {
+        final String tile;
+        volatile boolean cancelled = false;
+        Future<?> future;
+
+        //written on the fetch thread before finish hands the request over
+        volatile PlacesTileCache.Tile fallback;
+
+        //only touched on the delivery thread
+        boolean missedPages = false;
+        boolean done = false;
+        List<PlaceRecord> result;
+        IOException error;
+
+        Request(String tile) {
+            this.tile = tile;
+        }
+
+        boolean isDone() {
+            return done;
+        }
+    }
+
+    private static class FetchThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, "places-fetch-" + mCount.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.androidexperiments.landmarker.data;
+
+import com.androidexperiments.landmarker.places.NearbyPlacesSource;
+import com.androidexperiments.landmarker.places.PartialResultsException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sits in front of a {@link NearbyPlacesSource} and keeps the last results for each tile on
+ * disk, so a relaunch near a previous spot can show labels before the network answers.
+ * Tiles that came back empty are remembered separately and not searched again for a while.
+ */
+public class PlacesRepository
+{
+    private final NearbyPlacesSource mPlacesApi;
+    private final PlacesTileCache mCache;
+    private final EmptyTileFilter mEmptyTiles;
+
+    public PlacesRepository(NearbyPlacesSource placesApi, PlacesTileCache cache) {
+        this(placesApi, cache, null);
+    }
+
+    /**
+     * @param emptyTiles negative cache of tiles with nothing in them, null to always search
+     */
+    public PlacesRepository(NearbyPlacesSource placesApi, PlacesTileCache cache, EmptyTileFilter emptyTiles) {
+        mPlacesApi = placesApi;
+        mCache = cache;
+        mEmptyTiles = emptyTiles;
+    }
+
+    /**
+     * @return cached places for the tile containing this location, or null on a miss.
+     * Only touches disk, but should still be kept off the ui thread where possible.
+     */
+    public List<PlaceRecord> getCachedPlaces(double latitude, double longitude) {
+        return mCache.get(latitude, longitude);
+    }
+
+    /**
+     * @return the cached tile for this location even if it has expired, or null if we never
+     * had one. for when the network is failing and old labels beat no labels.
+     */
+    public PlacesTileCache.Tile getStalePlaces(double latitude, double longitude) {
+        return mCache.getTile(latitude, longitude, true);
+    }
+
+    /**
+     * Blocking network fetch, results are written through to the cache.
+     */
+    public List<PlaceRecord> fetchPlaces(double latitude, double longitude, double radius, int limit) throws IOException {
+        return fetchPlaces(latitude, longitude, radius, limit, null);
+    }
+
+    /**
+     * Streaming network fetch, each page goes to listener as soon as it is parsed and the
+     * full result is written through to the cache once the last page is in. Tiles recently
+     * found empty return an empty list without searching.
+     * @throws PartialResultsException part of the search failed, what came back is neither
+     * cached nor used to mark the tile empty
+     */
+    public List<PlaceRecord> fetchPlaces(double latitude, double longitude, double radius, int limit,
+                                         NearbyPlacesSource.OnPageListener listener) throws IOException
+    {
+        String tileKey = mCache.getTileKey(latitude, longitude);
+        if(mEmptyTiles != null && mEmptyTiles.isKnownEmpty(tileKey))
+            return new ArrayList<>();
+
+        //a search that failed anywhere throws past all of this, partial results included
+        List<PlaceRecord> records = mPlacesApi.getNearbyPlaces(latitude, longitude, radius, limit, listener);
+
+        //every shard answered and none found anything
+        if(records.isEmpty() && mEmptyTiles != null)
+            mEmptyTiles.markEmpty(tileKey);
+
+        mCache.put(latitude, longitude, records);
+        return records;
+    }
+
+    public PlacesTileCache getCache() {
+        return mCache;
+    }
+
+    /**
+     * null if empty tiles aren't being tracked
+     */
+    public EmptyTileFilter getEmptyTiles() {
+        return mEmptyTiles;
+    }
+}
@@ -0,0 +1,230 @@
+package com.androidexperiments.landmarker.data;
+
+import android.util.Log;
+
+import com.androidexperiments.landmarker.util.FileUtils;
+import com.androidexperiments.landmarker.util.GeoHash;
+import com.androidexperiments.landmarker.util.TimeSource;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * On-disk cache of Places results, one file per geohash tile. Entries expire after
+ * a ttl and the oldest tiles get evicted once we hold more than maxTiles of them.
+ * Expired tiles stay on disk until evicted, as a last resort when the network is down.
+ */
+public class PlacesTileCache
+{
+    private static final String TAG = PlacesTileCache.class.getSimpleName();
+
+    private static final int FILE_VERSION = 3;
+    private static final String FILE_EXTENSION = ".tile";
+
+    public static final long DEFAULT_TTL_MS = 24 * 60 * 60 * 1000L;
+    public static final int DEFAULT_MAX_TILES = 64;
+
+    private final File mDir;
+    private final long mTtlMs;
+    private final int mMaxTiles;
+    private final int mPrecision;
+    private final TimeSource mTimeSource;
+
+    public PlacesTileCache(File dir) {
+        this(dir, DEFAULT_TTL_MS, DEFAULT_MAX_TILES, GeoHash.DEFAULT_PRECISION, TimeSource.SYSTEM);
+    }
+
+    /**
+     * @param dir directory the tiles are written to, created if missing
+     * @param ttlMs how long a tile is considered fresh
+     * @param maxTiles max number of tiles kept on disk before the oldest are evicted
+     * @param precision geohash precision used to quantize locations
+     * @param timeSource clock used for ttl checks
+     */
+    public PlacesTileCache(File dir, long ttlMs, int maxTiles, int precision, TimeSource timeSource)
+    {
+        if(maxTiles < 1)
+            throw new IllegalArgumentException("maxTiles should be at least 1");
+
+        mDir = dir;
+        mTtlMs = ttlMs;
+        mMaxTiles = maxTiles;
+        mPrecision = precision;
+        mTimeSource = timeSource;
+    }
+
+    public String getTileKey(double latitude, double longitude) {
+        return GeoHash.encode(latitude, longitude, mPrecision);
+    }
+
+    /**
+     * @return places stored for the tile containing this location, or null if
+     * there is no entry or it has expired
+     */
+    public List<PlaceRecord> get(double latitude, double longitude)
+    {
+        Tile tile = getTile(latitude, longitude, false);
+        return tile != null ? tile.places : null;
+    }
+
+    /**
+     * @param allowStale return an expired tile rather than nothing
+     * @return the tile containing this location, or null if there is no entry, or it
+     * expired and allowStale is false
+     */
+    public synchronized Tile getTile(double latitude, double longitude, boolean allowStale)
+    {
+        File file = getTileFile(getTileKey(latitude, longitude));
+        if(!file.exists())
+            return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            if(in.readInt() != FILE_VERSION) {
+                file.delete();
+                return null;
+            }
+
+            long savedAt = in.readLong();
+            boolean stale = mTimeSource.currentTimeMillis() - savedAt > mTtlMs;
+            if(stale && !allowStale)
+                return null;
+
+            int count = in.readInt();
+            List<PlaceRecord> places = new ArrayList<>(count);
+            for(int i = 0; i < count; i++)
+            {
+                String id = in.readUTF();
+                String name = in.readUTF();
+                double lat = in.readDouble();
+                double lon = in.readDouble();
+                int typeFlags = in.readInt();
+                float rating = in.readFloat();
+                int ratingCount = in.readInt();
+                places.add(new PlaceRecord(id.isEmpty() ? null : id, name, lat, lon, typeFlags, rating, ratingCount));
+            }
+            return new Tile(places, savedAt, stale);
+        }
+        catch(IOException e) {
+            //corrupt or truncated, drop it and let the network fill it back in
+            Log.w(TAG, "failed reading tile " + file.getName() + ": " + e.getLocalizedMessage());
+            file.delete();
+            return null;
+        }
+        finally {
+            FileUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * store places for the tile containing this location, replacing what was there
+     */
+    public synchronized void put(double latitude, double longitude, List<PlaceRecord> places)
+    {
+        String key = getTileKey(latitude, longitude);
+        File file = getTileFile(key);
+
+        //written aside and renamed so readers never see a half written tile
+        DataOutputStream out = null;
+        try {
+            out = FileUtils.startWrite(file);
+            out.writeInt(FILE_VERSION);
+            out.writeLong(mTimeSource.currentTimeMillis());
+            out.writeInt(places.size());
+            for(PlaceRecord place : places)
+            {
+                out.writeUTF(place.getId() != null ? place.getId() : "");
+                out.writeUTF(place.getName() != null ? place.getName() : "");
+                out.writeDouble(place.getLatitude());
+                out.writeDouble(place.getLongitude());
+                out.writeInt(place.getTypeFlags());
+                out.writeFloat(place.getRating());
+                out.writeInt(place.getRatingCount());
+            }
+            FileUtils.finishWrite(file, out);
+        }
+        catch(IOException e) {
+            Log.w(TAG, "failed writing tile " + key + ": " + e.getLocalizedMessage());
+            FileUtils.abortWrite(file, out);
+            return;
+        }
+
+        trim();
+    }
+
+    public synchronized void clear()
+    {
+        File[] files = listTiles();
+        for(File file : files)
+            file.delete();
+    }
+
+    /**
+     * drop the least recently written tiles until we are under the size bound
+     */
+    private void trim()
+    {
+        File[] files = listTiles();
+        if(files.length <= mMaxTiles)
+            return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified(), r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+
+        for(int i = 0; i < files.length - mMaxTiles; i++)
+            files[i].delete();
+    }
+
+    private File[] listTiles()
+    {
+        File[] files = mDir.listFiles();
+        if(files == null)
+            return new File[0];
+
+        List<File> tiles = new ArrayList<>(files.length);
+        for(File file : files) {
+            if(file.getName().endsWith(FILE_EXTENSION))
+                tiles.add(file);
+        }
+        return tiles.toArray(new File[tiles.size()]);
+    }
+
+    private File getTileFile(String key) {
+        return new File(mDir, key + FILE_EXTENSION);
+    }
+
+    /**
+     * places read back for one tile and when they were written
+     */
+    public static class Tile
+    {
+        public final List<PlaceRecord> places;
+        public final long savedAt;
+
+        /**
+         * older than the ttl, only worth showing if nothing fresher can be had
+         */
+        public final boolean stale;
+
+        Tile(List<PlaceRecord> places, long savedAt, boolean stale) {
+            this.places = places;
+            this.savedAt = savedAt;
+            this.stale = stale;
+        }
+    }
+}
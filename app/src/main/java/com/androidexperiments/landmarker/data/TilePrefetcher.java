@@ -0,0 +1,475 @@
+package com.androidexperiments.landmarker.data;
+
+import com.androidexperiments.landmarker.places.RateLimitedException;
+import com.androidexperiments.landmarker.places.RateLimiter;
+import com.androidexperiments.landmarker.util.GeoHash;
+import com.androidexperiments.landmarker.util.GeoKernel;
+import com.androidexperiments.landmarker.util.TimeSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches the tiles the user is walking towards into the {@link PlacesTileCache} ahead of
+ * time, so searching after crossing into one can be answered from disk.
+ * <ul>
+ *     <li>heading and speed come from successive fixes, the next tiles along the heading
+ *     a few minutes out are fetched one at a time, searched from the tile center</li>
+ *     <li>only starts while nothing else is fetching, no more than once per min interval,
+ *     and only if the limiter's prefetch lane can cover a whole tile</li>
+ *     <li>a prefetch for a tile that's no longer ahead of us, say after turning around, is
+ *     cancelled</li>
+ *     <li>{@link #claim} is called for every search, a tile prefetched recently enough is a
+ *     hit and doesn't need the network</li>
+ * </ul>
+ * Everything but the fetch itself runs on the delivery executor, call every method from
+ * that thread too.
+ */
+public class TilePrefetcher
+{
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * meters moved before the heading is worked out again, less than that is gps noise
+     */
+    private static final double MIN_MOVE_METERS = 25;
+
+    /**
+     * not making MIN_MOVE_METERS in this long means we're standing around
+     */
+    private static final long MAX_MOVE_MS = 2 * 60 * 1000;
+
+    /**
+     * m/s, slower than this isn't going anywhere
+     */
+    private static final double MIN_SPEED = 0.3;
+
+    /**
+     * how far ahead we look, in time at the current speed and clamped to meters
+     */
+    private static final long LOOKAHEAD_MS = 5 * 60 * 1000;
+    private static final double MIN_LOOKAHEAD_METERS = 200;
+    private static final double MAX_LOOKAHEAD_METERS = 2000;
+    private static final double STEP_METERS = 50;
+
+    /**
+     * more than one when the path clips a tile corner
+     */
+    private static final int MAX_PREDICTED_TILES = 2;
+
+    /**
+     * prefetched tiles remembered for claiming, oldest dropped first
+     */
+    private static final int MAX_PREFETCHED_TILES = 16;
+
+    public static final long DEFAULT_MIN_INTERVAL_MS = 60 * 1000;
+    public static final long DEFAULT_MAX_AGE_MS = 30 * 60 * 1000;
+
+    private final PlacesRepository mRepository;
+    private final RateLimiter mLimiter;
+    private final int mRequestsPerTile;
+    private final double mRadius;
+    private final int mLimit;
+    private final long mMinIntervalMs;
+    private final long mMaxAgeMs;
+    private final TimeSource mTimeSource;
+    private final ExecutorService mExecutor;
+    private final Executor mDeliveryExecutor;
+
+    //motion, measured between anchor fixes at least MIN_MOVE_METERS apart
+    private boolean mHasAnchor = false;
+    private double mAnchorLat, mAnchorLon;
+    private long mAnchorTime;
+    private boolean mHasHeading = false;
+    private double mHeading;
+    private double mSpeed;
+
+    private final List<String> mPredicted = new ArrayList<>(MAX_PREDICTED_TILES);
+    private Request mCurrent;
+    private long mLastStart = Long.MIN_VALUE;
+    private long mThrottledUntil = Long.MIN_VALUE;
+
+    //tile -> when it was prefetched
+    private final Map<String, Long> mPrefetched = new LinkedHashMap<>();
+    private String mLastClaimed;
+
+    //metrics
+    private int mStarted = 0;
+    private int mFetched = 0;
+    private int mAlreadyCached = 0;
+    private int mCancelled = 0;
+    private int mFailed = 0;
+    private int mThrottled = 0;
+    private int mHits = 0;
+    private int mMisses = 0;
+
+    public TilePrefetcher(PlacesRepository repository, RateLimiter limiter, int requestsPerTile,
+                          double radius, int limit, Executor deliveryExecutor)
+    {
+        this(repository, limiter, requestsPerTile, radius, limit, DEFAULT_MIN_INTERVAL_MS, DEFAULT_MAX_AGE_MS,
+                TimeSource.SYSTEM, deliveryExecutor);
+    }
+
+    /**
+     * @param repository should search through the limiter's prefetch lane and write to the
+     *                   same cache the user's searches read
+     * @param limiter checked before starting, null to not check
+     * @param requestsPerTile requests a tile can take at worst, a prefetch only starts if
+     *                        the prefetch lane has this many to spare
+     * @param radius search radius, same as the user's searches so a hit is as good as a search
+     * @param limit places kept per tile
+     * @param minIntervalMs least time between the start of two prefetches
+     * @param maxAgeMs how long a prefetched tile can stand in for a search
+     * @param deliveryExecutor completions are handled here
+     */
+    public TilePrefetcher(PlacesRepository repository, RateLimiter limiter, int requestsPerTile,
+                          double radius, int limit, long minIntervalMs, long maxAgeMs,
+                          TimeSource timeSource, Executor deliveryExecutor)
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new PrefetchThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+
+        mRepository = repository;
+        mLimiter = limiter;
+        mRequestsPerTile = requestsPerTile;
+        mRadius = radius;
+        mLimit = limit;
+        mMinIntervalMs = minIntervalMs;
+        mMaxAgeMs = maxAgeMs;
+        mTimeSource = timeSource;
+        mExecutor = executor;
+        mDeliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * Feed a location fix. Updates the heading, drops a prefetch that's no longer ahead
+     * of us and, if idle, starts the next one when allowed.
+     * @param idle nothing more important is fetching
+     */
+    public void onLocation(double latitude, double longitude, boolean idle)
+    {
+        updateMotion(latitude, longitude);
+
+        //standing still says nothing about where we're headed, leave things be
+        if(!mHasHeading)
+            return;
+
+        predict(latitude, longitude);
+
+        if(mCurrent != null && !mPredicted.contains(mCurrent.tile))
+            cancel();
+
+        if(idle)
+            maybeStart();
+    }
+
+    /**
+     * Call when searching this location for real. Cancels any prefetch so the search
+     * has the network and the limiter to itself.
+     * @return true if the tile was prefetched recently enough to be served from the cache
+     */
+    public boolean claim(double latitude, double longitude)
+    {
+        cancel();
+
+        String tile = mRepository.getCache().getTileKey(latitude, longitude);
+
+        //only crossing into a tile says anything about predicting it
+        boolean first = mLastClaimed == null;
+        if(tile.equals(mLastClaimed))
+            return false;
+        mLastClaimed = tile;
+
+        Long prefetchedAt = mPrefetched.remove(tile);
+        boolean hit = prefetchedAt != null && mTimeSource.currentTimeMillis() - prefetchedAt < mMaxAgeMs;
+
+        if(!first) {
+            if(hit)
+                mHits++;
+            else
+                mMisses++;
+        }
+        return hit;
+    }
+
+    /**
+     * cancel the running prefetch, if any
+     */
+    public void cancel()
+    {
+        if(mCurrent == null)
+            return;
+
+        mCurrent.cancelled = true;
+        if(mCurrent.future != null)
+            mCurrent.future.cancel(true);
+
+        mCurrent = null;
+        mCancelled++;
+    }
+
+    /**
+     * cancel and stop the thread, the prefetcher can't be used afterwards
+     */
+    public void shutdown()
+    {
+        cancel();
+        mExecutor.shutdownNow();
+    }
+
+    public Stats getStats() {
+        return new Stats(mStarted, mFetched, mAlreadyCached, mCancelled, mFailed, mThrottled, mHits, mMisses);
+    }
+
+    private void updateMotion(double latitude, double longitude)
+    {
+        long now = mTimeSource.currentTimeMillis();
+
+        if(!mHasAnchor) {
+            setAnchor(latitude, longitude, now);
+            return;
+        }
+
+        double moved = GeoKernel.haversineDistance(mAnchorLat, mAnchorLon, latitude, longitude);
+        if(moved < MIN_MOVE_METERS)
+        {
+            if(now - mAnchorTime > MAX_MOVE_MS) {
+                mHasHeading = false;
+                setAnchor(latitude, longitude, now);
+            }
+            return;
+        }
+
+        mHeading = GeoKernel.initialBearing(mAnchorLat, mAnchorLon, latitude, longitude);
+        mSpeed = moved * 1000 / Math.max(1, now - mAnchorTime);
+        mHasHeading = mSpeed >= MIN_SPEED;
+        setAnchor(latitude, longitude, now);
+    }
+
+    private void setAnchor(double latitude, double longitude, long now)
+    {
+        mHasAnchor = true;
+        mAnchorLat = latitude;
+        mAnchorLon = longitude;
+        mAnchorTime = now;
+    }
+
+    /**
+     * walk the heading out to the lookahead distance and collect the first tiles we'd enter
+     */
+    private void predict(double latitude, double longitude)
+    {
+        mPredicted.clear();
+
+        PlacesTileCache cache = mRepository.getCache();
+        String here = cache.getTileKey(latitude, longitude);
+
+        double lookahead = Math.max(MIN_LOOKAHEAD_METERS,
+                Math.min(MAX_LOOKAHEAD_METERS, mSpeed * LOOKAHEAD_MS / 1000));
+
+        for(double distance = STEP_METERS; distance <= lookahead && mPredicted.size() < MAX_PREDICTED_TILES;
+            distance += STEP_METERS)
+        {
+            double[] point = GeoKernel.offset(latitude, longitude, mHeading, distance);
+            String tile = cache.getTileKey(point[0], point[1]);
+            if(!tile.equals(here) && !mPredicted.contains(tile))
+                mPredicted.add(tile);
+        }
+    }
+
+    private void maybeStart()
+    {
+        if(mCurrent != null || mExecutor.isShutdown())
+            return;
+
+        long now = mTimeSource.currentTimeMillis();
+        if(now < mThrottledUntil || (mLastStart != Long.MIN_VALUE && now - mLastStart < mMinIntervalMs))
+            return;
+
+        String tile = null;
+        for(String predicted : mPredicted)
+        {
+            Long prefetchedAt = mPrefetched.get(predicted);
+            if(prefetchedAt == null || now - prefetchedAt >= mMaxAgeMs) {
+                tile = predicted;
+                break;
+            }
+        }
+
+        if(tile == null)
+            return;
+
+        //a tile cut short by the limiter would be cached as if it were complete
+        if(mLimiter != null && mLimiter.getAvailable(RateLimiter.Lane.PREFETCH) < mRequestsPerTile)
+            return;
+
+        start(tile, now);
+    }
+
+    private void start(String tile, long now)
+    {
+        final Request request = new Request(tile);
+        mCurrent = request;
+        mLastStart = now;
+        mStarted++;
+
+        final double[] center = GeoHash.decode(tile);
+
+        request.future = mExecutor.submit(new Runnable() {
+            @Override
+            public void run()
+            {
+                //searched recently enough already, nothing to do
+                PlacesTileCache.Tile cached = mRepository.getCache().getTile(center[0], center[1], false);
+                if(cached != null && mTimeSource.currentTimeMillis() - cached.savedAt < mMaxAgeMs) {
+                    finish(request, true, null);
+                    return;
+                }
+
+                try {
+                    mRepository.fetchPlaces(center[0], center[1], mRadius, mLimit);
+                    finish(request, false, null);
+                }
+                catch(IOException e) {
+                    finish(request, false, e);
+                }
+                catch(RuntimeException e) {
+                    finish(request, false, new IOException(e));
+                }
+            }
+        });
+    }
+
+    //called on the prefetch thread, hops to the delivery thread
+
+    private void finish(final Request request, final boolean alreadyCached, final IOException error)
+    {
+        //only a cancel interrupts us, a timeout is a failure like any other and has to clear mCurrent
+        if(request.cancelled)
+            return;
+
+        mDeliveryExecutor.execute(new Runnable() {
+            @Override
+            public void run()
+            {
+                if(request.cancelled || request != mCurrent)
+                    return;
+
+                mCurrent = null;
+                long now = mTimeSource.currentTimeMillis();
+
+                if(error == null)
+                {
+                    remember(request.tile, now);
+
+                    if(alreadyCached) {
+                        //didn't cost anything, the next one can go straight away
+                        mAlreadyCached++;
+                        mLastStart = Long.MIN_VALUE;
+                    }
+                    else
+                        mFetched++;
+                }
+                else if(error instanceof RateLimitedException)
+                {
+                    long retryAfter = ((RateLimitedException) error).getRetryAfterMs();
+                    mThrottledUntil = retryAfter == Long.MAX_VALUE ? Long.MAX_VALUE : now + retryAfter;
+                    mThrottled++;
+                }
+                else
+                    mFailed++;
+            }
+        });
+    }
+
+    //delivery thread
+
+    private void remember(String tile, long now)
+    {
+        mPrefetched.remove(tile);
+        mPrefetched.put(tile, now);
+
+        Iterator<String> oldest = mPrefetched.keySet().iterator();
+        while(mPrefetched.size() > MAX_PREFETCHED_TILES) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    private static class Request
+    {
+        final String tile;
+        volatile boolean cancelled = false;
+        Future<?> future;
+
+        Request(String tile) {
+            this.tile = tile;
+        }
+    }
+
+    private static class PrefetchThreadFactory implements ThreadFactory
+    {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, "places-prefetch");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+
+    /**
+     * Snapshot of prefetch counters. Hits and misses only count searches in a tile other
+     * than the one searched before, staying put isn't something to predict.
+     */
+    public static class Stats
+    {
+        public final int started;
+        public final int fetched;
+        public final int alreadyCached;
+        public final int cancelled;
+        public final int failed;
+        public final int throttled;
+        public final int hits;
+        public final int misses;
+
+        Stats(int started, int fetched, int alreadyCached, int cancelled, int failed, int throttled,
+              int hits, int misses) {
+            this.started = started;
+            this.fetched = fetched;
+            this.alreadyCached = alreadyCached;
+            this.cancelled = cancelled;
+            this.failed = failed;
+            this.throttled = throttled;
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        /**
+         * @return share of tile crossings that found their tile prefetched, 0 -> 1
+         */
+        public float getHitRate() {
+            return hits + misses > 0 ? (float) hits / (hits + misses) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "started: " + started + " fetched: " + fetched + " already cached: " + alreadyCached
+                    + " cancelled: " + cancelled + " failed: " + failed + " throttled: " + throttled
+                    + " hits: " + hits + "/" + (hits + misses)
+                    + String.format(" (%.0f%%)", getHitRate() * 100);
+        }
+    }
+}
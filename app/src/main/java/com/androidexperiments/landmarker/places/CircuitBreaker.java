@@ -0,0 +1,129 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.util.TimeSource;
+
+/**
+ * Stops calling an endpoint that keeps failing. After failureThreshold failures in a row
+ * the breaker opens and every call is refused for openMs, then a single trial call is let
+ * through. If it succeeds the breaker closes again, if it fails it stays open for another
+ * openMs.
+ * <p>
+ * Thread safe.
+ */
+public class CircuitBreaker
+{
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int mFailureThreshold;
+    private final long mOpenMs;
+    private final TimeSource mTimeSource;
+
+    private State mState = State.CLOSED;
+    private int mConsecutiveFailures = 0;
+    private long mOpenedAt = 0;
+    private boolean mTrialInFlight = false;
+
+    //metrics
+    private int mOpens = 0;
+    private int mRejected = 0;
+
+    public CircuitBreaker(int failureThreshold, long openMs, TimeSource timeSource)
+    {
+        if(failureThreshold < 1)
+            throw new IllegalArgumentException("failureThreshold should be at least 1");
+
+        mFailureThreshold = failureThreshold;
+        mOpenMs = openMs;
+        mTimeSource = timeSource;
+    }
+
+    /**
+     * ask before every call, a true has to be followed by {@link #onSuccess}, {@link #onFailure}
+     * or {@link #onAbandoned} however the call ends
+     */
+    public synchronized boolean allowRequest()
+    {
+        if(mState == State.OPEN && mTimeSource.currentTimeMillis() - mOpenedAt >= mOpenMs)
+            mState = State.HALF_OPEN;
+
+        switch(mState)
+        {
+            case CLOSED:
+                return true;
+
+            case HALF_OPEN:
+                //one trial at a time
+                if(!mTrialInFlight) {
+                    mTrialInFlight = true;
+                    return true;
+                }
+                mRejected++;
+                return false;
+
+            default:
+                mRejected++;
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess()
+    {
+        mConsecutiveFailures = 0;
+        mTrialInFlight = false;
+        mState = State.CLOSED;
+    }
+
+    public synchronized void onFailure()
+    {
+        mConsecutiveFailures++;
+
+        if(mState == State.HALF_OPEN || (mState == State.CLOSED && mConsecutiveFailures >= mFailureThreshold)) {
+            mState = State.OPEN;
+            mOpenedAt = mTimeSource.currentTimeMillis();
+            mOpens++;
+        }
+        mTrialInFlight = false;
+    }
+
+    /**
+     * the call was given up on without an answer either way, let another trial through
+     */
+    public synchronized void onAbandoned() {
+        mTrialInFlight = false;
+    }
+
+    public synchronized State getState()
+    {
+        if(mState == State.OPEN && mTimeSource.currentTimeMillis() - mOpenedAt >= mOpenMs)
+            return State.HALF_OPEN;
+        return mState;
+    }
+
+    /**
+     * @return ms until the breaker lets a trial call through, 0 if it already would
+     */
+    public synchronized long getRetryAfterMs()
+    {
+        if(mState != State.OPEN)
+            return 0;
+        return Math.max(0, mOpenMs - (mTimeSource.currentTimeMillis() - mOpenedAt));
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return mConsecutiveFailures;
+    }
+
+    /**
+     * @return times the breaker has opened
+     */
+    public synchronized int getOpenCount() {
+        return mOpens;
+    }
+
+    /**
+     * @return calls refused while open
+     */
+    public synchronized int getRejectedCount() {
+        return mRejected;
+    }
+}
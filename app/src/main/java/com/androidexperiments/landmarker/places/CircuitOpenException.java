@@ -0,0 +1,22 @@
+package com.androidexperiments.landmarker.places;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of calling an endpoint whose {@link CircuitBreaker} is open.
+ */
+public class CircuitOpenException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMs;
+
+    public CircuitOpenException(long retryAfterMs) {
+        super("circuit open, retry in " + retryAfterMs + "ms");
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
@@ -0,0 +1,98 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.util.GeoKernel;
+
+/**
+ * Decides what a new location fix is worth while the user walks around. Small moves
+ * only need bearings and distances recomputed against the places we already have,
+ * leaving the area we last searched needs a new search.
+ */
+public class LocationRefreshPolicy
+{
+    /**
+     * moved too little to matter
+     */
+    public static final int NONE = 0;
+
+    /**
+     * recompute bearings and distances locally
+     */
+    public static final int RELOCATE = 1;
+
+    /**
+     * far enough from the last search that its results are thinning out, search again
+     */
+    public static final int REFETCH = 2;
+
+    /**
+     * fraction of the refetch radius past which the next search is close
+     */
+    private static final float APPROACH_FRACTION = .75f;
+
+    private final float mRelocateDistance;
+    private final float mRefetchRadius;
+
+    private boolean mHasOrigin = false;
+    private double mOriginLat, mOriginLon;
+    private double mRelocatedLat, mRelocatedLon;
+    private double mOriginDistance = 0;
+
+    /**
+     * @param relocateDistance meters moved since the last relocate before bearings are recomputed
+     * @param refetchRadius meters from the last search origin before searching again
+     */
+    public LocationRefreshPolicy(float relocateDistance, float refetchRadius)
+    {
+        if(refetchRadius <= relocateDistance)
+            throw new IllegalArgumentException("refetchRadius should be larger than relocateDistance");
+
+        mRelocateDistance = relocateDistance;
+        mRefetchRadius = refetchRadius;
+    }
+
+    /**
+     * call whenever a search is started, everything is measured from here
+     */
+    public void setQueryOrigin(double latitude, double longitude)
+    {
+        mHasOrigin = true;
+        mOriginLat = mRelocatedLat = latitude;
+        mOriginLon = mRelocatedLon = longitude;
+        mOriginDistance = 0;
+    }
+
+    public boolean hasQueryOrigin() {
+        return mHasOrigin;
+    }
+
+    /**
+     * @return true if the last location was far enough out that the next search is
+     * coming up, worth getting a precise fix for it
+     */
+    public boolean isApproachingRefetch() {
+        return !mHasOrigin || mOriginDistance > mRefetchRadius * APPROACH_FRACTION;
+    }
+
+    /**
+     * @return {@link #NONE}, {@link #RELOCATE} or {@link #REFETCH}. a RELOCATE moves the
+     * relocate reference point, a REFETCH expects {@link #setQueryOrigin} to follow.
+     */
+    public int onLocation(double latitude, double longitude)
+    {
+        if(!mHasOrigin)
+            return REFETCH;
+
+        mOriginDistance = GeoKernel.haversineDistance(mOriginLat, mOriginLon, latitude, longitude);
+        if(mOriginDistance > mRefetchRadius)
+            return REFETCH;
+
+        if(GeoKernel.haversineDistance(mRelocatedLat, mRelocatedLon, latitude, longitude) > mRelocateDistance)
+        {
+            mRelocatedLat = latitude;
+            mRelocatedLon = longitude;
+            return RELOCATE;
+        }
+
+        return NONE;
+    }
+}
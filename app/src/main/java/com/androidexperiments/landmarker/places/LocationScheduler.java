@@ -0,0 +1,272 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.util.GeoKernel;
+import com.androidexperiments.landmarker.util.TimeSource;
+
+/**
+ * Picks how hard the location provider should work from what the fixes tell us. GPS only
+ * runs flat out while a fix is about to become a search origin or the fixes are too poor
+ * to place us, walking gets gps at a relaxed rate, and standing still drops to wifi/cell
+ * and then to passive rates.
+ * <p>
+ * Kept free of play services so the decisions can be driven from anywhere, map
+ * {@link Mode#priority} onto LocationRequest priorities at the call site.
+ */
+public class LocationScheduler
+{
+    public enum Priority { HIGH_ACCURACY, BALANCED, LOW_POWER }
+
+    public enum Mode
+    {
+        /**
+         * a fix is about to be used for a search, or the last ones were too poor
+         */
+        ACQUIRING(Priority.HIGH_ACCURACY, 1000, 1000),
+
+        /**
+         * walking, labels need gps but not every second
+         */
+        MOVING(Priority.HIGH_ACCURACY, 5000, 2000),
+
+        /**
+         * stopped for a bit, wifi/cell is enough to notice us setting off again
+         */
+        STATIONARY(Priority.BALANCED, 15000, 10000),
+
+        /**
+         * stopped for a long time, sitting in a cafe or the phone is on a table
+         */
+        IDLE(Priority.LOW_POWER, 60000, 30000);
+
+        public final Priority priority;
+        public final long intervalMs;
+        public final long fastestIntervalMs;
+
+        Mode(Priority priority, long intervalMs, long fastestIntervalMs) {
+            this.priority = priority;
+            this.intervalMs = intervalMs;
+            this.fastestIntervalMs = fastestIntervalMs;
+        }
+    }
+
+    /**
+     * why the last decision was made, mostly for logging
+     */
+    public enum Reason
+    {
+        REFRESH_PENDING,
+
+        /**
+         * a gps fix was worse than {@link #POOR_ACCURACY}, not a wifi/cell one
+         */
+        POOR_ACCURACY,
+
+        MOVING, STOPPED, STOPPED_LONG
+    }
+
+    /**
+     * m/s, a slow stroll is about 1
+     */
+    public static final float MOVING_SPEED = 0.5f;
+
+    /**
+     * meters, worse than this and bearings to nearby places are guesswork. Only judged while
+     * on gps, see {@link Reason#POOR_ACCURACY}
+     */
+    public static final float POOR_ACCURACY = 50;
+
+    /**
+     * give up on improving a poor fix after this long, indoors gps won't get any better
+     */
+    public static final long ACQUIRE_TIMEOUT_MS = 20000;
+
+    public static final long STATIONARY_AFTER_MS = 30000;
+    public static final long IDLE_AFTER_MS = 180000;
+
+    private final TimeSource mTimeSource;
+
+    private Mode mMode = Mode.ACQUIRING;
+    private Reason mReason = Reason.REFRESH_PENDING;
+    private boolean mRefreshPending = true;
+
+    private boolean mHasFix = false;
+    private double mLastLat, mLastLon;
+    private long mLastFixTime;
+    private long mStoppedSince = -1;
+    private long mPoorSince = -1;
+
+    //metrics
+    private long mModeSince;
+    private int mDecisions = 0;
+    private int mTransitions = 0;
+    private final int[] mEntered = new int[Mode.values().length];
+    private final long[] mTimeInMode = new long[Mode.values().length];
+
+    public LocationScheduler() {
+        this(TimeSource.SYSTEM);
+    }
+
+    public LocationScheduler(TimeSource timeSource)
+    {
+        mTimeSource = timeSource;
+        mModeSince = timeSource.currentTimeMillis();
+        mEntered[mMode.ordinal()]++;
+    }
+
+    public Mode getMode() {
+        return mMode;
+    }
+
+    public Reason getReason() {
+        return mReason;
+    }
+
+    /**
+     * whether the next fix is going to be used as a search origin
+     * @return true if the mode changed and the location request has to be replaced
+     */
+    public boolean setRefreshPending(boolean pending)
+    {
+        if(mRefreshPending == pending)
+            return false;
+
+        mRefreshPending = pending;
+        return decide(mTimeSource.currentTimeMillis());
+    }
+
+    /**
+     * @param accuracy meters, 0 if unknown
+     * @param hasSpeed whether speed was measured by the provider, otherwise it's worked
+     *                 out from the distance to the previous fix
+     * @return true if the mode changed and the location request has to be replaced
+     */
+    public boolean onLocation(double latitude, double longitude, float accuracy, boolean hasSpeed, float speed)
+    {
+        long now = mTimeSource.currentTimeMillis();
+
+        if(!hasSpeed)
+            speed = estimateSpeed(latitude, longitude, accuracy, now);
+
+        mHasFix = true;
+        mLastLat = latitude;
+        mLastLon = longitude;
+        mLastFixTime = now;
+
+        if(speed >= MOVING_SPEED)
+            mStoppedSince = -1;
+        else if(mStoppedSince < 0)
+            mStoppedSince = now;
+
+        //only gps is expected to do better, wifi/cell fixes are that poor by nature and stepping
+        //up to gps for them would flip a stopped user back and forth on every fix
+        if(accuracy <= 0 || accuracy <= POOR_ACCURACY || mMode.priority != Priority.HIGH_ACCURACY)
+            mPoorSince = -1;
+        else if(mPoorSince < 0)
+            mPoorSince = now;
+
+        return decide(now);
+    }
+
+    /**
+     * moves within the fix's own accuracy are treated as jitter, not movement
+     */
+    private float estimateSpeed(double latitude, double longitude, float accuracy, long now)
+    {
+        if(!mHasFix || now <= mLastFixTime)
+            return 0;
+
+        double distance = GeoKernel.haversineDistance(mLastLat, mLastLon, latitude, longitude);
+        if(distance <= accuracy)
+            return 0;
+
+        return (float) (distance * 1000 / (now - mLastFixTime));
+    }
+
+    private boolean decide(long now)
+    {
+        mDecisions++;
+
+        Mode mode;
+        if(mRefreshPending) {
+            mode = Mode.ACQUIRING;
+            mReason = Reason.REFRESH_PENDING;
+        }
+        else if(mPoorSince >= 0 && now - mPoorSince < ACQUIRE_TIMEOUT_MS) {
+            mode = Mode.ACQUIRING;
+            mReason = Reason.POOR_ACCURACY;
+        }
+        else if(mStoppedSince >= 0 && now - mStoppedSince >= IDLE_AFTER_MS) {
+            mode = Mode.IDLE;
+            mReason = Reason.STOPPED_LONG;
+        }
+        else if(mStoppedSince >= 0 && now - mStoppedSince >= STATIONARY_AFTER_MS) {
+            mode = Mode.STATIONARY;
+            mReason = Reason.STOPPED;
+        }
+        else {
+            //includes the first moments of standing still, too early to tell a stop from a pause
+            mode = Mode.MOVING;
+            mReason = Reason.MOVING;
+        }
+
+        if(mode == mMode)
+            return false;
+
+        mTimeInMode[mMode.ordinal()] += now - mModeSince;
+        mModeSince = now;
+        mMode = mode;
+        mEntered[mode.ordinal()]++;
+        mTransitions++;
+        return true;
+    }
+
+    /**
+     * @return counters since this scheduler was created
+     */
+    public Stats getStats()
+    {
+        long now = mTimeSource.currentTimeMillis();
+
+        long[] timeInMode = mTimeInMode.clone();
+        timeInMode[mMode.ordinal()] += now - mModeSince;
+
+        return new Stats(mMode, mReason, mDecisions, mTransitions, mEntered.clone(), timeInMode);
+    }
+
+    /**
+     * Snapshot of the scheduler's decisions, per mode arrays are indexed by {@link Mode#ordinal()}.
+     */
+    public static class Stats
+    {
+        public final Mode mode;
+        public final Reason reason;
+        public final int decisions;
+        public final int transitions;
+        public final int[] entered;
+        public final long[] timeInModeMs;
+
+        Stats(Mode mode, Reason reason, int decisions, int transitions, int[] entered, long[] timeInModeMs) {
+            this.mode = mode;
+            this.reason = reason;
+            this.decisions = decisions;
+            this.transitions = transitions;
+            this.entered = entered;
+            this.timeInModeMs = timeInModeMs;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder()
+                    .append(mode).append(" (").append(reason).append(")")
+                    .append(" decisions: ").append(decisions)
+                    .append(" transitions: ").append(transitions);
+
+            for(Mode m : Mode.values())
+                sb.append(' ').append(m).append(": ").append(entered[m.ordinal()])
+                        .append("x ").append(timeInModeMs[m.ordinal()] / 1000).append('s');
+
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.data.LandmarkPack;
+import com.androidexperiments.landmarker.data.PlaceRecord;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Answers from an offline {@link LandmarkPack} wherever one covers the search origin, and
+ * from another source everywhere else. Packs are only installed for places with bad
+ * connectivity, so a covering pack always wins over the network.
+ */
+public class PackNearbySearch implements NearbyPlacesSource
+{
+    private final List<LandmarkPack> mPacks;
+    private final NearbyPlacesSource mSource;
+
+    //metrics, guarded by this
+    private int mPackSearches = 0;
+    private int mSourceSearches = 0;
+
+    /**
+     * @param packs checked in order, the first that covers a search answers it
+     * @param source everything no pack covers
+     */
+    public PackNearbySearch(List<LandmarkPack> packs, NearbyPlacesSource source) {
+        mPacks = packs;
+        mSource = source;
+    }
+
+    @Override
+    public List<PlaceRecord> getNearbyPlaces(double latitude, double longitude, double radius, int limit,
+                                             OnPageListener listener) throws IOException
+    {
+        for(LandmarkPack pack : mPacks)
+        {
+            if(pack.covers(latitude, longitude)) {
+                synchronized(this) {
+                    mPackSearches++;
+                }
+                return pack.getNearbyPlaces(latitude, longitude, radius, limit, listener);
+            }
+        }
+
+        synchronized(this) {
+            mSourceSearches++;
+        }
+        return mSource.getNearbyPlaces(latitude, longitude, radius, limit, listener);
+    }
+
+    public synchronized int getPackSearchCount() {
+        return mPackSearches;
+    }
+
+    public synchronized int getSourceSearchCount() {
+        return mSourceSearches;
+    }
+}
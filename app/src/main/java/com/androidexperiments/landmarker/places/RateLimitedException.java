@@ -0,0 +1,39 @@
+package com.androidexperiments.landmarker.places;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request the {@link RateLimiter} wouldn't allow. Says nothing
+ * about the endpoint, so it shouldn't be retried straight away or count against it.
+ */
+public class RateLimitedException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final RateLimiter.Lane lane;
+    private final RateLimiter.Reason reason;
+    private final long retryAfterMs;
+
+    public RateLimitedException(RateLimiter.Lane lane, RateLimiter.Reason reason, long retryAfterMs) {
+        super(lane + " request throttled, " + reason
+                + (retryAfterMs != Long.MAX_VALUE ? ", retry in " + retryAfterMs + "ms" : ""));
+        this.lane = lane;
+        this.reason = reason;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public RateLimiter.Lane getLane() {
+        return lane;
+    }
+
+    public RateLimiter.Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * {@link Long#MAX_VALUE} if the budget is spent for the day
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
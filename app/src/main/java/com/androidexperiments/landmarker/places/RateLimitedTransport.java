@@ -0,0 +1,63 @@
+package com.androidexperiments.landmarker.places;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * {@link HttpTransport} that asks a {@link RateLimiter} before every request, so every page
+ * of every shard is counted. Give each lane its own instance over the same limiter and
+ * transport.
+ * <p>
+ * Waits up to maxWaitMs for a token, which is enough for the user lane to ride out a short
+ * burst. Anything longer fails with {@link RateLimitedException}. The prefetch lane should
+ * get a max wait of 0, it has no business holding up a thread.
+ */
+public class RateLimitedTransport implements HttpTransport
+{
+    private final HttpTransport mTransport;
+    private final RateLimiter mLimiter;
+    private final RateLimiter.Lane mLane;
+    private final long mMaxWaitMs;
+
+    public RateLimitedTransport(HttpTransport transport, RateLimiter limiter, RateLimiter.Lane lane, long maxWaitMs) {
+        mTransport = transport;
+        mLimiter = limiter;
+        mLane = lane;
+        mMaxWaitMs = maxWaitMs;
+    }
+
+    @Override
+    public InputStream get(String url) throws IOException
+    {
+        long waited = 0;
+        long wait;
+        while((wait = mLimiter.tryAcquire(mLane)) != 0)
+        {
+            if(wait == Long.MAX_VALUE)
+                throw new RateLimitedException(mLane, RateLimiter.Reason.DAILY_BUDGET, wait);
+            if(waited + wait > mMaxWaitMs)
+                throw new RateLimitedException(mLane, RateLimiter.Reason.BUCKET_EMPTY, wait);
+
+            sleep(wait);
+            waited += wait;
+        }
+
+        return mTransport.get(url);
+    }
+
+    protected void sleep(long ms) throws InterruptedIOException
+    {
+        try {
+            Thread.sleep(ms);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for a request token");
+        }
+    }
+
+    public RateLimiter getLimiter() {
+        return mLimiter;
+    }
+}
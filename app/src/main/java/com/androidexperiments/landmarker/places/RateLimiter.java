@@ -0,0 +1,275 @@
+package com.androidexperiments.landmarker.places;
+
+import android.util.Log;
+
+import com.androidexperiments.landmarker.util.FileUtils;
+import com.androidexperiments.landmarker.util.TimeSource;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Keeps one device from burning the shared api key's quota. A token bucket smooths out
+ * bursts and a daily budget caps the total, both counted per request.
+ * <p>
+ * Requests come in through a {@link Lane}. The prefetch lane can't dig into the last part
+ * of the bucket or of the daily budget, so whatever prefetching does there is always
+ * something left for the user.
+ * <p>
+ * Never blocks, {@link #tryAcquire} says how long to wait instead. The day's usage is
+ * written to disk so restarts don't reset it, at most once a {@link #SAVE_INTERVAL_MS}
+ * while requests keep going out and on {@link #flush}, not on every request. Thread safe.
+ */
+public class RateLimiter
+{
+    private static final String TAG = RateLimiter.class.getSimpleName();
+
+    private static final int FILE_VERSION = 1;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * longest usage goes unsaved while requests are being granted. a crash can lose this
+     * much, a normal exit calls flush
+     */
+    public static final long SAVE_INTERVAL_MS = 60 * 1000L;
+
+    public enum Lane { USER, PREFETCH }
+
+    public enum Reason { BUCKET_EMPTY, DAILY_BUDGET }
+
+    private final int mCapacity;
+    private final double mTokensPerMs;
+    private final int mDailyBudget;
+    private final float mPrefetchReserve;
+    private final File mFile;
+    private final TimeSource mTimeSource;
+
+    private double mTokens;
+    private long mLastRefill;
+
+    private long mDay = -1;
+    private int mUsedToday = 0;
+    private boolean mLoaded = false;
+
+    //usage changed since it was last written
+    private boolean mDirty = false;
+    private long mLastSave;
+
+    //metrics, indexed by lane ordinal
+    private final int[] mGranted = new int[Lane.values().length];
+    private final int[] mThrottledBucket = new int[Lane.values().length];
+    private final int[] mThrottledBudget = new int[Lane.values().length];
+
+    /**
+     * @param capacity most requests that can go out in a burst
+     * @param requestsPerMinute steady rate the bucket refills at
+     * @param dailyBudget requests allowed per utc day
+     * @param prefetchReserve 0 -> 1, fraction of the bucket and of the daily budget only
+     *                        the user lane may use
+     * @param file where the day's usage is kept between runs, null to keep it in memory
+     */
+    public RateLimiter(int capacity, float requestsPerMinute, int dailyBudget, float prefetchReserve,
+                       File file, TimeSource timeSource)
+    {
+        if(capacity < 1 || dailyBudget < 1 || requestsPerMinute <= 0)
+            throw new IllegalArgumentException("capacity, requestsPerMinute and dailyBudget should be positive");
+
+        mCapacity = capacity;
+        mTokensPerMs = requestsPerMinute / 60000.0;
+        mDailyBudget = dailyBudget;
+        mPrefetchReserve = Math.max(0, Math.min(prefetchReserve, 1));
+        mFile = file;
+        mTimeSource = timeSource;
+
+        mTokens = capacity;
+        mLastRefill = timeSource.currentTimeMillis();
+        mLastSave = mLastRefill;
+    }
+
+    /**
+     * Take a token for one request if the lane is allowed one right now.
+     * @return 0 if the request can go ahead, otherwise ms until it might, or
+     * {@link Long#MAX_VALUE} if the lane's share of today's budget is spent
+     */
+    public synchronized long tryAcquire(Lane lane)
+    {
+        ensureLoaded();
+
+        long now = mTimeSource.currentTimeMillis();
+        refill(now);
+        rollDay(now);
+
+        if(mUsedToday >= getBudget(lane)) {
+            mThrottledBudget[lane.ordinal()]++;
+            return Long.MAX_VALUE;
+        }
+
+        double floor = getFloor(lane);
+        if(mTokens - floor < 1) {
+            mThrottledBucket[lane.ordinal()]++;
+            return Math.max(1, (long) Math.ceil((floor + 1 - mTokens) / mTokensPerMs));
+        }
+
+        mTokens -= 1;
+        mUsedToday++;
+        mGranted[lane.ordinal()]++;
+
+        mDirty = true;
+        if(now - mLastSave >= SAVE_INTERVAL_MS)
+            flush();
+        return 0;
+    }
+
+    /**
+     * write today's usage to disk if it changed since the last write, call when the app
+     * goes to the background
+     */
+    public synchronized void flush()
+    {
+        if(!mDirty)
+            return;
+
+        mDirty = false;
+        mLastSave = mTimeSource.currentTimeMillis();
+        save();
+    }
+
+    /**
+     * @return requests the lane could send back to back right now without waiting
+     */
+    public synchronized int getAvailable(Lane lane)
+    {
+        ensureLoaded();
+
+        long now = mTimeSource.currentTimeMillis();
+        refill(now);
+        rollDay(now);
+
+        return (int) Math.max(0, Math.min(getBudget(lane) - mUsedToday, Math.floor(mTokens - getFloor(lane))));
+    }
+
+    private int getBudget(Lane lane) {
+        return lane == Lane.PREFETCH ? (int) (mDailyBudget * (1 - mPrefetchReserve)) : mDailyBudget;
+    }
+
+    /**
+     * tokens the lane has to leave in the bucket, prefetch leaves the reserve
+     */
+    private double getFloor(Lane lane) {
+        return lane == Lane.PREFETCH ? mCapacity * mPrefetchReserve : 0;
+    }
+
+    public synchronized Stats getStats()
+    {
+        ensureLoaded();
+
+        long now = mTimeSource.currentTimeMillis();
+        refill(now);
+        rollDay(now);
+
+        return new Stats((float) mTokens, mUsedToday, mDailyBudget,
+                mGranted.clone(), mThrottledBucket.clone(), mThrottledBudget.clone());
+    }
+
+    private void refill(long now)
+    {
+        if(now > mLastRefill)
+            mTokens = Math.min(mCapacity, mTokens + (now - mLastRefill) * mTokensPerMs);
+        mLastRefill = now;
+    }
+
+    private void rollDay(long now)
+    {
+        long day = now / DAY_MS;
+        if(day != mDay) {
+            mDay = day;
+            mUsedToday = 0;
+        }
+    }
+
+    private void ensureLoaded()
+    {
+        if(mLoaded)
+            return;
+
+        mLoaded = true;
+        if(mFile == null || !mFile.exists())
+            return;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if(in.readInt() != FILE_VERSION)
+                return;
+
+            mDay = in.readLong();
+            mUsedToday = in.readInt();
+        }
+        catch(IOException e) {
+            Log.w(TAG, "failed reading " + mFile.getName() + ": " + e.getLocalizedMessage());
+        }
+        finally {
+            FileUtils.closeQuietly(in);
+        }
+    }
+
+    private void save()
+    {
+        if(mFile == null)
+            return;
+
+        DataOutputStream out = null;
+        try {
+            out = FileUtils.startWrite(mFile);
+            out.writeInt(FILE_VERSION);
+            out.writeLong(mDay);
+            out.writeInt(mUsedToday);
+            FileUtils.finishWrite(mFile, out);
+        }
+        catch(IOException e) {
+            Log.w(TAG, "failed writing " + mFile.getName() + ": " + e.getLocalizedMessage());
+            FileUtils.abortWrite(mFile, out);
+        }
+    }
+
+    /**
+     * Snapshot of the limiter, per lane arrays are indexed by {@link Lane#ordinal()}.
+     */
+    public static class Stats
+    {
+        public final float tokens;
+        public final int usedToday;
+        public final int dailyBudget;
+        public final int[] granted;
+        public final int[] throttledBucket;
+        public final int[] throttledBudget;
+
+        Stats(float tokens, int usedToday, int dailyBudget, int[] granted, int[] throttledBucket, int[] throttledBudget) {
+            this.tokens = tokens;
+            this.usedToday = usedToday;
+            this.dailyBudget = dailyBudget;
+            this.granted = granted;
+            this.throttledBucket = throttledBucket;
+            this.throttledBudget = throttledBudget;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder()
+                    .append(String.format("tokens: %.1f", tokens))
+                    .append(" today: ").append(usedToday).append('/').append(dailyBudget);
+
+            for(Lane lane : Lane.values())
+                sb.append(' ').append(lane).append(": ").append(granted[lane.ordinal()]).append(" granted, ")
+                        .append(throttledBucket[lane.ordinal()]).append(" throttled, ")
+                        .append(throttledBudget[lane.ordinal()]).append(" over budget");
+
+            return sb.toString();
+        }
+    }
+}
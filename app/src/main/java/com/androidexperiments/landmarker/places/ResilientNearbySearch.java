@@ -0,0 +1,253 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.data.PlaceRecord;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Retries another {@link NearbyPlacesSource} with jittered exponential backoff, behind a
+ * {@link CircuitBreaker} so a dead endpoint stops being called altogether. Only failures
+ * that might go away are retried, a denied key or a bad request fails straight away.
+ * <p>
+ * A retry starts the search over, places already handed to the listener by an earlier
+ * attempt aren't handed over again.
+ */
+public class ResilientNearbySearch implements NearbyPlacesSource
+{
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_DELAY_MS = 500;
+    public static final long DEFAULT_MAX_DELAY_MS = 8000;
+
+    private final NearbyPlacesSource mSource;
+    private final CircuitBreaker mBreaker;
+    private final int mMaxAttempts;
+    private final long mBaseDelayMs;
+    private final long mMaxDelayMs;
+    private final Random mRandom;
+
+    //metrics, guarded by this
+    private int mCalls = 0;
+    private int mAttempts = 0;
+    private int mRetries = 0;
+    private int mFailures = 0;
+    private int mGiveUps = 0;
+
+    public ResilientNearbySearch(NearbyPlacesSource source, CircuitBreaker breaker) {
+        this(source, breaker, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS, new Random());
+    }
+
+    /**
+     * @param maxAttempts tries per search including the first
+     * @param baseDelayMs backoff ceiling before the first retry, doubles each retry
+     * @param maxDelayMs backoff ceiling never grows past this
+     * @param random jitter source, each wait is uniform in [0, ceiling)
+     */
+    public ResilientNearbySearch(NearbyPlacesSource source, CircuitBreaker breaker, int maxAttempts,
+                                 long baseDelayMs, long maxDelayMs, Random random)
+    {
+        if(maxAttempts < 1)
+            throw new IllegalArgumentException("maxAttempts should be at least 1");
+
+        mSource = source;
+        mBreaker = breaker;
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMs = baseDelayMs;
+        mMaxDelayMs = maxDelayMs;
+        mRandom = random;
+    }
+
+    @Override
+    public List<PlaceRecord> getNearbyPlaces(double latitude, double longitude, double radius, int limit,
+                                             OnPageListener listener) throws IOException
+    {
+        synchronized(this) {
+            mCalls++;
+        }
+
+        DedupingListener deduping = listener != null ? new DedupingListener(listener) : null;
+
+        for(int attempt = 1; ; attempt++)
+        {
+            if(!mBreaker.allowRequest())
+                throw new CircuitOpenException(mBreaker.getRetryAfterMs());
+
+            synchronized(this) {
+                mAttempts++;
+            }
+
+            boolean answered = false;
+            try {
+                List<PlaceRecord> places = mSource.getNearbyPlaces(latitude, longitude, radius, limit, deduping);
+                mBreaker.onSuccess();
+                answered = true;
+                return places;
+            }
+            catch(IOException e) {
+                if(e instanceof RateLimitedException || isInterruption(e))
+                    throw e;
+
+                mBreaker.onFailure();
+                answered = true;
+
+                synchronized(this) {
+                    mFailures++;
+                }
+
+                if(!isRetryable(e) || attempt >= mMaxAttempts) {
+                    synchronized(this) {
+                        mGiveUps++;
+                    }
+                    throw e;
+                }
+            }
+            finally {
+                //cancelled, never sent or blew up, says nothing about the endpoint but a
+                //trial call has to give its slot back
+                if(!answered)
+                    mBreaker.onAbandoned();
+            }
+
+            synchronized(this) {
+                mRetries++;
+            }
+            sleep(getBackoffMs(attempt));
+        }
+    }
+
+    /**
+     * full jitter, uniform in [0, min(max, base * 2 ^ (attempt - 1)))
+     */
+    long getBackoffMs(int attempt)
+    {
+        long ceiling = Math.min(mMaxDelayMs, mBaseDelayMs << Math.min(attempt - 1, 20));
+        synchronized(mRandom) {
+            return (long) (mRandom.nextDouble() * ceiling);
+        }
+    }
+
+    /**
+     * the search was cancelled rather than the endpoint failing. a timeout is an
+     * InterruptedIOException too but it's the endpoint being slow, that counts.
+     */
+    static boolean isInterruption(IOException e)
+    {
+        if(Thread.currentThread().isInterrupted())
+            return true;
+        return e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+    }
+
+    protected boolean isRetryable(IOException e)
+    {
+        if(e instanceof CircuitOpenException)
+            return false;
+
+        if(e instanceof PlacesApiException) {
+            String status = ((PlacesApiException) e).getStatus();
+            return PlacesApiException.STATUS_OVER_QUERY_LIMIT.equals(status)
+                    || PlacesApiException.STATUS_UNKNOWN_ERROR.equals(status);
+        }
+
+        //timeouts, resets, 5xx
+        return true;
+    }
+
+    protected void sleep(long ms) throws InterruptedIOException
+    {
+        try {
+            Thread.sleep(ms);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted backing off");
+        }
+    }
+
+    public CircuitBreaker getBreaker() {
+        return mBreaker;
+    }
+
+    /**
+     * @return counters since this was created, with the breaker's current state
+     */
+    public Stats getStats()
+    {
+        synchronized(this) {
+            return new Stats(mCalls, mAttempts, mRetries, mFailures, mGiveUps, mBreaker.getState(),
+                    mBreaker.getConsecutiveFailures(), mBreaker.getOpenCount(), mBreaker.getRejectedCount());
+        }
+    }
+
+    /**
+     * remembers ids handed over so a retry doesn't repeat them. attempts never overlap
+     * but pages can come from other threads, so it's synchronized anyway.
+     */
+    private static class DedupingListener implements OnPageListener
+    {
+        private final OnPageListener mListener;
+        private final Set<String> mDelivered = new HashSet<>();
+        private int mPages = 0;
+
+        DedupingListener(OnPageListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public synchronized void onPage(List<PlaceRecord> places, int pageIndex)
+        {
+            List<PlaceRecord> fresh = new ArrayList<>(places.size());
+            for(PlaceRecord place : places)
+            {
+                String key = place.getId() != null ? place.getId() : place.getName();
+                if(mDelivered.add(key))
+                    fresh.add(place);
+            }
+
+            if(fresh.size() > 0)
+                mListener.onPage(fresh, mPages++);
+        }
+    }
+
+    /**
+     * Snapshot of retry and breaker counters.
+     */
+    public static class Stats
+    {
+        public final int calls;
+        public final int attempts;
+        public final int retries;
+        public final int failures;
+        public final int giveUps;
+        public final CircuitBreaker.State breakerState;
+        public final int consecutiveFailures;
+        public final int breakerOpens;
+        public final int breakerRejected;
+
+        Stats(int calls, int attempts, int retries, int failures, int giveUps, CircuitBreaker.State breakerState,
+              int consecutiveFailures, int breakerOpens, int breakerRejected) {
+            this.calls = calls;
+            this.attempts = attempts;
+            this.retries = retries;
+            this.failures = failures;
+            this.giveUps = giveUps;
+            this.breakerState = breakerState;
+            this.consecutiveFailures = consecutiveFailures;
+            this.breakerOpens = breakerOpens;
+            this.breakerRejected = breakerRejected;
+        }
+
+        @Override
+        public String toString() {
+            return "calls: " + calls + " attempts: " + attempts + " retries: " + retries
+                    + " failures: " + failures + " gave up: " + giveUps
+                    + " breaker: " + breakerState + " (" + consecutiveFailures + " in a row, opened "
+                    + breakerOpens + "x, rejected " + breakerRejected + ")";
+        }
+    }
+}
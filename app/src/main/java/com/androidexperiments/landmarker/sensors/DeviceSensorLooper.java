@@ -16,6 +16,7 @@
 
 package com.androidexperiments.landmarker.sensors;
 
+import android.annotation.TargetApi;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
@@ -28,7 +29,7 @@ import android.util.Log;
 
 import com.google.vrtoolkit.cardboard.sensors.SensorEventProvider;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * @hide
@@ -40,21 +41,33 @@ public class DeviceSensorLooper implements SensorEventProvider {
 
     private static final String LOG_TAG = DeviceSensorLooper.class.getSimpleName();
 
+    private static final int GAME_SAMPLING_PERIOD_US = 20000;
+
     /** Is the inner looper thread started. */
     private boolean isRunning;
 
     /** Sensor manager used to register and unregister listeners. */
     private SensorManager sensorManager;
 
+    /** Longest a sensor with a hardware FIFO may batch events for, 0 to deliver them as they happen. */
+    private final int maxReportLatencyUs;
+
     /** Looper thread that listen to SensorEvent */
     private Looper sensorLooper;
 
     /** Sensor event listener for the internal sensors event. */
     private SensorEventListener sensorEventListener;
 
-    /** List of registered listeners see {@link #registerListener()}. */
-    private final ArrayList<SensorEventListener> registeredListeners =
-            new ArrayList<SensorEventListener>();
+    private static final SensorEventListener[] NO_LISTENERS = new SensorEventListener[0];
+
+    /**
+     * Registered listeners see {@link #registerListener()}. Never modified, registering or
+     * unregistering swaps in a copy so the sensor thread dispatches without taking a lock.
+     */
+    private volatile SensorEventListener[] registeredListeners = NO_LISTENERS;
+
+    /** Serializes the copy and swap of {@link #registeredListeners}. */
+    private final Object listenersLock = new Object();
 
     /**
      * Default constructor.
@@ -62,7 +75,18 @@ public class DeviceSensorLooper implements SensorEventProvider {
      * listeners.
      */
     public DeviceSensorLooper(SensorManager sensorManager) {
+        this(sensorManager, 0);
+    }
+
+    /**
+     * @param maxReportLatencyUs lets sensors that have a hardware FIFO hold on to events for up
+     * to this long and deliver them in bursts, so the application processor wakes less often.
+     * Each sensor's burst arrives separately, so listeners get events out of order across sensors.
+     * Only used from KitKat on, 0 for no batching.
+     */
+    public DeviceSensorLooper(SensorManager sensorManager, int maxReportLatencyUs) {
         this.sensorManager = sensorManager;
+        this.maxReportLatencyUs = maxReportLatencyUs;
     }
 
     private Sensor getUncalibratedGyro() {
@@ -87,21 +111,12 @@ public class DeviceSensorLooper implements SensorEventProvider {
         sensorEventListener = new SensorEventListener() {
             @Override
             public void onSensorChanged(SensorEvent event) {
-                // Pass the event to all the listeners.
-                synchronized (registeredListeners) {
-                    for (SensorEventListener listener : registeredListeners) {
-                        listener.onSensorChanged(event);
-                    }
-                }
+                dispatchSensorChanged(event);
             }
 
             @Override
             public void onAccuracyChanged(Sensor sensor, int accuracy) {
-                synchronized (registeredListeners) {
-                    for (SensorEventListener listener : registeredListeners) {
-                        listener.onAccuracyChanged(sensor, accuracy);
-                    }
-                }
+                dispatchAccuracyChanged(sensor, accuracy);
             }
         };
 
@@ -112,8 +127,7 @@ public class DeviceSensorLooper implements SensorEventProvider {
 
                 // Initialize the accelerometer.
                 Sensor accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-                sensorManager.registerListener(sensorEventListener, accelerometer,
-                        SensorManager.SENSOR_DELAY_GAME, handler);
+                registerSensor(accelerometer, handler);
 
                 // Initialize the gyroscope.
                 // If it's available, prefer to use the uncalibrated gyroscope sensor.
@@ -127,11 +141,11 @@ public class DeviceSensorLooper implements SensorEventProvider {
                     gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
                 }
 
-                sensorManager.registerListener(sensorEventListener, gyroscope, SensorManager.SENSOR_DELAY_GAME, handler);
+                registerSensor(gyroscope, handler);
 
                 //init the magnetometer so we can point north properly
                 Sensor magnetometer = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-                sensorManager.registerListener(sensorEventListener, magnetometer, SensorManager.SENSOR_DELAY_GAME, handler);
+                registerSensor(magnetometer, handler);
             }
         };
 
@@ -140,6 +154,21 @@ public class DeviceSensorLooper implements SensorEventProvider {
         isRunning = true;
     }
 
+    /**
+     * Registers at the game rate, batched if asked for and the sensor has a FIFO to batch in.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void registerSensor(Sensor sensor, Handler handler) {
+        if (maxReportLatencyUs > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                && sensor != null && sensor.getFifoMaxEventCount() > 0) {
+            // SENSOR_DELAY_GAME is 20ms, the overload takes the period in microseconds.
+            sensorManager.registerListener(sensorEventListener, sensor, GAME_SAMPLING_PERIOD_US,
+                    maxReportLatencyUs, handler);
+            return;
+        }
+        sensorManager.registerListener(sensorEventListener, sensor, SensorManager.SENSOR_DELAY_GAME, handler);
+    }
+
     /**
      * Stops the looper and deregister the listener from the sensor manager.
      */
@@ -158,17 +187,51 @@ public class DeviceSensorLooper implements SensorEventProvider {
         isRunning = false;
     }
 
+    /**
+     * Passes the event to all the listeners, of whichever snapshot is current. Called on the
+     * sensor thread, package private so tests can drive it without one.
+     */
+    void dispatchSensorChanged(SensorEvent event) {
+        SensorEventListener[] listeners = registeredListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onSensorChanged(event);
+        }
+    }
+
+    void dispatchAccuracyChanged(Sensor sensor, int accuracy) {
+        SensorEventListener[] listeners = registeredListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onAccuracyChanged(sensor, accuracy);
+        }
+    }
+
     @Override
     public void registerListener(SensorEventListener listener) {
-        synchronized (registeredListeners) {
-            registeredListeners.add(listener);
+        synchronized (listenersLock) {
+            SensorEventListener[] listeners = registeredListeners;
+            SensorEventListener[] added = Arrays.copyOf(listeners, listeners.length + 1);
+            added[listeners.length] = listener;
+            registeredListeners = added;
         }
     }
 
+    /**
+     * An event already being dispatched on the sensor thread can still reach the listener
+     * after this returns.
+     */
     @Override
     public void unregisterListener(SensorEventListener listener) {
-        synchronized (registeredListeners) {
-            registeredListeners.remove(listener);
+        synchronized (listenersLock) {
+            SensorEventListener[] listeners = registeredListeners;
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i] == listener) {
+                    SensorEventListener[] removed = new SensorEventListener[listeners.length - 1];
+                    System.arraycopy(listeners, 0, removed, 0, i);
+                    System.arraycopy(listeners, i + 1, removed, i, listeners.length - i - 1);
+                    registeredListeners = removed;
+                    return;
+                }
+            }
         }
     }
 }
\ No newline at end of file
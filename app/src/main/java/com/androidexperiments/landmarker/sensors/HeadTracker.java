@@ -21,11 +21,13 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.hardware.display.DisplayManager;
 import android.opengl.Matrix;
 import android.view.Display;
 import android.view.Surface;
 import android.view.WindowManager;
 
+import com.androidexperiments.landmarker.util.HeadTransform;
 import com.google.vrtoolkit.cardboard.sensors.Clock;
 import com.google.vrtoolkit.cardboard.sensors.SensorEventProvider;
 import com.google.vrtoolkit.cardboard.sensors.SystemClock;
@@ -34,6 +36,7 @@ import com.google.vrtoolkit.cardboard.sensors.internal.Matrix3x3d;
 import com.google.vrtoolkit.cardboard.sensors.internal.OrientationEKF;
 import com.google.vrtoolkit.cardboard.sensors.internal.Vector3d;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 
@@ -42,6 +45,19 @@ import java.util.concurrent.TimeUnit;
  * Provides head tracking information from the device IMU.
  */
 public class HeadTracker implements SensorEventListener {
+    /**
+     * Pushed the heading as the sensors move it, see {@link #addHeadingListener}.
+     */
+    public interface OnHeadingChangedListener {
+        /**
+         * Called on the sensor thread, keep it short.
+         *
+         * @param yawDegrees the yaw {@link HeadTransform#getEulerAngles} gives for the head view.
+         * @param timestampNs timestamp of the sensor event that moved it.
+         */
+        void onHeadingChanged(float yawDegrees, long timestampNs);
+    }
+
     // The neck model parameters may be exposed as a per-user preference in the
     // future, but that's only a marginal improvement, since getting accurate eye
     // offsets would require full positional tracking. For now, use hardcoded
@@ -57,19 +73,31 @@ public class HeadTracker implements SensorEventListener {
     //   the time it is accessible through {@link android.hardware.SensorManager}.
     private static final float PREDICTION_TIME_IN_SECONDS = 0.058f;
 
+    // Highest rate any sensor is expected to report at when batched, sizes the merge buffers.
+    private static final int MAX_BATCHED_SAMPLE_RATE_HZ = 400;
+
     // Android display that is used to know the local orientation of the screen.
     private final Display display;
 
+    // Tells us when the display rotates, so we don't ask it on every frame. null to ask anyway.
+    private final DisplayManager displayManager;
+    private final DisplayManager.DisplayListener displayListener;
+    // Current rotation of the display, one of Surface.ROTATION_*, kept up to date by displayListener.
+    private volatile int displayRotation = Surface.ROTATION_0;
+
     // This matrix converts the coordinate system of the OrientationEKF tracker
     // to our coordinate system.
     private final float[] ekfToHeadTracker = new float[16];
     // This matrix rotates the sensor coordinate system to the current display
     // orientation (e.g. portrait to landscape).
     private final float[] sensorToDisplay = new float[16];
-    // Current rotation value from the display.
-    private float displayRotation = Float.NaN;
     // Translation matrix for the neck model.
     private final float[] neckModelTranslation = new float[16];
+    // Everything applied before and after the predicted pose, one of each per display rotation,
+    // so a head view is two multiplies. Built on the reading thread for transformsNeckModelFactor.
+    private final float[][] preTransforms = new float[4][16];
+    private final float[][] postTransforms = new float[4][16];
+    private float transformsNeckModelFactor = Float.NaN;
     // Temporary matrices used during headView computation.
     private final float[] tmpHeadView = new float[16];
     private final float[] tmpHeadView2 = new float[16];
@@ -84,6 +112,26 @@ public class HeadTracker implements SensorEventListener {
     // Kalman filter based orientation tracker.
     private final OrientationEKF tracker;
 
+    // Predicted pose the sensor thread publishes after every sample it feeds the tracker.
+    private final PoseBuffer predictedPose = new PoseBuffer();
+
+    // Heading subscribers, swapped for a copy on every change so the sensor thread reads them
+    // without a lock. See {@link #addHeadingListener}.
+    private static final HeadingSubscription[] NO_SUBSCRIPTIONS = new HeadingSubscription[0];
+    private volatile HeadingSubscription[] headingSubscriptions = NO_SUBSCRIPTIONS;
+    private final Object headingSubscriptionsMutex = new Object();
+
+    // Display rotation and coordinate system conversions per display rotation, for working out
+    // the heading on the sensor thread. Translations don't change the heading so there's no
+    // neck model here.
+    private final float[][] headingPreTransforms = new float[4][16];
+    private final float[][] headingPostTransforms = new float[4][16];
+    // Sensor thread scratch for the heading.
+    private final float[] headingPose = new float[16];
+    private final float[] headingTmp = new float[16];
+    private final HeadTransform headingTransform = new HeadTransform();
+    private final float[] headingEulerAngles = new float[3];
+
     /** Guards {@link #gyroBiasEstimator}. */
     private final Object gyroBiasEstimatorMutex = new Object();
 
@@ -120,6 +168,12 @@ public class HeadTracker implements SensorEventListener {
     /** The last accelerometer values. */
     private final Vector3d latestAcc = new Vector3d();
 
+    /**
+     * Puts batched events from separate sensor FIFOs back in time order. {@code null} when
+     * events arrive as they happen.
+     */
+    private final SensorEventMerger eventMerger;
+
     /**
      * Factory constructor that creates a {@link SensorEventProvider} from the
      * device SensorManager. It uses the system clock as global clock.
@@ -128,13 +182,28 @@ public class HeadTracker implements SensorEventListener {
      * @return a usable HeadTracker that uses {@link DeviceSensorLooper} to provide sensor event.
      */
     public static HeadTracker createFromContext(Context context) {
+        return createFromContext(context, 0);
+    }
+
+    /**
+     * Like {@link #createFromContext(Context)}, but lets sensors that have a hardware FIFO
+     * batch their events so the application processor wakes less often. The head view lags by
+     * up to the latency, for long sessions where nobody is looking at the screen.
+     *
+     * @param maxReportLatencyUs longest a sensor holds on to events, 0 to report them as they happen.
+     */
+    public static HeadTracker createFromContext(Context context, int maxReportLatencyUs) {
         SensorManager sensorManager =
                 (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
         Display display =
                 ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE))
                         .getDefaultDisplay();
 
-        return new HeadTracker(new DeviceSensorLooper(sensorManager), new SystemClock(), display);
+        DisplayManager displayManager =
+                (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+
+        return new HeadTracker(new DeviceSensorLooper(sensorManager, maxReportLatencyUs),
+                new SystemClock(), display, displayManager, maxReportLatencyUs);
     }
 
     /**
@@ -146,17 +215,65 @@ public class HeadTracker implements SensorEventListener {
      */
     public HeadTracker(
             SensorEventProvider sensorEventProvider, Clock clock, Display display) {
+        this(sensorEventProvider, clock, display, null, 0);
+    }
+
+    /**
+     * @param displayManager tells us when display rotates while tracking, {@code null} to ask
+     *    the display for its rotation every time a head view is read.
+     * @param maxReportLatencyUs batch latency the provider was set up with, events from
+     *    different sensors are merged back into time order when it's above 0.
+     */
+    public HeadTracker(SensorEventProvider sensorEventProvider, Clock clock, final Display display,
+            DisplayManager displayManager, int maxReportLatencyUs) {
         this.clock = clock;
         this.sensorEventProvider = sensorEventProvider;
 
         tracker = new OrientationEKF();
         this.display = display;
 
+        this.displayManager = displayManager;
+        displayListener = new DisplayManager.DisplayListener() {
+            @Override
+            public void onDisplayChanged(int displayId) {
+                if (displayId == display.getDisplayId()) {
+                    displayRotation = display.getRotation();
+                }
+            }
+
+            @Override
+            public void onDisplayAdded(int displayId) {
+                // Do nothing.
+            }
+
+            @Override
+            public void onDisplayRemoved(int displayId) {
+                // Do nothing.
+            }
+        };
+
         // Enable gyroscope bias estimation by default.
         setGyroBiasEstimationEnabled(true);
 
-        // Initialize the neck translation matrix.
-        Matrix.setIdentityM(neckModelTranslation, 0);
+
+        if (maxReportLatencyUs > 0) {
+            // Each FIFO drains on its own, so wait up to two batches for the others to catch up.
+            long maxHoldNs = TimeUnit.MICROSECONDS.toNanos(maxReportLatencyUs) * 2;
+            int capacity = (int) (TimeUnit.NANOSECONDS.toSeconds(maxHoldNs) + 1) * MAX_BATCHED_SAMPLE_RATE_HZ;
+            eventMerger = new SensorEventMerger(new SensorEventMerger.Listener() {
+                @Override
+                public void onSensorSample(int type, float[] values, int valueCount, long timestamp) {
+                    processSample(type, values, valueCount, timestamp);
+                }
+            }, capacity, maxHoldNs);
+        } else {
+            eventMerger = null;
+        }
+
+        for (int rotation = Surface.ROTATION_0; rotation <= Surface.ROTATION_270; rotation++) {
+            Matrix.setRotateEulerM(headingPreTransforms[rotation], 0, 0, 0, -rotation * 90);
+            Matrix.setRotateEulerM(headingPostTransforms[rotation], 0, -90, 0, rotation * 90);
+        }
     }
 
     /**
@@ -166,17 +283,28 @@ public class HeadTracker implements SensorEventListener {
      */
     @Override
     public void onSensorChanged(SensorEvent event) {
-        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            latestAcc.set(event.values[0], event.values[1], event.values[2]);
-            tracker.processAcc(latestAcc, event.timestamp);
+        if (eventMerger != null) {
+            // Batched events have to be put back in time order before the EKF sees them.
+            eventMerger.add(event.sensor.getType(), event.timestamp, event.values);
+        } else {
+            processSample(event.sensor.getType(), event.values, event.values.length, event.timestamp);
+        }
+    }
+
+    /**
+     * Package private so tests can feed samples without a {@link SensorEvent}.
+     */
+    void processSample(int type, float[] values, int valueCount, long timestamp) {
+        if (type == Sensor.TYPE_ACCELEROMETER) {
+            latestAcc.set(values[0], values[1], values[2]);
+            tracker.processAcc(latestAcc, timestamp);
 
             synchronized (gyroBiasEstimatorMutex) {
                 if (gyroBiasEstimator != null) {
-                    gyroBiasEstimator.processAccelerometer(latestAcc, event.timestamp);
+                    gyroBiasEstimator.processAccelerometer(latestAcc, timestamp);
                 }
             }
-        } else if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE
-                || event.sensor.getType() == Sensor.TYPE_GYROSCOPE_UNCALIBRATED) {
+        } else if (type == Sensor.TYPE_GYROSCOPE || type == Sensor.TYPE_GYROSCOPE_UNCALIBRATED) {
             // Note that the event timestamp values probably don't match the system clock,
             // which is why we must sample it separately here.
             //
@@ -190,38 +318,118 @@ public class HeadTracker implements SensorEventListener {
             // that initial bias. This way, we essentially A) initialize our own bias estimation with
             // the system values, and B) our own estimation is not conflicting with the system's one in
             // subsequent frames.
-            if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE_UNCALIBRATED) {
-                if (firstGyroValue && event.values.length == 6) {
+            if (type == Sensor.TYPE_GYROSCOPE_UNCALIBRATED) {
+                if (firstGyroValue && valueCount == 6) {
                     // Store initial system bias estimation values.
-                    initialSystemGyroBias[0] = event.values[3];
-                    initialSystemGyroBias[1] = event.values[4];
-                    initialSystemGyroBias[2] = event.values[5];
+                    initialSystemGyroBias[0] = values[3];
+                    initialSystemGyroBias[1] = values[4];
+                    initialSystemGyroBias[2] = values[5];
                 }
                 latestGyro.set(
-                        event.values[0] - initialSystemGyroBias[0],
-                        event.values[1] - initialSystemGyroBias[1],
-                        event.values[2] - initialSystemGyroBias[2]);
+                        values[0] - initialSystemGyroBias[0],
+                        values[1] - initialSystemGyroBias[1],
+                        values[2] - initialSystemGyroBias[2]);
             } else {
                 // We only have access to TYPE_GYROSCOPE, simply copy the gyroscope data.
-                latestGyro.set(event.values[0], event.values[1], event.values[2]);
+                latestGyro.set(values[0], values[1], values[2]);
             }
 
             firstGyroValue = false;
 
             synchronized (gyroBiasEstimatorMutex) {
                 if (gyroBiasEstimator != null) {
-                    gyroBiasEstimator.processGyroscope(latestGyro, event.timestamp);
+                    gyroBiasEstimator.processGyroscope(latestGyro, timestamp);
 
                     // Subtract the gyro bias from the latest gyro reading.
                     gyroBiasEstimator.getGyroBias(gyroBias);
                     Vector3d.sub(this.latestGyro, gyroBias, latestGyro);
                 }
             }
-            tracker.processGyro(latestGyro, event.timestamp);
+            tracker.processGyro(latestGyro, timestamp);
         }
-        else if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
+        else if (type == Sensor.TYPE_MAGNETIC_FIELD) {
             //add mag events to our tracker
-            tracker.processMag(event.values, event.timestamp);
+            tracker.processMag(values, timestamp);
+        }
+
+        publishPredictedPose(timestamp);
+    }
+
+    /**
+     * Runs the prediction here on the sensor thread, readers only copy the result.
+     */
+    private void publishPredictedPose(long timestamp) {
+        if (!tracker.isReady()) {
+            predictedPose.clear();
+            return;
+        }
+        double secondsSinceLastGyroEvent =
+                TimeUnit.NANOSECONDS.toSeconds(clock.nanoTime() - latestGyroEventClockTimeNs);
+        double secondsToPredictForward = secondsSinceLastGyroEvent + PREDICTION_TIME_IN_SECONDS;
+        double[] pose = tracker.getPredictedGLMatrix(secondsToPredictForward);
+        predictedPose.publish(pose);
+
+        HeadingSubscription[] subscriptions = headingSubscriptions;
+        if (subscriptions.length > 0) {
+            float yaw = computeHeading(pose);
+            for (int i = 0; i < subscriptions.length; i++) {
+                subscriptions[i].onHeading(yaw, timestamp);
+            }
+        }
+    }
+
+    /**
+     * The yaw of the head view for this pose, without building the rest of it.
+     */
+    private float computeHeading(double[] pose) {
+        for (int i = 0; i < 16; i++) {
+            headingPose[i] = (float) pose[i];
+        }
+
+        int rotation = getDisplayRotation();
+        Matrix.multiplyMM(headingTmp, 0, headingPreTransforms[rotation], 0, headingPose, 0);
+        Matrix.multiplyMM(headingTransform.getHeadView(), 0, headingTmp, 0, headingPostTransforms[rotation], 0);
+
+        headingTransform.getEulerAngles(headingEulerAngles, 0);
+        return (float) Math.toDegrees(headingEulerAngles[1]);
+    }
+
+    /**
+     * Pushes the heading to listener from the sensor thread as it changes, instead of it having
+     * to poll {@link #getLastHeadView}. Every sample the tracker takes in is a possible update,
+     * somewhere between 50 and 200 a second, these thin that down.
+     *
+     * @param minIntervalMs least time between two updates by sensor timestamps, 0 for no limit.
+     * @param minChangeDegrees least turn since the last update worth another, 0 for every one.
+     */
+    public void addHeadingListener(OnHeadingChangedListener listener, long minIntervalMs,
+            float minChangeDegrees) {
+        HeadingSubscription subscription = new HeadingSubscription(listener,
+                TimeUnit.MILLISECONDS.toNanos(minIntervalMs), minChangeDegrees);
+
+        synchronized (headingSubscriptionsMutex) {
+            HeadingSubscription[] subscriptions = headingSubscriptions;
+            HeadingSubscription[] added = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+            added[subscriptions.length] = subscription;
+            headingSubscriptions = added;
+        }
+    }
+
+    /**
+     * An update already under way on the sensor thread can still arrive after this returns.
+     */
+    public void removeHeadingListener(OnHeadingChangedListener listener) {
+        synchronized (headingSubscriptionsMutex) {
+            HeadingSubscription[] subscriptions = headingSubscriptions;
+            for (int i = 0; i < subscriptions.length; i++) {
+                if (subscriptions[i].listener == listener) {
+                    HeadingSubscription[] removed = new HeadingSubscription[subscriptions.length - 1];
+                    System.arraycopy(subscriptions, 0, removed, 0, i);
+                    System.arraycopy(subscriptions, i + 1, removed, i, subscriptions.length - i - 1);
+                    headingSubscriptions = removed;
+                    return;
+                }
+            }
         }
     }
 
@@ -246,6 +454,15 @@ public class HeadTracker implements SensorEventListener {
         }
 
         firstGyroValue = true;
+        predictedPose.clear();
+        if (displayManager != null) {
+            // Callbacks come on this thread's looper, take the current rotation before they start.
+            displayRotation = display.getRotation();
+            displayManager.registerDisplayListener(displayListener, null);
+        }
+        if (eventMerger != null) {
+            eventMerger.clear();
+        }
         sensorEventProvider.registerListener(this);
         sensorEventProvider.start();
         tracking = true;
@@ -269,6 +486,9 @@ public class HeadTracker implements SensorEventListener {
 
         sensorEventProvider.unregisterListener(this);
         sensorEventProvider.stop();
+        if (displayManager != null) {
+            displayManager.unregisterDisplayListener(displayListener);
+        }
         tracking = false;
     }
 
@@ -350,61 +570,97 @@ public class HeadTracker implements SensorEventListener {
             throw new IllegalArgumentException("Not enough space to write the result");
         }
 
-        // Update rotation matrices for the current display orientation.
-        float rotation = 0;
-        switch (display.getRotation()) {
-            case Surface.ROTATION_0:
-                rotation = 0;
-                break;
-            case Surface.ROTATION_90:
-                rotation = 90;
-                break;
-            case Surface.ROTATION_180:
-                rotation = 180;
-                break;
-            case Surface.ROTATION_270:
-                rotation = 270;
-                break;
+        // Copy the latest predicted orientation the sensor thread published, no lock taken.
+        if (!predictedPose.read(tmpHeadView, 0)) {
+            return;
         }
-        if (rotation != displayRotation) {
-            displayRotation = rotation;
-            Matrix.setRotateEulerM(sensorToDisplay, 0, 0, 0, -rotation);
-            Matrix.setRotateEulerM(ekfToHeadTracker, 0, -90, 0, rotation);
+
+        float factor = neckModelFactor;
+        if (factor != transformsNeckModelFactor) {
+            updateTransforms(factor);
         }
 
-        // Read the latest orientation from the OrientationEKF tracker.
-        synchronized (tracker) {
-            if (!tracker.isReady()) {
-                return;
-            }
-            double secondsSinceLastGyroEvent =
-                    TimeUnit.NANOSECONDS.toSeconds(clock.nanoTime() - latestGyroEventClockTimeNs);
-            double secondsToPredictForward = secondsSinceLastGyroEvent + PREDICTION_TIME_IN_SECONDS;
-            double[] mat = tracker.getPredictedGLMatrix(secondsToPredictForward);
-            for (int i = 0; i < headView.length; i++) {
-                tmpHeadView[i] = (float) mat[i];
-            }
+        int rotation = getDisplayRotation();
+
+        Matrix.multiplyMM(tmpHeadView2, 0, preTransforms[rotation], 0, tmpHeadView, 0);
+        Matrix.multiplyMM(headView, offset, tmpHeadView2, 0, postTransforms[rotation], 0);
+    }
+
+    /**
+     * One of the {@link Surface} rotations. Package private so tests can run without a display.
+     */
+    int getDisplayRotation() {
+        // Not tracking means nothing keeps displayRotation current.
+        return displayManager != null && tracking ? displayRotation : display.getRotation();
+    }
+
+    /**
+     * Rebuilds the transforms either side of the predicted pose for every display rotation.
+     * The head view is neck * sensorToDisplay * pose * ekfToHeadTracker * vertical offset, this
+     * multiplies out everything but the pose.
+     */
+    private void updateTransforms(float factor) {
+        for (int rotation = Surface.ROTATION_0; rotation <= Surface.ROTATION_270; rotation++) {
+            float degrees = rotation * 90;
+
+            // Convert from sensor coordinate frame to display orientation, and from
+            // OrientationEKF coordinate system to our coordinate system.
+            Matrix.setRotateEulerM(sensorToDisplay, 0, 0, 0, -degrees);
+            Matrix.setRotateEulerM(ekfToHeadTracker, 0, -90, 0, degrees);
+
+            // Use a simple neck model where the viewpoint rotates around the approximate base of
+            // the neck, not the midpoint between the eyes. Pre-multiply the neck translation, and
+            // then post-multiply the vertical offset. This way, effective player height remains
+            // unchanged. Can't do this for horizontal offsets since that would require a reference
+            // yaw angle.
+            Matrix.setIdentityM(neckModelTranslation, 0);
+            Matrix.translateM(neckModelTranslation, 0,
+                    0.0f,
+                    -factor * DEFAULT_NECK_VERTICAL_OFFSET,
+                    factor * DEFAULT_NECK_HORIZONTAL_OFFSET);
+            Matrix.multiplyMM(preTransforms[rotation], 0, neckModelTranslation, 0, sensorToDisplay, 0);
+            Matrix.translateM(postTransforms[rotation], 0, ekfToHeadTracker, 0,
+                    0.0f, factor * DEFAULT_NECK_VERTICAL_OFFSET, 0.0f);
+        }
+        transformsNeckModelFactor = factor;
+    }
+
+    /**
+     * A heading listener and how often it wants updates. Only touched on the sensor thread once added.
+     */
+    private static class HeadingSubscription {
+        final OnHeadingChangedListener listener;
+        final long minIntervalNs;
+        final float minChangeDegrees;
+
+        private boolean delivered = false;
+        private long lastTimestampNs;
+        private float lastYawDegrees;
+
+        HeadingSubscription(OnHeadingChangedListener listener, long minIntervalNs,
+                float minChangeDegrees) {
+            this.listener = listener;
+            this.minIntervalNs = minIntervalNs;
+            this.minChangeDegrees = minChangeDegrees;
         }
 
-        // Convert from sensor coordinate frame to display orientation.
-        Matrix.multiplyMM(tmpHeadView2, 0, sensorToDisplay, 0, tmpHeadView, 0);
-
-        // Convert from OrientationEKF coordinate system to our coordinate system.
-        Matrix.multiplyMM(headView, offset, tmpHeadView2, 0, ekfToHeadTracker, 0);
-
-        // Use a simple neck model where the viewpoint rotates around the approximate base of
-        // the neck, not the midpoint between the eyes. Pre-multiply the neck translation, and
-        // then post-multiply the vertical offset. This way, effective player height remains
-        // unchanged. Can't do this for horizontal offsets since that would require a reference
-        // yaw angle.
-        Matrix.setIdentityM(neckModelTranslation, 0);
-        Matrix.translateM(neckModelTranslation, 0,
-                0.0f,
-                -neckModelFactor * DEFAULT_NECK_VERTICAL_OFFSET,
-                neckModelFactor * DEFAULT_NECK_HORIZONTAL_OFFSET);
-        Matrix.multiplyMM(tmpHeadView, 0, neckModelTranslation, 0, headView, offset);
-        Matrix.translateM(headView, offset, tmpHeadView, 0,
-                0.0f, neckModelFactor * DEFAULT_NECK_VERTICAL_OFFSET, 0.0f);
+        void onHeading(float yawDegrees, long timestampNs) {
+            if (delivered) {
+                if (timestampNs - lastTimestampNs < minIntervalNs) {
+                    return;
+                }
+                // Shortest way round, so turning through +-180 counts as a small change.
+                float change = Math.abs(yawDegrees - lastYawDegrees) % 360;
+                if (Math.min(change, 360 - change) < minChangeDegrees) {
+                    return;
+                }
+            }
+
+            delivered = true;
+            lastTimestampNs = timestampNs;
+            lastYawDegrees = yawDegrees;
+            listener.onHeadingChanged(yawDegrees, timestampNs);
+        }
     }
 
     /**
@@ -0,0 +1,85 @@
+package com.androidexperiments.landmarker.sensors;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Hands the latest 4x4 pose from the sensor thread to readers on any thread without either
+ * side taking a lock.
+ * <p>
+ * Double buffered, each buffer behind its own sequence number: the writer fills the buffer
+ * readers aren't pointed at and then points them at it, odd sequence while it writes. A reader
+ * copies the current buffer and retries only if the writer came back around to that same
+ * buffer while it was copying, which takes two publishes during one copy, or if readers are
+ * no longer pointed at it. Without that last check a reader that picked a buffer just before
+ * the writer refilled it could get the newest pose and then, before the writer flips to it,
+ * the older one again on its next read. Values go through
+ * atomic arrays rather than plain ones so the sequence check is sound under the Java memory
+ * model, a plain read could be reordered past the check and come back torn.
+ * <p>
+ * One writer thread, any number of readers.
+ */
+class PoseBuffer {
+
+    private static final int SIZE = 16;
+
+    /** Float bits of both buffers, buffer i at [i * SIZE, (i + 1) * SIZE). */
+    private final AtomicIntegerArray values = new AtomicIntegerArray(2 * SIZE);
+
+    /** Per buffer, odd while being written. */
+    private final AtomicIntegerArray sequences = new AtomicIntegerArray(2);
+
+    /** The buffer readers should copy, -1 when there is no pose. */
+    private volatile int current = -1;
+
+    /**
+     * Writer only. Publishes a column major 4x4 matrix.
+     */
+    void publish(double[] matrix) {
+        int buffer = current == 0 ? 1 : 0;
+        int base = buffer * SIZE;
+
+        sequences.incrementAndGet(buffer);
+        for (int i = 0; i < SIZE; i++) {
+            values.set(base + i, Float.floatToRawIntBits((float) matrix[i]));
+        }
+        sequences.incrementAndGet(buffer);
+
+        current = buffer;
+    }
+
+    /**
+     * Any thread. Readers get nothing until the next {@link #publish}.
+     */
+    void clear() {
+        current = -1;
+    }
+
+    /**
+     * Copies the latest pose.
+     *
+     * @return false if there is none, whatever was written to out is then meaningless.
+     */
+    boolean read(float[] out, int offset) {
+        while (true) {
+            int buffer = current;
+            if (buffer < 0) {
+                return false;
+            }
+
+            int before = sequences.get(buffer);
+            if ((before & 1) != 0) {
+                // Lapped, the writer is already filling this one again.
+                continue;
+            }
+
+            int base = buffer * SIZE;
+            for (int i = 0; i < SIZE; i++) {
+                out[offset + i] = Float.intBitsToFloat(values.get(base + i));
+            }
+
+            if (sequences.get(buffer) == before && current == buffer) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.androidexperiments.landmarker.sensors;
+
+import android.hardware.Sensor;
+
+/**
+ * Puts batched sensor events back in time order before they reach the tracker.
+ * <p>
+ * With a max report latency each sensor's hardware FIFO is drained on its own, so a wake up
+ * delivers a second of accelerometer, then a second of gyroscope, then the magnetometer. Every
+ * sensor's events are still in order, so this holds on to them and releases the oldest one
+ * once every other sensor has caught up to it, or has gone quiet for longer than a batch.
+ * <p>
+ * {@link android.hardware.SensorEvent} objects are reused by the system, events are copied in
+ * to preallocated samples and nothing is allocated per event. Not thread safe, call from the
+ * sensor thread.
+ */
+class SensorEventMerger {
+
+    /** Receives merged events in timestamp order. */
+    interface Listener {
+        void onSensorSample(int type, float[] values, int valueCount, long timestamp);
+    }
+
+    private static final int ACCELEROMETER = 0;
+    private static final int GYROSCOPE = 1;
+    private static final int MAGNETOMETER = 2;
+    private static final int SOURCE_COUNT = 3;
+
+    /** Enough for an uncalibrated gyroscope's values and bias. */
+    private static final int MAX_VALUES = 6;
+
+    private final Listener listener;
+    private final long maxHoldNs;
+
+    // A ring of samples per source, oldest at head.
+    private final int[][] types;
+    private final long[][] timestamps;
+    private final float[][][] values;
+    private final int[][] valueCounts;
+    private final int[] heads = new int[SOURCE_COUNT];
+    private final int[] sizes = new int[SOURCE_COUNT];
+
+    /** Newest timestamp seen per source, -1 until it sends anything. */
+    private final long[] latestTimestamps = new long[SOURCE_COUNT];
+    private long newestTimestamp = -1;
+    private long firstTimestamp = -1;
+
+    /**
+     * @param capacity events held per sensor, the oldest is released early when one fills up
+     * @param maxHoldNs longest a sensor is waited on once others have moved past it
+     */
+    SensorEventMerger(Listener listener, int capacity, long maxHoldNs) {
+        this.listener = listener;
+        this.maxHoldNs = maxHoldNs;
+
+        types = new int[SOURCE_COUNT][capacity];
+        timestamps = new long[SOURCE_COUNT][capacity];
+        values = new float[SOURCE_COUNT][capacity][MAX_VALUES];
+        valueCounts = new int[SOURCE_COUNT][capacity];
+        clear();
+    }
+
+    /**
+     * Copies an event in and passes on everything that is now known to be in order.
+     */
+    void add(int type, long timestamp, float[] eventValues) {
+        int source = sourceOf(type);
+        if (source < 0) {
+            return;
+        }
+
+        if (sizes[source] == types[source].length) {
+            releaseOldest();
+        }
+
+        int capacity = types[source].length;
+        int slot = (heads[source] + sizes[source]) % capacity;
+        int count = Math.min(eventValues.length, MAX_VALUES);
+        types[source][slot] = type;
+        timestamps[source][slot] = timestamp;
+        System.arraycopy(eventValues, 0, values[source][slot], 0, count);
+        valueCounts[source][slot] = count;
+        sizes[source]++;
+
+        latestTimestamps[source] = Math.max(latestTimestamps[source], timestamp);
+        newestTimestamp = Math.max(newestTimestamp, timestamp);
+        if (firstTimestamp < 0) {
+            firstTimestamp = timestamp;
+        }
+
+        while (releaseIfOrdered()) {
+            // Keep going while the oldest held event is safe to pass on.
+        }
+    }
+
+    /**
+     * Drops everything held, for when tracking restarts.
+     */
+    void clear() {
+        for (int source = 0; source < SOURCE_COUNT; source++) {
+            heads[source] = 0;
+            sizes[source] = 0;
+            latestTimestamps[source] = -1;
+        }
+        newestTimestamp = -1;
+        firstTimestamp = -1;
+    }
+
+    private boolean releaseIfOrdered() {
+        int oldest = findOldest();
+        if (oldest < 0) {
+            return false;
+        }
+
+        long timestamp = timestamps[oldest][heads[oldest]];
+        for (int source = 0; source < SOURCE_COUNT; source++) {
+            if (source == oldest) {
+                continue;
+            }
+            // A sensor that hasn't reported yet may just be in a later burst, or not exist.
+            long latest = latestTimestamps[source];
+            boolean caughtUp = latest >= timestamp;
+            boolean quiet = newestTimestamp - (latest >= 0 ? latest : firstTimestamp) > maxHoldNs;
+            if (!caughtUp && !quiet) {
+                return false;
+            }
+        }
+
+        release(oldest);
+        return true;
+    }
+
+    private void releaseOldest() {
+        release(findOldest());
+    }
+
+    private int findOldest() {
+        int oldest = -1;
+        for (int source = 0; source < SOURCE_COUNT; source++) {
+            if (sizes[source] > 0 && (oldest < 0
+                    || timestamps[source][heads[source]] < timestamps[oldest][heads[oldest]])) {
+                oldest = source;
+            }
+        }
+        return oldest;
+    }
+
+    private void release(int source) {
+        int head = heads[source];
+        heads[source] = (head + 1) % types[source].length;
+        sizes[source]--;
+
+        listener.onSensorSample(types[source][head], values[source][head], valueCounts[source][head],
+                timestamps[source][head]);
+    }
+
+    private static int sourceOf(int type) {
+        switch (type) {
+            case Sensor.TYPE_ACCELEROMETER:
+                return ACCELEROMETER;
+            case Sensor.TYPE_GYROSCOPE:
+            case Sensor.TYPE_GYROSCOPE_UNCALIBRATED:
+                return GYROSCOPE;
+            case Sensor.TYPE_MAGNETIC_FIELD:
+                return MAGNETOMETER;
+            default:
+                return -1;
+        }
+    }
+}
@@ -12,8 +12,7 @@ import android.widget.TextView;
 
 import com.google.creativelabs.androidexperiments.typecompass.R;
 import com.androidexperiments.landmarker.data.NearbyPlace;
-
-import java.util.ArrayList;
+import com.androidexperiments.landmarker.data.PlaceStore;
 
 import butterknife.ButterKnife;
 import butterknife.InjectView;
@@ -52,8 +51,12 @@ public class DirectionalTextView extends FrameLayout
     private float mGotoX = 0.f;
     private float mLastX = 0.f;
 
-    private ArrayList<NearbyPlace> mPlaces;
+    private PlaceStore mStore;
+    private int[] mPlaceIndices;
+    private int mPlaceCount = 0;
+    private int mPosition = 0;
     private NearbyPlace mCurrentPlace;
+    private String mCurrentName;
 
     private float mDistanceInKilometers;
     private float mDistanceInMiles;
@@ -100,15 +103,39 @@ public class DirectionalTextView extends FrameLayout
         mMarkerText.setText(dir);
     }
 
-    public void setPlaces(ArrayList<NearbyPlace> places)
+    /**
+     * show a ranked set of places out of the store, best first. if the label we're
+     * showing survived the refresh it stays up and just gets its distance updated. it's
+     * matched by name, name ids don't carry over when the store is cleared and refilled.
+     * @param indices store indices, held onto until the next call
+     */
+    public void setPlaces(PlaceStore store, int[] indices, int count)
     {
-        mPlaces = places;
-        if(mPlaces.size() > 0)
-            setPlace(mPlaces.get(0));
+        mStore = store;
+        mPlaceIndices = indices;
+        mPlaceCount = count;
+
+        int position = findPosition(mCurrentName);
+        if(position >= 0)
+            setPlaceAt(position);
+        else if(count > 0)
+            setPlaceAt(0);
         else
             setEmptyPlace();
     }
 
+    private int findPosition(String name)
+    {
+        if(name == null)
+            return -1;
+
+        for(int i = 0; i < mPlaceCount; i++) {
+            if(name.equals(mStore.getName(mPlaceIndices[i])))
+                return i;
+        }
+        return -1;
+    }
+
     @OnClick(R.id.dtv_distance_text)
     public void onDistanceClicked() 
     {
@@ -145,13 +172,18 @@ public class DirectionalTextView extends FrameLayout
 
     private void setEmptyPlace()
     {
+        mCurrentPlace = null;
+        mCurrentName = null;
+
         this.setText("");
         mMainText.setTextColor(0xaaffffff);
         mMainText.setTextSize(TypedValue.COMPLEX_UNIT_PX, getResources().getDimension(R.dimen.directional_tv_main_text_size_small));
     }
 
-    private void setPlace(NearbyPlace place) {
+    private void setPlace(int index) {
+        NearbyPlace place = mStore.getPlace(index);
         mCurrentPlace = place;
+        mCurrentName = place.getName();
 
         this.setText(place.getName());
         this.setDistance(place.getDistance());
@@ -177,11 +209,19 @@ public class DirectionalTextView extends FrameLayout
         mMainText.setTranslationY(translationY);
     }
 
-    private void setRandomPlace()
+    /**
+     * step to the next ranked place, wrapping back to the best one
+     */
+    private void setNextPlace()
+    {
+        if(mPlaceCount > 0)
+            setPlaceAt((mPosition + 1) % mPlaceCount);
+    }
+
+    private void setPlaceAt(int position)
     {
-        int size = mPlaces.size();
-        if(size > 0)
-            setPlace(mPlaces.get((int)Math.floor(Math.random() * size)));
+        mPosition = position;
+        setPlace(mPlaceIndices[position]);
     }
 
     /**
@@ -211,7 +251,7 @@ public class DirectionalTextView extends FrameLayout
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
                 if(animation.getAnimatedFraction() > 2.0f) {
-                    setRandomPlace();
+                    setNextPlace();
                     anim.removeUpdateListener(this);
                 }
             }
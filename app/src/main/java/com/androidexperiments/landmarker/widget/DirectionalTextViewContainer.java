@@ -17,14 +17,15 @@ import android.widget.FrameLayout;
 
 import com.google.creativelabs.androidexperiments.typecompass.R;
 import com.androidexperiments.landmarker.data.NearbyPlace;
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.engine.CompassEngine;
+import com.androidexperiments.landmarker.engine.CompassLayout;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import butterknife.ButterKnife;
 import butterknife.InjectView;
 import de.greenrobot.event.EventBus;
-import se.walkercrou.places.Place;
 
 /**
  * Handles 4 textviews and displays them in NSEW orientation
@@ -44,7 +45,21 @@ public class DirectionalTextViewContainer extends FrameLayout
     @InjectView(R.id.dtv_south) DirectionalTextView mSouth;
     @InjectView(R.id.dtv_west) DirectionalTextView mWest;
 
-    ArrayList<NearbyPlace> mNorthernPlaces, mEasternPlaces, mSouthernPlaces, mWesternPlaces;
+    /**
+     * meters at which distance stops counting against a place, matches the search radius
+     */
+    private static final float RANKING_MAX_DISTANCE = 1000.f;
+
+    /**
+     * every place we're showing and what each label gets of them, the views only draw it
+     */
+    private final CompassEngine mEngine = new CompassEngine(RANKING_MAX_DISTANCE);
+    private final float[] mOffsets = new float[CompassLayout.SLOT_COUNT];
+
+    /**
+     * label views clockwise from north, same order as the engine's slots
+     */
+    private DirectionalTextView[] mSlots;
 
     private Handler mDrawingHandler = new Handler();
     private boolean mIsDrawing = true;
@@ -76,6 +91,12 @@ public class DirectionalTextViewContainer extends FrameLayout
         mWest.setDir("W");
         mSouth.setDir("S");
 
+        mSlots = new DirectionalTextView[CompassLayout.SLOT_COUNT];
+        mSlots[CompassLayout.NORTH] = mNorth;
+        mSlots[CompassLayout.EAST] = mEast;
+        mSlots[CompassLayout.SOUTH] = mSouth;
+        mSlots[CompassLayout.WEST] = mWest;
+
         setupMovementConstants();
         setupTouchListener();
     }
@@ -180,42 +201,42 @@ public class DirectionalTextViewContainer extends FrameLayout
             return mSouth;
     }
 
-    public void updatePlaces(List<Place> places, Location lastLocation)
+    public void updatePlaces(List<PlaceRecord> places, Location lastLocation)
     {
-        //wipe old places
-        mNorthernPlaces = new ArrayList<>();
-        mEasternPlaces = new ArrayList<>();
-        mSouthernPlaces = new ArrayList<>();
-        mWesternPlaces = new ArrayList<>();
+        mEngine.setPlaces(places);
 
-        for(Place place : places)
-        {
-            Location placeLoc = new Location("placeLoc");
-            placeLoc.setLatitude(place.getLatitude());
-            placeLoc.setLongitude(place.getLongitude());
-
-//            Log.d(TAG, "degrees to " + place.getName() + ": " + lastLocation.bearingTo(placeLoc) + " distance: " + lastLocation.distanceTo(placeLoc));
-
-            float bearing = lastLocation.bearingTo(placeLoc);
-            float distance = lastLocation.distanceTo(placeLoc);
-
-            NearbyPlace newPlace = new NearbyPlace(distance, place.getName());
-
-            //simple but useful
-            if(bearing > -45.f && bearing < 45.f) // north
-                mNorthernPlaces.add(newPlace);
-            else if(bearing > 45.f && bearing < 135.f) // east
-                mEasternPlaces.add(newPlace);
-            else if(bearing < -45.f && bearing > -135.f) // west
-                mWesternPlaces.add(newPlace);
-            else
-                mSouthernPlaces.add(newPlace);
-        }
+        refreshSectors(lastLocation);
+    }
+
+    /**
+     * merge another page of results into what we're already showing. labels
+     * that are already up stay put, empty directions pick up their first place.
+     */
+    public void addPlaces(List<PlaceRecord> places, Location lastLocation)
+    {
+        mEngine.addPlaces(places);
+
+        refreshSectors(lastLocation);
+    }
+
+    /**
+     * we moved but are still inside the area we searched, recompute bearings and
+     * distances for the places we already have. no network involved.
+     */
+    public void updateLocation(Location location)
+    {
+        if(mEngine.size() == 0)
+            return;
 
-        mNorth.setPlaces(mNorthernPlaces);
-        mEast.setPlaces(mEasternPlaces);
-        mWest.setPlaces(mWesternPlaces);
-        mSouth.setPlaces(mSouthernPlaces);
+        refreshSectors(location);
+    }
+
+    private void refreshSectors(Location lastLocation)
+    {
+        mEngine.update(lastLocation.getLatitude(), lastLocation.getLongitude());
+
+        for(int slot = 0; slot < mSlots.length; slot++)
+            mSlots[slot].setPlaces(mEngine.getPlaceStore(), mEngine.getSlotPlaces(slot), mEngine.getSlotPlaceCount(slot));
     }
 
     public void updateFakePlaces()
@@ -232,33 +253,13 @@ public class DirectionalTextViewContainer extends FrameLayout
      */
     public void updateView(double degrees)
     {
-        //hack
-        degrees = (degrees + 180) % 360 - 90;
-        if(degrees < 0)
-            degrees = 360 + degrees;
-
         if(mViewWidth == 0)
             mViewWidth = mEast.getWidth();
 
-//        mCurrentDegrees = degrees;
-
-        //180 north 0 south 270 east 90 west
-        float DEGREE = 90.f;
-        float northOffset = ((float) degrees - 180.f) / DEGREE;
-        float westOffset = ((float) degrees - 270) / DEGREE;
-        float eastOffset = ((float) degrees - 90) / DEGREE;
-
-        //south is weird
-        float southOffset = 0.f;
-        if(degrees > 0.f && degrees < 90.f)
-            southOffset = ((float)degrees) / DEGREE;
-        else
-            southOffset = ((float)degrees - 360) / DEGREE;
+        CompassLayout.computeOffsets(degrees, mOffsets, CompassLayout.DEFAULT_WRAP_HYSTERESIS);
 
-        mNorth.setTranslation(northOffset, mViewWidth);
-        mWest.setTranslation(westOffset, mViewWidth);
-        mEast.setTranslation(eastOffset, mViewWidth);
-        mSouth.setTranslation(southOffset, mViewWidth);
+        for(int slot = 0; slot < mSlots.length; slot++)
+            mSlots[slot].setTranslation(mOffsets[slot], mViewWidth);
     }
 
     public void animateIn()
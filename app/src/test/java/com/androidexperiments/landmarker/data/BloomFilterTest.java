@@ -0,0 +1,109 @@
+package com.androidexperiments.landmarker.data;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BloomFilterTest
+{
+    @Test
+    public void neverMissesAnAddedKey()
+    {
+        BloomFilter filter = BloomFilter.create(1000, 0.01);
+        for(int i = 0; i < 1000; i++)
+            filter.add("tile" + i);
+
+        for(int i = 0; i < 1000; i++)
+            assertTrue("tile" + i, filter.mightContain("tile" + i));
+    }
+
+    @Test
+    public void falsePositivesStayNearTheSizedRate()
+    {
+        BloomFilter filter = BloomFilter.create(1000, 0.01);
+        for(int i = 0; i < 1000; i++)
+            filter.add("tile" + i);
+
+        int falsePositives = 0;
+        for(int i = 0; i < 100000; i++) {
+            if(filter.mightContain("other" + i))
+                falsePositives++;
+        }
+
+        //sized for 1%, allow twice that before calling the hashing broken
+        assertTrue("false positive rate " + falsePositives / 100000.0, falsePositives < 2000);
+    }
+
+    @Test
+    public void clearForgetsEverything()
+    {
+        BloomFilter filter = BloomFilter.create(10, 0.01);
+        filter.add("tile");
+        filter.clear();
+
+        assertFalse(filter.mightContain("tile"));
+    }
+
+    @Test
+    public void copyFromTakesTheOtherFiltersKeys()
+    {
+        BloomFilter a = BloomFilter.create(10, 0.01);
+        BloomFilter b = BloomFilter.create(10, 0.01);
+        a.add("tile");
+        b.add("stale");
+
+        b.copyFrom(a);
+
+        assertTrue(b.mightContain("tile"));
+        assertFalse(b.mightContain("stale"));
+    }
+
+    @Test
+    public void copyFromRejectsADifferentSize()
+    {
+        try {
+            BloomFilter.create(10, 0.01).copyFrom(BloomFilter.create(1000, 0.01));
+            fail("sized differently");
+        }
+        catch(IllegalArgumentException expected) {}
+    }
+
+    @Test
+    public void bitsRoundTrip() throws IOException
+    {
+        BloomFilter filter = BloomFilter.create(100, 0.01);
+        for(int i = 0; i < 100; i++)
+            filter.add("tile" + i);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.writeTo(new DataOutputStream(bytes));
+        assertEquals(filter.getBitCount() / 8, bytes.size());
+
+        BloomFilter read = new BloomFilter(filter.getBitCount(), filter.getHashCount());
+        read.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        for(int i = 0; i < 100; i++)
+            assertTrue(read.mightContain("tile" + i));
+    }
+
+    @Test
+    public void bitCountRoundsUpToWholeWords()
+    {
+        assertEquals(128, new BloomFilter(65, 3).getBitCount());
+        assertEquals(3, new BloomFilter(65, 3).getHashCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyFilter() {
+        new BloomFilter(0, 1);
+    }
+}
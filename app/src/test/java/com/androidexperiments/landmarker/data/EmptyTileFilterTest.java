@@ -0,0 +1,222 @@
+package com.androidexperiments.landmarker.data;
+
+import com.androidexperiments.landmarker.util.TimeSource;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EmptyTileFilterTest
+{
+    private static final long TTL_MS = 60 * 60 * 1000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final FakeClock mClock = new FakeClock();
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(mFolder.newFolder("tiles"), "empty_tiles");
+    }
+
+    @Test
+    public void markedTileIsKnownEmpty()
+    {
+        EmptyTileFilter filter = newFilter();
+        assertFalse(filter.isKnownEmpty("a"));
+
+        filter.markEmpty("a");
+
+        assertTrue(filter.isKnownEmpty("a"));
+        assertFalse(filter.isKnownEmpty("b"));
+        assertEquals(1, filter.getMarkedCount());
+        assertEquals(1, filter.getHitCount());
+    }
+
+    @Test
+    public void survivesTheFirstRotationAtHalfTheTtl()
+    {
+        EmptyTileFilter filter = newFilter();
+        filter.markEmpty("a");
+
+        mClock.now += TTL_MS / 2 - 1;
+        assertTrue(filter.isKnownEmpty("a"));
+
+        //rotated into the previous generation
+        mClock.now += 1;
+        assertTrue(filter.isKnownEmpty("a"));
+    }
+
+    @Test
+    public void forgottenAtTheSecondRotation()
+    {
+        EmptyTileFilter filter = newFilter();
+        filter.markEmpty("a");
+
+        mClock.now += TTL_MS / 2;
+        assertTrue(filter.isKnownEmpty("a"));
+
+        mClock.now += TTL_MS / 2 - 1;
+        assertTrue(filter.isKnownEmpty("a"));
+
+        mClock.now += 1;
+        assertFalse(filter.isKnownEmpty("a"));
+    }
+
+    @Test
+    public void markedLateInAGenerationStillGoesAtTheTtl()
+    {
+        EmptyTileFilter filter = newFilter();
+        filter.isKnownEmpty("warm up");
+
+        mClock.now += TTL_MS / 2 - 1;
+        filter.markEmpty("a");
+
+        //only half a ttl old, but its generation started a full ttl ago
+        mClock.now += TTL_MS / 2 + 1;
+        assertFalse(filter.isKnownEmpty("a"));
+    }
+
+    @Test
+    public void aFullTtlWithoutLookupsDropsBothGenerations()
+    {
+        EmptyTileFilter filter = newFilter();
+        filter.markEmpty("a");
+        mClock.now += TTL_MS / 4;
+        filter.markEmpty("b");
+
+        mClock.now += TTL_MS;
+        assertFalse(filter.isKnownEmpty("a"));
+        assertFalse(filter.isKnownEmpty("b"));
+
+        //and the generations restart from now
+        filter.markEmpty("c");
+        mClock.now += TTL_MS / 2;
+        assertTrue(filter.isKnownEmpty("c"));
+    }
+
+    @Test
+    public void secondInstanceReadsTheSameFile()
+    {
+        newFilter().markEmpty("a");
+        assertTrue(mFile.exists());
+
+        EmptyTileFilter reopened = newFilter();
+        assertTrue(reopened.isKnownEmpty("a"));
+        assertFalse(reopened.isKnownEmpty("b"));
+    }
+
+    @Test
+    public void secondInstanceKeepsTheGenerationClock()
+    {
+        newFilter().markEmpty("a");
+
+        //a restart doesn't give the marked tile a fresh ttl
+        mClock.now += TTL_MS;
+        assertFalse(newFilter().isKnownEmpty("a"));
+    }
+
+    @Test
+    public void previousGenerationSurvivesARestart()
+    {
+        EmptyTileFilter filter = newFilter();
+        filter.markEmpty("a");
+        mClock.now += TTL_MS / 2;
+        filter.markEmpty("b");
+
+        EmptyTileFilter reopened = newFilter();
+        assertTrue(reopened.isKnownEmpty("a"));
+        assertTrue(reopened.isKnownEmpty("b"));
+    }
+
+    @Test
+    public void fileSizedDifferentlyIsDiscarded()
+    {
+        new EmptyTileFilter(mFile, TTL_MS, 10000, 0.001, mClock).markEmpty("a");
+
+        EmptyTileFilter filter = newFilter();
+        assertFalse(filter.isKnownEmpty("a"));
+
+        //and the next write replaces it in the new size
+        filter.markEmpty("b");
+        assertTrue(newFilter().isKnownEmpty("b"));
+    }
+
+    @Test
+    public void truncatedFileIsDiscarded() throws IOException
+    {
+        newFilter().markEmpty("a");
+
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(file.length() / 2);
+        }
+        finally {
+            file.close();
+        }
+
+        EmptyTileFilter filter = newFilter();
+        assertFalse(filter.isKnownEmpty("a"));
+
+        filter.markEmpty("b");
+        EmptyTileFilter reopened = newFilter();
+        assertTrue(reopened.isKnownEmpty("b"));
+        assertFalse(reopened.isKnownEmpty("a"));
+    }
+
+    @Test
+    public void garbageFileIsDiscarded() throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write("not a filter".getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+
+        EmptyTileFilter filter = newFilter();
+        assertFalse(filter.isKnownEmpty("a"));
+        filter.markEmpty("a");
+        assertTrue(newFilter().isKnownEmpty("a"));
+    }
+
+    @Test
+    public void clearDeletesTheFile()
+    {
+        EmptyTileFilter filter = newFilter();
+        filter.markEmpty("a");
+
+        filter.clear();
+
+        assertFalse(filter.isKnownEmpty("a"));
+        assertFalse(mFile.exists());
+        assertFalse(newFilter().isKnownEmpty("a"));
+    }
+
+    private EmptyTileFilter newFilter() {
+        return new EmptyTileFilter(mFile, TTL_MS, 100, 0.001, mClock);
+    }
+
+    private static class FakeClock implements TimeSource
+    {
+        long now = 1000000000L;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+}
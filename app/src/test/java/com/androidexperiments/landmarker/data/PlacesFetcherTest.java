@@ -0,0 +1,217 @@
+package com.androidexperiments.landmarker.data;
+
+import com.androidexperiments.landmarker.places.HttpTransport;
+import com.androidexperiments.landmarker.places.NearbySearchClient;
+import com.androidexperiments.landmarker.util.GeoHash;
+import com.androidexperiments.landmarker.util.TimeSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PlacesFetcherTest
+{
+    private static final double LATITUDE = 40.7580;
+    private static final double LONGITUDE = -73.9855;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final UiThread mUiThread = new UiThread();
+    private final RecordingConsumer mConsumer = new RecordingConsumer();
+    private final TimingOutTransport mTransport = new TimingOutTransport();
+
+    private PlacesTileCache mCache;
+    private PlacesFetcher mFetcher;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mCache = new PlacesTileCache(mFolder.newFolder("tiles"), PlacesTileCache.DEFAULT_TTL_MS,
+                PlacesTileCache.DEFAULT_MAX_TILES, GeoHash.DEFAULT_PRECISION, TimeSource.SYSTEM);
+
+        NearbySearchClient client = new NearbySearchClient("key", NearbySearchClient.DEFAULT_BASE_URL, mTransport, 0);
+        mFetcher = new PlacesFetcher(new PlacesRepository(client, mCache), 1, mUiThread);
+        mFetcher.setConsumer(mConsumer);
+    }
+
+    @After
+    public void tearDown() {
+        mFetcher.shutdown();
+    }
+
+    @Test
+    public void timeoutIsDeliveredAsAFailure() throws InterruptedException
+    {
+        assertTrue(mFetcher.fetch(LATITUDE, LONGITUDE, 1000, 60));
+        mUiThread.runUntil(mConsumer, 1);
+
+        assertEquals(1, mTransport.requests.get());
+        assertEquals(1, mConsumer.failures.size());
+        assertTrue(mConsumer.failures.get(0) instanceof SocketTimeoutException);
+        assertFalse("a timed out fetch must not stay in flight", mFetcher.isFetching());
+    }
+
+    @Test
+    public void timeoutFallsBackToTheCachedTile() throws InterruptedException
+    {
+        mCache.put(LATITUDE, LONGITUDE, Arrays.asList(new PlaceRecord("a", "Times Square", LATITUDE, LONGITUDE)));
+
+        mFetcher.fetch(LATITUDE, LONGITUDE, 1000, 60);
+        mUiThread.runUntil(mConsumer, 1);
+
+        assertEquals(1, mConsumer.fallbacks);
+        assertTrue(mConsumer.fallbackCause instanceof SocketTimeoutException);
+        assertEquals(0, mConsumer.failures.size());
+        assertFalse(mFetcher.isFetching());
+    }
+
+    @Test
+    public void theSameTileCanBeFetchedAgainAfterATimeout() throws InterruptedException
+    {
+        mFetcher.fetch(LATITUDE, LONGITUDE, 1000, 60);
+        mUiThread.runUntil(mConsumer, 1);
+
+        //would join the stuck fetch and return false if the first one never finished
+        assertTrue(mFetcher.fetch(LATITUDE, LONGITUDE, 1000, 60));
+        mUiThread.runUntil(mConsumer, 2);
+
+        assertEquals(2, mTransport.requests.get());
+        assertEquals(2, mConsumer.failures.size());
+        assertFalse(mFetcher.isFetching());
+    }
+
+    @Test
+    public void cancelledFetchDeliversNothing() throws InterruptedException
+    {
+        mTransport.block = true;
+        mFetcher.fetch(LATITUDE, LONGITUDE, 1000, 60);
+        mTransport.awaitRequest();
+
+        mFetcher.cancel();
+        assertFalse(mFetcher.isFetching());
+
+        //give the interrupted fetch time to unwind and post anything it was going to
+        mUiThread.runFor(200);
+        assertEquals(0, mConsumer.failures.size());
+        assertEquals(0, mConsumer.fallbacks);
+        assertNull(mConsumer.result);
+    }
+
+    /**
+     * answers every request with a read timeout, or blocks until interrupted
+     */
+    private static class TimingOutTransport implements HttpTransport
+    {
+        final AtomicInteger requests = new AtomicInteger();
+        volatile boolean block = false;
+
+        @Override
+        public InputStream get(String url) throws IOException
+        {
+            synchronized(this) {
+                requests.incrementAndGet();
+                notifyAll();
+            }
+
+            if(block) {
+                try {
+                    Thread.sleep(Long.MAX_VALUE);
+                }
+                catch(InterruptedException e) {
+                    throw new InterruptedIOException("interrupted");
+                }
+            }
+            throw new SocketTimeoutException("read timed out");
+        }
+
+        synchronized void awaitRequest() throws InterruptedException
+        {
+            while(requests.get() == 0)
+                wait();
+        }
+    }
+
+    /**
+     * stands in for the ui thread, the test thread runs whatever the fetcher posts to it
+     */
+    private static class UiThread implements Executor
+    {
+        private final LinkedBlockingQueue<Runnable> mQueue = new LinkedBlockingQueue<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+
+        void runUntil(RecordingConsumer consumer, int finished) throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + 5000;
+            while(consumer.finished() < finished)
+            {
+                Runnable next = mQueue.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                assertNotNull("fetch never finished", next);
+                next.run();
+            }
+        }
+
+        void runFor(long ms) throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + ms;
+            Runnable next;
+            while((next = mQueue.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) != null)
+                next.run();
+        }
+    }
+
+    private static class RecordingConsumer implements PlacesFetcher.Consumer
+    {
+        final List<IOException> failures = new ArrayList<>();
+        List<PlaceRecord> result;
+        int fallbacks = 0;
+        IOException fallbackCause;
+
+        @Override
+        public void onPage(List<PlaceRecord> places, int pageIndex) {}
+
+        @Override
+        public void onResult(List<PlaceRecord> places) {
+            result = places;
+        }
+
+        @Override
+        public void onFallback(List<PlaceRecord> places, boolean stale, IOException cause) {
+            fallbacks++;
+            fallbackCause = cause;
+        }
+
+        @Override
+        public void onFailure(IOException e) {
+            failures.add(e);
+        }
+
+        int finished() {
+            return failures.size() + fallbacks + (result != null ? 1 : 0);
+        }
+    }
+}
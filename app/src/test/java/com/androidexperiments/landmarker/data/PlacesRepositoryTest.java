@@ -0,0 +1,290 @@
+package com.androidexperiments.landmarker.data;
+
+import com.androidexperiments.landmarker.places.NearbyPlacesSource;
+import com.androidexperiments.landmarker.places.PartialResultsException;
+import com.androidexperiments.landmarker.util.GeoHash;
+import com.androidexperiments.landmarker.util.TimeSource;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlacesRepositoryTest
+{
+    private static final long TTL_MS = 60 * 1000L;
+
+    private static final double LATITUDE = 40.7580;
+    private static final double LONGITUDE = -73.9855;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mTileDir;
+    private FakeClock mClock;
+    private FakeSource mSource;
+    private PlacesTileCache mCache;
+    private PlacesRepository mRepository;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        mClock = new FakeClock();
+        mSource = new FakeSource(Arrays.asList(
+                new PlaceRecord("a", "Times Square", 40.7580, -73.9855, PlaceTypes.NONE, 4.5f, 1200),
+                new PlaceRecord(null, "No Id Deli", 40.7585, -73.9850)));
+        mTileDir = mFolder.newFolder("tiles");
+        mCache = new PlacesTileCache(mTileDir, TTL_MS, PlacesTileCache.DEFAULT_MAX_TILES,
+                GeoHash.DEFAULT_PRECISION, mClock);
+        mRepository = new PlacesRepository(mSource, mCache);
+    }
+
+    @Test
+    public void missBeforeAnythingIsFetched()
+    {
+        assertNull(mRepository.getCachedPlaces(LATITUDE, LONGITUDE));
+        assertNull(mRepository.getStalePlaces(LATITUDE, LONGITUDE));
+        assertEquals(0, mSource.calls);
+    }
+
+    @Test
+    public void fetchWritesThroughAndHitsAfterwards() throws IOException
+    {
+        List<PlaceRecord> fetched = mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60);
+        assertEquals(1, mSource.calls);
+        assertEquals(2, fetched.size());
+
+        List<PlaceRecord> cached = mRepository.getCachedPlaces(LATITUDE, LONGITUDE);
+        assertNotNull(cached);
+        assertEquals(2, cached.size());
+        assertSamePlace(fetched.get(0), cached.get(0));
+        assertSamePlace(fetched.get(1), cached.get(1));
+
+        //reading the cache doesn't go back to the source
+        assertEquals(1, mSource.calls);
+    }
+
+    @Test
+    public void hitsAnywhereInTheSameTileOnly() throws IOException
+    {
+        mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60);
+
+        double[] sameTile = nearbyInTile(mCache.getTileKey(LATITUDE, LONGITUDE), true);
+        assertNotNull(mRepository.getCachedPlaces(sameTile[0], sameTile[1]));
+
+        double[] otherTile = nearbyInTile(mCache.getTileKey(LATITUDE, LONGITUDE), false);
+        assertNull(mRepository.getCachedPlaces(otherTile[0], otherTile[1]));
+    }
+
+    @Test
+    public void expiresAfterTtlButStaysAsStaleFallback() throws IOException
+    {
+        mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60);
+
+        mClock.now += TTL_MS;
+        assertNotNull("still fresh at exactly the ttl", mRepository.getCachedPlaces(LATITUDE, LONGITUDE));
+        assertFalse(mRepository.getStalePlaces(LATITUDE, LONGITUDE).stale);
+
+        mClock.now += 1;
+        assertNull(mRepository.getCachedPlaces(LATITUDE, LONGITUDE));
+
+        PlacesTileCache.Tile stale = mRepository.getStalePlaces(LATITUDE, LONGITUDE);
+        assertNotNull(stale);
+        assertTrue(stale.stale);
+        assertEquals(2, stale.places.size());
+    }
+
+    @Test
+    public void refetchAfterExpiryIsFreshAgain() throws IOException
+    {
+        mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60);
+        mClock.now += TTL_MS + 1;
+        assertNull(mRepository.getCachedPlaces(LATITUDE, LONGITUDE));
+
+        mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60);
+        assertEquals(2, mSource.calls);
+        assertNotNull(mRepository.getCachedPlaces(LATITUDE, LONGITUDE));
+    }
+
+    @Test
+    public void corruptTileIsAMiss() throws IOException
+    {
+        mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60);
+
+        File[] tiles = mTileDir.listFiles();
+        assertEquals(1, tiles.length);
+        new FileOutputStream(tiles[0]).close();
+
+        assertNull(mRepository.getCachedPlaces(LATITUDE, LONGITUDE));
+        assertFalse(tiles[0].exists());
+    }
+
+    @Test
+    public void partialResultsAreNotCached() throws IOException
+    {
+        mSource.failure = new IOException("shard failed");
+
+        try {
+            mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60);
+            fail("expected partial results");
+        }
+        catch(PartialResultsException e) {
+            assertEquals(2, e.getPlaces().size());
+        }
+
+        assertNull(mRepository.getCachedPlaces(LATITUDE, LONGITUDE));
+        assertNull(mRepository.getStalePlaces(LATITUDE, LONGITUDE));
+    }
+
+    @Test
+    public void partialResultsDontReplaceACachedTile() throws IOException
+    {
+        mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60);
+
+        mSource.failure = new IOException("shard failed");
+        try {
+            mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60);
+            fail("expected partial results");
+        }
+        catch(PartialResultsException expected) {}
+
+        assertEquals(2, mRepository.getCachedPlaces(LATITUDE, LONGITUDE).size());
+    }
+
+    @Test
+    public void completeEmptySearchMarksTheTileEmpty() throws IOException
+    {
+        EmptyTileFilter emptyTiles = newEmptyTileFilter();
+        mSource.places.clear();
+        mRepository = new PlacesRepository(mSource, mCache, emptyTiles);
+
+        assertEquals(0, mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60).size());
+        assertTrue(emptyTiles.isKnownEmpty(mCache.getTileKey(LATITUDE, LONGITUDE)));
+
+        //known empty, not searched again
+        mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60);
+        assertEquals(1, mSource.calls);
+    }
+
+    @Test
+    public void partialEmptySearchDoesntMarkTheTileEmpty() throws IOException
+    {
+        EmptyTileFilter emptyTiles = newEmptyTileFilter();
+        mSource.places.clear();
+        mSource.failure = new IOException("shard failed");
+        mRepository = new PlacesRepository(mSource, mCache, emptyTiles);
+
+        try {
+            mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60);
+            fail("expected partial results");
+        }
+        catch(PartialResultsException e) {
+            assertEquals(0, e.getPlaces().size());
+        }
+
+        assertFalse(emptyTiles.isKnownEmpty(mCache.getTileKey(LATITUDE, LONGITUDE)));
+        assertEquals(0, emptyTiles.getMarkedCount());
+    }
+
+    @Test
+    public void failedSearchDoesntMarkTheTileEmpty() throws IOException
+    {
+        EmptyTileFilter emptyTiles = newEmptyTileFilter();
+        mRepository = new PlacesRepository(new NearbyPlacesSource() {
+            @Override
+            public List<PlaceRecord> getNearbyPlaces(double latitude, double longitude, double radius, int limit,
+                                                     OnPageListener listener) throws IOException {
+                throw new IOException("down");
+            }
+        }, mCache, emptyTiles);
+
+        try {
+            mRepository.fetchPlaces(LATITUDE, LONGITUDE, 1000, 60);
+            fail("expected the failure");
+        }
+        catch(IOException expected) {}
+
+        assertEquals(0, emptyTiles.getMarkedCount());
+    }
+
+    private EmptyTileFilter newEmptyTileFilter() throws IOException
+    {
+        return new EmptyTileFilter(new File(mFolder.newFolder("empty"), "empty_tiles"), EmptyTileFilter.DEFAULT_TTL_MS,
+                EmptyTileFilter.DEFAULT_EXPECTED_TILES, EmptyTileFilter.DEFAULT_FALSE_POSITIVE_RATE, mClock);
+    }
+
+    private static void assertSamePlace(PlaceRecord expected, PlaceRecord actual)
+    {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+        assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+        assertEquals(expected.getTypeFlags(), actual.getTypeFlags());
+        assertEquals(expected.getRating(), actual.getRating(), 0);
+        assertEquals(expected.getRatingCount(), actual.getRatingCount());
+    }
+
+    /**
+     * a point a few meters at a time away from the test location, inside its tile or just out of it
+     */
+    private double[] nearbyInTile(String tile, boolean inside)
+    {
+        for(int step = 1; step < 10000; step++)
+        {
+            double latitude = LATITUDE + step * 0.00001;
+            boolean same = mCache.getTileKey(latitude, LONGITUDE).equals(tile);
+            if(same == inside)
+                return new double[] { latitude, LONGITUDE };
+        }
+        throw new AssertionError("no point found");
+    }
+
+    private static class FakeClock implements TimeSource
+    {
+        long now = 1000000L;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    private static class FakeSource implements NearbyPlacesSource
+    {
+        final List<PlaceRecord> places;
+        int calls = 0;
+
+        //set to come back partial, with every place but failing this way
+        IOException failure;
+
+        FakeSource(List<PlaceRecord> places) {
+            this.places = new ArrayList<>(places);
+        }
+
+        @Override
+        public List<PlaceRecord> getNearbyPlaces(double latitude, double longitude, double radius, int limit,
+                                                 OnPageListener listener) throws IOException
+        {
+            calls++;
+            if(listener != null)
+                listener.onPage(places, 0);
+            if(failure != null)
+                throw new PartialResultsException(new ArrayList<>(places), failure);
+            return new ArrayList<>(places);
+        }
+    }
+}
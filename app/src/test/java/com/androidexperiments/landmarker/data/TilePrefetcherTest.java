@@ -0,0 +1,118 @@
+package com.androidexperiments.landmarker.data;
+
+import com.androidexperiments.landmarker.places.NearbyPlacesSource;
+import com.androidexperiments.landmarker.util.GeoHash;
+import com.androidexperiments.landmarker.util.GeoKernel;
+import com.androidexperiments.landmarker.util.TimeSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class TilePrefetcherTest
+{
+    private static final double LATITUDE = 40.7580;
+    private static final double LONGITUDE = -73.9855;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final FakeClock mClock = new FakeClock();
+    private final LinkedBlockingQueue<Runnable> mDelivery = new LinkedBlockingQueue<>();
+    private final AtomicInteger mSearches = new AtomicInteger();
+
+    private TilePrefetcher mPrefetcher;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        PlacesTileCache cache = new PlacesTileCache(mFolder.newFolder("tiles"), PlacesTileCache.DEFAULT_TTL_MS,
+                PlacesTileCache.DEFAULT_MAX_TILES, GeoHash.DEFAULT_PRECISION, mClock);
+
+        NearbyPlacesSource timingOut = new NearbyPlacesSource() {
+            @Override
+            public List<PlaceRecord> getNearbyPlaces(double latitude, double longitude, double radius, int limit,
+                                                     OnPageListener listener) throws IOException
+            {
+                mSearches.incrementAndGet();
+                throw new SocketTimeoutException("read timed out");
+            }
+        };
+
+        mPrefetcher = new TilePrefetcher(new PlacesRepository(timingOut, cache), null, 1, 1000, 60,
+                0, TilePrefetcher.DEFAULT_MAX_AGE_MS, mClock, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mDelivery.add(command);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mPrefetcher.shutdown();
+    }
+
+    @Test
+    public void timeoutIsCountedAndTheNextPrefetchCanStart() throws InterruptedException
+    {
+        walkNorth(0);
+        assertEquals(1, mPrefetcher.getStats().started);
+        deliverOne();
+
+        TilePrefetcher.Stats stats = mPrefetcher.getStats();
+        assertEquals(1, stats.failed);
+        assertEquals(0, stats.cancelled);
+
+        //a prefetch stuck on the timed out request would keep this from starting
+        walkNorth(2);
+        assertEquals(2, mPrefetcher.getStats().started);
+        deliverOne();
+
+        assertEquals(2, mPrefetcher.getStats().failed);
+        assertEquals(2, mSearches.get());
+    }
+
+    /**
+     * two fixes 30m apart heading north at a walking pace, enough for a heading
+     */
+    private void walkNorth(int step)
+    {
+        for(int i = step; i < step + 2; i++)
+        {
+            double[] point = GeoKernel.offset(LATITUDE, LONGITUDE, 0, 30 * i);
+            mPrefetcher.onLocation(point[0], point[1], true);
+            mClock.now += 20 * 1000;
+        }
+    }
+
+    private void deliverOne() throws InterruptedException
+    {
+        Runnable next = mDelivery.poll(5, TimeUnit.SECONDS);
+        assertNotNull("prefetch never finished", next);
+        next.run();
+    }
+
+    private static class FakeClock implements TimeSource
+    {
+        long now = 1000000L;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+}
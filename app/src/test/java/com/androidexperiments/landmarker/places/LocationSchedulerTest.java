@@ -0,0 +1,134 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.places.LocationScheduler.Mode;
+import com.androidexperiments.landmarker.places.LocationScheduler.Reason;
+import com.androidexperiments.landmarker.util.TimeSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocationSchedulerTest
+{
+    private static final double LATITUDE = 48.8584;
+    private static final double LONGITUDE = 2.2945;
+
+    private static final float GPS_ACCURACY = 8;
+    private static final float WIFI_ACCURACY = 80;
+    private static final float CELL_ACCURACY = 800;
+
+    private final FakeClock mClock = new FakeClock();
+    private LocationScheduler mScheduler;
+
+    @Before
+    public void setUp()
+    {
+        mScheduler = new LocationScheduler(mClock);
+        assertEquals(Mode.ACQUIRING, mScheduler.getMode());
+        assertTrue(mScheduler.setRefreshPending(false));
+        assertEquals(Mode.MOVING, mScheduler.getMode());
+    }
+
+    @Test
+    public void movingThenStationaryThenIdle()
+    {
+        fix(GPS_ACCURACY, 1.2f);
+        assertEquals(Mode.MOVING, mScheduler.getMode());
+
+        //a pause, too early to call it a stop
+        fix(GPS_ACCURACY, 0);
+        advanceAndFix(LocationScheduler.STATIONARY_AFTER_MS - 1, GPS_ACCURACY, 0);
+        assertEquals(Mode.MOVING, mScheduler.getMode());
+
+        advanceAndFix(1, GPS_ACCURACY, 0);
+        assertEquals(Mode.STATIONARY, mScheduler.getMode());
+        assertEquals(Reason.STOPPED, mScheduler.getReason());
+
+        advanceAndFix(LocationScheduler.IDLE_AFTER_MS - LocationScheduler.STATIONARY_AFTER_MS, WIFI_ACCURACY, 0);
+        assertEquals(Mode.IDLE, mScheduler.getMode());
+        assertEquals(Reason.STOPPED_LONG, mScheduler.getReason());
+
+        //setting off again goes straight back to gps
+        assertTrue(advanceAndFix(1000, CELL_ACCURACY, 1.5f));
+        assertEquals(Mode.MOVING, mScheduler.getMode());
+    }
+
+    @Test
+    public void poorGpsFixEscalatesUntilTheTimeout()
+    {
+        assertTrue(fix(WIFI_ACCURACY, 1.2f));
+        assertEquals(Mode.ACQUIRING, mScheduler.getMode());
+        assertEquals(Reason.POOR_ACCURACY, mScheduler.getReason());
+
+        //indoors, it isn't getting any better
+        assertFalse(advanceAndFix(LocationScheduler.ACQUIRE_TIMEOUT_MS - 1, WIFI_ACCURACY, 1.2f));
+        assertTrue(advanceAndFix(1, WIFI_ACCURACY, 1.2f));
+        assertEquals(Mode.MOVING, mScheduler.getMode());
+
+        //and doesn't go back to acquiring until a good fix has come and gone
+        assertFalse(advanceAndFix(5000, WIFI_ACCURACY, 1.2f));
+        assertFalse(advanceAndFix(5000, GPS_ACCURACY, 1.2f));
+        assertTrue(advanceAndFix(5000, WIFI_ACCURACY, 1.2f));
+        assertEquals(Mode.ACQUIRING, mScheduler.getMode());
+    }
+
+    @Test
+    public void refreshPendingWins()
+    {
+        fix(GPS_ACCURACY, 1.2f);
+        assertTrue(mScheduler.setRefreshPending(true));
+        assertEquals(Mode.ACQUIRING, mScheduler.getMode());
+        assertEquals(Reason.REFRESH_PENDING, mScheduler.getReason());
+
+        assertTrue(mScheduler.setRefreshPending(false));
+        assertEquals(Mode.MOVING, mScheduler.getMode());
+    }
+
+    @Test
+    public void noOscillationWhileStopped()
+    {
+        fix(GPS_ACCURACY, 0);
+        advanceAndFix(LocationScheduler.STATIONARY_AFTER_MS, GPS_ACCURACY, 0);
+        assertEquals(Mode.STATIONARY, mScheduler.getMode());
+        int transitions = mScheduler.getStats().transitions;
+
+        //wifi/cell fixes are poor by nature, with the odd gps fix from another app in between
+        float[] accuracies = { WIFI_ACCURACY, GPS_ACCURACY, CELL_ACCURACY, WIFI_ACCURACY };
+        long stationaryFor = LocationScheduler.IDLE_AFTER_MS - LocationScheduler.STATIONARY_AFTER_MS;
+        for(long t = 10000; t < stationaryFor; t += 10000)
+            assertFalse(advanceAndFix(10000, accuracies[(int) (t / 10000) % accuracies.length], 0));
+
+        assertTrue(advanceAndFix(stationaryFor % 10000 + 10000, WIFI_ACCURACY, 0));
+        assertEquals(Mode.IDLE, mScheduler.getMode());
+
+        for(int i = 0; i < 60; i++)
+            assertFalse(advanceAndFix(30000, accuracies[i % accuracies.length], 0));
+
+        LocationScheduler.Stats stats = mScheduler.getStats();
+        assertEquals("only stationary -> idle", transitions + 1, stats.transitions);
+        assertEquals(1, stats.entered[Mode.ACQUIRING.ordinal()]);
+    }
+
+    private boolean fix(float accuracy, float speed) {
+        return mScheduler.onLocation(LATITUDE, LONGITUDE, accuracy, true, speed);
+    }
+
+    private boolean advanceAndFix(long ms, float accuracy, float speed)
+    {
+        mClock.now += ms;
+        return fix(accuracy, speed);
+    }
+
+    private static class FakeClock implements TimeSource
+    {
+        long now = 1000000L;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.util.TimeSource;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest
+{
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final FakeClock mClock = new FakeClock();
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(mFolder.newFolder("budget"), "request_budget");
+    }
+
+    @Test
+    public void grantsDontWriteEveryTime()
+    {
+        RateLimiter limiter = newLimiter();
+        for(int i = 0; i < 10; i++)
+            assertEquals(0, limiter.tryAcquire(RateLimiter.Lane.USER));
+
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void flushPersistsTheDaysUsage()
+    {
+        RateLimiter limiter = newLimiter();
+        for(int i = 0; i < 3; i++)
+            limiter.tryAcquire(RateLimiter.Lane.USER);
+        limiter.flush();
+        assertTrue(mFile.exists());
+
+        assertEquals(3, newLimiter().getStats().usedToday);
+    }
+
+    @Test
+    public void flushWithNothingNewDoesntWrite()
+    {
+        RateLimiter limiter = newLimiter();
+        limiter.flush();
+        assertFalse(mFile.exists());
+
+        limiter.tryAcquire(RateLimiter.Lane.USER);
+        limiter.flush();
+        assertTrue(mFile.delete());
+
+        limiter.flush();
+        assertFalse("nothing granted since the last write", mFile.exists());
+    }
+
+    @Test
+    public void savesOnceTheIntervalHasPassed()
+    {
+        RateLimiter limiter = newLimiter();
+        limiter.tryAcquire(RateLimiter.Lane.USER);
+        assertFalse(mFile.exists());
+
+        mClock.now += RateLimiter.SAVE_INTERVAL_MS;
+        limiter.tryAcquire(RateLimiter.Lane.USER);
+        assertTrue(mFile.exists());
+        assertEquals(2, newLimiter().getStats().usedToday);
+    }
+
+    private RateLimiter newLimiter() {
+        return new RateLimiter(100, 60, 1000, 0, mFile, mClock);
+    }
+
+    private static class FakeClock implements TimeSource
+    {
+        //midday, so moving the clock forward a few minutes stays in the same day
+        long now = 1000L * 24 * 60 * 60 * 1000 + 12 * 60 * 60 * 1000L;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+}
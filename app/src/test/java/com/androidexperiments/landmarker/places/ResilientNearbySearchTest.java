@@ -0,0 +1,166 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.util.TimeSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResilientNearbySearchTest
+{
+    private static final long OPEN_MS = 30000;
+
+    private FakeClock mClock;
+    private CircuitBreaker mBreaker;
+    private ScriptedSource mSource;
+    private ResilientNearbySearch mSearch;
+
+    @Before
+    public void setUp()
+    {
+        mClock = new FakeClock();
+        mBreaker = new CircuitBreaker(2, OPEN_MS, mClock);
+        mSource = new ScriptedSource();
+        mSearch = new ResilientNearbySearch(mSource, mBreaker, 3, 500, 8000, new Random(0)) {
+            @Override
+            protected void sleep(long ms) {}
+        };
+    }
+
+    @Test
+    public void timeoutsAreRetriedAndCountAgainstTheBreaker() throws IOException
+    {
+        mSource.failures.add(new SocketTimeoutException("read timed out"));
+
+        assertEquals(1, mSearch.getNearbyPlaces(0, 0, 1000, 60, null).size());
+        assertEquals(2, mSource.calls);
+        assertEquals(1, mSearch.getStats().failures);
+        assertEquals(1, mSearch.getStats().retries);
+    }
+
+    @Test
+    public void repeatedTimeoutsOpenTheBreaker()
+    {
+        for(int i = 0; i < 3; i++)
+            mSource.failures.add(new SocketTimeoutException("read timed out"));
+
+        try {
+            mSearch.getNearbyPlaces(0, 0, 1000, 60, null);
+            fail("expected the breaker to open");
+        }
+        catch(CircuitOpenException expected) {}
+        catch(IOException e) {
+            fail("unexpected " + e);
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, mBreaker.getState());
+        assertEquals(2, mSource.calls);
+    }
+
+    @Test
+    public void interruptionIsNotAFailure()
+    {
+        InterruptedIOException interrupted = new InterruptedIOException("cancelled");
+        mSource.failures.add(interrupted);
+
+        try {
+            mSearch.getNearbyPlaces(0, 0, 1000, 60, null);
+            fail("expected the interruption");
+        }
+        catch(IOException e) {
+            assertSame(interrupted, e);
+        }
+
+        assertEquals(1, mSource.calls);
+        assertEquals(0, mBreaker.getConsecutiveFailures());
+    }
+
+    @Test
+    public void trialThatThrowsARuntimeExceptionFreesTheSlot() throws IOException
+    {
+        openBreaker();
+        mClock.now += OPEN_MS;
+
+        mSource.runtimeFailure = new IllegalStateException("bad response");
+        try {
+            mSearch.getNearbyPlaces(0, 0, 1000, 60, null);
+            fail("expected the runtime exception");
+        }
+        catch(IllegalStateException expected) {}
+
+        //another trial goes through rather than being refused forever
+        assertEquals(CircuitBreaker.State.HALF_OPEN, mBreaker.getState());
+        assertEquals(1, mSearch.getNearbyPlaces(0, 0, 1000, 60, null).size());
+        assertEquals(CircuitBreaker.State.CLOSED, mBreaker.getState());
+    }
+
+    @Test
+    public void halfOpenLetsOneTrialThrough()
+    {
+        openBreaker();
+        mClock.now += OPEN_MS;
+
+        assertTrue(mBreaker.allowRequest());
+        assertFalse(mBreaker.allowRequest());
+        mBreaker.onAbandoned();
+        assertTrue(mBreaker.allowRequest());
+    }
+
+    private void openBreaker()
+    {
+        mBreaker.onFailure();
+        mBreaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, mBreaker.getState());
+    }
+
+    private static class FakeClock implements TimeSource
+    {
+        long now = 0;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    /**
+     * fails with each queued exception in turn, then answers with one place
+     */
+    private static class ScriptedSource implements NearbyPlacesSource
+    {
+        final List<IOException> failures = new ArrayList<>();
+        RuntimeException runtimeFailure;
+        int calls = 0;
+
+        @Override
+        public List<PlaceRecord> getNearbyPlaces(double latitude, double longitude, double radius, int limit,
+                                                 OnPageListener listener) throws IOException
+        {
+            calls++;
+            if(runtimeFailure != null) {
+                RuntimeException e = runtimeFailure;
+                runtimeFailure = null;
+                throw e;
+            }
+            if(!failures.isEmpty())
+                throw failures.remove(0);
+
+            List<PlaceRecord> places = new ArrayList<>();
+            places.add(new PlaceRecord("a", "Alpha", latitude, longitude));
+            return places;
+        }
+    }
+}
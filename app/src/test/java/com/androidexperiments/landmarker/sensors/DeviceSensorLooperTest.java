@@ -0,0 +1,144 @@
+package com.androidexperiments.landmarker.sensors;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Drives the dispatch path straight from a plain thread, standing in for the sensor thread,
+ * while other threads register and unregister listeners as fast as they can.
+ */
+public class DeviceSensorLooperTest {
+    private static final int EVENTS = 500000;
+    private static final int STEADY_LISTENERS = 4;
+    private static final int CHURN_THREADS = 4;
+    private static final int CHURN_LISTENERS_PER_THREAD = 8;
+
+    @Test(timeout = 60000)
+    public void concurrentRegistrationDuringHighRateDispatch() throws InterruptedException {
+        final DeviceSensorLooper looper = new DeviceSensorLooper(null);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        final CountingListener[] steady = new CountingListener[STEADY_LISTENERS];
+        for (int i = 0; i < steady.length; i++) {
+            steady[i] = new CountingListener();
+            looper.registerListener(steady[i]);
+        }
+
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        final List<CountingListener> churned = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    go.await();
+                    for (int i = 0; i < EVENTS; i++) {
+                        looper.dispatchSensorChanged(null);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    dispatched.countDown();
+                }
+            }
+        }, "dispatch"));
+
+        for (int t = 0; t < CHURN_THREADS; t++) {
+            final CountingListener[] own = new CountingListener[CHURN_LISTENERS_PER_THREAD];
+            for (int i = 0; i < own.length; i++) {
+                own[i] = new CountingListener();
+                churned.add(own[i]);
+            }
+
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                        while (dispatched.getCount() > 0) {
+                            for (CountingListener listener : own) {
+                                looper.registerListener(listener);
+                            }
+                            for (CountingListener listener : own) {
+                                looper.unregisterListener(listener);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }, "churn-" + t));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull("dispatch or registration threw", failure.get());
+
+        // A registration lost to a racing copy would drop one of these somewhere along the way.
+        for (CountingListener listener : steady) {
+            assertEquals(EVENTS, listener.events);
+        }
+
+        // And a lost unregistration would leave a churned listener behind to get this one.
+        long[] before = new long[churned.size()];
+        for (int i = 0; i < before.length; i++) {
+            before[i] = churned.get(i).events;
+        }
+        looper.dispatchSensorChanged(null);
+        for (int i = 0; i < before.length; i++) {
+            assertEquals(before[i], churned.get(i).events);
+        }
+        for (CountingListener listener : steady) {
+            assertEquals(EVENTS + 1, listener.events);
+        }
+    }
+
+    @Test
+    public void accuracyChangesReachEveryListener() {
+        DeviceSensorLooper looper = new DeviceSensorLooper(null);
+        CountingListener first = new CountingListener();
+        CountingListener second = new CountingListener();
+        looper.registerListener(first);
+        looper.registerListener(second);
+        looper.unregisterListener(first);
+
+        looper.dispatchAccuracyChanged(null, 0);
+        assertEquals(0, first.accuracyChanges);
+        assertEquals(1, second.accuracyChanges);
+    }
+
+    /** Only ever called from the dispatching thread, read after joining it. */
+    private static class CountingListener implements SensorEventListener {
+        long events;
+        int accuracyChanges;
+
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            events++;
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+            accuracyChanges++;
+        }
+    }
+}
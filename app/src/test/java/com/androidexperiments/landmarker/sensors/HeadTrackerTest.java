@@ -0,0 +1,102 @@
+package com.androidexperiments.landmarker.sensors;
+
+import android.hardware.Sensor;
+import android.view.Surface;
+
+import com.google.vrtoolkit.cardboard.sensors.Clock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Plain jvm, so android.opengl.Matrix is stubbed out to do nothing under the gradle unit test
+ * setup. What's measured is everything around the matrix math: the pose copy, the neck model
+ * check and the rotation lookup.
+ */
+public class HeadTrackerTest {
+    private static final int WARMUP_CALLS = 20000;
+    private static final int MEASURED_CALLS = 100000;
+
+    // Room for the measuring itself, one allocation per call would be megabytes.
+    private static final long ALLOCATION_SLACK_BYTES = 4096;
+
+    private HeadTracker headTracker;
+    private int headings;
+    private long nowNs = 1000000000L;
+
+    @Before
+    public void setUp() {
+        Clock clock = new Clock() {
+            @Override
+            public long nanoTime() {
+                return nowNs;
+            }
+        };
+
+        headTracker = new HeadTracker(null, clock, null) {
+            @Override
+            int getDisplayRotation() {
+                return Surface.ROTATION_0;
+            }
+        };
+        headTracker.addHeadingListener(new HeadTracker.OnHeadingChangedListener() {
+            @Override
+            public void onHeadingChanged(float yawDegrees, long timestampNs) {
+                headings++;
+            }
+        }, 0, 0);
+
+        // Lying flat and still, enough for the tracker to publish a pose.
+        for (int i = 0; i < 10; i++) {
+            nowNs += 10000000L;
+            headTracker.processSample(Sensor.TYPE_ACCELEROMETER, new float[] {0, 0, 9.81f}, 3, nowNs);
+            headTracker.processSample(Sensor.TYPE_GYROSCOPE, new float[] {0, 0, 0}, 3, nowNs);
+        }
+    }
+
+    @Test
+    public void getLastHeadViewDoesntAllocate() {
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        assumeTrue("jvm doesn't count allocations", threads != null);
+
+        // Only a published pose goes down the whole path.
+        assertTrue(headings > 0);
+
+        float[] headView = new float[16];
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            headTracker.getLastHeadView(headView, 0);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            headTracker.getLastHeadView(headView, 0);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(allocated + " bytes over " + MEASURED_CALLS + " calls", allocated < ALLOCATION_SLACK_BYTES);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getLastHeadViewChecksTheOffset() {
+        headTracker.getLastHeadView(new float[16], 1);
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) threads;
+        if (!counting.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        counting.setThreadAllocatedMemoryEnabled(true);
+        return counting;
+    }
+}
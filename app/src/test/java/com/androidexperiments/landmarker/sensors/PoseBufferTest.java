@@ -0,0 +1,119 @@
+package com.androidexperiments.landmarker.sensors;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PoseBufferTest {
+    // Every value a float holds exactly, so a matrix of one counter reads back as all equal.
+    private static final int PUBLISHES = 2000000;
+    private static final int READERS = 3;
+
+    @Test
+    public void nothingToReadUntilPublishedOrAfterClear() {
+        PoseBuffer buffer = new PoseBuffer();
+        float[] out = new float[16];
+        assertFalse(buffer.read(out, 0));
+
+        buffer.publish(filled(7));
+        assertTrue(buffer.read(out, 0));
+        assertEquals(7.f, out[15], 0);
+
+        buffer.clear();
+        assertFalse(buffer.read(out, 0));
+    }
+
+    @Test
+    public void readsTheLatestAtAnOffset() {
+        PoseBuffer buffer = new PoseBuffer();
+        buffer.publish(filled(1));
+        buffer.publish(filled(2));
+        buffer.publish(filled(3));
+
+        float[] out = new float[20];
+        assertTrue(buffer.read(out, 4));
+        assertEquals(0.f, out[3], 0);
+        for (int i = 4; i < 20; i++) {
+            assertEquals(3.f, out[i], 0);
+        }
+    }
+
+    /**
+     * One writer publishes matrices whose 16 values all equal a counter while readers copy as
+     * fast as they can. A torn copy would mix two counters, and with the writer only counting
+     * up a reader should never see one go backwards either.
+     */
+    @Test(timeout = 60000)
+    public void readersNeverSeeATornPose() throws InterruptedException {
+        final PoseBuffer buffer = new PoseBuffer();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicBoolean done = new AtomicBoolean();
+        final int[] reads = new int[READERS];
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            final int reader = r;
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    float[] out = new float[16];
+                    float last = -1;
+                    try {
+                        while (!done.get()) {
+                            if (!buffer.read(out, 0)) {
+                                continue;
+                            }
+                            for (int i = 1; i < out.length; i++) {
+                                if (out[i] != out[0]) {
+                                    throw new AssertionError("torn pose " + Arrays.toString(out));
+                                }
+                            }
+                            if (out[0] < last) {
+                                throw new AssertionError("went back from " + last + " to " + out[0]);
+                            }
+                            last = out[0];
+                            reads[reader]++;
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }, "reader-" + r));
+        }
+
+        for (Thread reader : readers) {
+            reader.start();
+        }
+
+        double[] matrix = new double[16];
+        for (int k = 0; k < PUBLISHES && failure.get() == null; k++) {
+            Arrays.fill(matrix, k);
+            buffer.publish(matrix);
+        }
+
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull("a reader saw a bad pose", failure.get());
+        for (int r = 0; r < READERS; r++) {
+            assertTrue("reader " + r + " never got a pose", reads[r] > 0);
+        }
+    }
+
+    private static double[] filled(double value) {
+        double[] matrix = new double[16];
+        Arrays.fill(matrix, value);
+        return matrix;
+    }
+}
@@ -0,0 +1,192 @@
+package com.androidexperiments.landmarker.sensors;
+
+import android.hardware.Sensor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SensorEventMergerTest {
+    private static final long MS = 1000000L;
+    private static final long MAX_HOLD_NS = 50 * MS;
+
+    private final Recorder recorder = new Recorder();
+
+    @Test
+    public void burstsComeOutInGlobalTimestampOrder() {
+        SensorEventMerger merger = new SensorEventMerger(recorder, 64, 1000 * MS);
+
+        // Each sensor's FIFO drained on its own, a burst at a time.
+        List<Long> sent = new ArrayList<>();
+        sent.addAll(burst(merger, Sensor.TYPE_ACCELEROMETER, 0));
+        sent.addAll(burst(merger, Sensor.TYPE_GYROSCOPE, 5 * MS));
+        sent.addAll(burst(merger, Sensor.TYPE_MAGNETIC_FIELD, 2 * MS));
+
+        assertSorted(recorder.timestamps);
+
+        // Everything up to the slowest sensor's newest event is safe to pass on, the rest waits.
+        List<Long> expected = new ArrayList<>();
+        for (long timestamp : sent) {
+            if (timestamp <= 90 * MS) {
+                expected.add(timestamp);
+            }
+        }
+        Collections.sort(expected);
+        assertEquals(expected, recorder.timestamps);
+    }
+
+    @Test
+    public void nothingIsReleasedAheadOfASensorThatIsBehind() {
+        SensorEventMerger merger = new SensorEventMerger(recorder, 64, 1000 * MS);
+        burst(merger, Sensor.TYPE_ACCELEROMETER, 0);
+        burst(merger, Sensor.TYPE_GYROSCOPE, 0);
+
+        assertEquals(0, recorder.timestamps.size());
+    }
+
+    @Test
+    public void silentSensorIsReleasedAfterMaxHold() {
+        SensorEventMerger merger = new SensorEventMerger(recorder, 64, MAX_HOLD_NS);
+
+        // No magnetometer at all, accelerometer and gyroscope interleaved every 10ms.
+        for (long time = 0; time < MAX_HOLD_NS; time += 10 * MS) {
+            add(merger, Sensor.TYPE_ACCELEROMETER, time);
+            add(merger, Sensor.TYPE_GYROSCOPE, time + 1);
+        }
+        add(merger, Sensor.TYPE_ACCELEROMETER, MAX_HOLD_NS);
+        assertEquals(0, recorder.timestamps.size());
+
+        // Past the hold the magnetometer stops being waited on.
+        add(merger, Sensor.TYPE_ACCELEROMETER, MAX_HOLD_NS + 1);
+        assertTrue(recorder.timestamps.size() > 0);
+        assertEquals(0L, (long) recorder.timestamps.get(0));
+        assertSorted(recorder.timestamps);
+    }
+
+    @Test
+    public void sensorThatStopsReportingIsReleasedAfterMaxHold() {
+        SensorEventMerger merger = new SensorEventMerger(recorder, 64, MAX_HOLD_NS);
+        add(merger, Sensor.TYPE_MAGNETIC_FIELD, 0);
+        add(merger, Sensor.TYPE_ACCELEROMETER, 1);
+        add(merger, Sensor.TYPE_GYROSCOPE, 2);
+        // Everyone has caught up to the magnetometer's only event.
+        assertEquals(1, recorder.timestamps.size());
+
+        add(merger, Sensor.TYPE_ACCELEROMETER, MAX_HOLD_NS);
+        add(merger, Sensor.TYPE_GYROSCOPE, MAX_HOLD_NS);
+        assertEquals(1, recorder.timestamps.size());
+
+        add(merger, Sensor.TYPE_ACCELEROMETER, MAX_HOLD_NS + 1);
+        assertEquals(5, recorder.timestamps.size());
+        assertEquals(MAX_HOLD_NS, (long) recorder.timestamps.get(4));
+        assertSorted(recorder.timestamps);
+    }
+
+    @Test
+    public void fullRingReleasesEarly() {
+        SensorEventMerger merger = new SensorEventMerger(recorder, 4, 1000 * MS);
+        for (int i = 0; i < 4; i++) {
+            add(merger, Sensor.TYPE_ACCELEROMETER, i * MS);
+        }
+        assertEquals(0, recorder.timestamps.size());
+
+        add(merger, Sensor.TYPE_ACCELEROMETER, 4 * MS);
+        assertEquals(1, recorder.timestamps.size());
+        assertEquals(0L, (long) recorder.timestamps.get(0));
+
+        add(merger, Sensor.TYPE_ACCELEROMETER, 5 * MS);
+        assertEquals(2, recorder.timestamps.size());
+        assertEquals(MS, (long) recorder.timestamps.get(1));
+    }
+
+    @Test
+    public void fullRingReleasesTheOldestOfAnySensor() {
+        SensorEventMerger merger = new SensorEventMerger(recorder, 2, 1000 * MS);
+        add(merger, Sensor.TYPE_GYROSCOPE, 0);
+        add(merger, Sensor.TYPE_ACCELEROMETER, 10 * MS);
+        add(merger, Sensor.TYPE_ACCELEROMETER, 11 * MS);
+
+        // The accelerometer ring is full, but the gyroscope's event is older.
+        add(merger, Sensor.TYPE_ACCELEROMETER, 12 * MS);
+        assertEquals(0L, (long) recorder.timestamps.get(0));
+        assertSorted(recorder.timestamps);
+    }
+
+    @Test
+    public void clearDropsHeldEventsAndStartsOver() {
+        SensorEventMerger merger = new SensorEventMerger(recorder, 64, MAX_HOLD_NS);
+        add(merger, Sensor.TYPE_ACCELEROMETER, 0);
+        add(merger, Sensor.TYPE_GYROSCOPE, 1);
+
+        merger.clear();
+
+        // A fresh start, not a sensor that has been quiet since before the clear.
+        long restart = 10 * MAX_HOLD_NS;
+        add(merger, Sensor.TYPE_ACCELEROMETER, restart);
+        assertEquals(0, recorder.timestamps.size());
+
+        add(merger, Sensor.TYPE_GYROSCOPE, restart + 1);
+        add(merger, Sensor.TYPE_MAGNETIC_FIELD, restart + 2);
+        assertEquals(1, recorder.timestamps.size());
+        assertEquals(restart, (long) recorder.timestamps.get(0));
+    }
+
+    @Test
+    public void valuesAreCopiedAndOtherSensorsIgnored() {
+        SensorEventMerger merger = new SensorEventMerger(recorder, 64, MAX_HOLD_NS);
+        float[] reused = {1, 2, 3};
+        merger.add(Sensor.TYPE_GYROSCOPE_UNCALIBRATED, 0, reused);
+        reused[0] = 9;
+        merger.add(Sensor.TYPE_LIGHT, 1, reused);
+        add(merger, Sensor.TYPE_ACCELEROMETER, 2);
+        add(merger, Sensor.TYPE_MAGNETIC_FIELD, 3);
+        add(merger, Sensor.TYPE_GYROSCOPE, 4);
+
+        assertEquals(2, recorder.timestamps.size());
+        assertEquals(Sensor.TYPE_GYROSCOPE_UNCALIBRATED, (int) recorder.types.get(0));
+        assertEquals(1.f, recorder.firstValues.get(0), 0);
+        assertEquals(3, (int) recorder.valueCounts.get(0));
+        assertEquals(Sensor.TYPE_ACCELEROMETER, (int) recorder.types.get(1));
+    }
+
+    /** Ten events from one sensor, 10ms apart. */
+    private static List<Long> burst(SensorEventMerger merger, int type, long start) {
+        List<Long> sent = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            long timestamp = start + i * 10 * MS;
+            add(merger, type, timestamp);
+            sent.add(timestamp);
+        }
+        return sent;
+    }
+
+    private static void add(SensorEventMerger merger, int type, long timestamp) {
+        merger.add(type, timestamp, new float[] {timestamp, 0, 0});
+    }
+
+    private static void assertSorted(List<Long> timestamps) {
+        for (int i = 1; i < timestamps.size(); i++) {
+            assertTrue("out of order at " + i, timestamps.get(i) >= timestamps.get(i - 1));
+        }
+    }
+
+    private static class Recorder implements SensorEventMerger.Listener {
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Integer> types = new ArrayList<>();
+        final List<Float> firstValues = new ArrayList<>();
+        final List<Integer> valueCounts = new ArrayList<>();
+
+        @Override
+        public void onSensorSample(int type, float[] values, int valueCount, long timestamp) {
+            timestamps.add(timestamp);
+            types.add(type);
+            firstValues.add(values[0]);
+            valueCounts.add(valueCount);
+        }
+    }
+}
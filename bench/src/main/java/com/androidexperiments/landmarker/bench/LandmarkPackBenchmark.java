@@ -0,0 +1,111 @@
+package com.androidexperiments.landmarker.bench;
+
+import com.androidexperiments.landmarker.data.LandmarkPack;
+import com.androidexperiments.landmarker.data.LandmarkPackWriter;
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.util.GeoKernel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a landmark pack and searching it the way PackNearbySearch does, on a pack of
+ * synthetic places spread over a city sized disc. The pack is written once per fork to a
+ * temp file, so open() is timed against a file the os has cached, the same as opening it
+ * again after the app restarts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms3g", "-Xmx3g", "-XX:+UseParallelGC" })
+@State(Scope.Benchmark)
+public class LandmarkPackBenchmark
+{
+    private static final long SEED = 0x1a2d3a4c;
+
+    /**
+     * search origins cycled through, all inside the pack
+     */
+    private static final int ORIGINS = 1024;
+
+    @Param({ "1000000" })
+    public int places;
+
+    /**
+     * meters, the disc the places are spread over
+     */
+    @Param({ "15000" })
+    public double spread;
+
+    @Param({ "1000" })
+    public double radius;
+
+    @Param({ "200" })
+    public int limit;
+
+    @Param({ "NEW_YORK" })
+    public SyntheticPlaces.City city;
+
+    private File mFile;
+    private LandmarkPack mPack;
+    private double[][] mOrigins;
+    private int mNext = 0;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        LandmarkPackWriter writer = new LandmarkPackWriter();
+        Random random = new Random(SEED);
+        for(PlaceRecord place : SyntheticPlaces.generate(city, places, spread, SEED))
+            writer.add(place.getName(), place.getLatitude(), place.getLongitude(), place.getTypeFlags(), random.nextInt(100000));
+
+        mFile = File.createTempFile("bench", LandmarkPack.FILE_EXTENSION);
+        writer.write(mFile);
+        mPack = LandmarkPack.open(mFile);
+
+        mOrigins = new double[ORIGINS][];
+        for(int i = 0; i < ORIGINS; i++)
+            mOrigins[i] = GeoKernel.offset(city.latitude, city.longitude, random.nextDouble() * 360,
+                    spread * Math.sqrt(random.nextDouble()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    /**
+     * map the file and check the header
+     */
+    @Benchmark
+    public LandmarkPack open() throws IOException {
+        return LandmarkPack.open(mFile);
+    }
+
+    /**
+     * the most prominent places within radius of one origin
+     */
+    @Benchmark
+    public List<PlaceRecord> query()
+    {
+        double[] origin = mOrigins[mNext++ & (ORIGINS - 1)];
+        return mPack.getNearbyPlaces(origin[0], origin[1], radius, limit, null);
+    }
+}
@@ -0,0 +1,185 @@
+package com.androidexperiments.landmarker.bench;
+
+import com.androidexperiments.landmarker.places.NearbyResponseParser;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One full 60 result search, the three pages in resources/responses, parsed the way
+ * NearbySearchClient does it now and the way it used to: the whole body read into a String,
+ * an org.json tree built over it and a full place object per result, like the places wrapper
+ * the app started out with. Compare the time per search and the gc profiler's
+ * gc.alloc.rate.norm, bytes allocated per search.
+ * <p>
+ * Run with {@code ./gradlew :bench:jmh -Pjmh=ParseBenchmark}, the pages can be replaced with
+ * fresh ones through {@code ./gradlew :bench:recordResponses}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms3g", "-Xmx3g", "-XX:+UseParallelGC" })
+@State(Scope.Thread)
+public class ParseBenchmark
+{
+    public static final String PAGE_RESOURCE = "/responses/nearby_times_square_%d.json";
+    public static final int PAGES = 3;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private byte[][] mPages;
+    private final NearbyResponseParser mParser = new NearbyResponseParser();
+
+    @Setup
+    public void setup() throws IOException, JSONException
+    {
+        mPages = new byte[PAGES][];
+        for(int page = 0; page < PAGES; page++)
+        {
+            InputStream in = ParseBenchmark.class.getResourceAsStream(String.format(PAGE_RESOURCE, page + 1));
+            if(in == null)
+                throw new IOException("missing " + String.format(PAGE_RESOURCE, page + 1));
+            mPages[page] = readFully(in);
+        }
+
+        //both have to find the same places or there's nothing to compare
+        int pulled = pullParser(), tree = jsonTree();
+        if(pulled != tree)
+            throw new IllegalStateException("pull parser found " + pulled + " places, the tree " + tree);
+    }
+
+    /**
+     * straight from the bytes into the parser's columns, as NearbySearchClient reads a page
+     */
+    @Benchmark
+    public int pullParser() throws IOException
+    {
+        int parsed = 0;
+        for(byte[] page : mPages)
+        {
+            mParser.parse(new InputStreamReader(new ByteArrayInputStream(page), UTF_8));
+            parsed += mParser.size();
+        }
+        return parsed;
+    }
+
+    /**
+     * the baseline, a String per body, a tree per page and an object graph per result
+     */
+    @Benchmark
+    public int jsonTree() throws IOException, JSONException
+    {
+        int parsed = 0;
+        for(byte[] page : mPages)
+        {
+            String body = new String(readFully(new ByteArrayInputStream(page)), UTF_8);
+            JSONObject json = new JSONObject(body);
+
+            JSONArray results = json.getJSONArray("results");
+            List<TreePlace> places = new ArrayList<>(results.length());
+            for(int i = 0; i < results.length(); i++)
+                places.add(new TreePlace(results.getJSONObject(i)));
+
+            parsed += places.size();
+        }
+        return parsed;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            return out.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * what the wrapper kept of every result, for the app to then read the name and location
+     */
+    static class TreePlace
+    {
+        final String placeId;
+        final String name;
+        final double latitude;
+        final double longitude;
+        final String icon;
+        final String vicinity;
+        final List<String> types;
+        final double rating;
+        final int ratingCount;
+        final boolean openNow;
+        final List<Photo> photos;
+
+        TreePlace(JSONObject result) throws JSONException
+        {
+            JSONObject location = result.getJSONObject("geometry").getJSONObject("location");
+
+            placeId = result.optString("place_id", null);
+            name = result.getString("name");
+            latitude = location.getDouble("lat");
+            longitude = location.getDouble("lng");
+            icon = result.optString("icon", null);
+            vicinity = result.optString("vicinity", null);
+            rating = result.optDouble("rating", -1);
+            ratingCount = result.optInt("user_ratings_total", 0);
+
+            JSONObject hours = result.optJSONObject("opening_hours");
+            openNow = hours != null && hours.optBoolean("open_now", false);
+
+            types = new ArrayList<>();
+            JSONArray typeArray = result.optJSONArray("types");
+            for(int i = 0; typeArray != null && i < typeArray.length(); i++)
+                types.add(typeArray.getString(i));
+
+            photos = new ArrayList<>();
+            JSONArray photoArray = result.optJSONArray("photos");
+            for(int i = 0; photoArray != null && i < photoArray.length(); i++)
+            {
+                JSONObject photo = photoArray.getJSONObject(i);
+                photos.add(new Photo(photo.getString("photo_reference"), photo.optInt("width", 0), photo.optInt("height", 0)));
+            }
+        }
+    }
+
+    static class Photo
+    {
+        final String reference;
+        final int width;
+        final int height;
+
+        Photo(String reference, int width, int height) {
+            this.reference = reference;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.androidexperiments.landmarker.bench;
+
+import com.androidexperiments.landmarker.data.AngularIndex;
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.data.PlaceStore;
+import com.androidexperiments.landmarker.engine.CompassEngine;
+import com.androidexperiments.landmarker.places.NearbyResponseParser;
+import com.androidexperiments.landmarker.util.GeoKernel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The refresh path a search kicks off, stage by stage and end to end: parsing the response
+ * pages, bearings and distances from the user, sector bucketing, and everything
+ * {@code DirectionalTextViewContainer.updatePlaces} does with the result.
+ * <p>
+ * Places are seeded and the jvm is pinned to one heap size and collector so runs compare.
+ * Run with {@code ./gradlew :bench:jmh}, which adds the gc profiler for allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms3g", "-Xmx3g", "-XX:+UseParallelGC" })
+@State(Scope.Benchmark)
+public class RefreshBenchmark
+{
+    private static final long SEED = 0x1a2d3a4c;
+
+    /**
+     * the search radius, matches MainActivity
+     */
+    private static final double RADIUS = 1000;
+
+    /**
+     * distinct pages kept in memory, larger counts parse the same pages over again rather
+     * than hold a gigabyte of json
+     */
+    private static final int MAX_PAGES = 512;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({ "60", "1000", "100000", "1000000" })
+    public int places;
+
+    @Param({ "NEW_YORK" })
+    public SyntheticPlaces.City city;
+
+    private List<PlaceRecord> mPlaces;
+    private byte[][] mPages;
+    private int mPageCount;
+
+    private final NearbyResponseParser mParser = new NearbyResponseParser();
+    private final GeoKernel mGeoKernel = new GeoKernel(GeoKernel.Mode.EQUIRECTANGULAR);
+    private final AngularIndex mAngularIndex = new AngularIndex(CompassEngine.DEFAULT_SECTOR_COUNT,
+            CompassEngine.DEFAULT_SECTOR_HYSTERESIS);
+    private PlaceStore mStore;
+    private CompassEngine mEngine;
+
+    @Setup
+    public void setup()
+    {
+        mPlaces = SyntheticPlaces.generate(city, places, RADIUS, SEED);
+        mPageCount = (places + SyntheticPlaces.PAGE_SIZE - 1) / SyntheticPlaces.PAGE_SIZE;
+
+        int pooled = Math.min(places, MAX_PAGES * SyntheticPlaces.PAGE_SIZE);
+        mPages = SyntheticPlaces.toResponsePages(mPlaces.subList(0, pooled));
+
+        //stages after parsing start from where the one before left off
+        mStore = new PlaceStore(places);
+        mStore.addAll(mPlaces);
+        mStore.computeFrom(city.latitude, city.longitude, mGeoKernel);
+        mAngularIndex.assign(mStore);
+
+        mEngine = new CompassEngine((float) RADIUS);
+    }
+
+    /**
+     * every page of the response into primitive arrays, the way NearbySearchClient reads them.
+     * Scales with the synthetic places, {@link ParseBenchmark} has recorded pages and the
+     * tree parse baseline
+     */
+    @Benchmark
+    public int parse() throws IOException
+    {
+        int parsed = 0;
+        for(int page = 0; page < mPageCount; page++)
+        {
+            mParser.parse(reader(page));
+            parsed += mParser.size();
+        }
+        return parsed;
+    }
+
+    /**
+     * bearing and distance from the user to every place
+     */
+    @Benchmark
+    public float computeBearings()
+    {
+        mStore.computeFrom(city.latitude, city.longitude, mGeoKernel);
+        return mStore.getDistance(0);
+    }
+
+    /**
+     * every place into its compass sector, then grouped by sector
+     */
+    @Benchmark
+    public int bucketSectors()
+    {
+        mAngularIndex.assign(mStore);
+        return mStore.getSectorSize(0);
+    }
+
+    /**
+     * what updatePlaces runs once a search is in, bearings through to ranked labels
+     */
+    @Benchmark
+    public int updatePlaces()
+    {
+        mEngine.setPlaces(mPlaces);
+        mEngine.update(city.latitude, city.longitude);
+        return mEngine.getSlotPlaceCount(0);
+    }
+
+    /**
+     * response bytes to ranked labels
+     */
+    @Benchmark
+    public int fullRefresh() throws IOException
+    {
+        List<PlaceRecord> records = new ArrayList<>(places);
+        for(int page = 0; page < mPageCount; page++)
+        {
+            mParser.parse(reader(page));
+            records.addAll(mParser.toPlaceRecords());
+        }
+
+        mEngine.setPlaces(records);
+        mEngine.update(city.latitude, city.longitude);
+        return mEngine.getSlotPlaceCount(0);
+    }
+
+    /**
+     * response bytes to ranked labels, pages going into the engine's store column by column
+     * instead of through a record per place
+     */
+    @Benchmark
+    public int fullRefreshColumns() throws IOException
+    {
+        mEngine.setPlaces(Collections.<PlaceRecord>emptyList());
+        for(int page = 0; page < mPageCount; page++)
+        {
+            mParser.parse(reader(page));
+            mEngine.addPlaces(mParser);
+        }
+
+        mEngine.update(city.latitude, city.longitude);
+        return mEngine.getSlotPlaceCount(0);
+    }
+
+    private InputStreamReader reader(int page) {
+        return new InputStreamReader(new ByteArrayInputStream(mPages[page % mPages.length]), UTF_8);
+    }
+}
@@ -0,0 +1,194 @@
+package com.androidexperiments.landmarker.bench;
+
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.data.PlaceTypes;
+import com.androidexperiments.landmarker.util.GeoKernel;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Seeded fake places scattered around a real city center, and the nearby search responses
+ * that would carry them. Same seed, same places, so runs can be compared.
+ */
+public class SyntheticPlaces
+{
+    public enum City
+    {
+        NEW_YORK(40.7580, -73.9855),
+        LONDON(51.5074, -0.1278),
+        TOKYO(35.6812, 139.7671),
+        SYDNEY(-33.8688, 151.2093);
+
+        public final double latitude;
+        public final double longitude;
+
+        City(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    /**
+     * results per page, as the api sends them
+     */
+    public static final int PAGE_SIZE = 20;
+
+    /**
+     * real tokens are a couple hundred characters of base64
+     */
+    public static final String PAGE_TOKEN_PREFIX = "CpQCAgEAAFxg8o-eU7_uKn7Yqjana-HQIx1hr5BrT4zBaEko29ANsXtp9mrqN0yrKWhf-y2PUpHRLQb1GT-mtxNcXou8TwkXhi1Jbk";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] TYPE_NAMES = PlaceTypes.getTypeNames();
+
+    static {
+        //hash map order, sort so the same seed picks the same types everywhere
+        Arrays.sort(TYPE_NAMES);
+    }
+
+    private static final String[] WORDS = { "Grand", "Central", "Park", "Museum", "Cafe", "Tower", "Bridge",
+            "Market", "Church", "Station", "Gallery", "Hotel", "Square", "Garden", "Theatre", "Hall" };
+
+    private SyntheticPlaces() {}
+
+    /**
+     * @param radius meters, places are spread evenly over the disc
+     */
+    public static List<PlaceRecord> generate(City city, int count, double radius, long seed) {
+        return generate(city.latitude, city.longitude, count, radius, seed);
+    }
+
+    /**
+     * @param radius meters, places are spread evenly over the disc
+     */
+    public static List<PlaceRecord> generate(double latitude, double longitude, int count, double radius, long seed)
+    {
+        Random random = new Random(seed);
+        List<PlaceRecord> places = new ArrayList<>(count);
+
+        for(int i = 0; i < count; i++)
+        {
+            double bearing = random.nextDouble() * 360;
+            double distance = radius * Math.sqrt(random.nextDouble());
+            double[] location = GeoKernel.offset(latitude, longitude, bearing, distance);
+
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+
+            int types = PlaceTypes.NONE;
+            for(int t = random.nextInt(3); t >= 0; t--)
+                types |= PlaceTypes.fromType(TYPE_NAMES[random.nextInt(TYPE_NAMES.length)]);
+
+            float rating = random.nextInt(4) == 0 ? PlaceRecord.NO_RATING : 1 + random.nextInt(41) / 10.f;
+            int ratingCount = rating == PlaceRecord.NO_RATING ? 0 : (int) Math.exp(random.nextDouble() * 9);
+
+            places.add(new PlaceRecord("ChIJ" + Long.toHexString(random.nextLong()) + i, name,
+                    location[0], location[1], types, rating, ratingCount));
+        }
+        return places;
+    }
+
+    /**
+     * Nearby search responses for these places, PAGE_SIZE to a page, with the fields we skip
+     * over (icon, photos, viewport, vicinity...) filled in like the real thing.
+     */
+    public static byte[][] toResponsePages(List<PlaceRecord> places)
+    {
+        int pages = (places.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+        byte[][] bodies = new byte[pages][];
+
+        for(int page = 0; page < pages; page++)
+        {
+            int start = page * PAGE_SIZE;
+            int end = Math.min(places.size(), start + PAGE_SIZE);
+            String token = page < pages - 1 ? PAGE_TOKEN_PREFIX + page : null;
+            bodies[page] = toResponse(places.subList(start, end), token);
+        }
+        return bodies;
+    }
+
+    /**
+     * one page of a nearby search response
+     * @param nextPageToken null on the last page
+     */
+    public static byte[] toResponse(List<PlaceRecord> places, String nextPageToken)
+    {
+        StringBuilder sb = new StringBuilder(1024 * PAGE_SIZE);
+        sb.append("{\n   \"html_attributions\" : [],\n");
+        if(nextPageToken != null)
+            sb.append("   \"next_page_token\" : \"").append(nextPageToken).append("\",\n");
+        sb.append("   \"results\" : [\n");
+
+        for(int i = 0; i < places.size(); i++)
+        {
+            appendResult(sb, places.get(i));
+            sb.append(i < places.size() - 1 ? ",\n" : "\n");
+        }
+
+        sb.append("   ],\n   \"status\" : \"").append(places.isEmpty() ? "ZERO_RESULTS" : "OK").append("\"\n}\n");
+        return sb.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * a response the api sends with a 200 when it won't answer, OVER_QUERY_LIMIT and the like
+     */
+    public static byte[] toErrorResponse(String status, String errorMessage)
+    {
+        String body = "{\n   \"error_message\" : \"" + errorMessage + "\",\n   \"html_attributions\" : [],\n"
+                + "   \"results\" : [],\n   \"status\" : \"" + status + "\"\n}\n";
+        return body.getBytes(UTF_8);
+    }
+
+    private static void appendResult(StringBuilder sb, PlaceRecord place)
+    {
+        double lat = place.getLatitude(), lng = place.getLongitude();
+
+        sb.append("      {\n");
+        sb.append("         \"geometry\" : {\n");
+        sb.append("            \"location\" : { \"lat\" : ").append(format(lat)).append(", \"lng\" : ").append(format(lng)).append(" },\n");
+        sb.append("            \"viewport\" : {\n");
+        sb.append("               \"northeast\" : { \"lat\" : ").append(format(lat + 0.0013)).append(", \"lng\" : ").append(format(lng + 0.0013)).append(" },\n");
+        sb.append("               \"southwest\" : { \"lat\" : ").append(format(lat - 0.0013)).append(", \"lng\" : ").append(format(lng - 0.0013)).append(" }\n");
+        sb.append("            }\n");
+        sb.append("         },\n");
+        sb.append("         \"icon\" : \"https://maps.gstatic.com/mapfiles/place_api/icons/generic_business-71.png\",\n");
+        sb.append("         \"id\" : \"").append(Integer.toHexString(place.getId().hashCode())).append("\",\n");
+        sb.append("         \"name\" : \"").append(place.getName()).append("\",\n");
+        sb.append("         \"opening_hours\" : { \"open_now\" : true, \"weekday_text\" : [] },\n");
+        sb.append("         \"photos\" : [\n");
+        sb.append("            {\n");
+        sb.append("               \"height\" : 2988,\n");
+        sb.append("               \"html_attributions\" : [ \"\\u003ca href=\\\"https://maps.google.com/maps/contrib/1\\\"\\u003eA User\\u003c/a\\u003e\" ],\n");
+        sb.append("               \"photo_reference\" : \"CmRaAAAAvEmPvWOAqZ3SgcYXbAo5Prr0hqQ9jHx1k6wwJ7MRqhE0EXAMPLE\",\n");
+        sb.append("               \"width\" : 5312\n");
+        sb.append("            }\n");
+        sb.append("         ],\n");
+        sb.append("         \"place_id\" : \"").append(place.getId()).append("\",\n");
+        if(place.getRating() != PlaceRecord.NO_RATING) {
+            sb.append("         \"rating\" : ").append(place.getRating()).append(",\n");
+            sb.append("         \"user_ratings_total\" : ").append(place.getRatingCount()).append(",\n");
+        }
+        sb.append("         \"reference\" : \"CmRSAAAAjH2EXAMPLEREFERENCE\",\n");
+        sb.append("         \"scope\" : \"GOOGLE\",\n");
+        sb.append("         \"types\" : [ ");
+        boolean first = true;
+        for(String type : TYPE_NAMES) {
+            if(PlaceTypes.has(place.getTypeFlags(), PlaceTypes.fromType(type))) {
+                sb.append(first ? "" : ", ").append('"').append(type).append('"');
+                first = false;
+            }
+        }
+        sb.append(first ? "" : ", ").append("\"point_of_interest\", \"establishment\" ],\n");
+        sb.append("         \"vicinity\" : \"").append(place.getName()).append(" Street, Somewhere\"\n");
+        sb.append("      }");
+    }
+
+    private static String format(double degrees) {
+        return String.format(Locale.US, "%.7f", degrees);
+    }
+}
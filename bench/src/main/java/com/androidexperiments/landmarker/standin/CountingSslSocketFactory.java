@@ -0,0 +1,107 @@
+package com.androidexperiments.landmarker.standin;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Wraps a client's SSLSocketFactory to count the connections it opens and the tls handshakes
+ * on them, so a load test can tell whether keep-alive is actually reusing connections.
+ * Thread safe.
+ */
+public class CountingSslSocketFactory extends SSLSocketFactory
+{
+    private final SSLSocketFactory mDelegate;
+
+    //guarded by this
+    private int mConnections = 0;
+    private int mHandshakes = 0;
+
+    private final HandshakeCompletedListener mListener = new HandshakeCompletedListener() {
+        @Override
+        public void handshakeCompleted(HandshakeCompletedEvent event) {
+            recordHandshake();
+        }
+    };
+
+    public CountingSslSocketFactory(SSLSocketFactory delegate) {
+        mDelegate = delegate;
+    }
+
+    public synchronized int getConnectionCount() {
+        return mConnections;
+    }
+
+    /**
+     * handshakes are reported on their own thread, so this can lag a little
+     */
+    public synchronized int getHandshakeCount() {
+        return mHandshakes;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return mDelegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return mDelegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return track(mDelegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        return track(mDelegate.createSocket(socket, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return track(mDelegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return track(mDelegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return track(mDelegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return track(mDelegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    private Socket track(Socket socket)
+    {
+        if(socket instanceof SSLSocket)
+        {
+            synchronized(this) {
+                mConnections++;
+            }
+            ((SSLSocket) socket).addHandshakeCompletedListener(mListener);
+        }
+        return socket;
+    }
+
+    private synchronized void recordHandshake() {
+        mHandshakes++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "connections: " + mConnections + " handshakes: " + mHandshakes;
+    }
+}
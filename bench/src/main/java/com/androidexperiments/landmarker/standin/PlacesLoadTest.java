@@ -0,0 +1,139 @@
+package com.androidexperiments.landmarker.standin;
+
+import com.androidexperiments.landmarker.bench.SyntheticPlaces;
+import com.androidexperiments.landmarker.places.NearbyPlacesSource;
+import com.androidexperiments.landmarker.places.NearbySearchClient;
+import com.androidexperiments.landmarker.places.PartialResultsException;
+import com.androidexperiments.landmarker.places.PlacesApiException;
+import com.androidexperiments.landmarker.places.ShardedNearbySearch;
+import com.androidexperiments.landmarker.places.UrlConnectionTransport;
+import com.androidexperiments.landmarker.util.GeoKernel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs searches through the same client and sharding the app uses against a
+ * {@link PlacesStandInServer} in this process, and reports throughput and what failed.
+ * <p>
+ * Options are the server's plus --searches=n --threads=n --sectors=n --radius=m --city=NAME,
+ * see {@code ./gradlew :bench:loadtest}. With --https=true it also reports how many connections
+ * and tls handshakes the searches took, to show whether keep-alive is reusing connections.
+ */
+public class PlacesLoadTest
+{
+    public static void main(String[] args) throws Exception
+    {
+        Map<String, String> options = PlacesStandInServer.parseOptions(args);
+        int searches = Integer.parseInt(PlacesStandInServer.option(options, "searches", "200"));
+        int threads = Integer.parseInt(PlacesStandInServer.option(options, "threads", "4"));
+        int sectors = Integer.parseInt(PlacesStandInServer.option(options, "sectors", "6"));
+        final double radius = Double.parseDouble(PlacesStandInServer.option(options, "radius", "1000"));
+        long seed = Long.parseLong(PlacesStandInServer.option(options, "seed", "0"));
+        SyntheticPlaces.City city = SyntheticPlaces.City.valueOf(PlacesStandInServer.option(options, "city", "NEW_YORK"));
+
+        boolean https = Boolean.parseBoolean(PlacesStandInServer.option(options, "https", "false"));
+
+        PlacesStandInServer server = new PlacesStandInServer(new InetSocketAddress("127.0.0.1", 0), seed, https);
+        PlacesStandInServer.configure(server, options);
+
+        //tokens become valid quickly here, no point waiting 2s like the real thing
+        if(!options.containsKey("token-delay"))
+            server.setPageTokenDelay(0);
+        long tokenDelay = Long.parseLong(PlacesStandInServer.option(options, "token-delay", "0"));
+
+        server.start();
+
+        //trust the stand-in's certificate through the same hooks the app would use to pin one
+        CountingSslSocketFactory sslSocketFactory = null;
+        UrlConnectionTransport transport;
+        if(https) {
+            sslSocketFactory = new CountingSslSocketFactory(server.getCertificate().createClientSocketFactory());
+            transport = new UrlConnectionTransport(UrlConnectionTransport.DEFAULT_CONNECT_TIMEOUT_MS,
+                    UrlConnectionTransport.DEFAULT_READ_TIMEOUT_MS, sslSocketFactory, server.getCertificate().getHostnameVerifier());
+        }
+        else {
+            transport = new UrlConnectionTransport();
+        }
+        NearbySearchClient client = new NearbySearchClient("standin", server.getBaseUrl(), transport, tokenDelay);
+        ExecutorService shardExecutor = Executors.newFixedThreadPool(threads * Math.max(1, sectors));
+        final NearbyPlacesSource source = sectors > 0 ? new ShardedNearbySearch(client, shardExecutor, sectors) : client;
+
+        //searches scattered over a few km of the city, the same ones every run
+        Random random = new Random(seed);
+        final List<double[]> origins = new ArrayList<>(searches);
+        for(int i = 0; i < searches; i++)
+            origins.add(GeoKernel.offset(city.latitude, city.longitude, random.nextDouble() * 360,
+                    3000 * Math.sqrt(random.nextDouble())));
+
+        final AtomicInteger places = new AtomicInteger();
+        final AtomicInteger partial = new AtomicInteger();
+        final AtomicInteger apiErrors = new AtomicInteger();
+        final AtomicInteger ioErrors = new AtomicInteger();
+
+        ExecutorService searchExecutor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>(searches);
+
+        long start = System.nanoTime();
+        for(final double[] origin : origins)
+        {
+            futures.add(searchExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    try {
+                        places.addAndGet(source.getNearbyPlaces(origin[0], origin[1], radius, 200, null).size());
+                    }
+                    catch(PartialResultsException e) {
+                        places.addAndGet(e.getPlaces().size());
+                        partial.incrementAndGet();
+                    }
+                    catch(PlacesApiException e) {
+                        apiErrors.incrementAndGet();
+                    }
+                    catch(IOException e) {
+                        ioErrors.incrementAndGet();
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        for(Future<?> future : futures)
+        {
+            try {
+                future.get();
+            }
+            catch(ExecutionException e) {
+                ioErrors.incrementAndGet();
+            }
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1000000L;
+
+        searchExecutor.shutdown();
+        shardExecutor.shutdown();
+        server.stop();
+
+        System.out.println(searches + " searches in " + elapsedMs + "ms, "
+                + String.format("%.1f", searches * 1000.0 / Math.max(1, elapsedMs)) + " searches/s");
+        System.out.println("places: " + places.get() + " partial: " + partial.get()
+                + " api errors: " + apiErrors.get() + " io errors: " + ioErrors.get());
+        UrlConnectionTransport.Stats transportStats = transport.getStats();
+        System.out.println("transport " + transportStats);
+        if(sslSocketFactory != null) {
+            int connections = Math.max(1, sslSocketFactory.getConnectionCount());
+            System.out.println("tls " + sslSocketFactory + " requests per connection: "
+                    + String.format("%.1f", transportStats.requests / (double) connections));
+        }
+        System.out.println("server " + server.getStats());
+    }
+}
@@ -0,0 +1,505 @@
+package com.androidexperiments.landmarker.standin;
+
+import com.androidexperiments.landmarker.bench.SyntheticPlaces;
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.places.PlacesApiException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the Places nearby search, point {@link com.androidexperiments.landmarker.places.NearbySearchClient}
+ * at {@link #getBaseUrl()} to test against it offline and without a key.
+ * <p>
+ * Answers like the real endpoint: up to 3 pages of 20 synthetic places, the same places for the
+ * same location and radius, next_page_token on all but the last page, tokens that come back
+ * INVALID_REQUEST until they've had time to become valid, gzip when asked for it.
+ * <p>
+ * On top of that it can slow every request down and fail a share of them with a 5xx, a body cut
+ * off mid-response or an OVER_QUERY_LIMIT. Faults can be changed while it runs and are drawn
+ * from a seeded random, so a single threaded run fails the same requests every time.
+ * <p>
+ * Can serve https with a freshly generated {@link SelfSignedCertificate}, so clients pay for tls
+ * handshakes like they do against the real endpoint. Hand them {@link #getCertificate()}'s socket
+ * factory and host name verifier to trust it.
+ * <p>
+ * Run {@link #main} to serve an emulator or device, see {@code ./gradlew :bench:standin}.
+ */
+public class PlacesStandInServer
+{
+    public static final String PATH = "/maps/api/place/";
+    public static final int DEFAULT_PLACES_PER_SEARCH = 60;
+
+    private static final int MAX_PAGES = 3;
+
+    private final HttpServer mServer;
+    private final SelfSignedCertificate mCertificate;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final Map<String, PendingPage> mPageTokens = new ConcurrentHashMap<>();
+    private final AtomicLong mNextToken = new AtomicLong();
+
+    //faults, changeable while running
+    private volatile long mLatencyMs = 0;
+    private volatile long mLatencyJitterMs = 0;
+    private volatile float mServerErrorRate = 0;
+    private volatile float mTruncateRate = 0;
+    private volatile float mOverQueryLimitRate = 0;
+    private volatile long mPageTokenDelayMs = 0;
+    private volatile int mPlacesPerSearch = DEFAULT_PLACES_PER_SEARCH;
+
+    private final Random mRandom;
+
+    //stats, guarded by this
+    private int mRequests = 0;
+    private int mFirstPages = 0;
+    private int mNextPages = 0;
+    private int mServerErrors = 0;
+    private int mTruncated = 0;
+    private int mOverQueryLimit = 0;
+    private int mInvalidRequests = 0;
+    private long mBytes = 0;
+
+    /**
+     * @param address port 0 for any free port
+     * @param seed faults are drawn from this
+     * @param https serve https with a self signed certificate instead of plain http
+     */
+    public PlacesStandInServer(InetSocketAddress address, long seed, boolean https) throws IOException
+    {
+        mRandom = new Random(seed);
+
+        if(https)
+        {
+            mCertificate = SelfSignedCertificate.generate();
+            HttpsServer server = HttpsServer.create(address, 0);
+            try {
+                server.setHttpsConfigurator(new HttpsConfigurator(mCertificate.createServerContext()));
+            }
+            catch(GeneralSecurityException e) {
+                throw new IOException("can't set up tls", e);
+            }
+            mServer = server;
+        }
+        else {
+            mCertificate = null;
+            mServer = HttpServer.create(address, 0);
+        }
+
+        mServer.createContext(PATH + "nearbysearch/json", new NearbySearchHandler());
+
+        //latency is a sleep on the handling thread, so every request gets its own
+        mServer.setExecutor(mExecutor);
+    }
+
+    public PlacesStandInServer(InetSocketAddress address, long seed) throws IOException {
+        this(address, seed, false);
+    }
+
+    public PlacesStandInServer() throws IOException {
+        this(new InetSocketAddress("127.0.0.1", 0), 0);
+    }
+
+    public void start() {
+        mServer.start();
+    }
+
+    public void stop()
+    {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * what NearbySearchClient's baseUrl should be
+     */
+    public String getBaseUrl() {
+        InetSocketAddress address = mServer.getAddress();
+        return (isHttps() ? "https://" : "http://") + address.getHostString() + ":" + address.getPort() + PATH;
+    }
+
+    public int getPort() {
+        return mServer.getAddress().getPort();
+    }
+
+    public boolean isHttps() {
+        return mCertificate != null;
+    }
+
+    /**
+     * what clients have to trust when serving https, null for plain http
+     */
+    public SelfSignedCertificate getCertificate() {
+        return mCertificate;
+    }
+
+    /**
+     * every response waits latencyMs plus up to jitterMs before the headers go out
+     */
+    public void setLatency(long latencyMs, long jitterMs) {
+        mLatencyMs = latencyMs;
+        mLatencyJitterMs = jitterMs;
+    }
+
+    /**
+     * share of requests answered with a 500 or 503
+     */
+    public void setServerErrorRate(float rate) {
+        mServerErrorRate = rate;
+    }
+
+    /**
+     * share of responses whose connection drops half way through the body
+     */
+    public void setTruncateRate(float rate) {
+        mTruncateRate = rate;
+    }
+
+    /**
+     * share of requests answered OVER_QUERY_LIMIT, the way the api does, with a 200
+     */
+    public void setOverQueryLimitRate(float rate) {
+        mOverQueryLimitRate = rate;
+    }
+
+    /**
+     * how long a page token stays INVALID_REQUEST after it's issued, google takes around 2s
+     */
+    public void setPageTokenDelay(long delayMs) {
+        mPageTokenDelayMs = delayMs;
+    }
+
+    /**
+     * places each location has, anything over 60 is never reached
+     */
+    public void setPlacesPerSearch(int places) {
+        mPlacesPerSearch = places;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(mRequests, mFirstPages, mNextPages, mServerErrors, mTruncated, mOverQueryLimit,
+                mInvalidRequests, mBytes);
+    }
+
+    private class NearbySearchHandler implements HttpHandler
+    {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            try {
+                respond(exchange);
+            }
+            catch(IOException e) {
+                //the client went away or we cut it off on purpose
+            }
+            finally {
+                exchange.close();
+            }
+        }
+
+        private void respond(HttpExchange exchange) throws IOException
+        {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+            float roll, jitter;
+            synchronized(PlacesStandInServer.this) {
+                mRequests++;
+                roll = mRandom.nextFloat();
+                jitter = mRandom.nextFloat();
+            }
+
+            sleep(mLatencyMs + (long) (jitter * mLatencyJitterMs));
+
+            //one roll picks at most one fault, each taking its share of the range in turn
+            float serverErrors = mServerErrorRate;
+            float overQueryLimit = serverErrors + mOverQueryLimitRate;
+            float truncate = overQueryLimit + mTruncateRate;
+
+            if(roll < serverErrors)
+            {
+                synchronized(PlacesStandInServer.this) {
+                    mServerErrors++;
+                }
+                byte[] body = "Server Error".getBytes("UTF-8");
+                exchange.sendResponseHeaders(roll < serverErrors / 2 ? 500 : 503, body.length);
+                exchange.getResponseBody().write(body);
+                return;
+            }
+
+            byte[] body;
+            if(roll < overQueryLimit)
+            {
+                synchronized(PlacesStandInServer.this) {
+                    mOverQueryLimit++;
+                }
+                body = SyntheticPlaces.toErrorResponse(PlacesApiException.STATUS_OVER_QUERY_LIMIT,
+                        "You have exceeded your daily request quota for this API.");
+            }
+            else if(query.get("key") == null) {
+                body = SyntheticPlaces.toErrorResponse(PlacesApiException.STATUS_REQUEST_DENIED,
+                        "This service requires an API key.");
+            }
+            else if(query.get("pagetoken") != null) {
+                body = getNextPage(query.get("pagetoken"));
+            }
+            else {
+                body = getFirstPage(query);
+            }
+
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if(acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                body = gzip(body);
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+
+            //the length promises the whole body, so stopping short drops the connection mid read
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            if(roll >= overQueryLimit && roll < truncate)
+            {
+                synchronized(PlacesStandInServer.this) {
+                    mTruncated++;
+                }
+                out.write(body, 0, body.length / 2);
+                out.flush();
+                return;
+            }
+
+            out.write(body);
+            synchronized(PlacesStandInServer.this) {
+                mBytes += body.length;
+            }
+        }
+    }
+
+    private byte[] getFirstPage(Map<String, String> query)
+    {
+        String[] location = query.get("location") != null ? query.get("location").split(",") : new String[0];
+        if(location.length != 2 || query.get("radius") == null)
+            return invalidRequest("Missing location or radius.");
+
+        double latitude, longitude, radius;
+        try {
+            latitude = Double.parseDouble(location[0]);
+            longitude = Double.parseDouble(location[1]);
+            radius = Double.parseDouble(query.get("radius"));
+        }
+        catch(NumberFormatException e) {
+            return invalidRequest("Bad location or radius.");
+        }
+
+        synchronized(this) {
+            mFirstPages++;
+        }
+
+        //the same search always finds the same places
+        long seed = Double.doubleToLongBits(Math.rint(latitude * 1e5)) * 31
+                + Double.doubleToLongBits(Math.rint(longitude * 1e5)) * 17 + Double.doubleToLongBits(radius);
+        int count = Math.min(mPlacesPerSearch, MAX_PAGES * SyntheticPlaces.PAGE_SIZE);
+        List<PlaceRecord> places = SyntheticPlaces.generate(latitude, longitude, count, radius, seed);
+
+        return getPage(places, 0);
+    }
+
+    private byte[] getNextPage(String token)
+    {
+        PendingPage pending = mPageTokens.get(token);
+        if(pending == null)
+            return invalidRequest("Unknown page token.");
+
+        //like the real thing, a token asked for too early is a bad request, try again later
+        if(System.nanoTime() < pending.validAtNanos)
+            return invalidRequest(null);
+
+        mPageTokens.remove(token);
+        synchronized(this) {
+            mNextPages++;
+        }
+        return getPage(pending.places, pending.page);
+    }
+
+    private byte[] getPage(List<PlaceRecord> places, int page)
+    {
+        int start = page * SyntheticPlaces.PAGE_SIZE;
+        int end = Math.min(places.size(), start + SyntheticPlaces.PAGE_SIZE);
+
+        String token = null;
+        if(end < places.size()) {
+            token = SyntheticPlaces.PAGE_TOKEN_PREFIX + mNextToken.incrementAndGet();
+            mPageTokens.put(token, new PendingPage(places, page + 1,
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mPageTokenDelayMs)));
+        }
+
+        return SyntheticPlaces.toResponse(places.subList(start, end), token);
+    }
+
+    private byte[] invalidRequest(String message)
+    {
+        synchronized(this) {
+            mInvalidRequests++;
+        }
+        return SyntheticPlaces.toErrorResponse(PlacesApiException.STATUS_INVALID_REQUEST, message != null ? message : "");
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException
+    {
+        Map<String, String> query = new HashMap<>();
+        if(rawQuery == null)
+            return query;
+
+        for(String pair : rawQuery.split("&"))
+        {
+            int eq = pair.indexOf('=');
+            if(eq > 0)
+                query.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+        }
+        return query;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4);
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(body);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void sleep(long ms) throws IOException
+    {
+        if(ms <= 0)
+            return;
+
+        try {
+            Thread.sleep(ms);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        }
+    }
+
+    /**
+     * the rest of a search, waiting for its token to be asked for
+     */
+    private static class PendingPage
+    {
+        final List<PlaceRecord> places;
+        final int page;
+        final long validAtNanos;
+
+        PendingPage(List<PlaceRecord> places, int page, long validAtNanos) {
+            this.places = places;
+            this.page = page;
+            this.validAtNanos = validAtNanos;
+        }
+    }
+
+    public static class Stats
+    {
+        public final int requests;
+        public final int firstPages;
+        public final int nextPages;
+        public final int serverErrors;
+        public final int truncated;
+        public final int overQueryLimit;
+        public final int invalidRequests;
+        public final long bytes;
+
+        Stats(int requests, int firstPages, int nextPages, int serverErrors, int truncated, int overQueryLimit,
+              int invalidRequests, long bytes) {
+            this.requests = requests;
+            this.firstPages = firstPages;
+            this.nextPages = nextPages;
+            this.serverErrors = serverErrors;
+            this.truncated = truncated;
+            this.overQueryLimit = overQueryLimit;
+            this.invalidRequests = invalidRequests;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString() {
+            return "requests: " + requests + " first pages: " + firstPages + " next pages: " + nextPages
+                    + " 5xx: " + serverErrors + " truncated: " + truncated + " over limit: " + overQueryLimit
+                    + " invalid: " + invalidRequests + " bytes: " + bytes;
+        }
+    }
+
+    /**
+     * Serves on every interface so an emulator can reach it at 10.0.2.2.
+     * Options: --port=8089 --latency=ms --jitter=ms --errors=rate --truncate=rate --quota=rate
+     * --token-delay=ms --places=n --seed=n --https=true
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        Map<String, String> options = parseOptions(args);
+
+        PlacesStandInServer server = new PlacesStandInServer(
+                new InetSocketAddress(Integer.parseInt(option(options, "port", "8089"))),
+                Long.parseLong(option(options, "seed", "0")), Boolean.parseBoolean(option(options, "https", "false")));
+        configure(server, options);
+        server.start();
+
+        //the app only trusts the platform's certificates, https here is for clients in this jvm
+        System.out.println("places stand-in on port " + server.getPort() + ", build the app with"
+                + " -PplacesBaseUrl=" + (server.isHttps() ? "https" : "http") + "://10.0.2.2:" + server.getPort()
+                + PATH + " for the emulator");
+
+        while(true)
+        {
+            Thread.sleep(10000);
+            System.out.println(server.getStats());
+        }
+    }
+
+    static void configure(PlacesStandInServer server, Map<String, String> options)
+    {
+        server.setLatency(Long.parseLong(option(options, "latency", "0")), Long.parseLong(option(options, "jitter", "0")));
+        server.setServerErrorRate(Float.parseFloat(option(options, "errors", "0")));
+        server.setTruncateRate(Float.parseFloat(option(options, "truncate", "0")));
+        server.setOverQueryLimitRate(Float.parseFloat(option(options, "quota", "0")));
+        server.setPageTokenDelay(Long.parseLong(option(options, "token-delay", "2000")));
+        server.setPlacesPerSearch(Integer.parseInt(option(options, "places", String.valueOf(DEFAULT_PLACES_PER_SEARCH))));
+    }
+
+    /**
+     * --name=value pairs
+     */
+    static Map<String, String> parseOptions(String[] args)
+    {
+        Map<String, String> options = new HashMap<>();
+        for(String arg : args)
+        {
+            int eq = arg.indexOf('=');
+            if(!arg.startsWith("--") || eq < 0)
+                throw new IllegalArgumentException("expected --name=value, got " + arg);
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    static String option(Map<String, String> options, String name, String fallback) {
+        return options.containsKey(name) ? options.get(name) : fallback;
+    }
+}
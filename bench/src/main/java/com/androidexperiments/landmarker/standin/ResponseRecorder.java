@@ -0,0 +1,87 @@
+package com.androidexperiments.landmarker.standin;
+
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.places.HttpTransport;
+import com.androidexperiments.landmarker.places.NearbySearchClient;
+import com.androidexperiments.landmarker.places.UrlConnectionTransport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs one real nearby search and saves every page's body as it came in, for ParseBenchmark
+ * to parse. The key only goes into the request urls, never into the files.
+ * <p>
+ * Options --key=API_KEY and optionally --lat= --lng= --radius= --out=dir --name=prefix,
+ * see {@code ./gradlew :bench:recordResponses}.
+ */
+public class ResponseRecorder
+{
+    public static void main(String[] args) throws IOException
+    {
+        Map<String, String> options = PlacesStandInServer.parseOptions(args);
+        final String key = options.get("key");
+        if(key == null) {
+            System.err.println("usage: --key=API_KEY [--lat=40.758 --lng=-73.9855 --radius=1000 --out=dir --name=prefix]");
+            System.exit(1);
+        }
+
+        double latitude = Double.parseDouble(PlacesStandInServer.option(options, "lat", "40.758"));
+        double longitude = Double.parseDouble(PlacesStandInServer.option(options, "lng", "-73.9855"));
+        double radius = Double.parseDouble(PlacesStandInServer.option(options, "radius", "1000"));
+        final File out = new File(PlacesStandInServer.option(options, "out", "src/main/resources/responses"));
+        final String name = PlacesStandInServer.option(options, "name", "nearby_times_square");
+
+        if(!out.isDirectory() && !out.mkdirs())
+            throw new IOException("can't create " + out);
+
+        final UrlConnectionTransport transport = new UrlConnectionTransport();
+        HttpTransport recording = new HttpTransport() {
+            private int mPage = 0;
+
+            @Override
+            public InputStream get(String url) throws IOException
+            {
+                byte[] body = readFully(transport.get(url));
+
+                File file = new File(out, name + "_" + (++mPage) + ".json");
+                OutputStream os = new FileOutputStream(file);
+                try {
+                    os.write(body);
+                }
+                finally {
+                    os.close();
+                }
+
+                System.out.println(file + ": " + body.length + " bytes");
+                return new ByteArrayInputStream(body);
+            }
+        };
+
+        NearbySearchClient client = new NearbySearchClient(key, NearbySearchClient.DEFAULT_BASE_URL, recording);
+        List<PlaceRecord> places = client.getNearbyPlaces(latitude, longitude, radius, NearbySearchClient.MAX_RESULTS);
+        System.out.println(places.size() + " places, " + transport.getStats());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            return out.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+}
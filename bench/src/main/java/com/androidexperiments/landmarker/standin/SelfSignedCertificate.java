@@ -0,0 +1,151 @@
+package com.androidexperiments.landmarker.standin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Throwaway key pair and certificate for serving the stand-in over https, made with the
+ * jdk's keytool since the jdk has no public api for it. The certificate only names
+ * {@link #COMMON_NAME}, never the address it's served on, so clients have to go through
+ * {@link #getHostnameVerifier()} the way they would for a pinned certificate.
+ */
+public class SelfSignedCertificate
+{
+    public static final String COMMON_NAME = "places-standin";
+
+    private static final String ALIAS = "standin";
+    private static final char[] PASSWORD = "standin".toCharArray();
+
+    private final KeyStore mKeyStore;
+    private final Certificate mCertificate;
+
+    private SelfSignedCertificate(KeyStore keyStore) throws GeneralSecurityException
+    {
+        mKeyStore = keyStore;
+        mCertificate = keyStore.getCertificate(ALIAS);
+    }
+
+    public static SelfSignedCertificate generate() throws IOException
+    {
+        File dir = File.createTempFile("standin", "");
+        if(!dir.delete() || !dir.mkdir())
+            throw new IOException("can't create " + dir);
+        File file = new File(dir, "standin.jks");
+
+        try {
+            keytool("-genkeypair", "-alias", ALIAS, "-keyalg", "RSA", "-keysize", "2048", "-validity", "30",
+                    "-dname", "CN=" + COMMON_NAME, "-storetype", "JKS", "-keystore", file.getPath(),
+                    "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD), "-noprompt");
+
+            KeyStore keyStore = KeyStore.getInstance("JKS");
+            InputStream in = new FileInputStream(file);
+            try {
+                keyStore.load(in, PASSWORD);
+            }
+            finally {
+                in.close();
+            }
+            return new SelfSignedCertificate(keyStore);
+        }
+        catch(GeneralSecurityException e) {
+            throw new IOException("can't load the generated key store", e);
+        }
+        finally {
+            file.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * for the server, holds the private key
+     */
+    public SSLContext createServerContext() throws GeneralSecurityException
+    {
+        KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keys.init(mKeyStore, PASSWORD);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keys.getKeyManagers(), null, null);
+        return context;
+    }
+
+    /**
+     * for clients, trusts this certificate and nothing else
+     */
+    public SSLSocketFactory createClientSocketFactory() throws GeneralSecurityException, IOException
+    {
+        KeyStore trusted = KeyStore.getInstance(KeyStore.getDefaultType());
+        trusted.load(null, null);
+        trusted.setCertificateEntry(ALIAS, mCertificate);
+
+        TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trust.init(trusted);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trust.getTrustManagers(), null);
+        return context.getSocketFactory();
+    }
+
+    /**
+     * accepts any host name as long as the peer presented exactly this certificate
+     */
+    public HostnameVerifier getHostnameVerifier()
+    {
+        return new HostnameVerifier() {
+            @Override
+            public boolean verify(String hostname, SSLSession session)
+            {
+                try {
+                    Certificate[] chain = session.getPeerCertificates();
+                    return chain.length > 0 && chain[0].equals(mCertificate);
+                }
+                catch(SSLPeerUnverifiedException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    private static void keytool(String... args) throws IOException
+    {
+        String[] command = new String[args.length + 1];
+        command[0] = new File(new File(System.getProperty("java.home"), "bin"), "keytool").getPath();
+        System.arraycopy(args, 0, command, 1, args.length);
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        InputStream in = process.getInputStream();
+        try {
+            byte[] buffer = new byte[1024];
+            int read;
+            while((read = in.read(buffer)) != -1)
+                output.write(buffer, 0, read);
+        }
+        finally {
+            in.close();
+        }
+
+        try {
+            if(process.waitFor() != 0)
+                throw new IOException("keytool failed: " + output.toString("UTF-8"));
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted waiting for keytool");
+        }
+    }
+}
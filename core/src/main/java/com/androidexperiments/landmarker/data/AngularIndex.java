@@ -0,0 +1,130 @@
+package com.androidexperiments.landmarker.data;
+
+/**
+ * Buckets the places in a {@link PlaceStore} into n equal compass sectors, 4 for plain
+ * quadrants up to 360 one degree bins. Sector 0 starts at north and they go clockwise,
+ * sector s owning [s * width, (s + 1) * width) so every bearing lands in exactly one of
+ * them and a range starting on a multiple of the width is made of whole sectors.
+ * <p>
+ * A place only changes sector once its bearing is past the edge by the hysteresis margin,
+ * so places sitting right on a boundary don't flip back and forth as our location jitters.
+ */
+public class AngularIndex
+{
+    public static final int MIN_SECTORS = 4;
+    public static final int MAX_SECTORS = 360;
+
+    private final int mSectorCount;
+    private final float mSectorWidth;
+    private final float mHysteresis;
+
+    /**
+     * @param sectorCount number of sectors, {@link #MIN_SECTORS} -> {@link #MAX_SECTORS}
+     * @param hysteresis degrees past a sector edge a place has to be before it moves,
+     *                   clamped to half a sector
+     */
+    public AngularIndex(int sectorCount, float hysteresis)
+    {
+        if(sectorCount < MIN_SECTORS || sectorCount > MAX_SECTORS)
+            throw new IllegalArgumentException("sectorCount should be within [" + MIN_SECTORS + ", " + MAX_SECTORS + "]");
+
+        mSectorCount = sectorCount;
+        mSectorWidth = 360.f / sectorCount;
+        mHysteresis = Math.max(0.f, Math.min(hysteresis, mSectorWidth / 2));
+    }
+
+    public int getSectorCount() {
+        return mSectorCount;
+    }
+
+    public float getSectorWidth() {
+        return mSectorWidth;
+    }
+
+    /**
+     * @return bearing in degrees of the middle of a sector, 0 -> 360
+     */
+    public float getSectorCenter(int sector) {
+        return (sector + .5f) * mSectorWidth;
+    }
+
+    /**
+     * @param bearing any bearing in degrees
+     * @return sector the bearing falls in, ignoring hysteresis
+     */
+    public int sectorOf(float bearing)
+    {
+        int sector = (int) Math.floor(normalize(bearing) / mSectorWidth);
+        return sector >= mSectorCount ? 0 : sector;
+    }
+
+    /**
+     * @param previous sector the bearing was in last time, or -1 if unknown
+     * @return previous if the bearing is still within the hysteresis margin of it,
+     * otherwise the sector the bearing falls in
+     */
+    public int sectorOf(float bearing, int previous)
+    {
+        int sector = sectorOf(bearing);
+        if(previous < 0 || previous >= mSectorCount || sector == previous)
+            return sector;
+
+        float fromCenter = Math.abs(difference(bearing, getSectorCenter(previous)));
+        return fromCenter <= mSectorWidth / 2 + mHysteresis ? previous : sector;
+    }
+
+    /**
+     * assign every place in the store to a sector and group them, using each place's
+     * current sector as the previous one for hysteresis
+     */
+    public void assign(PlaceStore store)
+    {
+        for(int i = 0; i < store.size(); i++)
+            store.setSector(i, sectorOf(store.getBearing(i), store.getSector(i)));
+
+        store.groupBySector(mSectorCount);
+    }
+
+    /**
+     * Collect the places in every sector whose center is within [heading - halfWidth,
+     * heading + halfWidth). When both ends fall on sector edges that's exactly the sectors
+     * covering the range, so nothing outside it comes back. Only walks the sectors in range, so it's
+     * O(sectors + results). The store has to have been grouped by {@link #assign} first.
+     * @param out store indices are written here, has to fit {@link PlaceStore#size()}
+     * @return number of indices written
+     */
+    public int query(PlaceStore store, float heading, float halfWidth, int[] out)
+    {
+        int first = (int) Math.ceil((heading - halfWidth) / mSectorWidth - .5f);
+        int last = (int) Math.ceil((heading + halfWidth) / mSectorWidth - .5f) - 1;
+        last = Math.min(last, first + mSectorCount - 1);
+
+        int count = 0;
+        for(int s = first; s <= last; s++)
+        {
+            int sector = ((s % mSectorCount) + mSectorCount) % mSectorCount;
+            int size = store.getSectorSize(sector);
+            for(int i = 0; i < size; i++)
+                out[count++] = store.getSectorPlace(sector, i);
+        }
+        return count;
+    }
+
+    /**
+     * @return degrees 0 -> 360
+     */
+    static float normalize(float degrees)
+    {
+        degrees %= 360.f;
+        return degrees < 0 ? degrees + 360.f : degrees;
+    }
+
+    /**
+     * @return signed smallest angle from b to a, -180 -> 180
+     */
+    static float difference(float a, float b)
+    {
+        float d = normalize(a - b);
+        return d >= 180.f ? d - 360.f : d;
+    }
+}
@@ -0,0 +1,346 @@
+package com.androidexperiments.landmarker.data;
+
+import com.androidexperiments.landmarker.places.NearbyPlacesSource;
+import com.androidexperiments.landmarker.util.GeoKernel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read only view of a landmark pack built offline by {@link LandmarkPackWriter}, so a city
+ * can be searched with no network at all. The file is memory mapped and only the header is
+ * read on open, a search touches the grid cells under its circle and nothing else, so even
+ * a pack of millions of places opens in a few ms and never sits on the heap.
+ * <p>
+ * Answers the same {@link NearbyPlacesSource} query the online search does, the most
+ * prominent places within the radius first. Thread safe.
+ *
+ * <pre>
+ * header     magic, version, count, bounds and cell size in degrees * 1e7,
+ *            rows, cols, section offsets
+ * cells      rows * cols + 1 ints, index of the first record of each cell
+ * records    count * RECORD_SIZE, sorted by cell then prominence, highest first
+ *            lat e7, lon e7, type flags, prominence, name offset
+ * names      unsigned short length + utf-8 bytes each
+ * </pre>
+ * Everything is big endian.
+ */
+public class LandmarkPack implements NearbyPlacesSource
+{
+    public static final String FILE_EXTENSION = ".lmpk";
+
+    static final int MAGIC = 0x4c4d504b; //LMPK
+    static final int FILE_VERSION = 1;
+    static final int HEADER_SIZE = 52;
+    static final int RECORD_SIZE = 20;
+    static final double E7 = 1e7;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String mName;
+    private final MappedByteBuffer mBuffer;
+
+    private final int mCount;
+    private final int mMinLatE7, mMinLonE7, mMaxLatE7, mMaxLonE7;
+    private final int mCellSizeE7;
+    private final int mRows, mCols;
+    private final int mCellsOffset, mRecordsOffset;
+
+    private LandmarkPack(String name, MappedByteBuffer buffer) throws IOException
+    {
+        mName = name;
+        mBuffer = buffer;
+
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException(name + " is not a landmark pack");
+        if(buffer.getInt(4) != FILE_VERSION)
+            throw new IOException(name + " is version " + buffer.getInt(4) + ", expected " + FILE_VERSION);
+
+        mCount = buffer.getInt(8);
+        mMinLatE7 = buffer.getInt(12);
+        mMinLonE7 = buffer.getInt(16);
+        mMaxLatE7 = buffer.getInt(20);
+        mMaxLonE7 = buffer.getInt(24);
+        mCellSizeE7 = buffer.getInt(28);
+        mRows = buffer.getInt(32);
+        mCols = buffer.getInt(36);
+        mCellsOffset = buffer.getInt(40);
+        mRecordsOffset = buffer.getInt(44);
+        int namesOffset = buffer.getInt(48);
+
+        //everything a search can index has to be inside the file
+        long cellsEnd = mCellsOffset + ((long) mRows * mCols + 1) * 4;
+        long recordsEnd = mRecordsOffset + (long) mCount * RECORD_SIZE;
+        if(mCount < 0 || mRows < 1 || mCols < 1 || mCellSizeE7 < 1
+                || mCellsOffset < HEADER_SIZE || cellsEnd > mRecordsOffset
+                || recordsEnd > namesOffset || namesOffset > buffer.capacity())
+            throw new IOException(name + " is truncated or corrupt");
+
+        //the table ends on the record count and names are written in record order, so checking
+        //the ends of both catches a file cut short anywhere past the header
+        if(buffer.getInt((int) cellsEnd - 4) != mCount)
+            throw new IOException(name + " is truncated or corrupt");
+        if(mCount > 0)
+        {
+            int lastName = buffer.getInt(mRecordsOffset + (mCount - 1) * RECORD_SIZE + 16);
+            if(lastName < namesOffset || lastName > buffer.capacity() - 2
+                    || lastName + 2 + (buffer.getShort(lastName) & 0xffff) > buffer.capacity())
+                throw new IOException(name + " is truncated or corrupt");
+        }
+    }
+
+    /**
+     * map a pack, only the header is read
+     */
+    public static LandmarkPack open(File file) throws IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+
+            //the mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            String name = file.getName();
+            if(name.endsWith(FILE_EXTENSION))
+                name = name.substring(0, name.length() - FILE_EXTENSION.length());
+
+            return new LandmarkPack(name, buffer);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return true if the location is inside the area the pack was built for
+     */
+    public boolean covers(double latitude, double longitude)
+    {
+        long lat = Math.round(latitude * E7);
+        long lon = Math.round(longitude * E7);
+        return lat >= mMinLatE7 && lat <= mMaxLatE7 && lon >= mMinLonE7 && lon <= mMaxLonE7;
+    }
+
+    /**
+     * Up to limit places within radius, most prominent first. Only the cells under the
+     * search circle are read and only the places returned are decoded. listener gets them
+     * all as a single page.
+     */
+    @Override
+    public List<PlaceRecord> getNearbyPlaces(double latitude, double longitude, double radius, int limit,
+                                             OnPageListener listener)
+    {
+        if(limit < 1 || mCount == 0)
+            return new ArrayList<>();
+
+        //widest the circle gets east to west, which is a little past dLat / cos(latitude)
+        double angle = radius / GeoKernel.EARTH_RADIUS_METERS;
+        double dLat = Math.toDegrees(angle);
+        double cosLat = Math.max(Math.cos(Math.toRadians(latitude)), 1e-6);
+        double dLon = Math.toDegrees(Math.asin(Math.min(1, Math.sin(angle) / cosLat)));
+
+        int minRow = Math.max(0, rowOf(latitude - dLat));
+        int maxRow = Math.min(mRows - 1, rowOf(latitude + dLat));
+        int minCol = Math.max(0, colOf(longitude - dLon));
+        int maxCol = Math.min(mCols - 1, colOf(longitude + dLon));
+
+        //min heap on prominence of the best limit places so far
+        TopK top = new TopK(limit);
+
+        for(int row = minRow; row <= maxRow; row++)
+        {
+            for(int col = minCol; col <= maxCol; col++)
+            {
+                int cell = row * mCols + col;
+                int start = mBuffer.getInt(mCellsOffset + cell * 4);
+                int end = mBuffer.getInt(mCellsOffset + (cell + 1) * 4);
+
+                for(int i = start; i < end; i++)
+                {
+                    int at = mRecordsOffset + i * RECORD_SIZE;
+                    int prominence = mBuffer.getInt(at + 12);
+
+                    //cells are sorted by prominence, nothing after this can make the cut
+                    if(top.isFull() && prominence <= top.min())
+                        break;
+
+                    double lat = mBuffer.getInt(at) / E7;
+                    double lon = mBuffer.getInt(at + 4) / E7;
+                    if(GeoKernel.haversineDistance(latitude, longitude, lat, lon) <= radius)
+                        top.offer(i, prominence);
+                }
+            }
+        }
+
+        List<PlaceRecord> places = read(top.sortedDescending());
+
+        if(listener != null && places.size() > 0)
+            listener.onPage(places, 0);
+
+        return places;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getPlaceCount() {
+        return mCount;
+    }
+
+    private int rowOf(double latitude) {
+        return (int) Math.floor((latitude * E7 - mMinLatE7) / mCellSizeE7);
+    }
+
+    private int colOf(double longitude) {
+        return (int) Math.floor((longitude * E7 - mMinLonE7) / mCellSizeE7);
+    }
+
+    private List<PlaceRecord> read(int[] indices)
+    {
+        //relative reads need a position of their own
+        ByteBuffer buffer = mBuffer.duplicate();
+
+        List<PlaceRecord> places = new ArrayList<>(indices.length);
+        for(int i : indices)
+        {
+            int at = mRecordsOffset + i * RECORD_SIZE;
+
+            buffer.position(mBuffer.getInt(at + 16));
+            byte[] name = new byte[buffer.getShort() & 0xffff];
+            buffer.get(name);
+
+            places.add(new PlaceRecord(mName + ":" + i, new String(name, UTF_8),
+                    mBuffer.getInt(at) / E7, mBuffer.getInt(at + 4) / E7, mBuffer.getInt(at + 8),
+                    PlaceRecord.NO_RATING, mBuffer.getInt(at + 12)));
+        }
+        return places;
+    }
+
+    /**
+     * Opens every pack in dir, skipping any that fail to open.
+     * @return empty if dir doesn't exist
+     */
+    public static List<LandmarkPack> openAll(File dir, List<IOException> errors)
+    {
+        List<LandmarkPack> packs = new ArrayList<>();
+
+        File[] files = dir.listFiles();
+        if(files == null)
+            return packs;
+
+        for(File file : files)
+        {
+            if(!file.getName().endsWith(FILE_EXTENSION))
+                continue;
+
+            try {
+                packs.add(open(file));
+            }
+            catch(IOException e) {
+                if(errors != null)
+                    errors.add(e);
+            }
+        }
+        return packs;
+    }
+
+    /**
+     * record indices of the top k by prominence, as a binary min heap
+     */
+    private static class TopK
+    {
+        private final int[] mIndices;
+        private final int[] mKeys;
+        private int mSize = 0;
+
+        TopK(int k) {
+            mIndices = new int[k];
+            mKeys = new int[k];
+        }
+
+        boolean isFull() {
+            return mSize == mKeys.length;
+        }
+
+        int min() {
+            return mKeys[0];
+        }
+
+        void offer(int index, int key)
+        {
+            if(!isFull()) {
+                mIndices[mSize] = index;
+                mKeys[mSize] = key;
+                siftUp(mSize++);
+            }
+            else if(key > mKeys[0]) {
+                mIndices[0] = index;
+                mKeys[0] = key;
+                siftDown(0, mSize);
+            }
+        }
+
+        /**
+         * empties the heap
+         */
+        int[] sortedDescending()
+        {
+            int[] sorted = new int[mSize];
+            for(int n = mSize; n > 0; n--)
+            {
+                sorted[n - 1] = mIndices[0];
+                swap(0, n - 1);
+                siftDown(0, n - 1);
+            }
+            mSize = 0;
+            return sorted;
+        }
+
+        private void siftUp(int i)
+        {
+            while(i > 0) {
+                int parent = (i - 1) / 2;
+                if(mKeys[parent] <= mKeys[i])
+                    return;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i, int size)
+        {
+            while(true) {
+                int smallest = i;
+                int left = 2 * i + 1, right = left + 1;
+                if(left < size && mKeys[left] < mKeys[smallest])
+                    smallest = left;
+                if(right < size && mKeys[right] < mKeys[smallest])
+                    smallest = right;
+                if(smallest == i)
+                    return;
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b)
+        {
+            int index = mIndices[a];
+            mIndices[a] = mIndices[b];
+            mIndices[b] = index;
+
+            int key = mKeys[a];
+            mKeys[a] = mKeys[b];
+            mKeys[b] = key;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.androidexperiments.landmarker.data;
+
+import com.androidexperiments.landmarker.util.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Builds a {@link LandmarkPack} off device. Places are bucketed into a grid of square cells
+ * over their bounding box, and each cell is sorted most prominent first so a search can stop
+ * reading a cell early. Holds everything in memory until {@link #write}, it's meant for a
+ * desktop with heap to spare rather than the phone.
+ * <p>
+ * Can be run from the command line against a tab separated file of
+ * {@code name, lat, lon, comma separated places types, prominence}, see {@link #main}.
+ */
+public class LandmarkPackWriter
+{
+    /**
+     * about 1.1km north to south, a 1km search reads 3 x 3 cells or so
+     */
+    public static final double DEFAULT_CELL_DEGREES = 0.01;
+
+    /**
+     * cell table entries allowed before cells get bigger, 16MB of table
+     */
+    private static final long MAX_CELLS = 4 * 1024 * 1024;
+
+    private static final int MAX_NAME_BYTES = 0xffff;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final double mCellDegrees;
+
+    private int mCount = 0;
+    private byte[][] mNames = new byte[1024][];
+    private int[] mLats = new int[1024];
+    private int[] mLons = new int[1024];
+    private int[] mTypes = new int[1024];
+    private int[] mProminence = new int[1024];
+
+    public LandmarkPackWriter() {
+        this(DEFAULT_CELL_DEGREES);
+    }
+
+    /**
+     * @param cellDegrees grid cell size, grown if the area would need too many cells
+     */
+    public LandmarkPackWriter(double cellDegrees)
+    {
+        if(cellDegrees <= 0)
+            throw new IllegalArgumentException("cellDegrees should be positive");
+
+        mCellDegrees = cellDegrees;
+    }
+
+    /**
+     * @param typeFlags {@link PlaceTypes} flags
+     * @param prominence higher is more prominent, read back as {@link PlaceRecord#getRatingCount()}
+     */
+    public void add(String name, double latitude, double longitude, int typeFlags, int prominence)
+    {
+        if(latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180)
+            throw new IllegalArgumentException("bad location for " + name + ": " + latitude + "," + longitude);
+
+        byte[] bytes = name.getBytes(UTF_8);
+        if(bytes.length > MAX_NAME_BYTES)
+            bytes = Arrays.copyOf(bytes, MAX_NAME_BYTES);
+
+        if(mCount == mLats.length)
+        {
+            int capacity = mCount * 2;
+            mNames = Arrays.copyOf(mNames, capacity);
+            mLats = Arrays.copyOf(mLats, capacity);
+            mLons = Arrays.copyOf(mLons, capacity);
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mProminence = Arrays.copyOf(mProminence, capacity);
+        }
+
+        mNames[mCount] = bytes;
+        mLats[mCount] = (int) Math.round(latitude * LandmarkPack.E7);
+        mLons[mCount] = (int) Math.round(longitude * LandmarkPack.E7);
+        mTypes[mCount] = typeFlags;
+        mProminence[mCount] = prominence;
+        mCount++;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public void write(File file) throws IOException
+    {
+        int minLat = Integer.MAX_VALUE, minLon = Integer.MAX_VALUE;
+        int maxLat = Integer.MIN_VALUE, maxLon = Integer.MIN_VALUE;
+        for(int i = 0; i < mCount; i++)
+        {
+            minLat = Math.min(minLat, mLats[i]);
+            maxLat = Math.max(maxLat, mLats[i]);
+            minLon = Math.min(minLon, mLons[i]);
+            maxLon = Math.max(maxLon, mLons[i]);
+        }
+        if(mCount == 0)
+            minLat = minLon = maxLat = maxLon = 0;
+
+        long cellSize = Math.max(1, Math.round(mCellDegrees * LandmarkPack.E7));
+        long rows, cols;
+        while(true)
+        {
+            rows = ((long) maxLat - minLat) / cellSize + 1;
+            cols = ((long) maxLon - minLon) / cellSize + 1;
+            if(rows * cols <= MAX_CELLS)
+                break;
+            cellSize *= 2;
+        }
+
+        //order by cell, then most prominent first
+        final long[] keys = new long[mCount];
+        Integer[] order = new Integer[mCount];
+        int[] cellCounts = new int[(int) (rows * cols)];
+        for(int i = 0; i < mCount; i++)
+        {
+            int cell = (int) (((long) mLats[i] - minLat) / cellSize * cols + ((long) mLons[i] - minLon) / cellSize);
+            cellCounts[cell]++;
+            //flipping the sign bit makes the low half sort unsigned, inverting it makes it descending
+            keys[i] = ((long) cell << 32) | (~(mProminence[i] ^ Integer.MIN_VALUE) & 0xffffffffL);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                long l = keys[lhs], r = keys[rhs];
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+
+        int cellsOffset = LandmarkPack.HEADER_SIZE;
+        long recordsOffset = cellsOffset + (cellCounts.length + 1) * 4L;
+        long namesOffset = recordsOffset + (long) mCount * LandmarkPack.RECORD_SIZE;
+
+        long namesSize = 0;
+        for(int i = 0; i < mCount; i++)
+            namesSize += 2 + mNames[i].length;
+        if(namesOffset + namesSize > Integer.MAX_VALUE)
+            throw new IOException("pack would be over 2GB, split it up");
+
+        DataOutputStream out = FileUtils.startWrite(file, 64 * 1024);
+        try {
+            out.writeInt(LandmarkPack.MAGIC);
+            out.writeInt(LandmarkPack.FILE_VERSION);
+            out.writeInt(mCount);
+            out.writeInt(minLat);
+            out.writeInt(minLon);
+            out.writeInt(maxLat);
+            out.writeInt(maxLon);
+            out.writeInt((int) cellSize);
+            out.writeInt((int) rows);
+            out.writeInt((int) cols);
+            out.writeInt(cellsOffset);
+            out.writeInt((int) recordsOffset);
+            out.writeInt((int) namesOffset);
+
+            int start = 0;
+            for(int count : cellCounts) {
+                out.writeInt(start);
+                start += count;
+            }
+            out.writeInt(start);
+
+            long nameAt = namesOffset;
+            for(Integer i : order)
+            {
+                out.writeInt(mLats[i]);
+                out.writeInt(mLons[i]);
+                out.writeInt(mTypes[i]);
+                out.writeInt(mProminence[i]);
+                out.writeInt((int) nameAt);
+                nameAt += 2 + mNames[i].length;
+            }
+
+            for(Integer i : order) {
+                out.writeShort(mNames[i].length);
+                out.write(mNames[i]);
+            }
+
+            FileUtils.finishWrite(file, out);
+        }
+        catch(IOException e) {
+            FileUtils.abortWrite(file, out);
+            throw e;
+        }
+    }
+
+    /**
+     * {@code LandmarkPackWriter <places.tsv> <out.lmpk> [cell degrees]}, blank lines and lines
+     * starting with # are skipped
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 2) {
+            System.err.println("usage: LandmarkPackWriter <places.tsv> <out.lmpk> [cell degrees]");
+            System.exit(1);
+        }
+
+        LandmarkPackWriter writer = args.length > 2
+                ? new LandmarkPackWriter(Double.parseDouble(args[2]))
+                : new LandmarkPackWriter();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(args[0]), UTF_8));
+        try {
+            String line;
+            int lineNumber = 0;
+            while((line = in.readLine()) != null)
+            {
+                lineNumber++;
+                if(line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                String[] fields = line.split("\t", -1);
+                if(fields.length < 5)
+                    throw new IOException("line " + lineNumber + ": expected 5 tab separated fields");
+
+                int types = PlaceTypes.NONE;
+                for(String type : fields[3].split(",")) {
+                    if(!type.isEmpty())
+                        types |= PlaceTypes.fromType(type.trim());
+                }
+
+                writer.add(fields[0], Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+                        types, Integer.parseInt(fields[4].trim()));
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        writer.write(new File(args[1]));
+        System.out.println("wrote " + writer.getCount() + " places to " + args[1]);
+    }
+}
@@ -1,14 +1,9 @@
 package com.androidexperiments.landmarker.data;
 
-import android.location.Location;
-
-import java.util.List;
-
 /**
  * Nearby place with the name (used for maps and display) and the
- * distance to that place, calculated against our current {@link Location}
- *
- * @see com.androidexperiments.landmarker.widget.DirectionalTextViewContainer#updatePlaces(List, Location)
+ * distance to that place, calculated against our current location.
+ * Handed out by {@link PlaceStore#getPlace(int)} for whichever place a label is showing.
  */
 public class NearbyPlace
 {
@@ -0,0 +1,173 @@
+package com.androidexperiments.landmarker.data;
+
+/**
+ * Picks the best k places out of a set of candidates with a bounded min-heap, so a
+ * sector never holds more than k ranked places no matter how dense the area is.
+ * Every candidate is scored exactly once per call. Scoring is pluggable through
+ * {@link Scorer}, {@link DefaultScorer} weighs distance, rating, prominence and type.
+ * <p>
+ * Not thread safe, the heap buffers are reused between calls.
+ */
+public class PlaceRanker
+{
+    public interface Scorer
+    {
+        /**
+         * @return higher is better
+         */
+        float score(PlaceStore store, int index);
+    }
+
+    private final Scorer mScorer;
+
+    private int[] mHeap = new int[0];
+    private float[] mHeapScores = new float[0];
+
+    public PlaceRanker(Scorer scorer) {
+        mScorer = scorer;
+    }
+
+    /**
+     * @param candidates store indices to pick from
+     * @param count number of candidates
+     * @param k max number of places to keep
+     * @param out best places first, has to fit k
+     * @return number of places written to out
+     */
+    public int rank(PlaceStore store, int[] candidates, int count, int k, int[] out)
+    {
+        if(mHeap.length < k) {
+            mHeap = new int[k];
+            mHeapScores = new float[k];
+        }
+
+        int size = 0;
+        for(int c = 0; c < count; c++)
+        {
+            int index = candidates[c];
+            float score = mScorer.score(store, index);
+
+            if(size < k) {
+                mHeap[size] = index;
+                mHeapScores[size] = score;
+                siftUp(size++);
+            }
+            else if(k > 0 && score > mHeapScores[0]) {
+                mHeap[0] = index;
+                mHeapScores[0] = score;
+                siftDown(0, size);
+            }
+        }
+
+        //pop the min off the back so out ends up best first
+        int n = size;
+        while(size > 0)
+        {
+            out[--size] = mHeap[0];
+            swap(0, size);
+            siftDown(0, size);
+        }
+        return n;
+    }
+
+    private void siftUp(int i)
+    {
+        while(i > 0)
+        {
+            int parent = (i - 1) / 2;
+            if(mHeapScores[i] >= mHeapScores[parent])
+                return;
+
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int size)
+    {
+        while(true)
+        {
+            int left = 2 * i + 1;
+            if(left >= size)
+                return;
+
+            int smallest = left;
+            int right = left + 1;
+            if(right < size && mHeapScores[right] < mHeapScores[left])
+                smallest = right;
+
+            if(mHeapScores[i] <= mHeapScores[smallest])
+                return;
+
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b)
+    {
+        int index = mHeap[a];
+        mHeap[a] = mHeap[b];
+        mHeap[b] = index;
+
+        float score = mHeapScores[a];
+        mHeapScores[a] = mHeapScores[b];
+        mHeapScores[b] = score;
+    }
+
+    /**
+     * Linear mix of how close, how well rated, how well known and what kind of place
+     * it is. Landmarks and sights float to the top, atms and gas stations sink.
+     */
+    public static class DefaultScorer implements Scorer
+    {
+        private final float distanceWeight;
+        private final float ratingWeight;
+        private final float prominenceWeight;
+        private final float maxDistance;
+
+        /**
+         * @param maxDistance meters at which the distance term bottoms out, usually the search radius
+         */
+        public DefaultScorer(float maxDistance) {
+            this(1.f, 1.f, 1.f, maxDistance);
+        }
+
+        public DefaultScorer(float distanceWeight, float ratingWeight, float prominenceWeight, float maxDistance) {
+            this.distanceWeight = distanceWeight;
+            this.ratingWeight = ratingWeight;
+            this.prominenceWeight = prominenceWeight;
+            this.maxDistance = maxDistance;
+        }
+
+        @Override
+        public float score(PlaceStore store, int index)
+        {
+            //0 at our feet, -1 at the edge of the search
+            float distance = -Math.min(store.getDistance(index) / maxDistance, 1.f);
+
+            //-1 -> 1 around an average 3 star rating, 0 when unrated
+            float stars = store.getRating(index);
+            float rating = stars > 0 ? (stars - 3.f) / 2.f : 0.f;
+
+            //0 -> 1 for 0 -> ~1000 ratings
+            float prominence = (float) Math.min(Math.log1p(store.getRatingCount(index)) / Math.log(1000), 1.0);
+
+            return distanceWeight * distance
+                    + ratingWeight * rating
+                    + prominenceWeight * prominence
+                    + typeScore(store.getTypeFlags(index));
+        }
+
+        protected float typeScore(int flags)
+        {
+            if(PlaceTypes.has(flags, PlaceTypes.LANDMARK | PlaceTypes.MUSEUM | PlaceTypes.PARK | PlaceTypes.WORSHIP))
+                return 1.f;
+            if(PlaceTypes.has(flags, PlaceTypes.ENTERTAINMENT | PlaceTypes.TRANSIT))
+                return .5f;
+            if(PlaceTypes.has(flags, PlaceTypes.SERVICE))
+                return -1.f;
+            return 0.f;
+        }
+    }
+}
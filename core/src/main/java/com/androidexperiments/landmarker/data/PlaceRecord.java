@@ -0,0 +1,66 @@
+package com.androidexperiments.landmarker.data;
+
+/**
+ * The handful of fields we actually use from a Places API result. Small enough
+ * to be written to disk by {@link PlacesTileCache} and read back on the next launch.
+ */
+public class PlaceRecord
+{
+    public static final float NO_RATING = -1.f;
+
+    private final String id;
+    private final String name;
+    private final double latitude;
+    private final double longitude;
+    private final int typeFlags;
+    private final float rating;
+    private final int ratingCount;
+
+    public PlaceRecord(String id, String name, double latitude, double longitude) {
+        this(id, name, latitude, longitude, PlaceTypes.NONE, NO_RATING, 0);
+    }
+
+    /**
+     * @param typeFlags {@link PlaceTypes} flags for this place
+     * @param rating 1 -> 5, or {@link #NO_RATING}
+     * @param ratingCount number of user ratings, our stand in for prominence
+     */
+    public PlaceRecord(String id, String name, double latitude, double longitude,
+                       int typeFlags, float rating, int ratingCount) {
+        this.id = id;
+        this.name = name;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.typeFlags = typeFlags;
+        this.rating = rating;
+        this.ratingCount = ratingCount;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public int getTypeFlags() {
+        return typeFlags;
+    }
+
+    public float getRating() {
+        return rating;
+    }
+
+    public int getRatingCount() {
+        return ratingCount;
+    }
+}
@@ -0,0 +1,303 @@
+package com.androidexperiments.landmarker.data;
+
+import com.androidexperiments.landmarker.util.GeoKernel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column store for every place we know about. Each place is an index into parallel
+ * primitive arrays, names are interned into one shared table, and places are grouped
+ * by direction through an index permutation instead of per-direction lists. Clearing
+ * and refilling it keeps its arrays, so refreshes don't churn the heap. The name table
+ * only lives as long as one fill, so name ids mean nothing after {@link #clear}.
+ * <p>
+ * Not thread safe, meant to be owned and touched by the ui thread.
+ */
+public class PlaceStore
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int mSize = 0;
+
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+    private float[] mDistances;
+    private float[] mBearings;
+    private int[] mTypeFlags;
+    private float[] mRatings;
+    private int[] mRatingCounts;
+    private int[] mNameIds;
+
+    private final List<String> mNames = new ArrayList<>();
+    private final Map<String, Integer> mNameLookup = new HashMap<>();
+
+    private int[] mSectors;
+
+    /**
+     * store indices grouped by sector, sector s owns [mSectorStarts[s], mSectorStarts[s + 1])
+     */
+    private int[] mOrder;
+    private int[] mSectorStarts = new int[1];
+    private int[] mSectorCursors = new int[0];
+    private int mSectorCount = 0;
+
+    public PlaceStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public PlaceStore(int capacity)
+    {
+        capacity = Math.max(1, capacity);
+        mLatitudes = new double[capacity];
+        mLongitudes = new double[capacity];
+        mDistances = new float[capacity];
+        mBearings = new float[capacity];
+        mTypeFlags = new int[capacity];
+        mRatings = new float[capacity];
+        mRatingCounts = new int[capacity];
+        mNameIds = new int[capacity];
+        mSectors = new int[capacity];
+        mOrder = new int[capacity];
+    }
+
+    /**
+     * drop every place and name but keep the arrays around for the next fill
+     */
+    public void clear()
+    {
+        mSize = 0;
+        mNames.clear();
+        mNameLookup.clear();
+        mSectorCount = 0;
+        mSectorStarts[0] = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return index of the new place
+     */
+    public int add(String name, double latitude, double longitude, int typeFlags) {
+        return add(name, latitude, longitude, typeFlags, PlaceRecord.NO_RATING, 0);
+    }
+
+    /**
+     * @return index of the new place
+     */
+    public int add(String name, double latitude, double longitude, int typeFlags, float rating, int ratingCount)
+    {
+        ensureCapacity(mSize + 1);
+
+        int i = mSize++;
+        mLatitudes[i] = latitude;
+        mLongitudes[i] = longitude;
+        mTypeFlags[i] = typeFlags;
+        mRatings[i] = rating;
+        mRatingCounts[i] = ratingCount;
+        mNameIds[i] = internName(name);
+        mDistances[i] = 0;
+        mBearings[i] = 0;
+        mSectors[i] = -1;
+        return i;
+    }
+
+    /**
+     * @return index of the first place added
+     */
+    public int addAll(List<PlaceRecord> places)
+    {
+        int start = mSize;
+        ensureCapacity(mSize + places.size());
+
+        for(int i = 0; i < places.size(); i++) {
+            PlaceRecord place = places.get(i);
+            add(place.getName(), place.getLatitude(), place.getLongitude(), place.getTypeFlags(),
+                    place.getRating(), place.getRatingCount());
+        }
+        return start;
+    }
+
+    /**
+     * recompute bearing and distance for every place from a new origin
+     */
+    public void computeFrom(double latitude, double longitude, GeoKernel kernel) {
+        kernel.compute(latitude, longitude, mLatitudes, mLongitudes, mSize, mBearings, mDistances);
+    }
+
+    public double getLatitude(int i) {
+        return mLatitudes[i];
+    }
+
+    public double getLongitude(int i) {
+        return mLongitudes[i];
+    }
+
+    public float getDistance(int i) {
+        return mDistances[i];
+    }
+
+    public float getBearing(int i) {
+        return mBearings[i];
+    }
+
+    public int getTypeFlags(int i) {
+        return mTypeFlags[i];
+    }
+
+    public float getRating(int i) {
+        return mRatings[i];
+    }
+
+    public int getRatingCount(int i) {
+        return mRatingCounts[i];
+    }
+
+    public String getName(int i) {
+        return mNames.get(mNameIds[i]);
+    }
+
+    /**
+     * id into the shared name table, equal ids mean equal names until the next {@link #clear}
+     */
+    public int getNameId(int i) {
+        return mNameIds[i];
+    }
+
+    /**
+     * distinct names added since the last {@link #clear}
+     */
+    int getNameCount() {
+        return mNames.size();
+    }
+
+    /**
+     * @return a detached copy of a place, for handing out beyond the store
+     */
+    public NearbyPlace getPlace(int i) {
+        return new NearbyPlace(mDistances[i], getName(i));
+    }
+
+    //sectors
+
+    /**
+     * -1 until a sector has been set
+     */
+    public int getSector(int i) {
+        return mSectors[i];
+    }
+
+    public void setSector(int i, int sector) {
+        mSectors[i] = sector;
+    }
+
+    /**
+     * Group places by the sector set on them with a stable counting sort, so each
+     * sector keeps the order places were added in.
+     * @param sectorCount every place's sector must be in [0, sectorCount)
+     */
+    public void groupBySector(int sectorCount)
+    {
+        if(mSectorStarts.length < sectorCount + 1) {
+            mSectorStarts = new int[sectorCount + 1];
+            mSectorCursors = new int[sectorCount];
+        }
+
+        for(int s = 0; s <= sectorCount; s++)
+            mSectorStarts[s] = 0;
+
+        for(int i = 0; i < mSize; i++)
+            mSectorStarts[mSectors[i] + 1]++;
+
+        for(int s = 0; s < sectorCount; s++) {
+            mSectorStarts[s + 1] += mSectorStarts[s];
+            mSectorCursors[s] = mSectorStarts[s];
+        }
+
+        for(int i = 0; i < mSize; i++)
+            mOrder[mSectorCursors[mSectors[i]]++] = i;
+
+        mSectorCount = sectorCount;
+    }
+
+    public int getSectorCount() {
+        return mSectorCount;
+    }
+
+    public int getSectorStart(int sector) {
+        return mSectorStarts[sector];
+    }
+
+    public int getSectorEnd(int sector) {
+        return mSectorStarts[sector + 1];
+    }
+
+    public int getSectorSize(int sector) {
+        return mSectorStarts[sector + 1] - mSectorStarts[sector];
+    }
+
+    /**
+     * @param position 0 -> getSectorSize(sector)
+     * @return store index of the place at that position in the sector
+     */
+    public int getSectorPlace(int sector, int position) {
+        return mOrder[mSectorStarts[sector] + position];
+    }
+
+    private int internName(String name)
+    {
+        if(name == null)
+            name = "";
+
+        Integer id = mNameLookup.get(name);
+        if(id == null) {
+            id = mNames.size();
+            mNames.add(name);
+            mNameLookup.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * make room for capacity places up front, for callers adding a known number one by one
+     */
+    public void ensureCapacity(int capacity)
+    {
+        if(capacity <= mLatitudes.length)
+            return;
+
+        int newCapacity = Math.max(capacity, mLatitudes.length * 2);
+        mLatitudes = grow(mLatitudes, newCapacity);
+        mLongitudes = grow(mLongitudes, newCapacity);
+        mDistances = grow(mDistances, newCapacity);
+        mBearings = grow(mBearings, newCapacity);
+        mTypeFlags = grow(mTypeFlags, newCapacity);
+        mRatings = grow(mRatings, newCapacity);
+        mRatingCounts = grow(mRatingCounts, newCapacity);
+        mNameIds = grow(mNameIds, newCapacity);
+        mSectors = grow(mSectors, newCapacity);
+        mOrder = grow(mOrder, newCapacity);
+    }
+
+    private static double[] grow(double[] src, int capacity) {
+        double[] dst = new double[capacity];
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return dst;
+    }
+
+    private static float[] grow(float[] src, int capacity) {
+        float[] dst = new float[capacity];
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return dst;
+    }
+
+    private static int[] grow(int[] src, int capacity) {
+        int[] dst = new int[capacity];
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return dst;
+    }
+}
@@ -0,0 +1,103 @@
+package com.androidexperiments.landmarker.data;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collapses the Places API type strings into a handful of bit flags, which is all
+ * we need for ranking and is small enough to store per place.
+ */
+public class PlaceTypes
+{
+    public static final int NONE = 0;
+    public static final int LANDMARK = 1;
+    public static final int MUSEUM = 1 << 1;
+    public static final int PARK = 1 << 2;
+    public static final int WORSHIP = 1 << 3;
+    public static final int ENTERTAINMENT = 1 << 4;
+    public static final int TRANSIT = 1 << 5;
+    public static final int FOOD = 1 << 6;
+    public static final int LODGING = 1 << 7;
+    public static final int SHOPPING = 1 << 8;
+    public static final int SERVICE = 1 << 9;
+
+    private static final Map<String, Integer> FLAGS = new HashMap<>();
+
+    static {
+        FLAGS.put("tourist_attraction", LANDMARK);
+        FLAGS.put("natural_feature", LANDMARK);
+        FLAGS.put("city_hall", LANDMARK);
+        FLAGS.put("university", LANDMARK);
+        FLAGS.put("stadium", LANDMARK);
+        FLAGS.put("museum", MUSEUM);
+        FLAGS.put("art_gallery", MUSEUM);
+        FLAGS.put("library", MUSEUM);
+        FLAGS.put("park", PARK);
+        FLAGS.put("zoo", PARK);
+        FLAGS.put("aquarium", PARK);
+        FLAGS.put("amusement_park", PARK);
+        FLAGS.put("church", WORSHIP);
+        FLAGS.put("hindu_temple", WORSHIP);
+        FLAGS.put("mosque", WORSHIP);
+        FLAGS.put("synagogue", WORSHIP);
+        FLAGS.put("place_of_worship", WORSHIP);
+        FLAGS.put("movie_theater", ENTERTAINMENT);
+        FLAGS.put("night_club", ENTERTAINMENT);
+        FLAGS.put("casino", ENTERTAINMENT);
+        FLAGS.put("bowling_alley", ENTERTAINMENT);
+        FLAGS.put("train_station", TRANSIT);
+        FLAGS.put("subway_station", TRANSIT);
+        FLAGS.put("bus_station", TRANSIT);
+        FLAGS.put("transit_station", TRANSIT);
+        FLAGS.put("airport", TRANSIT);
+        FLAGS.put("restaurant", FOOD);
+        FLAGS.put("cafe", FOOD);
+        FLAGS.put("bar", FOOD);
+        FLAGS.put("bakery", FOOD);
+        FLAGS.put("food", FOOD);
+        FLAGS.put("lodging", LODGING);
+        FLAGS.put("store", SHOPPING);
+        FLAGS.put("shopping_mall", SHOPPING);
+        FLAGS.put("department_store", SHOPPING);
+        FLAGS.put("clothing_store", SHOPPING);
+        FLAGS.put("atm", SERVICE);
+        FLAGS.put("bank", SERVICE);
+        FLAGS.put("gas_station", SERVICE);
+        FLAGS.put("parking", SERVICE);
+        FLAGS.put("pharmacy", SERVICE);
+        FLAGS.put("car_repair", SERVICE);
+        FLAGS.put("laundry", SERVICE);
+    }
+
+    private PlaceTypes() {}
+
+    public static int fromType(String type)
+    {
+        Integer flag = FLAGS.get(type);
+        return flag != null ? flag : NONE;
+    }
+
+    public static int fromTypes(List<String> types)
+    {
+        int flags = NONE;
+        if(types == null)
+            return flags;
+
+        for(String type : types)
+            flags |= fromType(type);
+
+        return flags;
+    }
+
+    /**
+     * @return every type string that maps to a flag, a new array each call
+     */
+    public static String[] getTypeNames() {
+        return FLAGS.keySet().toArray(new String[FLAGS.size()]);
+    }
+
+    public static boolean has(int flags, int type) {
+        return (flags & type) != 0;
+    }
+}
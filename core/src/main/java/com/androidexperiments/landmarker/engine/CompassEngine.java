@@ -0,0 +1,157 @@
+package com.androidexperiments.landmarker.engine;
+
+import com.androidexperiments.landmarker.data.AngularIndex;
+import com.androidexperiments.landmarker.data.PlaceRanker;
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.data.PlaceStore;
+import com.androidexperiments.landmarker.places.NearbyResponseParser;
+import com.androidexperiments.landmarker.util.GeoKernel;
+
+import java.util.List;
+
+/**
+ * Everything between a list of places and what each compass label shows, with no android
+ * in it. Holds the places, works out bearings and distances from a location, buckets them
+ * into sectors and ranks each label's slice of the compass.
+ * <p>
+ * Slots are the labels, evenly spaced clockwise from north. Steady state doesn't allocate.
+ * Not thread safe.
+ */
+public class CompassEngine
+{
+    public static final int DEFAULT_SLOT_COUNT = 4;
+
+    /**
+     * angular resolution places are bucketed at, labels pull from however many
+     * sectors fall in their slice of the compass
+     */
+    public static final int DEFAULT_SECTOR_COUNT = 72;
+
+    /**
+     * degrees a place has to move past a sector edge before it changes sector
+     */
+    public static final float DEFAULT_SECTOR_HYSTERESIS = 2.f;
+
+    /**
+     * how many ranked places each label keeps to swipe through
+     */
+    public static final int DEFAULT_MAX_PLACES_PER_SLOT = 20;
+
+    private final PlaceStore mPlaceStore = new PlaceStore();
+    private final AngularIndex mAngularIndex;
+    private final PlaceRanker mRanker;
+    private final GeoKernel mGeoKernel;
+
+    private final int[][] mSlotPlaces;
+    private final int[] mSlotCounts;
+    private int[] mCandidates = new int[0];
+
+    /**
+     * @param maxDistance meters at which distance stops counting against a place, should
+     *                    match the search radius
+     */
+    public CompassEngine(float maxDistance) {
+        this(DEFAULT_SLOT_COUNT, DEFAULT_SECTOR_COUNT, DEFAULT_SECTOR_HYSTERESIS, DEFAULT_MAX_PLACES_PER_SLOT,
+                new PlaceRanker(new PlaceRanker.DefaultScorer(maxDistance)),
+                new GeoKernel(GeoKernel.Mode.EQUIRECTANGULAR));
+    }
+
+    /**
+     * @param slotCount labels around the compass
+     * @param sectorCount a multiple of twice the slot count, so every label's edges are sector
+     *                    edges and a place lands under exactly the label its bearing is in
+     * @param geoKernel computes bearings and distances, equirectangular is plenty at search radii
+     */
+    public CompassEngine(int slotCount, int sectorCount, float sectorHysteresis, int maxPlacesPerSlot,
+                         PlaceRanker ranker, GeoKernel geoKernel)
+    {
+        if(slotCount < 1)
+            throw new IllegalArgumentException("slotCount should be at least 1");
+        if(sectorCount % (2 * slotCount) != 0)
+            throw new IllegalArgumentException("sectorCount should be a multiple of " + 2 * slotCount);
+
+        mAngularIndex = new AngularIndex(sectorCount, sectorHysteresis);
+        mRanker = ranker;
+        mGeoKernel = geoKernel;
+        mSlotPlaces = new int[slotCount][maxPlacesPerSlot];
+        mSlotCounts = new int[slotCount];
+    }
+
+    /**
+     * replace every place, call {@link #update} after
+     */
+    public void setPlaces(List<PlaceRecord> places)
+    {
+        //the store keeps its arrays for the refill
+        mPlaceStore.clear();
+        mPlaceStore.addAll(places);
+    }
+
+    /**
+     * merge more places in, call {@link #update} after
+     */
+    public void addPlaces(List<PlaceRecord> places) {
+        mPlaceStore.addAll(places);
+    }
+
+    /**
+     * merge a parsed response page in straight from the parser's columns, call {@link #update} after
+     */
+    public void addPlaces(NearbyResponseParser page) {
+        page.appendTo(mPlaceStore);
+    }
+
+    public int size() {
+        return mPlaceStore.size();
+    }
+
+    /**
+     * recompute bearings, distances, sectors and every slot's ranking from this location
+     */
+    public void update(double latitude, double longitude)
+    {
+        mPlaceStore.computeFrom(latitude, longitude, mGeoKernel);
+        mAngularIndex.assign(mPlaceStore);
+
+        if(mCandidates.length < mPlaceStore.size())
+            mCandidates = new int[mPlaceStore.size()];
+
+        float halfWidth = 180.f / mSlotPlaces.length;
+        for(int slot = 0; slot < mSlotPlaces.length; slot++)
+        {
+            //each label covers an equal slice of the compass centered on its own heading
+            int count = mAngularIndex.query(mPlaceStore, getSlotHeading(slot), halfWidth, mCandidates);
+
+            //scored once here, swiping just walks the ranked list
+            mSlotCounts[slot] = mRanker.rank(mPlaceStore, mCandidates, count,
+                    mSlotPlaces[slot].length, mSlotPlaces[slot]);
+        }
+    }
+
+    public int getSlotCount() {
+        return mSlotPlaces.length;
+    }
+
+    /**
+     * @return degrees clockwise from north the slot is centered on
+     */
+    public float getSlotHeading(int slot) {
+        return slot * 360.f / mSlotPlaces.length;
+    }
+
+    /**
+     * @return store indices of the slot's places, best first, valid up to {@link #getSlotPlaceCount}.
+     * reused by the next {@link #update}.
+     */
+    public int[] getSlotPlaces(int slot) {
+        return mSlotPlaces[slot];
+    }
+
+    public int getSlotPlaceCount(int slot) {
+        return mSlotCounts[slot];
+    }
+
+    public PlaceStore getPlaceStore() {
+        return mPlaceStore;
+    }
+}
@@ -0,0 +1,89 @@
+package com.androidexperiments.landmarker.engine;
+
+/**
+ * Turns the heading the head tracker reports into how far each of the four labels slides
+ * across the screen, so the label for the direction we face sits in the middle.
+ * Offsets are in label widths, 0 centered and +-1 a full label to either side.
+ */
+public class CompassLayout
+{
+    public static final int NORTH = 0;
+    public static final int EAST = 1;
+    public static final int SOUTH = 2;
+    public static final int WEST = 3;
+    public static final int SLOT_COUNT = 4;
+
+    private static final float DEGREES_PER_SLOT = 90.f;
+
+    /**
+     * a label is directly behind us at 2 label widths out, that's where it jumps sides
+     */
+    private static final float WRAP_OFFSET = 2.f;
+
+    /**
+     * degrees past directly behind a label has to get before it jumps to the other side
+     */
+    public static final float DEFAULT_WRAP_HYSTERESIS = 10.f;
+
+    /**
+     * where each slot sits centered, in the 0 -> 360 space computeOffsets works in.
+     * 180 north 90 east 0 south 270 west
+     */
+    private static final float[] SLOT_CENTERS = { 180.f, 90.f, 0.f, 270.f };
+
+    private CompassLayout() {}
+
+    /**
+     * @param degrees -180 -> 180, 0 being due EAST and 90 being north
+     * @param offsets written with one offset per slot, clockwise from {@link #NORTH}, each
+     *                within [-2, 2)
+     */
+    public static void computeOffsets(double degrees, float[] offsets) {
+        computeOffsets(degrees, offsets, 0.f);
+    }
+
+    /**
+     * Same as {@link #computeOffsets(double, float[])} but a label behind us stays on the side
+     * it was on until the heading is past the wrap point by the hysteresis, so it doesn't jump
+     * from one side to the other every frame while the heading hovers there.
+     * @param offsets last frame's offsets, overwritten with this frame's
+     * @param hysteresis degrees
+     */
+    public static void computeOffsets(double degrees, float[] offsets, float hysteresis)
+    {
+        //hack
+        degrees = (degrees + 180) % 360 - 90;
+        if(degrees < 0)
+            degrees = 360 + degrees;
+
+        float margin = WRAP_OFFSET + hysteresis / DEGREES_PER_SLOT;
+
+        for(int slot = 0; slot < SLOT_COUNT; slot++)
+        {
+            float offset = ((float) degrees - SLOT_CENTERS[slot]) / DEGREES_PER_SLOT;
+            offset = wrap(offset);
+
+            //wrapped since last frame, stay put unless it's well past
+            float previous = offsets[slot];
+            if(hysteresis > 0 && Math.abs(offset - previous) > WRAP_OFFSET) {
+                float unwrapped = offset > previous ? offset - 2 * WRAP_OFFSET : offset + 2 * WRAP_OFFSET;
+                if(Math.abs(unwrapped) <= margin)
+                    offset = unwrapped;
+            }
+
+            offsets[slot] = offset;
+        }
+    }
+
+    /**
+     * @return offset moved a whole turn at a time into [-2, 2)
+     */
+    private static float wrap(float offset)
+    {
+        float turn = 2 * WRAP_OFFSET;
+        offset = (offset + WRAP_OFFSET) % turn;
+        if(offset < 0)
+            offset += turn;
+        return offset - WRAP_OFFSET;
+    }
+}
@@ -0,0 +1,19 @@
+package com.androidexperiments.landmarker.places;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * What {@link NearbySearchClient} sends its requests through, so the connection handling
+ * can be swapped out or pointed at a local stand-in without touching the client.
+ */
+public interface HttpTransport
+{
+    /**
+     * GET a url.
+     * @return the decoded response body, the caller has to close it. closing after reading
+     * to the end lets the connection go back to the pool.
+     * @throws IOException on connection failures and any status other than 200
+     */
+    InputStream get(String url) throws IOException;
+}
@@ -0,0 +1,595 @@
+package com.androidexperiments.landmarker.places;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull parser for JSON, in the spirit of android.util.JsonReader but without
+ * android so it runs anywhere. Names and strings can be matched against a fixed set of
+ * candidates straight out of the read buffer, numbers are parsed without going through a
+ * String, and skipped values are scanned over without being built, so a caller that only
+ * projects a few fields out of a large document allocates next to nothing.
+ * <p>
+ * Not thread safe. {@link #reset} starts it on another document, keeping its buffers.
+ */
+public class JsonPullParser
+{
+    public enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT }
+
+    private static final int SCOPE_EMPTY_ARRAY = 0;
+    private static final int SCOPE_NONEMPTY_ARRAY = 1;
+    private static final int SCOPE_EMPTY_OBJECT = 2;
+    private static final int SCOPE_NONEMPTY_OBJECT = 3;
+    private static final int SCOPE_DANGLING_NAME = 4;
+    private static final int SCOPE_EMPTY_DOCUMENT = 5;
+    private static final int SCOPE_NONEMPTY_DOCUMENT = 6;
+
+    /**
+     * biggest long that still converts to a double exactly
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * powers of ten that are exact as doubles
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private Reader mReader;
+    private final char[] mBuffer = new char[4096];
+    private int mPos = 0;
+    private int mLimit = 0;
+
+    /**
+     * the last string or name read, only valid until the next read
+     */
+    private char[] mChars = new char[64];
+    private int mCharCount = 0;
+
+    private int[] mStack = new int[32];
+    private int mStackSize = 0;
+
+    private Token mPeeked = null;
+
+    public JsonPullParser(Reader reader) {
+        reset(reader);
+    }
+
+    /**
+     * drop whatever is left of the current document and start on reader, the buffers are kept
+     */
+    public void reset(Reader reader)
+    {
+        mReader = reader;
+        mPos = 0;
+        mLimit = 0;
+        mCharCount = 0;
+        mStackSize = 0;
+        mPeeked = null;
+        push(SCOPE_EMPTY_DOCUMENT);
+    }
+
+    public Token peek() throws IOException
+    {
+        if(mPeeked == null)
+            mPeeked = doPeek();
+        return mPeeked;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(SCOPE_EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        mStackSize--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(SCOPE_EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        mStackSize--;
+    }
+
+    /**
+     * @return true if the current object or array has another element
+     */
+    public boolean hasNext() throws IOException
+    {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException
+    {
+        expect(Token.NAME);
+        readString();
+        return new String(mChars, 0, mCharCount);
+    }
+
+    /**
+     * read a name without allocating it
+     * @return index of the candidate it equals, or -1
+     */
+    public int nextName(String[] candidates) throws IOException
+    {
+        expect(Token.NAME);
+        readString();
+        return match(candidates);
+    }
+
+    /**
+     * @return the next string, or a number's literal text
+     */
+    public String nextString() throws IOException
+    {
+        Token token = peek();
+        if(token == Token.STRING) {
+            mPeeked = null;
+            readString();
+        }
+        else if(token == Token.NUMBER) {
+            mPeeked = null;
+            readLiteral();
+        }
+        else {
+            throw syntaxError("expected a string but was " + token);
+        }
+        return new String(mChars, 0, mCharCount);
+    }
+
+    /**
+     * read a string without allocating it
+     * @return index of the candidate it equals, or -1
+     */
+    public int nextString(String[] candidates) throws IOException
+    {
+        expect(Token.STRING);
+        readString();
+        return match(candidates);
+    }
+
+    /**
+     * accepts numbers and strings holding numbers, like JsonReader
+     */
+    public double nextDouble() throws IOException
+    {
+        Token token = peek();
+        if(token == Token.NUMBER) {
+            mPeeked = null;
+            readLiteral();
+        }
+        else if(token == Token.STRING) {
+            mPeeked = null;
+            readString();
+        }
+        else {
+            throw syntaxError("expected a number but was " + token);
+        }
+        return parseDouble();
+    }
+
+    public int nextInt() throws IOException
+    {
+        double value = nextDouble();
+        int result = (int) value;
+        if(result != value)
+            throw syntaxError("expected an int but was " + value);
+        return result;
+    }
+
+    public long nextLong() throws IOException
+    {
+        double value = nextDouble();
+        long result = (long) value;
+        if(result != value)
+            throw syntaxError("expected a long but was " + value);
+        return result;
+    }
+
+    public boolean nextBoolean() throws IOException
+    {
+        expect(Token.BOOLEAN);
+        if(peekChar() == 't') {
+            consumeLiteral("true");
+            return true;
+        }
+        consumeLiteral("false");
+        return false;
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        consumeLiteral("null");
+    }
+
+    /**
+     * skip the next value, objects and arrays included, without building any of it
+     */
+    public void skipValue() throws IOException
+    {
+        int depth = 0;
+        do {
+            switch(peek())
+            {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case NAME:
+                case STRING:
+                    mPeeked = null;
+                    skipString();
+                    break;
+                case NUMBER:
+                    mPeeked = null;
+                    skipLiteral();
+                    break;
+                case BOOLEAN:
+                case NULL:
+                    mPeeked = null;
+                    skipLiteral();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("unexpected end of document");
+            }
+        }
+        while(depth > 0);
+    }
+
+    //tokenizer
+
+    private Token doPeek() throws IOException
+    {
+        int scope = mStack[mStackSize - 1];
+        int c;
+
+        switch(scope)
+        {
+            case SCOPE_EMPTY_ARRAY:
+                mStack[mStackSize - 1] = SCOPE_NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if(c == ']')
+                    return Token.END_ARRAY;
+                if(c == -1)
+                    throw syntaxError("unterminated array");
+                mPos--;
+                return peekValue();
+
+            case SCOPE_NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if(c == ']')
+                    return Token.END_ARRAY;
+                if(c != ',')
+                    throw syntaxError("unterminated array");
+                return peekValue();
+
+            case SCOPE_EMPTY_OBJECT:
+            case SCOPE_NONEMPTY_OBJECT:
+                mStack[mStackSize - 1] = SCOPE_DANGLING_NAME;
+                c = nextNonWhitespace();
+                if(c == '}')
+                    return Token.END_OBJECT;
+                if(scope == SCOPE_NONEMPTY_OBJECT) {
+                    if(c != ',')
+                        throw syntaxError("unterminated object");
+                    c = nextNonWhitespace();
+                }
+                if(c != '"')
+                    throw syntaxError("expected a name");
+                return Token.NAME;
+
+            case SCOPE_DANGLING_NAME:
+                mStack[mStackSize - 1] = SCOPE_NONEMPTY_OBJECT;
+                if(nextNonWhitespace() != ':')
+                    throw syntaxError("expected ':'");
+                return peekValue();
+
+            case SCOPE_EMPTY_DOCUMENT:
+                mStack[mStackSize - 1] = SCOPE_NONEMPTY_DOCUMENT;
+                return peekValue();
+
+            default:
+                if(mPos < mLimit || fill())
+                    throw syntaxError("expected end of document");
+                return Token.END_DOCUMENT;
+        }
+    }
+
+    /**
+     * opening quotes and brackets are consumed, literals are left in the buffer
+     */
+    private Token peekValue() throws IOException
+    {
+        int c = nextNonWhitespace();
+        switch(c)
+        {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                mPos--;
+                return Token.BOOLEAN;
+            case 'n':
+                mPos--;
+                return Token.NULL;
+            case -1:
+                throw syntaxError("unexpected end of document");
+            default:
+                if(c == '-' || (c >= '0' && c <= '9')) {
+                    mPos--;
+                    return Token.NUMBER;
+                }
+                throw syntaxError("unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void expect(Token expected) throws IOException
+    {
+        Token token = peek();
+        if(token != expected)
+            throw syntaxError("expected " + expected + " but was " + token);
+        mPeeked = null;
+    }
+
+    private int nextNonWhitespace() throws IOException
+    {
+        while(mPos < mLimit || fill())
+        {
+            char c = mBuffer[mPos++];
+            if(c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                return c;
+        }
+        return -1;
+    }
+
+    private int peekChar() throws IOException {
+        return mPos < mLimit || fill() ? mBuffer[mPos] : -1;
+    }
+
+    private int nextChar() throws IOException {
+        return mPos < mLimit || fill() ? mBuffer[mPos++] : -1;
+    }
+
+    private boolean fill() throws IOException
+    {
+        mPos = 0;
+        mLimit = 0;
+
+        int read = mReader.read(mBuffer, 0, mBuffer.length);
+        if(read <= 0)
+            return false;
+
+        mLimit = read;
+        return true;
+    }
+
+    /**
+     * read the rest of a string whose opening quote is consumed into mChars
+     */
+    private void readString() throws IOException
+    {
+        mCharCount = 0;
+        while(true)
+        {
+            int c = nextChar();
+            if(c == '"')
+                return;
+            if(c == -1)
+                throw syntaxError("unterminated string");
+            if(c == '\\')
+                c = readEscape();
+
+            if(mCharCount == mChars.length) {
+                char[] chars = new char[mChars.length * 2];
+                System.arraycopy(mChars, 0, chars, 0, mCharCount);
+                mChars = chars;
+            }
+            mChars[mCharCount++] = (char) c;
+        }
+    }
+
+    private void skipString() throws IOException
+    {
+        while(true)
+        {
+            int c = nextChar();
+            if(c == '"')
+                return;
+            if(c == -1)
+                throw syntaxError("unterminated string");
+            if(c == '\\')
+                readEscape();
+        }
+    }
+
+    private int readEscape() throws IOException
+    {
+        int c = nextChar();
+        switch(c)
+        {
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int value = 0;
+                for(int i = 0; i < 4; i++)
+                {
+                    int h = nextChar();
+                    int digit = Character.digit(h, 16);
+                    if(h == -1 || digit < 0)
+                        throw syntaxError("bad unicode escape");
+                    value = (value << 4) | digit;
+                }
+                return value;
+            case -1:
+                throw syntaxError("unterminated escape");
+            default:
+                //quotes, slashes and anything else escaped for no reason
+                return c;
+        }
+    }
+
+    private static boolean isLiteralChar(int c)
+    {
+        switch(c)
+        {
+            case -1: case ' ': case '\n': case '\r': case '\t':
+            case ',': case ':': case ']': case '}': case '[': case '{': case '"':
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * read an unquoted literal into mChars
+     */
+    private void readLiteral() throws IOException
+    {
+        mCharCount = 0;
+        while(isLiteralChar(peekChar()))
+        {
+            if(mCharCount == mChars.length) {
+                char[] chars = new char[mChars.length * 2];
+                System.arraycopy(mChars, 0, chars, 0, mCharCount);
+                mChars = chars;
+            }
+            mChars[mCharCount++] = mBuffer[mPos++];
+        }
+    }
+
+    private void skipLiteral() throws IOException
+    {
+        while(isLiteralChar(peekChar()))
+            mPos++;
+    }
+
+    private void consumeLiteral(String literal) throws IOException
+    {
+        readLiteral();
+        if(!matches(literal))
+            throw syntaxError("expected " + literal);
+    }
+
+    private int match(String[] candidates)
+    {
+        for(int i = 0; i < candidates.length; i++) {
+            if(matches(candidates[i]))
+                return i;
+        }
+        return -1;
+    }
+
+    private boolean matches(String candidate)
+    {
+        if(candidate.length() != mCharCount)
+            return false;
+
+        for(int i = 0; i < mCharCount; i++) {
+            if(mChars[i] != candidate.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parse mChars as a decimal. Coordinates and ratings have few enough digits to fit an
+     * exact long mantissa and an exact power of ten, so one division rounds correctly.
+     * Anything longer falls back to Double.parseDouble.
+     */
+    private double parseDouble() throws IOException
+    {
+        int i = 0;
+        boolean negative = false;
+        if(i < mCharCount && mChars[i] == '-') {
+            negative = true;
+            i++;
+        }
+
+        long mantissa = 0;
+        int scale = 0;
+        int digits = 0;
+        boolean fraction = false;
+        boolean exact = true;
+
+        for(; i < mCharCount; i++)
+        {
+            char c = mChars[i];
+            if(c >= '0' && c <= '9')
+            {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if(fraction)
+                    scale++;
+                if(mantissa >= MAX_EXACT_MANTISSA) {
+                    exact = false;
+                    break;
+                }
+            }
+            else if(c == '.' && !fraction) {
+                fraction = true;
+            }
+            else {
+                //exponents and anything odd
+                exact = false;
+                break;
+            }
+        }
+
+        if(digits == 0 && exact)
+            throw syntaxError("expected a number");
+
+        if(!exact || scale >= POWERS_OF_TEN.length)
+        {
+            try {
+                return Double.parseDouble(new String(mChars, 0, mCharCount));
+            }
+            catch(NumberFormatException e) {
+                throw syntaxError("malformed number " + new String(mChars, 0, mCharCount));
+            }
+        }
+
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private void push(int scope)
+    {
+        if(mStackSize == mStack.length) {
+            int[] stack = new int[mStack.length * 2];
+            System.arraycopy(mStack, 0, stack, 0, mStackSize);
+            mStack = stack;
+        }
+        mStack[mStackSize++] = scope;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("malformed json: " + message);
+    }
+}
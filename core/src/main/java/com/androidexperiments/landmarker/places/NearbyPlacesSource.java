@@ -0,0 +1,31 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.data.PlaceRecord;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Anything that can answer a nearby search. Implementations can wrap each other,
+ * so the network client, sharding and caching layers can be stacked as needed.
+ */
+public interface NearbyPlacesSource
+{
+    /**
+     * Fetch up to limit places around a point, calling listener with each batch on the
+     * calling thread as soon as it is available.
+     * @param listener may be null
+     * @return every place received
+     */
+    List<PlaceRecord> getNearbyPlaces(double latitude, double longitude, double radius, int limit,
+                                      OnPageListener listener) throws IOException;
+
+    interface OnPageListener
+    {
+        /**
+         * @param places results in this page
+         * @param pageIndex 0 for the first page of a query
+         */
+        void onPage(List<PlaceRecord> places, int pageIndex);
+    }
+}
@@ -0,0 +1,343 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.data.PlaceStore;
+import com.androidexperiments.landmarker.data.PlaceTypes;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pulls the handful of fields we use out of a nearby search response and into parallel
+ * primitive arrays, skipping photos, opening hours, vicinity and the rest without ever
+ * building them. Type strings are matched against the known types in place, so the only
+ * strings created are ids and names.
+ * <p>
+ * The arrays and the pull parser's buffers are reused from one parse to the next. Not thread
+ * safe, use one per thread.
+ */
+public class NearbyResponseParser
+{
+    private static final String[] ROOT_FIELDS = { "status", "results", "next_page_token", "error_message" };
+    private static final int ROOT_STATUS = 0;
+    private static final int ROOT_RESULTS = 1;
+    private static final int ROOT_NEXT_PAGE_TOKEN = 2;
+    private static final int ROOT_ERROR_MESSAGE = 3;
+
+    private static final String[] RESULT_FIELDS = { "place_id", "name", "geometry", "types", "rating", "user_ratings_total" };
+    private static final int RESULT_PLACE_ID = 0;
+    private static final int RESULT_NAME = 1;
+    private static final int RESULT_GEOMETRY = 2;
+    private static final int RESULT_TYPES = 3;
+    private static final int RESULT_RATING = 4;
+    private static final int RESULT_RATING_COUNT = 5;
+
+    private static final String[] GEOMETRY_FIELDS = { "location" };
+    private static final String[] LOCATION_FIELDS = { "lat", "lng" };
+
+    private static final String[] TYPE_NAMES = PlaceTypes.getTypeNames();
+    private static final int[] TYPE_FLAGS = new int[TYPE_NAMES.length];
+
+    static {
+        for(int i = 0; i < TYPE_NAMES.length; i++)
+            TYPE_FLAGS[i] = PlaceTypes.fromType(TYPE_NAMES[i]);
+    }
+
+    /**
+     * a full page is 20
+     */
+    private static final int INITIAL_CAPACITY = 20;
+
+    private int mCount = 0;
+    private String[] mIds = new String[INITIAL_CAPACITY];
+    private String[] mNames = new String[INITIAL_CAPACITY];
+    private double[] mLatitudes = new double[INITIAL_CAPACITY];
+    private double[] mLongitudes = new double[INITIAL_CAPACITY];
+    private int[] mTypeFlags = new int[INITIAL_CAPACITY];
+    private float[] mRatings = new float[INITIAL_CAPACITY];
+    private int[] mRatingCounts = new int[INITIAL_CAPACITY];
+
+    private String mStatus;
+    private String mErrorMessage;
+    private String mNextPageToken;
+
+    //the result being parsed
+    private boolean mHasLocation;
+
+    //created on the first parse, reset for every one after
+    private JsonPullParser mParser;
+
+    /**
+     * parse a whole response, replacing whatever the last parse left behind.
+     * results without a name or location are dropped.
+     */
+    public void parse(Reader reader) throws IOException
+    {
+        mCount = 0;
+        mStatus = null;
+        mErrorMessage = null;
+        mNextPageToken = null;
+
+        JsonPullParser parser = mParser;
+        if(parser == null)
+            parser = mParser = new JsonPullParser(reader);
+        else
+            parser.reset(reader);
+
+        parser.beginObject();
+        while(parser.hasNext())
+        {
+            switch(parser.nextName(ROOT_FIELDS))
+            {
+                case ROOT_STATUS:
+                    mStatus = nextStringOrNull(parser);
+                    break;
+                case ROOT_RESULTS:
+                    parseResults(parser);
+                    break;
+                case ROOT_NEXT_PAGE_TOKEN:
+                    mNextPageToken = nextStringOrNull(parser);
+                    break;
+                case ROOT_ERROR_MESSAGE:
+                    mErrorMessage = nextStringOrNull(parser);
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        parser.endObject();
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    public String getStatus() {
+        return mStatus;
+    }
+
+    public String getErrorMessage() {
+        return mErrorMessage;
+    }
+
+    /**
+     * null if this was the last page
+     */
+    public String getNextPageToken() {
+        return mNextPageToken;
+    }
+
+    public String getId(int i) {
+        return mIds[i];
+    }
+
+    public String getName(int i) {
+        return mNames[i];
+    }
+
+    public double getLatitude(int i) {
+        return mLatitudes[i];
+    }
+
+    public double getLongitude(int i) {
+        return mLongitudes[i];
+    }
+
+    public int getTypeFlags(int i) {
+        return mTypeFlags[i];
+    }
+
+    public float getRating(int i) {
+        return mRatings[i];
+    }
+
+    public int getRatingCount(int i) {
+        return mRatingCounts[i];
+    }
+
+    /**
+     * add every parsed result to a store column by column, without a record per place
+     * @return store index of the first place added
+     */
+    public int appendTo(PlaceStore store)
+    {
+        int start = store.size();
+        store.ensureCapacity(start + mCount);
+
+        for(int i = 0; i < mCount; i++)
+            store.add(mNames[i], mLatitudes[i], mLongitudes[i], mTypeFlags[i], mRatings[i], mRatingCounts[i]);
+        return start;
+    }
+
+    /**
+     * @return a record per parsed result, for handing on past the parser
+     */
+    public List<PlaceRecord> toPlaceRecords()
+    {
+        List<PlaceRecord> places = new ArrayList<>(mCount);
+        for(int i = 0; i < mCount; i++)
+            places.add(new PlaceRecord(mIds[i], mNames[i], mLatitudes[i], mLongitudes[i],
+                    mTypeFlags[i], mRatings[i], mRatingCounts[i]));
+        return places;
+    }
+
+    private void parseResults(JsonPullParser parser) throws IOException
+    {
+        if(parser.peek() == JsonPullParser.Token.NULL) {
+            parser.skipValue();
+            return;
+        }
+
+        parser.beginArray();
+        while(parser.hasNext())
+            parseResult(parser);
+        parser.endArray();
+    }
+
+    /**
+     * fills slot mCount and only keeps it if the result was usable
+     */
+    private void parseResult(JsonPullParser parser) throws IOException
+    {
+        ensureCapacity(mCount + 1);
+
+        int i = mCount;
+        mIds[i] = null;
+        mNames[i] = null;
+        mTypeFlags[i] = PlaceTypes.NONE;
+        mRatings[i] = PlaceRecord.NO_RATING;
+        mRatingCounts[i] = 0;
+        mHasLocation = false;
+
+        parser.beginObject();
+        while(parser.hasNext())
+        {
+            switch(parser.nextName(RESULT_FIELDS))
+            {
+                case RESULT_PLACE_ID:
+                    mIds[i] = nextStringOrNull(parser);
+                    break;
+                case RESULT_NAME:
+                    mNames[i] = nextStringOrNull(parser);
+                    break;
+                case RESULT_GEOMETRY:
+                    parseGeometry(parser, i);
+                    break;
+                case RESULT_TYPES:
+                    mTypeFlags[i] = parseTypes(parser);
+                    break;
+                case RESULT_RATING:
+                    mRatings[i] = (float) parser.nextDouble();
+                    break;
+                case RESULT_RATING_COUNT:
+                    mRatingCounts[i] = parser.nextInt();
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        parser.endObject();
+
+        if(mNames[i] != null && mHasLocation)
+            mCount++;
+    }
+
+    private void parseGeometry(JsonPullParser parser, int i) throws IOException
+    {
+        parser.beginObject();
+        while(parser.hasNext())
+        {
+            if(parser.nextName(GEOMETRY_FIELDS) != 0) {
+                parser.skipValue();
+                continue;
+            }
+
+            boolean hasLat = false, hasLng = false;
+
+            parser.beginObject();
+            while(parser.hasNext())
+            {
+                switch(parser.nextName(LOCATION_FIELDS))
+                {
+                    case 0:
+                        mLatitudes[i] = parser.nextDouble();
+                        hasLat = true;
+                        break;
+                    case 1:
+                        mLongitudes[i] = parser.nextDouble();
+                        hasLng = true;
+                        break;
+                    default:
+                        parser.skipValue();
+                }
+            }
+            parser.endObject();
+
+            mHasLocation = hasLat && hasLng;
+        }
+        parser.endObject();
+    }
+
+    private static int parseTypes(JsonPullParser parser) throws IOException
+    {
+        int flags = PlaceTypes.NONE;
+
+        parser.beginArray();
+        while(parser.hasNext())
+        {
+            int type = parser.nextString(TYPE_NAMES);
+            if(type >= 0)
+                flags |= TYPE_FLAGS[type];
+        }
+        parser.endArray();
+
+        return flags;
+    }
+
+    private static String nextStringOrNull(JsonPullParser parser) throws IOException
+    {
+        if(parser.peek() == JsonPullParser.Token.NULL) {
+            parser.nextNull();
+            return null;
+        }
+        return parser.nextString();
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if(capacity <= mIds.length)
+            return;
+
+        int newCapacity = Math.max(capacity, mIds.length * 2);
+
+        String[] ids = new String[newCapacity];
+        System.arraycopy(mIds, 0, ids, 0, mCount);
+        mIds = ids;
+
+        String[] names = new String[newCapacity];
+        System.arraycopy(mNames, 0, names, 0, mCount);
+        mNames = names;
+
+        double[] latitudes = new double[newCapacity];
+        System.arraycopy(mLatitudes, 0, latitudes, 0, mCount);
+        mLatitudes = latitudes;
+
+        double[] longitudes = new double[newCapacity];
+        System.arraycopy(mLongitudes, 0, longitudes, 0, mCount);
+        mLongitudes = longitudes;
+
+        int[] typeFlags = new int[newCapacity];
+        System.arraycopy(mTypeFlags, 0, typeFlags, 0, mCount);
+        mTypeFlags = typeFlags;
+
+        float[] ratings = new float[newCapacity];
+        System.arraycopy(mRatings, 0, ratings, 0, mCount);
+        mRatings = ratings;
+
+        int[] ratingCounts = new int[newCapacity];
+        System.arraycopy(mRatingCounts, 0, ratingCounts, 0, mCount);
+        mRatingCounts = ratingCounts;
+    }
+}
@@ -0,0 +1,220 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.data.PlaceRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Page level client for the Places nearby search. Hands every page to an
+ * {@link OnPageListener} as soon as it arrives, instead of blocking until the last page
+ * token has been followed.
+ * <p>
+ * Safe to share between threads, each thread parses with its own reused
+ * {@link NearbyResponseParser}.
+ */
+public class NearbySearchClient implements NearbyPlacesSource
+{
+    public static final String DEFAULT_BASE_URL = "https://maps.googleapis.com/maps/api/place/";
+
+    /**
+     * the api never returns more than 3 pages of 20
+     */
+    public static final int MAX_RESULTS = 60;
+    public static final int MAX_PAGES = 3;
+
+    /**
+     * next_page_token is not valid until a short time after it is issued,
+     * requesting it early returns INVALID_REQUEST
+     */
+    public static final long DEFAULT_PAGE_TOKEN_DELAY_MS = 2000;
+    private static final int MAX_PAGE_TOKEN_TRIES = 3;
+
+    private final String mApiKey;
+    private final String mBaseUrl;
+    private final HttpTransport mTransport;
+    private final long mPageTokenDelayMs;
+
+    /**
+     * shards search through one client concurrently, a parser each keeps its arrays warm
+     */
+    private final ThreadLocal<NearbyResponseParser> mParsers = new ThreadLocal<NearbyResponseParser>() {
+        @Override
+        protected NearbyResponseParser initialValue() {
+            return new NearbyResponseParser();
+        }
+    };
+
+    public NearbySearchClient(String apiKey) {
+        this(apiKey, DEFAULT_BASE_URL);
+    }
+
+    public NearbySearchClient(String apiKey, String baseUrl) {
+        this(apiKey, baseUrl, new UrlConnectionTransport());
+    }
+
+    /**
+     * @param apiKey Places API key
+     * @param baseUrl url the {@code nearbysearch/json} path is resolved against, must end in '/'
+     * @param transport every request goes through this, share one between clients so they
+     *                  share its connections and stats
+     */
+    public NearbySearchClient(String apiKey, String baseUrl, HttpTransport transport) {
+        this(apiKey, baseUrl, transport, DEFAULT_PAGE_TOKEN_DELAY_MS);
+    }
+
+    /**
+     * @param pageTokenDelayMs wait before following a page token, only worth changing for a
+     *                         stand-in server that makes tokens valid sooner than google does
+     */
+    public NearbySearchClient(String apiKey, String baseUrl, HttpTransport transport, long pageTokenDelayMs) {
+        mApiKey = apiKey;
+        mBaseUrl = baseUrl;
+        mTransport = transport;
+        mPageTokenDelayMs = pageTokenDelayMs;
+    }
+
+    /**
+     * Blocking fetch of up to limit places, following page tokens as needed.
+     */
+    public List<PlaceRecord> getNearbyPlaces(double latitude, double longitude, double radius, int limit) throws IOException {
+        return getNearbyPlaces(latitude, longitude, radius, limit, null);
+    }
+
+    /**
+     * Fetch up to limit places, calling listener with each page on the calling thread
+     * as soon as it has been parsed.
+     * @return every place received, in page order
+     */
+    @Override
+    public List<PlaceRecord> getNearbyPlaces(double latitude, double longitude, double radius, int limit,
+                                             OnPageListener listener) throws IOException
+    {
+        limit = Math.min(limit, MAX_RESULTS);
+
+        List<PlaceRecord> places = new ArrayList<>();
+        Page page = getPage(latitude, longitude, radius);
+
+        for(int pageIndex = 0; ; pageIndex++)
+        {
+            List<PlaceRecord> pagePlaces = page.getPlaces();
+            if(places.size() + pagePlaces.size() > limit)
+                pagePlaces = pagePlaces.subList(0, limit - places.size());
+
+            places.addAll(pagePlaces);
+
+            if(listener != null && pagePlaces.size() > 0)
+                listener.onPage(pagePlaces, pageIndex);
+
+            if(places.size() >= limit || page.getNextPageToken() == null)
+                break;
+
+            page = getNextPage(page.getNextPageToken());
+        }
+
+        return places;
+    }
+
+    /**
+     * first page of results for this location
+     */
+    public Page getPage(double latitude, double longitude, double radius) throws IOException
+    {
+        String url = String.format(Locale.US, "%snearbysearch/json?key=%s&location=%f,%f&radius=%f",
+                mBaseUrl, mApiKey, latitude, longitude, radius);
+
+        return getAndParse(url);
+    }
+
+    /**
+     * follow a next_page_token, waiting for it to become valid first
+     */
+    public Page getNextPage(String pageToken) throws IOException
+    {
+        String url = String.format(Locale.US, "%snearbysearch/json?key=%s&pagetoken=%s",
+                mBaseUrl, mApiKey, URLEncoder.encode(pageToken, "UTF-8"));
+
+        for(int tries = 1; ; tries++)
+        {
+            sleep(mPageTokenDelayMs);
+
+            try {
+                return getAndParse(url);
+            }
+            catch(PlacesApiException e) {
+                if(!PlacesApiException.STATUS_INVALID_REQUEST.equals(e.getStatus()) || tries == MAX_PAGE_TOKEN_TRIES)
+                    throw e;
+            }
+        }
+    }
+
+    /**
+     * GET through the transport and parse the body as it streams in
+     */
+    protected Page getAndParse(String url) throws IOException
+    {
+        InputStream in = mTransport.get(url);
+        try {
+            return parsePage(new InputStreamReader(in, "UTF-8"));
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    Page parsePage(Reader body) throws IOException
+    {
+        NearbyResponseParser parser = mParsers.get();
+        parser.parse(body);
+
+        String status = parser.getStatus();
+
+        if("ZERO_RESULTS".equals(status))
+            return new Page(new ArrayList<PlaceRecord>(), null);
+
+        if(!"OK".equals(status))
+            throw new PlacesApiException(status, parser.getErrorMessage());
+
+        return new Page(parser.toPlaceRecords(), parser.getNextPageToken());
+    }
+
+    private static void sleep(long ms) throws InterruptedIOException
+    {
+        try {
+            Thread.sleep(ms);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for page token");
+        }
+    }
+
+    /**
+     * one page of results and the token for the next, null if this was the last
+     */
+    public static class Page
+    {
+        private final List<PlaceRecord> places;
+        private final String nextPageToken;
+
+        public Page(List<PlaceRecord> places, String nextPageToken) {
+            this.places = places;
+            this.nextPageToken = nextPageToken;
+        }
+
+        public List<PlaceRecord> getPlaces() {
+            return places;
+        }
+
+        public String getNextPageToken() {
+            return nextPageToken;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.data.PlaceRecord;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Thrown when part of a search failed and the rest came back, e.g. some shards of a
+ * {@link ShardedNearbySearch}. The places are worth showing but don't cover the whole area,
+ * so they shouldn't be cached or taken to mean the area is empty.
+ */
+public class PartialResultsException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<PlaceRecord> places;
+
+    /**
+     * @param places everything that did come back
+     * @param cause the first failure
+     */
+    public PartialResultsException(List<PlaceRecord> places, IOException cause) {
+        super("partial results, " + places.size() + " places: " + cause.getMessage(), cause);
+        this.places = places;
+    }
+
+    public List<PlaceRecord> getPlaces() {
+        return places;
+    }
+}
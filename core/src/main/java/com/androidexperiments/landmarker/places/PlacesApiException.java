@@ -0,0 +1,32 @@
+package com.androidexperiments.landmarker.places;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the Places API answers with anything other than OK or ZERO_RESULTS.
+ * Keeps the raw status around so callers can tell quota problems from bad requests.
+ */
+public class PlacesApiException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    public static final String STATUS_INVALID_REQUEST = "INVALID_REQUEST";
+    public static final String STATUS_OVER_QUERY_LIMIT = "OVER_QUERY_LIMIT";
+    public static final String STATUS_REQUEST_DENIED = "REQUEST_DENIED";
+    public static final String STATUS_UNKNOWN_ERROR = "UNKNOWN_ERROR";
+
+    private final String status;
+
+    public PlacesApiException(String status, String message) {
+        super(status + (message != null ? ": " + message : ""));
+        this.status = status;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public boolean isOverQueryLimit() {
+        return STATUS_OVER_QUERY_LIMIT.equals(status);
+    }
+}
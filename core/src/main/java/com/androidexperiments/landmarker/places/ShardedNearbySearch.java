@@ -0,0 +1,211 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.util.GeoKernel;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Splits one nearby search into a center shard plus one shard per compass sector and
+ * runs them concurrently against another {@link NearbyPlacesSource}. Each shard gets its
+ * own 60 result cap and its page tokens are followed in parallel, so dense areas fill
+ * up every direction instead of just the closest 60 places. Results are deduped by id
+ * and trimmed back to the original search circle.
+ */
+public class ShardedNearbySearch implements NearbyPlacesSource
+{
+    public static final int MIN_SECTORS = 4;
+
+    private final NearbyPlacesSource mSource;
+    private final ExecutorService mExecutor;
+    private final int mSectors;
+
+    /**
+     * @param source source each shard is sent to
+     * @param executor runs the shards, its pool size bounds how many are in flight at once.
+     *                 owned by the caller.
+     * @param sectors number of ring shards around the center, at least {@link #MIN_SECTORS}
+     */
+    public ShardedNearbySearch(NearbyPlacesSource source, ExecutorService executor, int sectors)
+    {
+        if(sectors < MIN_SECTORS)
+            throw new IllegalArgumentException("sectors should be at least " + MIN_SECTORS);
+
+        mSource = source;
+        mExecutor = executor;
+        mSectors = sectors;
+    }
+
+    /**
+     * Fans out to every shard and merges what comes back. listener is called on whichever
+     * shard thread delivers a batch, but never concurrently, and only with places not seen yet.
+     * Throws the first failure if every shard fails, and a {@link PartialResultsException}
+     * with what the rest found if only some do.
+     */
+    @Override
+    public List<PlaceRecord> getNearbyPlaces(final double latitude, final double longitude, final double radius,
+                                             int limit, OnPageListener listener) throws IOException
+    {
+        final Merger merger = new Merger(latitude, longitude, radius, limit, listener);
+
+        List<Shard> shards = plan(latitude, longitude, radius, mSectors);
+        List<Future<List<PlaceRecord>>> futures = new ArrayList<>(shards.size());
+
+        for(final Shard shard : shards)
+        {
+            futures.add(mExecutor.submit(new Callable<List<PlaceRecord>>() {
+                @Override
+                public List<PlaceRecord> call() throws Exception {
+                    return mSource.getNearbyPlaces(shard.latitude, shard.longitude, shard.radius,
+                            NearbySearchClient.MAX_RESULTS, merger);
+                }
+            }));
+        }
+
+        IOException failure = null;
+        int failures = 0;
+
+        try {
+            for(Future<List<PlaceRecord>> future : futures)
+            {
+                try {
+                    future.get();
+                }
+                catch(ExecutionException e) {
+                    failures++;
+                    if(failure == null)
+                        failure = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause()
+                                : new IOException(e.getCause());
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            for(Future<List<PlaceRecord>> future : futures)
+                future.cancel(true);
+
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("sharded search interrupted");
+        }
+
+        if(failures == futures.size())
+            throw failure;
+        if(failures > 0)
+            throw new PartialResultsException(merger.getPlaces(), failure);
+
+        return merger.getPlaces();
+    }
+
+    /**
+     * Cover the search circle with a center circle of half the radius and a ring of
+     * circles, one per sector, over the rest. The ring circles sit midway through the
+     * outer annulus and are just big enough to reach the corners of their sector.
+     */
+    public static List<Shard> plan(double latitude, double longitude, double radius, int sectors)
+    {
+        List<Shard> shards = new ArrayList<>(sectors + 1);
+
+        double innerRadius = radius / 2;
+        shards.add(new Shard(latitude, longitude, innerRadius, -1));
+
+        double ringDistance = (radius + innerRadius) / 2;
+        double halfSector = Math.PI / sectors;
+
+        //distance from the ring circle center to the outer and inner corners of its sector
+        double outer = Math.sqrt(radius * radius + ringDistance * ringDistance
+                - 2 * radius * ringDistance * Math.cos(halfSector));
+        double inner = Math.sqrt(innerRadius * innerRadius + ringDistance * ringDistance
+                - 2 * innerRadius * ringDistance * Math.cos(halfSector));
+        double ringRadius = Math.max(outer, inner);
+
+        double sectorWidth = 360.0 / sectors;
+        for(int i = 0; i < sectors; i++)
+        {
+            double bearing = i * sectorWidth;
+            double[] center = GeoKernel.offset(latitude, longitude, bearing, ringDistance);
+            shards.add(new Shard(center[0], center[1], ringRadius, bearing));
+        }
+
+        return shards;
+    }
+
+    /**
+     * one sub-query, bearing is -1 for the center shard
+     */
+    public static class Shard
+    {
+        public final double latitude;
+        public final double longitude;
+        public final double radius;
+        public final double bearing;
+
+        public Shard(double latitude, double longitude, double radius, double bearing) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.radius = radius;
+            this.bearing = bearing;
+        }
+    }
+
+    /**
+     * collects pages from every shard, dropping duplicates and anything outside the
+     * original circle, and forwards what's left as one numbered stream of pages
+     */
+    private static class Merger implements OnPageListener
+    {
+        private final double mLatitude, mLongitude, mRadius;
+        private final int mLimit;
+        private final OnPageListener mListener;
+
+        private final Set<String> mSeen = new HashSet<>();
+        private final List<PlaceRecord> mPlaces = new ArrayList<>();
+        private int mPageIndex = 0;
+
+        Merger(double latitude, double longitude, double radius, int limit, OnPageListener listener) {
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mRadius = radius;
+            mLimit = limit;
+            mListener = listener;
+        }
+
+        @Override
+        public synchronized void onPage(List<PlaceRecord> places, int shardPageIndex)
+        {
+            List<PlaceRecord> added = new ArrayList<>(places.size());
+            for(PlaceRecord place : places)
+            {
+                if(mPlaces.size() + added.size() >= mLimit)
+                    break;
+
+                String key = place.getId() != null ? place.getId() : place.getName();
+                if(GeoKernel.haversineDistance(mLatitude, mLongitude, place.getLatitude(), place.getLongitude()) > mRadius
+                        || !mSeen.add(key))
+                    continue;
+
+                added.add(place);
+            }
+
+            if(added.isEmpty())
+                return;
+
+            mPlaces.addAll(added);
+
+            if(mListener != null)
+                mListener.onPage(added, mPageIndex++);
+        }
+
+        synchronized List<PlaceRecord> getPlaces() {
+            return new ArrayList<>(mPlaces);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.androidexperiments.landmarker.places;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * {@link HttpTransport} on top of HttpURLConnection, which already keeps a pool of
+ * keep-alive connections per host. The trick is to never call disconnect() and to always
+ * read a body to the end and close it, otherwise the connection is thrown away and the
+ * next page pays for a new tls handshake.
+ * <p>
+ * Asks for gzip itself rather than relying on the platform doing it, so responses are
+ * compressed on every runtime and the byte counts below are what actually went over the wire.
+ * <p>
+ * Records latency and size of every request, see {@link #getStats()}. Thread safe.
+ */
+public class UrlConnectionTransport implements HttpTransport
+{
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+    public static final int DEFAULT_READ_TIMEOUT_MS = 15000;
+
+    private final int mConnectTimeoutMs;
+    private final int mReadTimeoutMs;
+    private final SSLSocketFactory mSslSocketFactory;
+    private final HostnameVerifier mHostnameVerifier;
+
+    //stats, guarded by this
+    private int mRequests = 0;
+    private int mFailures = 0;
+    private long mBytes = 0;
+    private long mTotalFirstByteMs = 0;
+    private long mTotalLatencyMs = 0;
+    private long mMaxLatencyMs = 0;
+    private long mLastLatencyMs = 0;
+
+    public UrlConnectionTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS);
+    }
+
+    public UrlConnectionTransport(int connectTimeoutMs, int readTimeoutMs) {
+        this(connectTimeoutMs, readTimeoutMs, null, null);
+    }
+
+    /**
+     * @param sslSocketFactory used for https instead of the platform default, for trusting
+     *                         a local stand-in's self signed certificate. null for the default.
+     * @param hostnameVerifier goes with sslSocketFactory, null for the default
+     */
+    public UrlConnectionTransport(int connectTimeoutMs, int readTimeoutMs,
+                                  SSLSocketFactory sslSocketFactory, HostnameVerifier hostnameVerifier)
+    {
+        mConnectTimeoutMs = connectTimeoutMs;
+        mReadTimeoutMs = readTimeoutMs;
+        mSslSocketFactory = sslSocketFactory;
+        mHostnameVerifier = hostnameVerifier;
+    }
+
+    @Override
+    public InputStream get(String url) throws IOException
+    {
+        long start = System.nanoTime();
+
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(mConnectTimeoutMs);
+        conn.setReadTimeout(mReadTimeoutMs);
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+
+        if(conn instanceof HttpsURLConnection) {
+            if(mSslSocketFactory != null)
+                ((HttpsURLConnection) conn).setSSLSocketFactory(mSslSocketFactory);
+            if(mHostnameVerifier != null)
+                ((HttpsURLConnection) conn).setHostnameVerifier(mHostnameVerifier);
+        }
+
+        InputStream in;
+        try {
+            int code = conn.getResponseCode();
+            if(code != HttpURLConnection.HTTP_OK) {
+                drain(conn.getErrorStream());
+                throw new IOException("HTTP " + code + " from " + conn.getURL().getHost());
+            }
+
+            in = conn.getInputStream();
+        }
+        catch(IOException e) {
+            recordFailure(start);
+            throw e;
+        }
+
+        long firstByteMs = (System.nanoTime() - start) / 1000000L;
+
+        //count compressed bytes, decompress on top of the counter
+        CountingInputStream counted = new CountingInputStream(in, start, firstByteMs);
+        if("gzip".equalsIgnoreCase(conn.getContentEncoding()))
+        {
+            try {
+                return new GZIPInputStream(counted);
+            }
+            catch(IOException e) {
+                in.close();
+                recordFailure(start);
+                throw e;
+            }
+        }
+
+        return counted;
+    }
+
+    /**
+     * @return counters since this transport was created
+     */
+    public synchronized Stats getStats() {
+        return new Stats(mRequests, mFailures, mBytes, mTotalFirstByteMs, mTotalLatencyMs, mMaxLatencyMs, mLastLatencyMs);
+    }
+
+    private synchronized void recordFailure(long start)
+    {
+        mFailures++;
+        record((System.nanoTime() - start) / 1000000L);
+    }
+
+    private synchronized void recordSuccess(long start, long firstByteMs, long bytes)
+    {
+        mBytes += bytes;
+        mTotalFirstByteMs += firstByteMs;
+        record((System.nanoTime() - start) / 1000000L);
+    }
+
+    private void record(long latencyMs)
+    {
+        mRequests++;
+        mTotalLatencyMs += latencyMs;
+        mMaxLatencyMs = Math.max(mMaxLatencyMs, latencyMs);
+        mLastLatencyMs = latencyMs;
+    }
+
+    /**
+     * error bodies have to be read out too or the connection can't be reused
+     */
+    private static void drain(InputStream in)
+    {
+        if(in == null)
+            return;
+
+        try {
+            byte[] buffer = new byte[1024];
+            while(in.read(buffer) != -1) {}
+            in.close();
+        }
+        catch(IOException ignored) {}
+    }
+
+    /**
+     * counts what comes off the wire and records the request once the body is closed
+     */
+    private class CountingInputStream extends FilterInputStream
+    {
+        private final long mStart;
+        private final long mFirstByteMs;
+        private long mCount = 0;
+        private boolean mFailed = false;
+        private boolean mClosed = false;
+
+        CountingInputStream(InputStream in, long start, long firstByteMs) {
+            super(in);
+            mStart = start;
+            mFirstByteMs = firstByteMs;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            try {
+                int b = super.read();
+                if(b != -1)
+                    mCount++;
+                return b;
+            }
+            catch(IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException
+        {
+            try {
+                int read = super.read(buffer, offset, count);
+                if(read > 0)
+                    mCount += read;
+                return read;
+            }
+            catch(IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if(mClosed)
+                return;
+
+            mClosed = true;
+            if(mFailed)
+                recordFailure(mStart);
+            else
+                recordSuccess(mStart, mFirstByteMs, mCount);
+            super.close();
+        }
+    }
+
+    /**
+     * Snapshot of the transport's counters. Latency runs from opening the connection to
+     * closing the body, so it includes reading and whatever the caller did while reading.
+     */
+    public static class Stats
+    {
+        public final int requests;
+        public final int failures;
+        public final long bytes;
+        public final long totalFirstByteMs;
+        public final long totalLatencyMs;
+        public final long maxLatencyMs;
+        public final long lastLatencyMs;
+
+        Stats(int requests, int failures, long bytes, long totalFirstByteMs, long totalLatencyMs,
+              long maxLatencyMs, long lastLatencyMs) {
+            this.requests = requests;
+            this.failures = failures;
+            this.bytes = bytes;
+            this.totalFirstByteMs = totalFirstByteMs;
+            this.totalLatencyMs = totalLatencyMs;
+            this.maxLatencyMs = maxLatencyMs;
+            this.lastLatencyMs = lastLatencyMs;
+        }
+
+        public long getAverageLatencyMs() {
+            return requests > 0 ? totalLatencyMs / requests : 0;
+        }
+
+        @Override
+        public String toString() {
+            int succeeded = requests - failures;
+            return "requests: " + requests + " failures: " + failures + " bytes: " + bytes
+                    + " first byte avg: " + (succeeded > 0 ? totalFirstByteMs / succeeded : 0) + "ms"
+                    + " latency avg: " + getAverageLatencyMs() + "ms max: " + maxLatencyMs + "ms last: " + lastLatencyMs + "ms";
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.androidexperiments.landmarker.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Atomic file writes, so a reader never sees half a file. Everything is written to a
+ * temp file next to the real one and renamed over it once it's complete:
+ * <pre>
+ * DataOutputStream out = null;
+ * try {
+ *     out = FileUtils.startWrite(file);
+ *     ...
+ *     FileUtils.finishWrite(file, out);
+ * }
+ * catch(IOException e) {
+ *     FileUtils.abortWrite(file, out);
+ * }
+ * </pre>
+ */
+public class FileUtils
+{
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    private FileUtils() {}
+
+    public static DataOutputStream startWrite(File file) throws IOException {
+        return startWrite(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * create the parent dir if needed and open the temp file for file
+     */
+    public static DataOutputStream startWrite(File file, int bufferSize) throws IOException
+    {
+        File dir = file.getParentFile();
+        if(dir != null && !dir.exists() && !dir.mkdirs())
+            throw new IOException("unable to create dir " + dir);
+
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getTempFile(file)), bufferSize));
+    }
+
+    /**
+     * close out and move the temp file over file. pass out to {@link #abortWrite} if this throws.
+     */
+    public static void finishWrite(File file, DataOutputStream out) throws IOException
+    {
+        out.close();
+
+        File tmp = getTempFile(file);
+        if(!tmp.renameTo(file)) {
+            //some filesystems won't rename over an existing file
+            file.delete();
+            if(!tmp.renameTo(file))
+                throw new IOException("rename to " + file + " failed");
+        }
+    }
+
+    /**
+     * give up on a write, leaving whatever file was there before in place
+     * @param out null if {@link #startWrite} didn't get as far as opening it
+     */
+    public static void abortWrite(File file, Closeable out)
+    {
+        closeQuietly(out);
+        getTempFile(file).delete();
+    }
+
+    public static void closeQuietly(Closeable closeable)
+    {
+        if(closeable == null)
+            return;
+
+        try {
+            closeable.close();
+        }
+        catch(IOException ignored) {}
+    }
+
+    private static File getTempFile(File file) {
+        return new File(file.getPath() + ".tmp");
+    }
+}
@@ -0,0 +1,122 @@
+package com.androidexperiments.landmarker.util;
+
+/**
+ * Minimal geohash encoder used to quantize a location into a tile key.
+ * Precision 6 gives tiles of roughly 1.2km x 0.6km, which lines up with
+ * the radius we query the Places API with.
+ */
+public class GeoHash
+{
+    private static final char[] BASE_32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    public static final int DEFAULT_PRECISION = 6;
+
+    private GeoHash() {}
+
+    /**
+     * @param latitude -90 -> 90
+     * @param longitude -180 -> 180
+     * @param precision number of base32 characters in the resulting hash
+     * @return geohash of the cell containing the given point
+     */
+    public static String encode(double latitude, double longitude, int precision)
+    {
+        if(precision < 1 || precision > 12)
+            throw new IllegalArgumentException("precision should be within [1, 12]");
+
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+
+        char[] hash = new char[precision];
+        boolean isEven = true;
+        int bit = 0, ch = 0, i = 0;
+
+        while(i < precision)
+        {
+            double mid;
+            if(isEven) {
+                mid = (minLon + maxLon) / 2;
+                if(longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                }
+                else {
+                    ch = ch << 1;
+                    maxLon = mid;
+                }
+            }
+            else {
+                mid = (minLat + maxLat) / 2;
+                if(latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                }
+                else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+
+            isEven = !isEven;
+
+            if(++bit == 5) {
+                hash[i++] = BASE_32[ch];
+                bit = 0;
+                ch = 0;
+            }
+        }
+
+        return new String(hash);
+    }
+
+    /**
+     * @return lat/lon of the center of the cell
+     */
+    public static double[] decode(String hash)
+    {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        boolean isEven = true;
+
+        for(int i = 0; i < hash.length(); i++)
+        {
+            int ch = indexOf(hash.charAt(i));
+            if(ch < 0)
+                throw new IllegalArgumentException("not a geohash: " + hash);
+
+            for(int mask = 16; mask > 0; mask >>= 1)
+            {
+                if(isEven) {
+                    double mid = (minLon + maxLon) / 2;
+                    if((ch & mask) != 0)
+                        minLon = mid;
+                    else
+                        maxLon = mid;
+                }
+                else {
+                    double mid = (minLat + maxLat) / 2;
+                    if((ch & mask) != 0)
+                        minLat = mid;
+                    else
+                        maxLat = mid;
+                }
+                isEven = !isEven;
+            }
+        }
+
+        return new double[] { (minLat + maxLat) / 2, (minLon + maxLon) / 2 };
+    }
+
+    private static int indexOf(char c)
+    {
+        for(int i = 0; i < BASE_32.length; i++) {
+            if(BASE_32[i] == c)
+                return i;
+        }
+        return -1;
+    }
+
+    public static String encode(double latitude, double longitude) {
+        return encode(latitude, longitude, DEFAULT_PRECISION);
+    }
+}
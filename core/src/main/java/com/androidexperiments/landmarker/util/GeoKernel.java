@@ -0,0 +1,262 @@
+package com.androidexperiments.landmarker.util;
+
+/**
+ * Batch bearing and distance from one origin to many points, written into primitive
+ * arrays. Bearings follow {@code Location.bearingTo} (degrees east of
+ * true north, -180 -> 180) and distances are in meters.
+ * <p>
+ * Plain Java on purpose so it can be run and benchmarked off device. Not thread safe,
+ * each caller should hold its own instance so the output buffers can be reused.
+ */
+public class GeoKernel
+{
+    public enum Mode
+    {
+        /**
+         * WGS84 ellipsoid, iterative. Matches {@code Location.distanceTo}.
+         */
+        VINCENTY,
+
+        /**
+         * spherical earth, up to 0.57% error, at worst going north or south near the equator
+         */
+        HAVERSINE,
+
+        /**
+         * flat projection around the origin. cheapest, and well under a meter
+         * of error for the sub-km radii we query with
+         */
+        EQUIRECTANGULAR
+    }
+
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    //WGS84
+    private static final double WGS84_A = 6378137.0;
+    private static final double WGS84_B = 6356752.3142;
+    private static final double WGS84_F = (WGS84_A - WGS84_B) / WGS84_A;
+
+    private static final int VINCENTY_MAX_ITERS = 20;
+    private static final double VINCENTY_EPSILON = 1.0e-12;
+
+    private Mode mMode;
+
+    private float[] mBearings = new float[0];
+    private float[] mDistances = new float[0];
+
+    public GeoKernel(Mode mode) {
+        mMode = mode;
+    }
+
+    public Mode getMode() {
+        return mMode;
+    }
+
+    public void setMode(Mode mode) {
+        mMode = mode;
+    }
+
+    /**
+     * compute into the kernel's own buffers, read them back with {@link #getBearings()}
+     * and {@link #getDistances()}. buffers only grow, so steady state doesn't allocate.
+     */
+    public void compute(double originLat, double originLon, double[] lats, double[] lons, int count)
+    {
+        if(mBearings.length < count) {
+            mBearings = new float[count];
+            mDistances = new float[count];
+        }
+
+        compute(originLat, originLon, lats, lons, count, mBearings, mDistances);
+    }
+
+    /**
+     * @param lats latitudes in degrees
+     * @param lons longitudes in degrees
+     * @param count number of points to read from lats/lons
+     * @param bearings written with bearing to each point
+     * @param distances written with distance to each point
+     */
+    public void compute(double originLat, double originLon, double[] lats, double[] lons, int count,
+                        float[] bearings, float[] distances)
+    {
+        if(lats.length < count || lons.length < count || bearings.length < count || distances.length < count)
+            throw new IllegalArgumentException("Not enough space for " + count + " points");
+
+        switch(mMode)
+        {
+            case VINCENTY:
+                for(int i = 0; i < count; i++)
+                    vincenty(originLat, originLon, lats[i], lons[i], bearings, distances, i);
+                break;
+
+            case HAVERSINE:
+                haversine(originLat, originLon, lats, lons, count, bearings, distances);
+                break;
+
+            case EQUIRECTANGULAR:
+                equirectangular(originLat, originLon, lats, lons, count, bearings, distances);
+                break;
+        }
+    }
+
+    public float[] getBearings() {
+        return mBearings;
+    }
+
+    public float[] getDistances() {
+        return mDistances;
+    }
+
+    /**
+     * single great circle distance in meters, for callers that only need the odd one
+     */
+    public static double haversineDistance(double lat1, double lon1, double lat2, double lon2)
+    {
+        double dPhi = Math.toRadians(lat2 - lat1);
+        double dLambda = Math.toRadians(lon2 - lon1);
+        double sinPhi = Math.sin(dPhi / 2);
+        double sinLambda = Math.sin(dLambda / 2);
+        double a = sinPhi * sinPhi
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLambda * sinLambda;
+
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * single initial bearing, -180 -> 180, for callers that only need the odd one
+     */
+    public static double initialBearing(double lat1, double lon1, double lat2, double lon2)
+    {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dLambda = Math.toRadians(lon2 - lon1);
+
+        double y = Math.sin(dLambda) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLambda);
+        return Math.toDegrees(Math.atan2(y, x));
+    }
+
+    /**
+     * @return lat/lon of the point distance meters away along bearing degrees
+     */
+    public static double[] offset(double latitude, double longitude, double bearing, double distance)
+    {
+        double angular = distance / EARTH_RADIUS_METERS;
+        double theta = Math.toRadians(bearing);
+        double phi1 = Math.toRadians(latitude);
+        double lambda1 = Math.toRadians(longitude);
+
+        double phi2 = Math.asin(Math.sin(phi1) * Math.cos(angular)
+                + Math.cos(phi1) * Math.sin(angular) * Math.cos(theta));
+        double lambda2 = lambda1 + Math.atan2(Math.sin(theta) * Math.sin(angular) * Math.cos(phi1),
+                Math.cos(angular) - Math.sin(phi1) * Math.sin(phi2));
+
+        return new double[] { Math.toDegrees(phi2), (Math.toDegrees(lambda2) + 540) % 360 - 180 };
+    }
+
+    private static void haversine(double originLat, double originLon, double[] lats, double[] lons, int count,
+                                  float[] bearings, float[] distances)
+    {
+        double phi1 = Math.toRadians(originLat);
+        double cosPhi1 = Math.cos(phi1);
+        double sinPhi1 = Math.sin(phi1);
+
+        for(int i = 0; i < count; i++)
+        {
+            double phi2 = Math.toRadians(lats[i]);
+            double cosPhi2 = Math.cos(phi2);
+            double sinPhi2 = Math.sin(phi2);
+            double dLambda = Math.toRadians(lons[i] - originLon);
+
+            double sinHalfPhi = Math.sin((phi2 - phi1) / 2);
+            double sinHalfLambda = Math.sin(dLambda / 2);
+            double a = sinHalfPhi * sinHalfPhi + cosPhi1 * cosPhi2 * sinHalfLambda * sinHalfLambda;
+            distances[i] = (float) (2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a))));
+
+            double y = Math.sin(dLambda) * cosPhi2;
+            double x = cosPhi1 * sinPhi2 - sinPhi1 * cosPhi2 * Math.cos(dLambda);
+            bearings[i] = (float) Math.toDegrees(Math.atan2(y, x));
+        }
+    }
+
+    private static void equirectangular(double originLat, double originLon, double[] lats, double[] lons, int count,
+                                        float[] bearings, float[] distances)
+    {
+        double metersPerDegree = Math.toRadians(EARTH_RADIUS_METERS);
+        double lonScale = Math.cos(Math.toRadians(originLat));
+
+        for(int i = 0; i < count; i++)
+        {
+            double dLon = lons[i] - originLon;
+            if(dLon > 180) dLon -= 360;
+            else if(dLon < -180) dLon += 360;
+
+            double east = dLon * lonScale * metersPerDegree;
+            double north = (lats[i] - originLat) * metersPerDegree;
+
+            distances[i] = (float) Math.sqrt(east * east + north * north);
+            bearings[i] = (float) Math.toDegrees(Math.atan2(east, north));
+        }
+    }
+
+    /**
+     * inverse Vincenty on the WGS84 ellipsoid, writes the initial bearing and distance at index i
+     */
+    private static void vincenty(double lat1, double lon1, double lat2, double lon2,
+                                 float[] bearings, float[] distances, int i)
+    {
+        double L = Math.toRadians(lon2 - lon1);
+        double U1 = Math.atan((1.0 - WGS84_F) * Math.tan(Math.toRadians(lat1)));
+        double U2 = Math.atan((1.0 - WGS84_F) * Math.tan(Math.toRadians(lat2)));
+
+        double sinU1 = Math.sin(U1), cosU1 = Math.cos(U1);
+        double sinU2 = Math.sin(U2), cosU2 = Math.cos(U2);
+
+        double lambda = L;
+        double sinLambda = 0, cosLambda = 0;
+        double sinSigma = 0, cosSigma = 0, sigma = 0;
+        double cosSqAlpha = 0, cos2SM = 0;
+
+        for(int iter = 0; iter < VINCENTY_MAX_ITERS; iter++)
+        {
+            double lambdaOrig = lambda;
+            sinLambda = Math.sin(lambda);
+            cosLambda = Math.cos(lambda);
+
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            sinSigma = Math.sqrt(t1 * t1 + t2 * t2);
+            if(sinSigma == 0) {
+                //coincident points
+                bearings[i] = 0;
+                distances[i] = 0;
+                return;
+            }
+
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            cos2SM = cosSqAlpha == 0 ? 0 : cosSigma - 2.0 * sinU1 * sinU2 / cosSqAlpha;
+
+            double C = (WGS84_F / 16.0) * cosSqAlpha * (4.0 + WGS84_F * (4.0 - 3.0 * cosSqAlpha));
+            lambda = L + (1.0 - C) * WGS84_F * sinAlpha
+                    * (sigma + C * sinSigma * (cos2SM + C * cosSigma * (-1.0 + 2.0 * cos2SM * cos2SM)));
+
+            if(Math.abs(lambda - lambdaOrig) < VINCENTY_EPSILON)
+                break;
+        }
+
+        double aSqMinusBSqOverBSq = (WGS84_A * WGS84_A - WGS84_B * WGS84_B) / (WGS84_B * WGS84_B);
+        double uSquared = cosSqAlpha * aSqMinusBSqOverBSq;
+        double A = 1 + (uSquared / 16384.0) * (4096.0 + uSquared * (-768 + uSquared * (320.0 - 175.0 * uSquared)));
+        double B = (uSquared / 1024.0) * (256.0 + uSquared * (-128.0 + uSquared * (74.0 - 47.0 * uSquared)));
+        double deltaSigma = B * sinSigma * (cos2SM + (B / 4.0) * (cosSigma * (-1.0 + 2.0 * cos2SM * cos2SM)
+                - (B / 6.0) * cos2SM * (-3.0 + 4.0 * sinSigma * sinSigma) * (-3.0 + 4.0 * cos2SM * cos2SM)));
+
+        distances[i] = (float) (WGS84_B * A * (sigma - deltaSigma));
+        bearings[i] = (float) Math.toDegrees(Math.atan2(cosU2 * sinLambda, cosU1 * sinU2 - sinU1 * cosU2 * cosLambda));
+    }
+}
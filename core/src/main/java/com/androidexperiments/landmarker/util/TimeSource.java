@@ -0,0 +1,17 @@
+package com.androidexperiments.landmarker.util;
+
+/**
+ * Wall clock used by anything that needs to expire or throttle over time.
+ * Swap in a fake to step time manually.
+ */
+public interface TimeSource
+{
+    long currentTimeMillis();
+
+    TimeSource SYSTEM = new TimeSource() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+}
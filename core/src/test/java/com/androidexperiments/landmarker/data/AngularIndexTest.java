@@ -0,0 +1,78 @@
+package com.androidexperiments.landmarker.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AngularIndexTest
+{
+    @Test
+    public void sectorsStartAtNorth()
+    {
+        AngularIndex index = new AngularIndex(72, 0);
+
+        assertEquals(0, index.sectorOf(0));
+        assertEquals(0, index.sectorOf(4.99f));
+        assertEquals(1, index.sectorOf(5));
+        assertEquals(71, index.sectorOf(-0.01f));
+        assertEquals(71, index.sectorOf(359.99f));
+        assertEquals(2.5f, index.getSectorCenter(0), 0);
+    }
+
+    @Test
+    public void labelEdgesAreSectorEdges()
+    {
+        AngularIndex index = new AngularIndex(72, 0);
+
+        assertEquals(8, index.sectorOf(44.99f));
+        assertEquals(9, index.sectorOf(45));
+        assertEquals(62, index.sectorOf(-45.01f));
+        assertEquals(63, index.sectorOf(-45));
+        assertEquals(26, index.sectorOf(134.99f));
+        assertEquals(27, index.sectorOf(135));
+    }
+
+    @Test
+    public void hysteresisHoldsAPlaceJustPastTheEdge()
+    {
+        AngularIndex index = new AngularIndex(72, 2);
+
+        assertEquals(8, index.sectorOf(46.5f, 8));
+        assertEquals(9, index.sectorOf(47.5f, 8));
+        assertEquals(9, index.sectorOf(43.5f, 9));
+        assertEquals(8, index.sectorOf(42.5f, 9));
+    }
+
+    @Test
+    public void queryTakesWholeSectorsBetweenTheEdges()
+    {
+        AngularIndex index = new AngularIndex(72, 0);
+        PlaceStore store = new PlaceStore();
+
+        //one place in the middle of every sector
+        for(int sector = 0; sector < 72; sector++)
+        {
+            store.add("place" + sector, 0, 0, PlaceTypes.NONE);
+            store.setSector(sector, sector);
+        }
+        store.groupBySector(72);
+
+        int[] out = new int[store.size()];
+        int count = index.query(store, 0, 45, out);
+        assertEquals(18, count);
+        for(int i = 0; i < count; i++)
+        {
+            int sector = store.getSector(out[i]);
+            assertTrue("sector " + sector, sector <= 8 || sector >= 63);
+        }
+
+        count = index.query(store, 90, 45, out);
+        assertEquals(18, count);
+        for(int i = 0; i < count; i++)
+        {
+            int sector = store.getSector(out[i]);
+            assertTrue("sector " + sector, sector >= 9 && sector <= 26);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.androidexperiments.landmarker.data;
+
+import com.androidexperiments.landmarker.util.GeoKernel;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LandmarkPackTest
+{
+    private static final double LATITUDE = 52.5200;
+    private static final double LONGITUDE = 13.4050;
+    private static final double SPREAD = 3000;
+    private static final double CELL_DEGREES = 0.01;
+    private static final int PLACES = 3000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Random mRandom = new Random(17);
+
+    //what went into the pack, at the precision the pack keeps
+    private final List<Place> mPlaces = new ArrayList<>();
+    private double mCornerLat, mCornerLon;
+    private File mFile;
+    private LandmarkPack mPack;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        //every prominence once, so most prominent first is a single order
+        List<Integer> prominence = new ArrayList<>();
+        for(int i = 0; i < PLACES + 200; i++)
+            prominence.add(i);
+        Collections.shuffle(prominence, mRandom);
+
+        LandmarkPackWriter writer = new LandmarkPackWriter(CELL_DEGREES);
+
+        //the south west corner of everything, which the grid starts from
+        double[] corner = GeoKernel.offset(LATITUDE, LONGITUDE, 225, SPREAD * 1.5);
+        mCornerLat = corner[0];
+        mCornerLon = corner[1];
+        add(writer, corner[0], corner[1], prominence.remove(0));
+
+        for(int i = 0; i < PLACES; i++)
+        {
+            double[] location = GeoKernel.offset(LATITUDE, LONGITUDE, mRandom.nextDouble() * 360,
+                    SPREAD * Math.sqrt(mRandom.nextDouble()));
+            add(writer, location[0], location[1], prominence.remove(0));
+        }
+
+        //right on cell edges, and on the corners where four meet
+        for(int row = 1; row < 6; row++)
+        {
+            for(int col = 1; col < 8; col++)
+            {
+                double lat = mCornerLat + row * CELL_DEGREES;
+                double lon = mCornerLon + col * CELL_DEGREES;
+                add(writer, lat, lon, prominence.remove(0));
+                add(writer, lat, lon + CELL_DEGREES * mRandom.nextDouble(), prominence.remove(0));
+                add(writer, lat + CELL_DEGREES * mRandom.nextDouble(), lon, prominence.remove(0));
+            }
+        }
+
+        mFile = mFolder.newFile("berlin" + LandmarkPack.FILE_EXTENSION);
+        writer.write(mFile);
+        mPack = LandmarkPack.open(mFile);
+    }
+
+    @Test
+    public void opensWhatWasWritten()
+    {
+        assertEquals("berlin", mPack.getName());
+        assertEquals(mPlaces.size(), mPack.getPlaceCount());
+        assertTrue(mPack.covers(LATITUDE, LONGITUDE));
+        assertFalse(mPack.covers(LATITUDE + 1, LONGITUDE));
+    }
+
+    @Test
+    public void matchesABruteForceScan()
+    {
+        double[] radii = { 50, 300, 1000, 2500, 10000 };
+        int[] limits = { 1, 20, 60, 200, 100000 };
+
+        for(int q = 0; q < 200; q++)
+        {
+            double[] center = GeoKernel.offset(LATITUDE, LONGITUDE, mRandom.nextDouble() * 360,
+                    SPREAD * 1.2 * mRandom.nextDouble());
+            double radius = radii[q % radii.length];
+            int limit = limits[(q / radii.length) % limits.length];
+
+            assertQuery(center[0], center[1], radius, limit);
+        }
+    }
+
+    @Test
+    public void matchesABruteForceScanFromCellEdges()
+    {
+        for(int row = 1; row < 6; row++)
+        {
+            for(int col = 1; col < 8; col++)
+            {
+                double lat = mCornerLat + row * CELL_DEGREES;
+                double lon = mCornerLon + col * CELL_DEGREES;
+                assertQuery(lat, lon, 200, 60);
+                assertQuery(lat, lon, 1000, 200);
+                assertQuery(lat + CELL_DEGREES / 2, lon, 1000, 5);
+            }
+        }
+    }
+
+    @Test
+    public void placeExactlyOnTheRadiusIsIn()
+    {
+        for(int i = 0; i < 50; i++)
+        {
+            Place place = mPlaces.get(mRandom.nextInt(mPlaces.size()));
+            double[] center = GeoKernel.offset(place.latitude, place.longitude, mRandom.nextDouble() * 360,
+                    100 + mRandom.nextDouble() * 1500);
+            double radius = GeoKernel.haversineDistance(center[0], center[1], place.latitude, place.longitude);
+
+            List<String> names = names(mPack.getNearbyPlaces(center[0], center[1], radius, 100000, null));
+            assertTrue(names.contains(place.name));
+            assertQuery(center[0], center[1], radius, 100000);
+
+            //and a hair less leaves it out
+            names = names(mPack.getNearbyPlaces(center[0], center[1], radius - 0.001, 100000, null));
+            assertFalse(names.contains(place.name));
+        }
+    }
+
+    @Test
+    public void outsideThePackIsEmpty()
+    {
+        assertEquals(0, mPack.getNearbyPlaces(LATITUDE + 1, LONGITUDE, 1000, 60, null).size());
+        assertEquals(0, mPack.getNearbyPlaces(LATITUDE, LONGITUDE, 1000, 0, null).size());
+    }
+
+    @Test
+    public void emptyPackOpens() throws IOException
+    {
+        File file = mFolder.newFile("empty" + LandmarkPack.FILE_EXTENSION);
+        new LandmarkPackWriter().write(file);
+
+        LandmarkPack pack = LandmarkPack.open(file);
+        assertEquals(0, pack.getPlaceCount());
+        assertEquals(0, pack.getNearbyPlaces(0, 0, 1000, 60, null).size());
+    }
+
+    @Test
+    public void badMagicOrVersionIsRejected() throws IOException
+    {
+        assertRejected(patched(0, 0x12345678));
+        assertRejected(patched(4, LandmarkPack.FILE_VERSION + 1));
+    }
+
+    @Test
+    public void corruptHeaderIsRejected() throws IOException
+    {
+        assertRejected(patched(8, mPack.getPlaceCount() + 1));  //count
+        assertRejected(patched(8, -1));
+        assertRejected(patched(28, 0));                         //cell size
+        assertRejected(patched(32, 100000));                    //rows
+        assertRejected(patched(36, 0));                         //cols
+        assertRejected(patched(40, 0));                         //cells offset
+        assertRejected(patched(44, 64));                        //records offset
+        assertRejected(patched(48, Integer.MAX_VALUE));         //names offset
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException
+    {
+        long length = mFile.length();
+        long[] cuts = { 0, 10, LandmarkPack.HEADER_SIZE, LandmarkPack.HEADER_SIZE + 100, length / 2, length - 1 };
+
+        for(long cut : cuts)
+        {
+            File file = copy("cut" + cut);
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(cut);
+            }
+            finally {
+                raf.close();
+            }
+            assertRejected(file);
+        }
+    }
+
+    private void assertQuery(double latitude, double longitude, double radius, int limit)
+    {
+        List<Place> expected = new ArrayList<>();
+        for(Place place : mPlaces) {
+            if(GeoKernel.haversineDistance(latitude, longitude, place.latitude, place.longitude) <= radius)
+                expected.add(place);
+        }
+        Collections.sort(expected, new Comparator<Place>() {
+            @Override
+            public int compare(Place lhs, Place rhs) {
+                return Integer.compare(rhs.prominence, lhs.prominence);
+            }
+        });
+
+        List<String> expectedNames = new ArrayList<>();
+        for(Place place : expected.subList(0, Math.min(limit, expected.size())))
+            expectedNames.add(place.name);
+
+        List<PlaceRecord> actual = mPack.getNearbyPlaces(latitude, longitude, radius, limit, null);
+        assertEquals(latitude + "," + longitude + " r " + radius + " limit " + limit, expectedNames, names(actual));
+
+        for(int i = 0; i < actual.size(); i++)
+        {
+            Place place = expected.get(i);
+            assertEquals(place.latitude, actual.get(i).getLatitude(), 0);
+            assertEquals(place.longitude, actual.get(i).getLongitude(), 0);
+            assertEquals(place.prominence, actual.get(i).getRatingCount());
+            assertEquals(place.types, actual.get(i).getTypeFlags());
+        }
+    }
+
+    private void add(LandmarkPackWriter writer, double latitude, double longitude, int prominence)
+    {
+        String name = "Ort " + mPlaces.size() + " \u00fc";
+        int types = PlaceTypes.fromType(mRandom.nextBoolean() ? "museum" : "park");
+        writer.add(name, latitude, longitude, types, prominence);
+
+        //the pack keeps 1e-7 degrees, compare against that
+        mPlaces.add(new Place(name, Math.round(latitude * 1e7) / 1e7, Math.round(longitude * 1e7) / 1e7,
+                types, prominence));
+    }
+
+    private File patched(int offset, int value) throws IOException
+    {
+        File file = copy("patched" + offset + "_" + value);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(offset);
+            raf.writeInt(value);
+        }
+        finally {
+            raf.close();
+        }
+        return file;
+    }
+
+    private File copy(String name) throws IOException
+    {
+        File file = new File(mFolder.getRoot(), name + LandmarkPack.FILE_EXTENSION);
+        RandomAccessFile in = new RandomAccessFile(mFile, "r");
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            out.write(bytes);
+        }
+        finally {
+            in.close();
+            out.close();
+        }
+        return file;
+    }
+
+    private static void assertRejected(File file)
+    {
+        try {
+            LandmarkPack.open(file);
+            fail(file.getName() + " opened");
+        }
+        catch(IOException expected) {}
+    }
+
+    private static List<String> names(List<PlaceRecord> places)
+    {
+        List<String> names = new ArrayList<>();
+        for(PlaceRecord place : places)
+            names.add(place.getName());
+        return names;
+    }
+
+    private static class Place
+    {
+        final String name;
+        final double latitude;
+        final double longitude;
+        final int types;
+        final int prominence;
+
+        Place(String name, double latitude, double longitude, int types, int prominence) {
+            this.name = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.types = types;
+            this.prominence = prominence;
+        }
+    }
+}
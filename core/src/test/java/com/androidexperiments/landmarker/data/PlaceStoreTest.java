@@ -0,0 +1,126 @@
+package com.androidexperiments.landmarker.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaceStoreTest
+{
+    @Test
+    public void equalNamesShareAnIdWithinAFill()
+    {
+        PlaceStore store = new PlaceStore();
+        int a = store.add("Starbucks", 40.758, -73.985, PlaceTypes.NONE);
+        int b = store.add("Bryant Park", 40.753, -73.983, PlaceTypes.NONE);
+        int c = store.add("Starbucks", 40.756, -73.987, PlaceTypes.NONE);
+
+        assertEquals(store.getNameId(a), store.getNameId(c));
+        assertTrue(store.getNameId(a) != store.getNameId(b));
+        assertEquals(2, store.getNameCount());
+        assertEquals("Starbucks", store.getName(c));
+    }
+
+    @Test
+    public void nullNamesBecomeEmpty()
+    {
+        PlaceStore store = new PlaceStore();
+        int i = store.add(null, 0, 0, PlaceTypes.NONE);
+
+        assertEquals("", store.getName(i));
+    }
+
+    @Test
+    public void clearDropsTheNameTable()
+    {
+        PlaceStore store = new PlaceStore();
+
+        //every refresh brings a fresh set of names, the table must not keep all of them
+        for(int fill = 0; fill < 50; fill++)
+        {
+            store.clear();
+            for(int i = 0; i < 20; i++)
+                store.add("fill" + fill + " place" + i, 0, 0, PlaceTypes.NONE);
+        }
+
+        assertEquals(20, store.size());
+        assertEquals(20, store.getNameCount());
+        assertEquals("fill49 place0", store.getName(0));
+        assertEquals(0, store.getNameId(0));
+    }
+
+    @Test
+    public void refillKeepsNamesMatchingTheirPlaces()
+    {
+        PlaceStore store = new PlaceStore();
+        store.add("Old", 0, 0, PlaceTypes.NONE);
+        store.add("Shared", 0, 0, PlaceTypes.NONE);
+
+        store.clear();
+        int shared = store.add("Shared", 0, 0, PlaceTypes.NONE);
+        int fresh = store.add("New", 0, 0, PlaceTypes.NONE);
+
+        assertEquals("Shared", store.getName(shared));
+        assertEquals("New", store.getName(fresh));
+        assertEquals(2, store.getNameCount());
+    }
+
+    @Test
+    public void addAllAppendsAfterExistingPlaces()
+    {
+        PlaceStore store = new PlaceStore(1);
+        store.add("first", 1, 2, PlaceTypes.NONE);
+
+        int start = store.addAll(Arrays.asList(
+                new PlaceRecord("id2", "second", 3, 4),
+                new PlaceRecord("id3", "third", 5, 6)));
+
+        assertEquals(1, start);
+        assertEquals(3, store.size());
+        assertEquals("third", store.getName(2));
+        assertEquals(5, store.getLatitude(2), 0);
+        assertEquals(6, store.getLongitude(2), 0);
+    }
+
+    @Test
+    public void groupBySectorIsStable()
+    {
+        PlaceStore store = new PlaceStore();
+        int[] sectors = {2, 0, 2, 1, 0, 2};
+        for(int i = 0; i < sectors.length; i++)
+        {
+            store.add("place" + i, 0, 0, PlaceTypes.NONE);
+            store.setSector(i, sectors[i]);
+        }
+        store.groupBySector(4);
+
+        assertEquals(4, store.getSectorCount());
+        assertSector(store, 0, 1, 4);
+        assertSector(store, 1, 3);
+        assertSector(store, 2, 0, 2, 5);
+        assertSector(store, 3);
+    }
+
+    @Test
+    public void clearEmptiesTheSectors()
+    {
+        PlaceStore store = new PlaceStore();
+        store.add("place", 0, 0, PlaceTypes.NONE);
+        store.setSector(0, 0);
+        store.groupBySector(1);
+
+        store.clear();
+
+        assertEquals(0, store.size());
+        assertEquals(0, store.getSectorCount());
+    }
+
+    private static void assertSector(PlaceStore store, int sector, int... expected)
+    {
+        assertEquals(expected.length, store.getSectorSize(sector));
+        for(int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], store.getSectorPlace(sector, i));
+    }
+}
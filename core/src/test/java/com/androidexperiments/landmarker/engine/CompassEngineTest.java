@@ -0,0 +1,91 @@
+package com.androidexperiments.landmarker.engine;
+
+import com.androidexperiments.landmarker.data.PlaceRanker;
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.data.PlaceStore;
+import com.androidexperiments.landmarker.util.GeoKernel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompassEngineTest
+{
+    //on the equator equal steps north and east are exactly 45 degrees apart
+    private static final double STEP = 0.001;
+
+    @Test
+    public void placesOnALabelEdgeGoToTheLabelClockwiseOfIt()
+    {
+        List<PlaceRecord> places = new ArrayList<>();
+        places.add(new PlaceRecord("ne", "45", STEP, STEP));
+        places.add(new PlaceRecord("se", "135", -STEP, STEP));
+        places.add(new PlaceRecord("sw", "-135", -STEP, -STEP));
+        places.add(new PlaceRecord("nw", "-45", STEP, -STEP));
+
+        CompassEngine engine = new CompassEngine(1000);
+        engine.setPlaces(places);
+        engine.update(0, 0);
+
+        PlaceStore store = engine.getPlaceStore();
+        assertEquals(45.f, store.getBearing(0), 0);
+        assertEquals(135.f, store.getBearing(1), 0);
+        assertEquals(-135.f, store.getBearing(2), 0);
+        assertEquals(-45.f, store.getBearing(3), 0);
+
+        assertSlot(engine, CompassLayout.NORTH, "-45");
+        assertSlot(engine, CompassLayout.EAST, "45");
+        assertSlot(engine, CompassLayout.SOUTH, "135");
+        assertSlot(engine, CompassLayout.WEST, "-135");
+    }
+
+    @Test
+    public void placesJustInsideALabelStayUnderIt()
+    {
+        List<PlaceRecord> places = new ArrayList<>();
+        places.add(at(44));
+        places.add(at(46));
+        places.add(at(-44));
+        places.add(at(-46));
+        places.add(at(134));
+        places.add(at(136));
+
+        CompassEngine engine = new CompassEngine(1000);
+        engine.setPlaces(places);
+        engine.update(0, 0);
+
+        assertSlot(engine, CompassLayout.NORTH, "-44", "44");
+        assertSlot(engine, CompassLayout.EAST, "46", "134");
+        assertSlot(engine, CompassLayout.SOUTH, "136");
+        assertSlot(engine, CompassLayout.WEST, "-46");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sectorsThatDontLineUpWithLabelsAreRejected()
+    {
+        new CompassEngine(4, 36, 2, 20, new PlaceRanker(new PlaceRanker.DefaultScorer(1000)),
+                new GeoKernel(GeoKernel.Mode.EQUIRECTANGULAR));
+    }
+
+    private static PlaceRecord at(double bearing)
+    {
+        double[] point = GeoKernel.offset(0, 0, bearing, 500);
+        return new PlaceRecord(null, String.valueOf((int) bearing), point[0], point[1]);
+    }
+
+    private static void assertSlot(CompassEngine engine, int slot, String... names)
+    {
+        assertEquals("places under slot " + slot, names.length, engine.getSlotPlaceCount(slot));
+
+        List<String> found = new ArrayList<>();
+        for(int i = 0; i < engine.getSlotPlaceCount(slot); i++)
+            found.add(engine.getPlaceStore().getName(engine.getSlotPlaces(slot)[i]));
+
+        for(String name : names)
+            assertTrue("slot " + slot + " has " + name, found.contains(name));
+    }
+}
@@ -0,0 +1,68 @@
+package com.androidexperiments.landmarker.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompassLayoutTest
+{
+    /**
+     * computeOffsets takes 0 as due east, going counter clockwise
+     */
+    private static double heading(double compassDegrees) {
+        return 90 - compassDegrees;
+    }
+
+    @Test
+    public void facingALabelCentersItWithItsNeighboursAtTheSides()
+    {
+        float[] offsets = new float[CompassLayout.SLOT_COUNT];
+
+        CompassLayout.computeOffsets(heading(0), offsets);
+        assertEquals(0, offsets[CompassLayout.NORTH], 1e-4f);
+        assertEquals(1, offsets[CompassLayout.EAST], 1e-4f);
+        assertEquals(-1, offsets[CompassLayout.WEST], 1e-4f);
+
+        CompassLayout.computeOffsets(heading(180), offsets);
+        assertEquals(0, offsets[CompassLayout.SOUTH], 1e-4f);
+        assertEquals(-1, offsets[CompassLayout.EAST], 1e-4f);
+        assertEquals(1, offsets[CompassLayout.WEST], 1e-4f);
+    }
+
+    @Test
+    public void neighboursDontJumpWhenFacingEitherSideOfSouth()
+    {
+        float[] offsets = new float[CompassLayout.SLOT_COUNT];
+
+        CompassLayout.computeOffsets(heading(179.9), offsets);
+        float east = offsets[CompassLayout.EAST];
+        float west = offsets[CompassLayout.WEST];
+
+        CompassLayout.computeOffsets(heading(180.1), offsets);
+        assertEquals(east, offsets[CompassLayout.EAST], .01f);
+        assertEquals(west, offsets[CompassLayout.WEST], .01f);
+    }
+
+    @Test
+    public void labelBehindUsStaysOnItsSideWhileTheHeadingHovers()
+    {
+        float[] offsets = new float[CompassLayout.SLOT_COUNT];
+        float hysteresis = CompassLayout.DEFAULT_WRAP_HYSTERESIS;
+
+        //facing south north is directly behind us, coming from the east it's off to the left
+        CompassLayout.computeOffsets(heading(170), offsets, hysteresis);
+        assertTrue(offsets[CompassLayout.NORTH] < 0);
+
+        for(int frame = 0; frame < 20; frame++)
+        {
+            double jitter = frame % 2 == 0 ? 181 : 179;
+            CompassLayout.computeOffsets(heading(jitter), offsets, hysteresis);
+            assertTrue("frame " + frame, offsets[CompassLayout.NORTH] < 0);
+        }
+
+        //once well past it goes round to the other side
+        CompassLayout.computeOffsets(heading(180 + hysteresis + 1), offsets, hysteresis);
+        assertTrue(offsets[CompassLayout.NORTH] > 0);
+    }
+}
@@ -0,0 +1,139 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.data.PlaceStore;
+import com.androidexperiments.landmarker.data.PlaceTypes;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NearbySearchClientTest
+{
+    private static final String PAGE_1 = "{\"status\":\"OK\",\"next_page_token\":\"next\",\"results\":["
+            + place("a", "Alpha", 1.0, 2.0, "\"museum\"", 4.5, 10) + ","
+            + place("b", "Bravo", 1.1, 2.1, "\"park\",\"point_of_interest\"", 3.0, 2) + "]}";
+    private static final String PAGE_2 = "{\"status\":\"OK\",\"results\":["
+            + place("c", "Charlie", 1.2, 2.2, "", 5.0, 1) + "]}";
+
+    @Test
+    public void followsPageTokensAndHandsOverEveryPage() throws IOException
+    {
+        FakeTransport transport = new FakeTransport(PAGE_1, PAGE_2);
+        NearbySearchClient client = new NearbySearchClient("key", "http://localhost/", transport, 0);
+
+        final List<Integer> pages = new ArrayList<>();
+        List<PlaceRecord> places = client.getNearbyPlaces(1, 2, 1000, 60, new NearbyPlacesSource.OnPageListener() {
+            @Override
+            public void onPage(List<PlaceRecord> places, int pageIndex) {
+                pages.add(places.size());
+            }
+        });
+
+        assertEquals(3, places.size());
+        assertEquals("Alpha", places.get(0).getName());
+        assertEquals("Charlie", places.get(2).getName());
+        assertEquals(2, pages.get(0).intValue());
+        assertEquals(1, pages.get(1).intValue());
+        assertTrue(transport.urls.get(1).contains("pagetoken=next"));
+    }
+
+    @Test
+    public void zeroResultsIsEmptyAndErrorsThrow() throws IOException
+    {
+        NearbySearchClient client = new NearbySearchClient("key", "http://localhost/",
+                new FakeTransport("{\"status\":\"ZERO_RESULTS\",\"results\":[]}",
+                        "{\"status\":\"REQUEST_DENIED\",\"error_message\":\"bad key\"}"), 0);
+
+        assertEquals(0, client.getNearbyPlaces(1, 2, 1000, 60).size());
+
+        try {
+            client.getNearbyPlaces(1, 2, 1000, 60);
+            fail("expected REQUEST_DENIED");
+        }
+        catch(PlacesApiException e) {
+            assertEquals(PlacesApiException.STATUS_REQUEST_DENIED, e.getStatus());
+        }
+    }
+
+    @Test
+    public void columnsGoIntoAStoreTheSameAsRecords() throws IOException
+    {
+        NearbyResponseParser parser = new NearbyResponseParser();
+        parser.parse(new StringReader(PAGE_1));
+        List<PlaceRecord> records = parser.toPlaceRecords();
+
+        PlaceStore store = new PlaceStore(1);
+        store.add("already here", 0, 0, PlaceTypes.NONE);
+        assertEquals(1, parser.appendTo(store));
+        assertEquals(3, store.size());
+
+        for(int i = 0; i < records.size(); i++)
+        {
+            PlaceRecord record = records.get(i);
+            assertEquals(record.getName(), store.getName(i + 1));
+            assertEquals(record.getLatitude(), store.getLatitude(i + 1), 0);
+            assertEquals(record.getLongitude(), store.getLongitude(i + 1), 0);
+            assertEquals(record.getTypeFlags(), store.getTypeFlags(i + 1));
+            assertEquals(record.getRating(), store.getRating(i + 1), 0);
+            assertEquals(record.getRatingCount(), store.getRatingCount(i + 1));
+        }
+    }
+
+    @Test
+    public void reusedParserStartsCleanAfterACutOffPage() throws IOException
+    {
+        NearbyResponseParser parser = new NearbyResponseParser();
+        try {
+            parser.parse(new StringReader(PAGE_1.substring(0, PAGE_1.length() / 2)));
+            fail("expected the cut off page to fail");
+        }
+        catch(IOException expected) {}
+
+        parser.parse(new StringReader(PAGE_2));
+        assertEquals("OK", parser.getStatus());
+        assertEquals(1, parser.size());
+        assertEquals("Charlie", parser.getName(0));
+
+        parser.parse(new StringReader(PAGE_1));
+        assertEquals(2, parser.size());
+        assertEquals("next", parser.getNextPageToken());
+    }
+
+    private static String place(String id, String name, double lat, double lng, String types, double rating, int ratings)
+    {
+        return "{\"place_id\":\"" + id + "\",\"name\":\"" + name + "\",\"geometry\":{\"location\":{\"lat\":" + lat
+                + ",\"lng\":" + lng + "}},\"types\":[" + types + "],\"rating\":" + rating
+                + ",\"user_ratings_total\":" + ratings + "}";
+    }
+
+    /**
+     * answers each request with the next body
+     */
+    private static class FakeTransport implements HttpTransport
+    {
+        final List<String> urls = new ArrayList<>();
+        private final String[] mBodies;
+
+        FakeTransport(String... bodies) {
+            mBodies = bodies;
+        }
+
+        @Override
+        public InputStream get(String url)
+        {
+            urls.add(url);
+            return new ByteArrayInputStream(mBodies[urls.size() - 1].getBytes(Charset.forName("UTF-8")));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.androidexperiments.landmarker.places;
+
+import com.androidexperiments.landmarker.data.PlaceRecord;
+import com.androidexperiments.landmarker.util.GeoKernel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardedNearbySearchTest
+{
+    private static final double LATITUDE = 51.5007;
+    private static final double LONGITUDE = -0.1246;
+    private static final double RADIUS = 1000;
+    private static final int SECTORS = 6;
+
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newFixedThreadPool(SECTORS + 1);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void everyShardAnsweringIsAFullResult() throws IOException
+    {
+        ShardedNearbySearch search = new ShardedNearbySearch(new OnePlacePerShard(0), mExecutor, SECTORS);
+
+        List<PlaceRecord> places = search.getNearbyPlaces(LATITUDE, LONGITUDE, RADIUS, 200, null);
+        assertEquals(SECTORS + 1, places.size());
+    }
+
+    @Test
+    public void someShardsFailingIsPartial() throws IOException
+    {
+        ShardedNearbySearch search = new ShardedNearbySearch(new OnePlacePerShard(2), mExecutor, SECTORS);
+
+        try {
+            search.getNearbyPlaces(LATITUDE, LONGITUDE, RADIUS, 200, null);
+            fail("expected partial results");
+        }
+        catch(PartialResultsException e) {
+            assertEquals(SECTORS + 1 - 2, e.getPlaces().size());
+            assertEquals(OnePlacePerShard.FAILURE, e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void everyShardFailingThrowsTheFailure() throws IOException
+    {
+        ShardedNearbySearch search = new ShardedNearbySearch(new OnePlacePerShard(SECTORS + 1), mExecutor, SECTORS);
+
+        try {
+            search.getNearbyPlaces(LATITUDE, LONGITUDE, RADIUS, 200, null);
+            fail("expected a failure");
+        }
+        catch(PartialResultsException e) {
+            fail("nothing came back, not partial");
+        }
+        catch(IOException e) {
+            assertEquals(OnePlacePerShard.FAILURE, e.getMessage());
+        }
+    }
+
+    @Test
+    public void partialEvenWhenTheShardsThatAnsweredFoundNothing() throws IOException
+    {
+        final IOException failure = new IOException("down");
+        ShardedNearbySearch search = new ShardedNearbySearch(new NearbyPlacesSource() {
+            @Override
+            public List<PlaceRecord> getNearbyPlaces(double latitude, double longitude, double radius, int limit,
+                                                     OnPageListener listener) throws IOException
+            {
+                //only the center shard answers
+                if(radius > RADIUS / 2)
+                    throw failure;
+                return new ArrayList<>();
+            }
+        }, mExecutor, SECTORS);
+
+        try {
+            search.getNearbyPlaces(LATITUDE, LONGITUDE, RADIUS, 200, null);
+            fail("expected partial results");
+        }
+        catch(PartialResultsException e) {
+            assertEquals(0, e.getPlaces().size());
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    /**
+     * answers every shard with one place at its center, and fails the first few shards to ask
+     */
+    private static class OnePlacePerShard implements NearbyPlacesSource
+    {
+        static final String FAILURE = "shard failed";
+
+        private int mFailuresLeft;
+        private int mCount = 0;
+
+        OnePlacePerShard(int failures) {
+            mFailuresLeft = failures;
+        }
+
+        @Override
+        public List<PlaceRecord> getNearbyPlaces(double latitude, double longitude, double radius, int limit,
+                                                 OnPageListener listener) throws IOException
+        {
+            int id;
+            synchronized(this) {
+                if(mFailuresLeft > 0) {
+                    mFailuresLeft--;
+                    throw new IOException(FAILURE);
+                }
+                id = mCount++;
+            }
+
+            //inside the original circle, ring shard centers sit 750m out
+            assertTrue(GeoKernel.haversineDistance(LATITUDE, LONGITUDE, latitude, longitude) < RADIUS);
+
+            List<PlaceRecord> places = new ArrayList<>();
+            places.add(new PlaceRecord("place" + id, "Place " + id, latitude, longitude));
+            if(listener != null)
+                listener.onPage(places, 0);
+            return places;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.androidexperiments.landmarker.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FileUtilsTest
+{
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void finishedWriteReplacesTheFile() throws IOException
+    {
+        File file = new File(mFolder.getRoot(), "value");
+        write(file, 1);
+        write(file, 2);
+
+        assertEquals(2, read(file));
+        assertEquals(1, mFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void abortedWriteLeavesTheOldFile() throws IOException
+    {
+        File file = new File(mFolder.getRoot(), "value");
+        write(file, 1);
+
+        DataOutputStream out = FileUtils.startWrite(file);
+        out.writeInt(2);
+        FileUtils.abortWrite(file, out);
+
+        assertEquals(1, read(file));
+        assertEquals(1, mFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void startWriteCreatesTheDir() throws IOException
+    {
+        File file = new File(new File(mFolder.getRoot(), "a/b"), "value");
+        write(file, 1);
+
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void startWriteFailsWhenTheDirCantBeMade() throws IOException
+    {
+        File blocker = mFolder.newFile("blocker");
+        File file = new File(blocker, "value");
+
+        DataOutputStream out = null;
+        try {
+            out = FileUtils.startWrite(file);
+            fail("a file is in the way of the dir");
+        }
+        catch(IOException expected) {
+            FileUtils.abortWrite(file, out);
+        }
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void closeQuietlyTakesNull() {
+        FileUtils.closeQuietly(null);
+    }
+
+    private static void write(File file, int value) throws IOException
+    {
+        DataOutputStream out = FileUtils.startWrite(file);
+        out.writeInt(value);
+        FileUtils.finishWrite(file, out);
+    }
+
+    private static int read(File file) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return in.readInt();
+        }
+        finally {
+            in.close();
+        }
+    }
+}
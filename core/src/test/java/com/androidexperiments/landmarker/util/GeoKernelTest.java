@@ -0,0 +1,211 @@
+package com.androidexperiments.landmarker.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeoKernelTest
+{
+    private static final GeoKernel.Mode[] MODES = GeoKernel.Mode.values();
+
+    //origins to test short ranges from, equator to high latitude in both hemispheres
+    private static final double[][] ORIGINS = {
+            {0, 0}, {40.758, -73.9855}, {-33.8568, 151.2153}, {51.5007, -0.1246}, {64.1466, -21.9426}
+    };
+
+    @Test
+    public void vincentyMatchesFlindersPeakToBuninyong()
+    {
+        //the worked example from Vincenty's 1975 paper as used by Geoscience Australia
+        float[] result = vincenty(-dms(37, 57, 3.72030), dms(144, 25, 29.52440),
+                -dms(37, 39, 10.15610), dms(143, 55, 35.38390));
+
+        assertEquals(54972.271, result[1], 0.01);
+        assertEquals(dms(306, 52, 5.37) - 360, result[0], 1e-4);
+    }
+
+    @Test
+    public void vincentyMatchesJfkToHeathrow()
+    {
+        //GeographicLib's GeodSolve example
+        float[] result = vincenty(40.6, -73.8, 51.6, -0.5);
+
+        assertEquals(5551759.400, result[1], 1);
+        assertEquals(51.198882845579, result[0], 1e-4);
+    }
+
+    @Test
+    public void vincentyMatchesOneDegreeOfEquatorAndMeridian()
+    {
+        //a * pi / 180, and the meridian arc integrated from the WGS84 radius of curvature
+        float[] east = vincenty(0, 0, 0, 1);
+        assertEquals(111319.491, east[1], 0.01);
+        assertEquals(90, east[0], 1e-4);
+
+        float[] north = vincenty(0, 0, 1, 0);
+        assertEquals(110574.389, north[1], 0.01);
+        assertEquals(0, north[0], 1e-4);
+    }
+
+    @Test
+    public void haversineIsWithinItsStatedErrorOfVincentyUnderAKilometer()
+    {
+        for(double[] origin : ORIGINS)
+        {
+            for(int distance = 50; distance <= 1000; distance += 50)
+            {
+                for(int bearing = -180; bearing < 180; bearing += 15)
+                {
+                    double[] point = GeoKernel.offset(origin[0], origin[1], bearing, distance);
+                    float[] exact = compute(GeoKernel.Mode.VINCENTY, origin, point);
+                    float[] sphere = compute(GeoKernel.Mode.HAVERSINE, origin, point);
+
+                    //the mean radius against the meridian's radius of curvature at the equator
+                    assertEquals(exact[1], sphere[1], exact[1] * 0.0057);
+                    assertEquals(0, angleBetween(exact[0], sphere[0]), 0.5);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void equirectangularIsWithinAMeterOfHaversineUnderAKilometer()
+    {
+        for(double[] origin : ORIGINS)
+        {
+            for(int distance = 50; distance <= 1000; distance += 50)
+            {
+                for(int bearing = -180; bearing < 180; bearing += 15)
+                {
+                    double[] point = GeoKernel.offset(origin[0], origin[1], bearing, distance);
+                    float[] sphere = compute(GeoKernel.Mode.HAVERSINE, origin, point);
+                    float[] flat = compute(GeoKernel.Mode.EQUIRECTANGULAR, origin, point);
+
+                    assertEquals(distance, sphere[1], 0.01);
+                    assertEquals(sphere[1], flat[1], 1);
+                    assertEquals(0, angleBetween(sphere[0], flat[0]), 0.1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void coincidentPointsAreZero()
+    {
+        for(GeoKernel.Mode mode : MODES)
+        {
+            for(double[] origin : ORIGINS)
+            {
+                float[] result = compute(mode, origin, origin);
+                assertEquals(mode.name(), 0, result[1], 0);
+                assertEquals(mode.name(), 0, result[0], 0);
+            }
+        }
+    }
+
+    @Test
+    public void antimeridianIsCrossedTheShortWay()
+    {
+        //about 110m apart either side of 180
+        double[] west = {10, 179.9995};
+        double[] east = {10, -179.9995};
+        double expected = GeoKernel.haversineDistance(10, 179.9995, 10, 180.0005);
+
+        for(GeoKernel.Mode mode : MODES)
+        {
+            float[] there = compute(mode, west, east);
+            assertEquals(mode.name(), expected, there[1], 0.5);
+            assertEquals(mode.name(), 90, there[0], 0.01);
+
+            float[] back = compute(mode, east, west);
+            assertEquals(mode.name(), expected, back[1], 0.5);
+            assertEquals(mode.name(), -90, back[0], 0.01);
+        }
+    }
+
+    @Test
+    public void bearingsAreNormalizedToPlusMinus180()
+    {
+        for(GeoKernel.Mode mode : MODES)
+        {
+            double[] origin = ORIGINS[1];
+            assertEquals(mode.name(), 0, compute(mode, origin, GeoKernel.offset(origin[0], origin[1], 0, 500))[0], 0.2);
+            assertEquals(mode.name(), 90, compute(mode, origin, GeoKernel.offset(origin[0], origin[1], 90, 500))[0], 0.2);
+            assertEquals(mode.name(), -90, compute(mode, origin, GeoKernel.offset(origin[0], origin[1], 270, 500))[0], 0.2);
+            assertEquals(mode.name(), 180, Math.abs(compute(mode, origin, GeoKernel.offset(origin[0], origin[1], 180, 500))[0]), 0.2);
+
+            for(int bearing = 0; bearing < 720; bearing += 10)
+            {
+                float result = compute(mode, origin, GeoKernel.offset(origin[0], origin[1], bearing, 500))[0];
+                assertTrue(mode.name() + " " + result, result >= -180 && result <= 180);
+                assertEquals(0, angleBetween(bearing, result), 0.2);
+            }
+        }
+    }
+
+    @Test
+    public void singlePointHelpersAgreeWithTheKernel()
+    {
+        double[] origin = ORIGINS[3];
+        double[] point = GeoKernel.offset(origin[0], origin[1], -120, 800);
+        float[] sphere = compute(GeoKernel.Mode.HAVERSINE, origin, point);
+
+        assertEquals(sphere[1], GeoKernel.haversineDistance(origin[0], origin[1], point[0], point[1]), 0.01);
+        assertEquals(sphere[0], GeoKernel.initialBearing(origin[0], origin[1], point[0], point[1]), 1e-4);
+        assertEquals(-120, sphere[0], 1e-3);
+    }
+
+    @Test
+    public void ownBuffersGrowAndAreReused()
+    {
+        GeoKernel kernel = new GeoKernel(GeoKernel.Mode.EQUIRECTANGULAR);
+        double[] lats = {0, 0, 1};
+        double[] lons = {1, 0, 0};
+
+        kernel.compute(0, 0, lats, lons, 2);
+        float[] distances = kernel.getDistances();
+        assertEquals(0, distances[1], 0);
+
+        kernel.compute(0, 0, lats, lons, 1);
+        assertTrue(distances == kernel.getDistances());
+
+        kernel.compute(0, 0, lats, lons, 3);
+        assertEquals(3, kernel.getDistances().length);
+        assertEquals(0, kernel.getBearings()[2], 1e-4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOutputsThatAreTooSmall() {
+        new GeoKernel(GeoKernel.Mode.HAVERSINE).compute(0, 0, new double[2], new double[2], 2, new float[1], new float[2]);
+    }
+
+    private static float[] vincenty(double lat1, double lon1, double lat2, double lon2) {
+        return compute(GeoKernel.Mode.VINCENTY, new double[] {lat1, lon1}, new double[] {lat2, lon2});
+    }
+
+    /**
+     * @return bearing, distance
+     */
+    private static float[] compute(GeoKernel.Mode mode, double[] origin, double[] point)
+    {
+        float[] bearings = new float[1];
+        float[] distances = new float[1];
+        new GeoKernel(mode).compute(origin[0], origin[1], new double[] {point[0]}, new double[] {point[1]}, 1,
+                bearings, distances);
+        return new float[] {bearings[0], distances[0]};
+    }
+
+    private static double dms(int degrees, int minutes, double seconds) {
+        return degrees + minutes / 60.0 + seconds / 3600.0;
+    }
+
+    /**
+     * smallest difference between two bearings, 0 -> 180
+     */
+    private static double angleBetween(double a, double b)
+    {
+        double diff = Math.abs(a - b) % 360;
+        return diff > 180 ? 360 - diff : diff;
+    }
+}